@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * add(File) per format, triple formats into a graph, quad formats into the graphs they name
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AddFileBenchmark extends EmbeddedServerBenchmark {
+
+    // RDFFormat names
+    @Param({"Turtle", "N-Triples", "RDF/XML", "N-Quads", "TriG"})
+    public String format;
+
+    @Param({"1000", "10000"})
+    public int statements;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private RDFFormat rdfFormat;
+    private File file;
+    private Resource context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        open(latencyMillis, null);
+        rdfFormat = RDFFormat.valueOf(format);
+        context = f.createURI(NS, "graph");
+        file = File.createTempFile("bench", "." + rdfFormat.getDefaultFileExtension());
+        OutputStream out = new FileOutputStream(file);
+        try {
+            RDFWriter writer = Rio.createWriter(rdfFormat, out);
+            writer.startRDF();
+            writer.handleNamespace("b", NS);
+            for (int i = 0; i < statements; i++) {
+                Statement st = statement(i);
+                // quads spread over ten graphs
+                writer.handleStatement(rdfFormat.supportsContexts()
+                        ? f.createStatement(st.getSubject(), st.getPredicate(), st.getObject(), f.createURI(NS, "graph" + i % 10))
+                        : st);
+            }
+            writer.endRDF();
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() throws Exception {
+        server.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void addFile() throws Exception {
+        if (rdfFormat.supportsContexts()) {
+            conn.add(file, NS, rdfFormat);
+        } else {
+            conn.add(file, NS, rdfFormat, context);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import com.marklogic.semantics.sesame.client.ConnectionSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * single statement autocommit adds, which go through the write cache, against its size
+ * and flush interval
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AddStatementBenchmark extends EmbeddedServerBenchmark {
+
+    @Param({"100", "750", "5000"})
+    public long cacheSize;
+
+    @Param({"50", "1000"})
+    public long flushMillis;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ConnectionSettings settings = new ConnectionSettings();
+        settings.setWriteCacheSize(cacheSize);
+        settings.setWriteCacheMillis(flushMillis);
+        open(latencyMillis, settings);
+    }
+
+    @TearDown(Level.Iteration)
+    public void flush() throws Exception {
+        conn.sync();
+        server.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        close();
+    }
+
+    @Benchmark
+    public void add() throws Exception {
+        long i = next++;
+        conn.add(f.createURI(NS, "s" + i), predicate, f.createLiteral(i));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openrdf.model.Statement;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * add(Iterable) of a batch of statements, synced so every operation reaches the server
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BulkAddBenchmark extends EmbeddedServerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int statements;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private List<Statement> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        open(latencyMillis, null);
+        batch = statements(0, statements);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() throws Exception {
+        server.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        close();
+    }
+
+    @Benchmark
+    public void addIterable() throws Exception {
+        conn.add(batch);
+        conn.sync();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import com.marklogic.semantics.sesame.query.MarkLogicGraphQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.model.Statement;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CONSTRUCT and export of the whole store
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConstructBenchmark extends EmbeddedServerBenchmark {
+
+    static final String QUERY = "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }";
+
+    // three statements each
+    @Param({"100", "10000"})
+    public int subjects;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private MarkLogicGraphQuery query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        open(latencyMillis, null);
+        preload(mixedStatements(0, subjects));
+        query = conn.prepareGraphQuery(QUERY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        close();
+    }
+
+    @Benchmark
+    public void construct(Blackhole bh) throws Exception {
+        GraphQueryResult result = query.evaluate();
+        try {
+            while (result.hasNext()) {
+                bh.consume(result.next());
+            }
+        } finally {
+            result.close();
+        }
+    }
+
+    @Benchmark
+    public void export(final Blackhole bh) throws Exception {
+        conn.export(new RDFHandlerBase() {
+            @Override
+            public void handleStatement(Statement st) throws RDFHandlerException {
+                bh.consume(st);
+            }
+        });
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import com.marklogic.semantics.sesame.MarkLogicRepository;
+import com.marklogic.semantics.sesame.MarkLogicRepositoryConnection;
+import com.marklogic.semantics.sesame.client.ConnectionSettings;
+import com.marklogic.semantics.sesame.server.EmbeddedMarkLogicServer;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * base of benchmarks run against an EmbeddedMarkLogicServer, so they need no MarkLogic
+ * server; subclasses are the JMH states, opening the server in their @Setup
+ *
+ * @author James Fuller
+ */
+public abstract class EmbeddedServerBenchmark {
+
+    protected static final String NS = "http://example.org/bench/";
+
+    protected EmbeddedMarkLogicServer server;
+    protected MarkLogicRepository repository;
+    protected MarkLogicRepositoryConnection conn;
+    protected ValueFactory f;
+    protected URI predicate;
+
+    /**
+     * starts the server and connects to it
+     *
+     * @param latencyMillis - added by the server before every response
+     * @param settings - null for defaults
+     * @throws IOException
+     * @throws RepositoryException
+     */
+    protected void open(long latencyMillis, ConnectionSettings settings) throws IOException, RepositoryException {
+        server = new EmbeddedMarkLogicServer();
+        server.setLatencyMillis(latencyMillis);
+        repository = server.newRepository();
+        if (settings != null) {
+            repository.setConnectionSettings(settings);
+        }
+        repository.initialize();
+        conn = repository.getConnection();
+        f = conn.getValueFactory();
+        predicate = f.createURI(NS, "value");
+    }
+
+    /**
+     * closes the connection and stops the server
+     *
+     * @throws RepositoryException
+     */
+    protected void close() throws RepositoryException {
+        try {
+            conn.close();
+            repository.shutDown();
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * @param i
+     * @return Statement - distinct for every i
+     */
+    protected Statement statement(long i) {
+        return f.createStatement(f.createURI(NS, "s" + i), predicate, f.createLiteral("value " + i));
+    }
+
+    /**
+     * @param from
+     * @param count
+     * @return List - count distinct statements
+     */
+    protected List<Statement> statements(long from, int count) {
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(statement(from + i));
+        }
+        return statements;
+    }
+
+    /**
+     * @param from
+     * @param count
+     * @return List - count distinct subjects, each with a language tagged literal, a typed
+     * literal and a link to the next subject, the term kinds found in result payloads
+     */
+    protected List<Statement> mixedStatements(long from, int count) {
+        URI label = f.createURI(NS, "label");
+        URI next = f.createURI(NS, "next");
+        List<Statement> statements = new ArrayList<>(count * 3);
+        for (long i = from; i < from + count; i++) {
+            URI subject = f.createURI(NS, "s" + i);
+            statements.add(f.createStatement(subject, label, f.createLiteral("label " + i, "en")));
+            statements.add(f.createStatement(subject, predicate, f.createLiteral(i)));
+            statements.add(f.createStatement(subject, next, f.createURI(NS, "s" + (i + 1))));
+        }
+        return statements;
+    }
+
+    /**
+     * loads statements straight into the server default graph, without going through the library
+     *
+     * @param statements
+     * @throws RepositoryException
+     */
+    protected void preload(Iterable<Statement> statements) throws RepositoryException {
+        preload(statements, f.createURI(EmbeddedMarkLogicServer.DEFAULT_GRAPH_URI));
+    }
+
+    /**
+     * loads statements straight into a graph of the server, without going through the library
+     *
+     * @param statements
+     * @param context
+     * @throws RepositoryException
+     */
+    protected void preload(Iterable<Statement> statements, Resource context) throws RepositoryException {
+        RepositoryConnection direct = server.getStore().getConnection();
+        try {
+            direct.add(statements, context);
+        } finally {
+            direct.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.repository.RepositoryResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getStatements, hasStatement and size, on the default graph (triple mode) or on a named
+ * graph (quad mode)
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GetStatementsBenchmark extends EmbeddedServerBenchmark {
+
+    @Param({"triple", "quad"})
+    public String mode;
+
+    @Param({"100", "10000"})
+    public int statements;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private Resource[] contexts;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        open(latencyMillis, null);
+        if ("quad".equals(mode)) {
+            Resource graph = f.createURI(NS, "graph");
+            contexts = new Resource[]{graph};
+            preload(statements(0, statements), graph);
+        } else {
+            contexts = new Resource[0];
+            preload(statements(0, statements));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        close();
+    }
+
+    @Benchmark
+    public void getStatements(Blackhole bh) throws Exception {
+        RepositoryResult<Statement> result = conn.getStatements(null, predicate, null, false, contexts);
+        try {
+            while (result.hasNext()) {
+                bh.consume(result.next());
+            }
+        } finally {
+            result.close();
+        }
+    }
+
+    @Benchmark
+    public boolean hasStatement() throws Exception {
+        Statement st = statement(next++ % statements);
+        return conn.hasStatement(st.getSubject(), st.getPredicate(), st.getObject(), false, contexts);
+    }
+
+    @Benchmark
+    public long size() throws Exception {
+        return conn.size(contexts);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import com.marklogic.semantics.sesame.client.InterningValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.ParserConfig;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parsing of an N-Triples CONSTRUCT response as the client parses it, without network;
+ * the response is recorded once per trial from the embedded server
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GraphParseBenchmark extends EmbeddedServerBenchmark {
+
+    // three statements each
+    @Param({"100", "10000"})
+    public int subjects;
+
+    // plain or interning, the value factory creating parsed values
+    @Param({"plain", "interning"})
+    public String valueFactory;
+
+    private byte[] payload;
+    private ValueFactory vf;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        open(0, null);
+        try {
+            preload(mixedStatements(0, subjects));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            conn.prepareGraphQuery(ConstructBenchmark.QUERY).evaluate(out, RDFFormat.NTRIPLES);
+            payload = out.toByteArray();
+        } finally {
+            close();
+        }
+        vf = "interning".equals(valueFactory) ? new InterningValueFactory() : new ValueFactoryImpl();
+    }
+
+    @Benchmark
+    public void parse(final Blackhole bh) throws Exception {
+        RDFParser parser = Rio.createParser(RDFFormat.NTRIPLES, vf);
+        parser.setParserConfig(new ParserConfig());
+        parser.setPreserveBNodeIDs(true);
+        parser.setRDFHandler(new RDFHandlerBase() {
+            @Override
+            public void handleStatement(Statement st) throws RDFHandlerException {
+                bh.consume(st);
+            }
+        });
+        parser.parse(new ByteArrayInputStream(payload), "");
+    }
+}
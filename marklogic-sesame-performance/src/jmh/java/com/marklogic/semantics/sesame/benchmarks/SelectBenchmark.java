@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import com.marklogic.semantics.sesame.query.MarkLogicTupleQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.query.TupleQueryResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SELECT reading every result, in one request or in pages of pageLength
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SelectBenchmark extends EmbeddedServerBenchmark {
+
+    static final String QUERY = "SELECT ?s ?label ?value ?next WHERE { ?s <" + NS + "label> ?label ; <" + NS + "value> ?value ; <" + NS + "next> ?next }";
+
+    @Param({"100", "10000"})
+    public int results;
+
+    // 0 reads all results in one request
+    @Param({"0", "100", "1000"})
+    public long pageLength;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private MarkLogicTupleQuery query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        open(latencyMillis, null);
+        preload(mixedStatements(0, results));
+        query = conn.prepareTupleQuery(QUERY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        close();
+    }
+
+    @Benchmark
+    public long select(Blackhole bh) throws Exception {
+        if (pageLength <= 0) {
+            return read(query.evaluate(), bh);
+        }
+        long total = 0;
+        long start = 1;
+        long rows;
+        do {
+            rows = read(query.evaluate(start, pageLength), bh);
+            total += rows;
+            start += pageLength;
+        } while (rows == pageLength);
+        return total;
+    }
+
+    ////
+    // private
+    ////
+
+    private static long read(TupleQueryResult result, Blackhole bh) throws Exception {
+        long rows = 0;
+        try {
+            while (result.hasNext()) {
+                bh.consume(result.next());
+                rows++;
+            }
+        } finally {
+            result.close();
+        }
+        return rows;
+    }
+}
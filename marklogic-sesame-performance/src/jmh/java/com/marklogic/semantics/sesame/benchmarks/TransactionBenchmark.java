@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openrdf.model.Statement;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writes of a group of statements in a transaction (begin, adds, commit) versus
+ * autocommit adds synced once
+ *
+ * @author James Fuller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransactionBenchmark extends EmbeddedServerBenchmark {
+
+    @Param({"autocommit", "transaction"})
+    public String mode;
+
+    @Param({"1", "10", "100"})
+    public int statements;
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    private boolean transactional;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        open(latencyMillis, null);
+        transactional = "transaction".equals(mode);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() throws Exception {
+        server.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        close();
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        if (transactional) {
+            conn.begin();
+        }
+        for (int i = 0; i < statements; i++) {
+            Statement st = statement(next++);
+            conn.add(st.getSubject(), st.getPredicate(), st.getObject());
+        }
+        if (transactional) {
+            conn.commit();
+        } else {
+            conn.sync();
+        }
+    }
+}
@@ -22,8 +22,19 @@ package com.marklogic.semantics.sesame;
 
 import com.marklogic.client.DatabaseClient;
 import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.semantics.sesame.client.ConnectionSettings;
+import com.marklogic.semantics.sesame.client.Endpoint;
+import com.marklogic.semantics.sesame.client.EndpointPool;
+import com.marklogic.semantics.sesame.client.GroupCommitter;
 import com.marklogic.semantics.sesame.client.MarkLogicClient;
 import com.marklogic.semantics.sesame.client.MarkLogicClientDependent;
+import com.marklogic.semantics.sesame.client.MarkLogicClientPool;
+import com.marklogic.semantics.sesame.client.QueryResultCache;
+import com.marklogic.semantics.sesame.client.RequestInterceptor;
+import com.marklogic.semantics.sesame.client.SkolemMapper;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.metrics.PhaseTimingListener;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.repository.Repository;
@@ -34,6 +45,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  *
@@ -64,6 +78,44 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
 
     private DatabaseClient databaseClient;
 
+    // set when requests are load balanced across several hosts, queries use
+    // readEndpointPool while updates, merges and clears use writeEndpointPool
+    private EndpointPool readEndpointPool;
+    private EndpointPool writeEndpointPool;
+
+    private QueryResultCache queryResultCache;
+
+    private SkolemMapper skolemMapper = new SkolemMapper();
+
+    // when set connections get sessions of sharedMarkLogicClient instead of clients of their own
+    private boolean sharedClient;
+    private MarkLogicClient sharedMarkLogicClient;
+
+    // autocommit adds of all connections are batched when groupCommitMaxStatements is above 0
+    private int groupCommitMaxStatements;
+    private long groupCommitMaxDelayMillis = GroupCommitter.DEFAULT_MAX_DELAY_MILLIS;
+    private GroupCommitter groupCommitter;
+    private MarkLogicClient groupCommitWriter;
+
+    private ConnectionSettings connectionSettings;
+
+    // recorded by every client of this repository
+    private final ClientMetrics metrics = new ClientMetrics();
+
+    private boolean phaseTiming;
+    private PhaseTimingListener phaseTimingListener;
+
+    private SlowOperationLog slowOperationLog;
+
+    private final List<RequestInterceptor> requestInterceptors = new CopyOnWriteArrayList<>();
+
+    private final MarkLogicClientPool clientPool = new MarkLogicClientPool(new MarkLogicClientPool.Factory() {
+        @Override
+        public MarkLogicClient create() {
+            return newMarkLogicClient();
+        }
+    });
+
     /**
      * constructor inited with connection URL
      *
@@ -124,7 +176,50 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
         this.auth = databaseClient.getAuthentication().name();
         this.client = new MarkLogicClient(databaseClient);
     }
-    
+
+    /**
+     * constructor inited with several MarkLogic hosts (e-nodes) of the same cluster,
+     * requests are load balanced across hosts
+     *
+     * @param strategy
+     * @param hosts - "host" or "host:port"
+     * @param port - used for hosts without a port
+     * @param user
+     * @param password
+     * @param auth
+     */
+    public MarkLogicRepository(EndpointPool.Strategy strategy, List<String> hosts, int port, String user, String password, String auth) {
+        this(new EndpointPool(strategy, hosts, port, user, password, auth));
+    }
+
+    /**
+     * constructor inited with EndpointPool, requests are load balanced across its hosts
+     *
+     * @param endpointPool
+     */
+    public MarkLogicRepository(EndpointPool endpointPool) {
+        this(endpointPool, endpointPool);
+    }
+
+    /**
+     * constructor inited with separate EndpointPools for reads and writes, so bulk
+     * loads do not compete with queries for hosts and HTTP connections
+     *
+     * @param readEndpointPool - tuple, graph and boolean queries
+     * @param writeEndpointPool - updates, graph merges and clears, transactions
+     */
+    public MarkLogicRepository(EndpointPool readEndpointPool, EndpointPool writeEndpointPool) {
+        super();
+        this.f = new ValueFactoryImpl();
+        this.readEndpointPool = readEndpointPool;
+        this.writeEndpointPool = writeEndpointPool != null ? writeEndpointPool : readEndpointPool;
+        this.quadMode = true;
+        Endpoint first = readEndpointPool.getEndpoints().get(0);
+        this.host = first.getHost();
+        this.port = first.getPort();
+        this.client = new MarkLogicClient(this.readEndpointPool, this.writeEndpointPool);
+    }
+
     /**
      * gets the Valuefactory used for creating URIs, blank nodes, literals and statements.
      *
@@ -152,8 +247,28 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
     @Override
     @Deprecated
     protected void initializeInternal() throws RepositoryException {
-        this.databaseClient = DatabaseClientFactory.newClient(host,port,user,password,DatabaseClientFactory.Authentication.valueOf(auth));
-        this.client = new MarkLogicClient(databaseClient);
+        clientPool.clear();
+        if (this.client != null) {
+            // the client built by the constructor is replaced, stop its write cache timer
+            this.client.stopTimer();
+        }
+        if (readEndpointPool != null) {
+            this.client = new MarkLogicClient(readEndpointPool, writeEndpointPool);
+        } else {
+            this.databaseClient = DatabaseClientFactory.newClient(host,port,user,password,DatabaseClientFactory.Authentication.valueOf(auth));
+            this.client = new MarkLogicClient(databaseClient);
+        }
+        if (connectionSettings != null) {
+            this.client.configure(connectionSettings);
+        }
+        this.client.setSkolemMapper(skolemMapper);
+        this.client.setMetrics(metrics);
+        this.client.setPhaseTiming(phaseTiming);
+        this.client.setPhaseTimingListener(phaseTimingListener);
+        this.client.setSlowOperationLog(slowOperationLog);
+        for (RequestInterceptor interceptor : requestInterceptors) {
+            this.client.addRequestInterceptor(interceptor);
+        }
     }
 
     /**
@@ -165,7 +280,18 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
     @Override
     @Deprecated
     protected void shutDownInternal() throws RepositoryException {
+        clientPool.clear();
+        client.stopTimer();
         client.release();
+        metrics.stopReporters();
+        metrics.unregisterMBean();
+        synchronized (this) {
+            closeGroupCommitter();
+            if (sharedMarkLogicClient != null) {
+                sharedMarkLogicClient.close();
+                sharedMarkLogicClient = null;
+            }
+        }
     }
 
     /**
@@ -220,7 +346,55 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
         if (!isInitialized()) {
             throw new RepositoryException("MarkLogicRepository not initialized.");
         }
-        return new MarkLogicRepositoryConnection(this, getMarkLogicClient(), quadMode);
+        MarkLogicClient pooledClient = clientPool.borrow();
+        pooledClient.setQueryResultCache(queryResultCache);
+        return new MarkLogicRepositoryConnection(this, pooledClient, quadMode);
+    }
+
+    /**
+     * returns the client of a closed connection to the pool
+     *
+     * @param client
+     */
+    void releaseMarkLogicClient(MarkLogicClient client) {
+        clientPool.release(client);
+    }
+
+    /**
+     * returns the pool of clients used by connections, exposing pool size and metrics
+     *
+     * @return MarkLogicClientPool
+     */
+    public MarkLogicClientPool getClientPool() {
+        return clientPool;
+    }
+
+    /**
+     * returns metrics recorded by every client of this repository, register them with
+     * JMX by ClientMetrics.registerMBean or report them by ClientMetrics.startReporter
+     *
+     * @return ClientMetrics
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * returns the hosts queries are load balanced across, null if the repository uses a single host
+     *
+     * @return EndpointPool
+     */
+    public EndpointPool getReadEndpointPool() {
+        return readEndpointPool;
+    }
+
+    /**
+     * returns the hosts writes are load balanced across, null if the repository uses a single host
+     *
+     * @return EndpointPool
+     */
+    public EndpointPool getWriteEndpointPool() {
+        return writeEndpointPool;
     }
 
     /**
@@ -230,12 +404,60 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
      */
     @Override
     public synchronized MarkLogicClient getMarkLogicClient() {
-        if(null != databaseClient){
-            this.client = new MarkLogicClient(databaseClient);
+        this.client = newMarkLogicClient();
+        return this.client;
+    }
+
+    /**
+     * creates a new MarkLogicClient
+     *
+     * @return MarkLogicClient
+     */
+    private synchronized MarkLogicClient newMarkLogicClient() {
+        MarkLogicClient newClient;
+        if (sharedClient) {
+            if (sharedMarkLogicClient == null) {
+                sharedMarkLogicClient = createMarkLogicClient();
+                // only carries transport and executor for its sessions
+                sharedMarkLogicClient.stopTimer();
+            }
+            newClient = new MarkLogicClient(sharedMarkLogicClient);
+        } else {
+            newClient = createMarkLogicClient();
+        }
+        newClient.setQueryResultCache(queryResultCache);
+        newClient.setSkolemMapper(skolemMapper);
+        newClient.setGroupCommitter(getGroupCommitter());
+        return newClient;
+    }
+
+    /**
+     * creates a MarkLogicClient with transport and executor of its own
+     *
+     * @return MarkLogicClient
+     */
+    private MarkLogicClient createMarkLogicClient() {
+        MarkLogicClient newClient;
+        if(null != readEndpointPool){
+            newClient = new MarkLogicClient(readEndpointPool, writeEndpointPool);
+        }else if(null != databaseClient){
+            newClient = new MarkLogicClient(databaseClient);
         }else{
-            this.client = new MarkLogicClient(host, port, user, password, auth);
+            newClient = new MarkLogicClient(host, port, user, password, auth);
         }
-        return this.client;
+        if (connectionSettings != null) {
+            newClient.configure(connectionSettings);
+        }
+        newClient.setQueryResultCache(queryResultCache);
+        newClient.setSkolemMapper(skolemMapper);
+        newClient.setMetrics(metrics);
+        newClient.setPhaseTiming(phaseTiming);
+        newClient.setPhaseTimingListener(phaseTimingListener);
+        newClient.setSlowOperationLog(slowOperationLog);
+        for (RequestInterceptor interceptor : requestInterceptors) {
+            newClient.addRequestInterceptor(interceptor);
+        }
+        return newClient;
     }
 
     /**
@@ -248,6 +470,272 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
         this.client = client;
     }
 
+    /**
+     * returns the query result cache shared by connections, null if disabled
+     *
+     * @return QueryResultCache
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * sets the query result cache shared by connections subsequently obtained
+     * from this repository, null disables result caching
+     *
+     * @param queryResultCache
+     */
+    public synchronized void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+        if (this.client != null) {
+            this.client.setQueryResultCache(queryResultCache);
+        }
+        if (sharedMarkLogicClient != null) {
+            sharedMarkLogicClient.setQueryResultCache(queryResultCache);
+        }
+        if (groupCommitWriter != null) {
+            groupCommitWriter.setQueryResultCache(queryResultCache);
+        }
+    }
+
+    /**
+     * returns the mapping between blank nodes and skolem IRIs shared by connections
+     *
+     * @return SkolemMapper
+     */
+    public SkolemMapper getSkolemMapper() {
+        return skolemMapper;
+    }
+
+    /**
+     * sets the mapping between blank nodes and skolem IRIs shared by connections,
+     * idle pooled clients are discarded so connections subsequently obtained use it
+     *
+     * @param skolemMapper
+     */
+    public synchronized void setSkolemMapper(SkolemMapper skolemMapper) {
+        this.skolemMapper = skolemMapper != null ? skolemMapper : new SkolemMapper();
+        clientPool.clear();
+        if (this.client != null) {
+            this.client.setSkolemMapper(this.skolemMapper);
+        }
+    }
+
+    /**
+     * true if queries and updates of connections record PhaseTimings
+     *
+     * @return boolean
+     */
+    public boolean isPhaseTiming() {
+        return phaseTiming || phaseTimingListener != null;
+    }
+
+    /**
+     * enables phase timings on results of connections subsequently obtained, available
+     * by casting a TupleQueryResult or GraphQueryResult to PhaseTimed
+     *
+     * @param phaseTiming
+     */
+    public synchronized void setPhaseTiming(boolean phaseTiming) {
+        this.phaseTiming = phaseTiming;
+        clientPool.clear();
+        if (this.client != null) {
+            this.client.setPhaseTiming(phaseTiming);
+        }
+        if (sharedMarkLogicClient != null) {
+            sharedMarkLogicClient.setPhaseTiming(phaseTiming);
+        }
+    }
+
+    /**
+     * returns the listener notified of phase timings, null if none
+     *
+     * @return PhaseTimingListener
+     */
+    public PhaseTimingListener getPhaseTimingListener() {
+        return phaseTimingListener;
+    }
+
+    /**
+     * sets listener notified of the phase timings of every query and update of connections
+     * subsequently obtained, enables phase timing
+     *
+     * @param phaseTimingListener - null to remove
+     */
+    public synchronized void setPhaseTimingListener(PhaseTimingListener phaseTimingListener) {
+        this.phaseTimingListener = phaseTimingListener;
+        clientPool.clear();
+        if (this.client != null) {
+            this.client.setPhaseTimingListener(phaseTimingListener);
+        }
+        if (sharedMarkLogicClient != null) {
+            sharedMarkLogicClient.setPhaseTimingListener(phaseTimingListener);
+        }
+    }
+
+    /**
+     * returns the log of slow operations of connections, null if disabled
+     *
+     * @return SlowOperationLog
+     */
+    public SlowOperationLog getSlowOperationLog() {
+        return slowOperationLog;
+    }
+
+    /**
+     * sets the log of queries, updates, adds, removes and flushes slower than its threshold for
+     * connections subsequently obtained, null disables it
+     *
+     * @param slowOperationLog
+     */
+    public synchronized void setSlowOperationLog(SlowOperationLog slowOperationLog) {
+        this.slowOperationLog = slowOperationLog;
+        clientPool.clear();
+        if (this.client != null) {
+            this.client.setSlowOperationLog(slowOperationLog);
+        }
+        if (sharedMarkLogicClient != null) {
+            sharedMarkLogicClient.setSlowOperationLog(slowOperationLog);
+        }
+        if (groupCommitWriter != null) {
+            groupCommitWriter.setSlowOperationLog(slowOperationLog);
+        }
+    }
+
+    /**
+     * returns interceptors called around every request of connections, in the order added
+     *
+     * @return List
+     */
+    public List<RequestInterceptor> getRequestInterceptors() {
+        return Collections.unmodifiableList(requestInterceptors);
+    }
+
+    /**
+     * adds interceptor called around every request of connections subsequently obtained
+     *
+     * @param interceptor
+     */
+    public synchronized void addRequestInterceptor(RequestInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("interceptor must not be null");
+        }
+        requestInterceptors.add(interceptor);
+        clientPool.clear();
+        for (MarkLogicClient existing : new MarkLogicClient[]{this.client, sharedMarkLogicClient, groupCommitWriter}) {
+            if (existing != null) {
+                existing.addRequestInterceptor(interceptor);
+            }
+        }
+    }
+
+    /**
+     * @param interceptor
+     * @return boolean - true if it was registered
+     */
+    public synchronized boolean removeRequestInterceptor(RequestInterceptor interceptor) {
+        if (!requestInterceptors.remove(interceptor)) {
+            return false;
+        }
+        clientPool.clear();
+        for (MarkLogicClient existing : new MarkLogicClient[]{this.client, sharedMarkLogicClient, groupCommitWriter}) {
+            if (existing != null) {
+                existing.removeRequestInterceptor(interceptor);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns HTTP transport, write cache and executor settings, null if defaults are used
+     *
+     * @return ConnectionSettings
+     */
+    public ConnectionSettings getConnectionSettings() {
+        return connectionSettings;
+    }
+
+    /**
+     * sets HTTP transport, write cache and executor settings, idle pooled clients
+     * are discarded so connections subsequently obtained use the new settings.
+     *
+     * The group committer is replaced by one writing with the new settings, which the
+     * repository's own client is attached to; connections already open keep the old,
+     * closed committer and write autocommit adds through their own write cache.
+     *
+     * @param connectionSettings
+     */
+    public synchronized void setConnectionSettings(ConnectionSettings connectionSettings) {
+        this.connectionSettings = connectionSettings;
+        clientPool.clear();
+        GroupCommitter closed = groupCommitter;
+        closeGroupCommitter();
+        if (this.sharedMarkLogicClient != null) {
+            this.sharedMarkLogicClient.configure(connectionSettings);
+        }
+        if (this.client != null) {
+            this.client.configure(connectionSettings);
+            if (closed != null && this.client.getGroupCommitter() == closed) {
+                this.client.setGroupCommitter(getGroupCommitter());
+            }
+        }
+    }
+
+    /**
+     * returns if connections share one client
+     *
+     * @return boolean
+     */
+    public boolean isSharedClient() {
+        return sharedClient;
+    }
+
+    /**
+     * sets if connections share one client: each connection gets a session with its own
+     * transaction and write cache, while HTTP connections, executor and cache flushing are
+     * shared, so many connections can run transactions concurrently without a client each
+     *
+     * @param sharedClient
+     */
+    public synchronized void setSharedClient(boolean sharedClient) {
+        this.sharedClient = sharedClient;
+        clientPool.clear();
+    }
+
+    /**
+     * returns the group committer batching autocommit adds of all connections, null if
+     * group commit is disabled
+     *
+     * @return GroupCommitter
+     */
+    public synchronized GroupCommitter getGroupCommitter() {
+        if (groupCommitter == null && groupCommitMaxStatements > 0) {
+            groupCommitWriter = createMarkLogicClient();
+            groupCommitWriter.stopTimer();
+            groupCommitWriter.setQueryResultCache(queryResultCache);
+            groupCommitWriter.setSkolemMapper(skolemMapper);
+            groupCommitter = new GroupCommitter(groupCommitWriter, groupCommitMaxStatements, groupCommitMaxDelayMillis);
+        }
+        return groupCommitter;
+    }
+
+    /**
+     * enables group commit: autocommit adds of all connections are gathered into shared
+     * batches, each written by one update once it holds maxStatements statements or
+     * maxDelayMillis after its first statement. A connection's sync or commit returns once
+     * the batches holding its adds are written. Idle pooled clients are discarded so
+     * connections subsequently obtained use group commit.
+     *
+     * @param maxStatements - 0 disables group commit
+     * @param maxDelayMillis
+     */
+    public synchronized void setGroupCommit(int maxStatements, long maxDelayMillis) {
+        closeGroupCommitter();
+        this.groupCommitMaxStatements = maxStatements;
+        this.groupCommitMaxDelayMillis = maxDelayMillis;
+        clientPool.clear();
+    }
+
     /**
      * returns if repository is in quadmode or not
      *
@@ -265,4 +753,17 @@ public class MarkLogicRepository extends RepositoryBase implements Repository,Ma
     public void setQuadMode(boolean quadMode) {
         this.quadMode = quadMode;
     }
-}
\ No newline at end of file
+
+    /**
+     * writes pending batches and stops the group committer, connections still holding it
+     * write autocommit adds through their own write cache
+     */
+    private void closeGroupCommitter() {
+        if (groupCommitter != null) {
+            groupCommitter.close();
+            groupCommitWriter.close();
+            groupCommitter = null;
+            groupCommitWriter = null;
+        }
+    }
+}
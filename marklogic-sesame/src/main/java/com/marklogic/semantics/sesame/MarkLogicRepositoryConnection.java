@@ -28,7 +28,6 @@ import info.aduna.iteration.*;
 import org.openrdf.IsolationLevel;
 import org.openrdf.IsolationLevels;
 import org.openrdf.model.*;
-import org.openrdf.model.impl.StatementImpl;
 import org.openrdf.query.*;
 import org.openrdf.query.impl.DatasetImpl;
 import org.openrdf.query.parser.QueryParserUtil;
@@ -49,9 +48,12 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.openrdf.query.QueryLanguage.SPARQL;
 
@@ -78,11 +80,12 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
 
     private final boolean quadMode;
 
-    private MarkLogicClient client;
+    private final MarkLogicClient client;
 
-    private GraphPermissions defaultGraphPerms;
-    private SPARQLRuleset[] defaultRulesets;
-    private QueryDefinition defaultQueryDef;
+    // defaults are read by every prepared query, a connection may be shared between threads
+    private volatile GraphPermissions defaultGraphPerms;
+    private volatile SPARQLRuleset[] defaultRulesets;
+    private volatile QueryDefinition defaultQueryDef;
 
     /**
      * constructor
@@ -122,20 +125,27 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
     @Override
     /**
      * Releases the connection to the database.  Ensures that open transactions
-     * are complete. Stops write cache Timer.
+     * are complete. The client is reset and returned to the repository client
+     * pool, so the connection must not be used after close.
      */
     public void close()
         throws RepositoryException
     {
         if(this.isOpen()){
-            sync();
-            if (this.isActive()) {
-                logger.debug("rollback open transaction on closing connection.");
-                client.rollbackTransaction();
+            try {
+                sync();
+                if (this.isActive()) {
+                    logger.debug("rollback open transaction on closing connection.");
+                    client.rollbackTransaction();
+                }
+            } finally {
+                try {
+                    super.close();
+                } finally {
+                    // the pool discards a client it cannot reset
+                    ((MarkLogicRepository) getRepository()).releaseMarkLogicClient(client);
+                }
             }
-            client.stopTimer();
-            client.close();
-            super.close();
         }
     }
     
@@ -450,6 +460,57 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
         throw new UnsupportedQueryLanguageException("Unsupported query language " + queryLanguage.getName());
     }
 
+    /**
+     * overload for prepareUpdateBatch
+     *
+     * @return MarkLogicUpdateBatch
+     * @throws RepositoryException
+     */
+    @Override
+    public MarkLogicUpdateBatch prepareUpdateBatch() throws RepositoryException {
+        return prepareUpdateBatch(null);
+    }
+
+    /**
+     * prepares an empty batch of SPARQL updates, sent to the server in a single request
+     * with current default graph permissions and rulesets
+     *
+     * @param baseURI
+     * @return MarkLogicUpdateBatch
+     * @throws RepositoryException
+     */
+    @Override
+    public MarkLogicUpdateBatch prepareUpdateBatch(String baseURI) throws RepositoryException {
+        return new MarkLogicUpdateBatch(this.client, baseURI, defaultGraphPerms, defaultRulesets);
+    }
+
+    /**
+     * overload for prepareQueryTemplate
+     *
+     * @param queryString
+     * @return MarkLogicQueryTemplate
+     * @throws RepositoryException
+     */
+    @Override
+    public MarkLogicQueryTemplate prepareQueryTemplate(String queryString) throws RepositoryException {
+        return prepareQueryTemplate(queryString, null);
+    }
+
+    /**
+     * prepares an immutable query template, current default graph permissions,
+     * constraining query and rulesets are frozen into the template which may then
+     * be evaluated concurrently with per call bindings
+     *
+     * @param queryString
+     * @param baseURI
+     * @return MarkLogicQueryTemplate
+     * @throws RepositoryException
+     */
+    @Override
+    public MarkLogicQueryTemplate prepareQueryTemplate(String queryString, String baseURI) throws RepositoryException {
+        return new MarkLogicQueryTemplate(this.client, queryString, baseURI, defaultGraphPerms, defaultQueryDef, defaultRulesets);
+    }
+
     /**
      * returns list of graph names as Resource
      *
@@ -511,7 +572,7 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
                         });
             } else if (subj != null && pred != null && obj != null) {
                 if (hasStatement(subj, pred, obj, includeInferred)) {
-                    Statement st = new StatementImpl(subj, pred, obj);
+                    Statement st = getValueFactory().createStatement(subj, pred, obj);
                     CloseableIteration<Statement, RepositoryException> cursor;
                     cursor = new SingletonIteration<Statement, RepositoryException>(st);
                     return new RepositoryResult<Statement>(cursor);
@@ -586,7 +647,7 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
                         });
             } else if (subj != null && pred != null && obj != null) {
                 if (hasStatement(subj, pred, obj, includeInferred, contexts)) {
-                    Statement st = new StatementImpl(subj, pred, obj);
+                    Statement st = getValueFactory().createStatement(subj, pred, obj);
                     CloseableIteration<Statement, RepositoryException> cursor;
                     cursor = new SingletonIteration<Statement, RepositoryException>(st);
                     return new RepositoryResult<Statement>(cursor);
@@ -672,7 +733,7 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
             queryString = sb.toString();
         }
         try {
-            logger.debug(queryString);
+            logger.trace(queryString);
             MarkLogicBooleanQuery query = prepareBooleanQuery(queryString); // baseuri ?
 
             setBindings(query, subject, predicate, object, contexts);
@@ -698,7 +759,7 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
      */
     @Override
     public void export(RDFHandler handler, Resource... contexts) throws RepositoryException, RDFHandlerException {
-        exportStatements(null, null, null, true, handler);
+        exportStatements(null, null, null, true, handler, contexts);
     }
 
     /**
@@ -718,50 +779,7 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
     @Override
     public void exportStatements(Resource subject, URI predicate, Value object, boolean includeInferred, RDFHandler handler, Resource... contexts) throws RepositoryException, RDFHandlerException {
         try {
-            StringBuilder ob = new StringBuilder();
-            StringBuilder sb = new StringBuilder();
-
-            if(notNull(object) && object instanceof Literal) {
-                if (object instanceof Literal) {
-                    Literal lit = (Literal) object;
-                    ob.append("\"");
-                    ob.append(SPARQLUtil.encodeString(lit.getLabel()));
-                    ob.append("\"");
-                    ob.append("^^<" + lit.getDatatype().stringValue() + ">");
-                    ob.append(" ");
-                } else {
-                    ob.append("<" + object.stringValue() + "> ");
-                }
-                sb.append("CONSTRUCT {?s ?p "+ob.toString()+"} WHERE {");
-                if(notNull(contexts) && contexts.length>0) {
-                    for (int i = 0; i < contexts.length; i++) {
-                        if(notNull(contexts[i])) {
-                            sb.append("GRAPH <" + contexts[i].stringValue() + "> {?s ?p " + ob.toString() + " .} ");
-                        }else{
-                            sb.append("GRAPH <"+DEFAULT_GRAPH_URI+"> {?s ?p "+ob.toString()+" .}");
-                        }
-                    }
-                    sb.append("}");
-                }else{
-                    sb.append("?s ?p "+ob.toString()+" }");
-                }
-            }else{
-                sb.append("CONSTRUCT {?s ?p ?o} WHERE {");
-                if(notNull(contexts) && contexts.length>0) {
-                    for (int i = 0; i < contexts.length; i++) {
-                        if(contexts[i] != null) {
-                            sb.append("GRAPH <" + contexts[i].stringValue() + "> {?s ?p ?o .} ");
-                        }else{
-                            sb.append("GRAPH <"+DEFAULT_GRAPH_URI+"> {?s ?p ?o .}");
-                        }                    }
-                    sb.append("}");
-                }else{
-                    sb.append("?s ?p ?o }");
-                }
-            }
-            logger.debug(sb.toString());
-            MarkLogicGraphQuery query = prepareGraphQuery(sb.toString());
-            setBindings(query, subject, predicate, object, contexts);
+            MarkLogicGraphQuery query = prepareExportQuery(subject, predicate, object, contexts);
             query.evaluate(handler);
         }
         catch (MalformedQueryException e) {
@@ -772,6 +790,73 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
         }
     }
 
+    /**
+     * exports statements unparsed to out, in the requested format
+     *
+     * @param out
+     * @param dataFormat
+     * @param contexts
+     * @return number of bytes written
+     * @throws RepositoryException
+     */
+    public long export(OutputStream out, RDFFormat dataFormat, Resource... contexts) throws RepositoryException {
+        return exportStatements(null, null, null, true, out, dataFormat, contexts);
+    }
+
+    /**
+     * exports graphs concurrently as N-Quads to out
+     *
+     * @param out - written to by several threads, lines of different graphs are interleaved
+     * @param threads - maximum number of graphs exported at once
+     * @param contexts - graphs to export, every graph if none
+     * @throws RepositoryException
+     */
+    public void exportParallel(OutputStream out, int threads, Resource... contexts) throws RepositoryException {
+        new ParallelExport(this, exportGraphs(contexts), threads).exportTo(out);
+    }
+
+    /**
+     * exports graphs concurrently as N-Quads, one file per graph in directory
+     *
+     * files are named after the url encoded graph uri, long names are shortened with a hash;
+     * blank node labels are not made unique per graph
+     *
+     * @param directory - created if it does not exist
+     * @param threads - maximum number of graphs exported at once
+     * @param contexts - graphs to export, every graph if none
+     * @throws RepositoryException
+     */
+    public void exportParallel(File directory, int threads, Resource... contexts) throws RepositoryException {
+        new ParallelExport(this, exportGraphs(contexts), threads).exportTo(directory);
+    }
+
+    /**
+     * exports statements unparsed to out, in the requested format; server response
+     * bytes are copied without being parsed into statements
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param includeInferred
+     * @param out
+     * @param dataFormat
+     * @param contexts
+     * @return number of bytes written
+     * @throws RepositoryException
+     */
+    public long exportStatements(Resource subject, URI predicate, Value object, boolean includeInferred, OutputStream out, RDFFormat dataFormat, Resource... contexts) throws RepositoryException {
+        try {
+            MarkLogicGraphQuery query = prepareExportQuery(subject, predicate, object, contexts);
+            return query.evaluate(out, dataFormat);
+        }
+        catch (MalformedQueryException e) {
+            throw new RepositoryException(e);
+        }
+        catch (QueryEvaluationException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
     /**
      * returns number of triples in the entire triple store
      *
@@ -832,7 +917,7 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
                 sb.append("filter (?g = (IRI(\""+DEFAULT_GRAPH_URI+"\")))");
             }
             sb.append("}");
-            logger.debug(sb.toString());
+            logger.trace(sb.toString());
             MarkLogicTupleQuery tupleQuery = prepareTupleQuery(sb.toString());
             tupleQuery.setIncludeInferred(false);
             tupleQuery.setRulesets((SPARQLRuleset) null);
@@ -1298,6 +1383,7 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
         }else{
             this.defaultGraphPerms = client.emptyGraphPerms();
         }
+        client.setGraphPerms(this.defaultGraphPerms);
     }
 
     /**
@@ -1380,6 +1466,94 @@ public class MarkLogicRepositoryConnection extends RepositoryConnectionBase impl
     // private ////////////////////////////////////////////////////////////////////////////////////
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * contexts to export, null stands for the default graph
+     *
+     * @param contexts
+     * @return List<Resource>
+     * @throws RepositoryException
+     */
+    private List<Resource> exportGraphs(Resource... contexts) throws RepositoryException {
+        List<Resource> graphs = new ArrayList<Resource>();
+        if (notNull(contexts) && contexts.length > 0) {
+            for (Resource context : contexts) {
+                graphs.add(context != null ? context : getValueFactory().createURI(DEFAULT_GRAPH_URI));
+            }
+        } else {
+            RepositoryResult<Resource> contextIDs = getContextIDs();
+            try {
+                while (contextIDs.hasNext()) {
+                    graphs.add(contextIDs.next());
+                }
+            } finally {
+                contextIDs.close();
+            }
+        }
+        return graphs;
+    }
+
+    /**
+     * CONSTRUCT query matching subject, predicate, object within contexts
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param contexts
+     * @return MarkLogicGraphQuery
+     * @throws MalformedQueryException
+     * @throws RepositoryException
+     */
+    private MarkLogicGraphQuery prepareExportQuery(Resource subject, URI predicate, Value object, Resource... contexts) throws MalformedQueryException, RepositoryException {
+        StringBuilder ob = new StringBuilder();
+        StringBuilder sb = new StringBuilder();
+
+        if(notNull(object) && object instanceof Literal) {
+            if (object instanceof Literal) {
+                Literal lit = (Literal) object;
+                ob.append("\"");
+                ob.append(SPARQLUtil.encodeString(lit.getLabel()));
+                ob.append("\"");
+                ob.append("^^<" + lit.getDatatype().stringValue() + ">");
+                ob.append(" ");
+            } else {
+                ob.append("<" + object.stringValue() + "> ");
+            }
+            sb.append("CONSTRUCT {?s ?p "+ob.toString()+"} WHERE {");
+            appendGraphPatterns(sb, "?s ?p " + ob.toString() + " .", contexts);
+            sb.append("}");
+        }else{
+            sb.append("CONSTRUCT {?s ?p ?o} WHERE {");
+            appendGraphPatterns(sb, "?s ?p ?o .", contexts);
+            sb.append("}");
+        }
+        logger.trace(sb.toString());
+        MarkLogicGraphQuery query = prepareGraphQuery(sb.toString());
+        setBindings(query, subject, predicate, object, contexts);
+        return query;
+    }
+
+    /**
+     * appends pattern once per context, each in its own GRAPH group joined by UNION,
+     * or pattern alone if there are no contexts
+     *
+     * @param sb
+     * @param pattern
+     * @param contexts
+     */
+    private void appendGraphPatterns(StringBuilder sb, String pattern, Resource... contexts) {
+        if(notNull(contexts) && contexts.length>0) {
+            for (int i = 0; i < contexts.length; i++) {
+                if (i > 0) {
+                    sb.append(" UNION ");
+                }
+                String graph = notNull(contexts[i]) ? contexts[i].stringValue() : DEFAULT_GRAPH_URI;
+                sb.append("{ GRAPH <" + graph + "> {" + pattern + "} }");
+            }
+        }else{
+            sb.append(pattern);
+        }
+    }
+
     /**
      * get client and check if repositoryconnection is open
      *
@@ -22,6 +22,8 @@ package com.marklogic.semantics.sesame;
 import com.marklogic.client.semantics.GraphPermissions;
 import com.marklogic.client.query.QueryDefinition;
 import com.marklogic.client.semantics.SPARQLRuleset;
+import com.marklogic.semantics.sesame.query.MarkLogicQueryTemplate;
+import com.marklogic.semantics.sesame.query.MarkLogicUpdateBatch;
 import info.aduna.iteration.Iteration;
 import org.openrdf.model.Statement;
 import org.openrdf.query.*;
@@ -49,6 +51,12 @@ interface MarkLogicRepositoryConnectionDependent {
     GraphQuery prepareGraphQuery(String queryString) throws RepositoryException, MalformedQueryException;
     GraphQuery prepareGraphQuery(String queryString, String baseURI) throws RepositoryException, MalformedQueryException;
 
+    MarkLogicQueryTemplate prepareQueryTemplate(String queryString) throws RepositoryException;
+    MarkLogicQueryTemplate prepareQueryTemplate(String queryString, String baseURI) throws RepositoryException;
+
+    MarkLogicUpdateBatch prepareUpdateBatch() throws RepositoryException;
+    MarkLogicUpdateBatch prepareUpdateBatch(String baseURI) throws RepositoryException;
+
     void clear() throws RepositoryException;
     long size() throws RepositoryException;
 
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Rewrites N-Triples written to it as N-Quads in a single graph, line by line
+ * and without parsing terms.
+ *
+ * Complete lines are passed to the target in batches while holding the target's
+ * monitor, so several streams may share one target; the target is never closed.
+ *
+ * @author James Fuller
+ */
+class NQuadsOutputStream extends OutputStream {
+
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    private static final byte[] END = " .\n".getBytes(Charset.forName("UTF-8"));
+
+    private final OutputStream out;
+
+    private final byte[] graphTerm;
+
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream(BATCH_SIZE + 1024);
+
+    private byte[] line = new byte[512];
+    private int lineLength;
+
+    /**
+     * constructor
+     *
+     * @param out
+     * @param graphTerm - N-Quads graph term such as "<http://example.org/g>", null for the default graph
+     */
+    NQuadsOutputStream(OutputStream out, String graphTerm) {
+        this.out = out;
+        this.graphTerm = graphTerm == null ? new byte[0] : (" " + graphTerm).getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (b == '\n') {
+            endLine();
+        } else {
+            append((byte) b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                append(b, start, i - start);
+                endLine();
+                start = i + 1;
+            }
+        }
+        append(b, start, end - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBatch();
+        synchronized (out) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lineLength > 0) {
+            endLine();
+        }
+        flush();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void append(byte b) {
+        ensureCapacity(lineLength + 1);
+        line[lineLength++] = b;
+    }
+
+    private void append(byte[] b, int off, int len) {
+        if (len > 0) {
+            ensureCapacity(lineLength + len);
+            System.arraycopy(b, off, line, lineLength, len);
+            lineLength += len;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > line.length) {
+            line = Arrays.copyOf(line, Math.max(capacity, line.length * 2));
+        }
+    }
+
+    private void endLine() throws IOException {
+        int length = trimmedLength(lineLength);
+        lineLength = 0;
+        if (length == 0) {
+            return;
+        }
+        if (line[0] != '#' && line[length - 1] == '.') {
+            batch.write(line, 0, trimmedLength(length - 1));
+            batch.write(graphTerm, 0, graphTerm.length);
+            batch.write(END, 0, END.length);
+        } else {
+            // comment, passed through
+            batch.write(line, 0, length);
+            batch.write('\n');
+        }
+        if (batch.size() >= BATCH_SIZE) {
+            writeBatch();
+        }
+    }
+
+    private int trimmedLength(int length) {
+        while (length > 0 && (line[length - 1] == ' ' || line[length - 1] == '\t' || line[length - 1] == '\r')) {
+            length--;
+        }
+        return length;
+    }
+
+    private void writeBatch() throws IOException {
+        if (batch.size() > 0) {
+            synchronized (out) {
+                batch.writeTo(out);
+            }
+            batch.reset();
+        }
+    }
+}
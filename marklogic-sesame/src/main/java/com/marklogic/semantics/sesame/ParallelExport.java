@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports graphs concurrently as N-Quads, each graph is fetched as raw N-Triples
+ * by its own CONSTRUCT query and rewritten into the graph.
+ *
+ * Blank node labels are copied as returned by the server and are not made unique
+ * per graph, when outputs are merged a label occurring in several graphs is read
+ * back as a single blank node.
+ *
+ * @author James Fuller
+ */
+class ParallelExport {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelExport.class);
+
+    private static final String DEFAULT_GRAPH_URI = "http://marklogic.com/semantics#default-graph";
+
+    static final String FILE_EXTENSION = "." + RDFFormat.NQUADS.getDefaultFileExtension();
+
+    static final int MAX_FILE_NAME = 255;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MarkLogicRepositoryConnection conn;
+
+    private final List<Resource> graphs;
+
+    private final int threads;
+
+    /**
+     * constructor
+     *
+     * @param conn
+     * @param graphs
+     * @param threads - maximum number of graphs exported at once
+     */
+    ParallelExport(MarkLogicRepositoryConnection conn, List<Resource> graphs, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.conn = conn;
+        this.graphs = graphs;
+        this.threads = threads;
+    }
+
+    /**
+     * exports every graph to out, lines of different graphs are interleaved
+     *
+     * @param out
+     * @throws RepositoryException
+     */
+    void exportTo(final OutputStream out) throws RepositoryException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Resource graph : graphs) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    exportGraph(graph, out);
+                    return null;
+                }
+            });
+        }
+        run(tasks);
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new MarkLogicSesameException(e);
+        }
+    }
+
+    /**
+     * exports each graph to its own file in directory, named after the url encoded graph uri
+     * (see fileName)
+     *
+     * @param directory
+     * @throws RepositoryException
+     */
+    void exportTo(final File directory) throws RepositoryException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new MarkLogicSesameException("cannot create directory " + directory);
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Resource graph : graphs) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(directory, fileName(graph))));
+                    try {
+                        exportGraph(graph, out);
+                    } finally {
+                        out.close();
+                    }
+                    return null;
+                }
+            });
+        }
+        run(tasks);
+    }
+
+    /**
+     * file name for graph, the url encoded graph uri; names longer than the 255 byte limit
+     * of common file systems are truncated and suffixed with the SHA-1 of the graph uri
+     *
+     * @param graph
+     * @return String
+     * @throws UnsupportedEncodingException
+     */
+    static String fileName(Resource graph) throws UnsupportedEncodingException {
+        String name = URLEncoder.encode(graph.stringValue(), "UTF-8");
+        int max = MAX_FILE_NAME - FILE_EXTENSION.length();
+        if (name.length() > max) {
+            String hash = sha1(graph.stringValue());
+            name = name.substring(0, max - hash.length() - 1) + "-" + hash;
+        }
+        return name + FILE_EXTENSION;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void exportGraph(Resource graph, OutputStream out) throws IOException, RepositoryException {
+        NQuadsOutputStream quads = new NQuadsOutputStream(out, graphTerm(graph));
+        long bytes = conn.exportStatements(null, null, null, true, quads, RDFFormat.NTRIPLES, graph);
+        quads.close();
+        logger.debug("exported {} ({} bytes)", graph, bytes);
+    }
+
+    private static String sha1(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(Charset.forName("UTF-8")));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String graphTerm(Resource graph) {
+        if (graph instanceof BNode) {
+            return "_:" + graph.stringValue();
+        }
+        if (DEFAULT_GRAPH_URI.equals(graph.stringValue())) {
+            return null;
+        }
+        return "<" + graph.stringValue() + ">";
+    }
+
+    /**
+     * runs tasks on a bounded pool, the first failure cancels graphs not yet started
+     */
+    private void run(List<Callable<Void>> tasks) throws RepositoryException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (Callable<Void> task : tasks) {
+                futures.add(completion.submit(task));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    for (Future<Void> future : futures) {
+                        future.cancel(false);
+                    }
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RepositoryException) {
+                        throw (RepositoryException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new MarkLogicSesameException((Exception) cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MarkLogicSesameException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
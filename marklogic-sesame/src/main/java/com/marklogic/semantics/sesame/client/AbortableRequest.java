@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * Client side cancellation of a single HTTP request.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.DatabaseClient;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle on the HTTP connection used by a request, allowing it to be aborted
+ * from another thread, either when its deadline passes or when its result is
+ * closed early.
+ *
+ * The java api client does not expose the HTTP request, so the connection is
+ * captured by a request interceptor installed on each DatabaseClient and bound
+ * to the thread issuing the request between begin() and unbind(). Aborting
+ * shuts the socket down; a request waiting for response headers fails and a
+ * response being streamed ends without its remaining body being read.
+ *
+ * @author James Fuller
+ */
+public class AbortableRequest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbortableRequest.class);
+
+    private static final ThreadLocal<AbortableRequest> CURRENT = new ThreadLocal<AbortableRequest>();
+
+    private static final HttpRequestInterceptor INTERCEPTOR = new ConnectionInterceptor();
+
+    /**
+     * notified after the request has been aborted
+     */
+    public interface Listener {
+        void aborted(AbortableRequest request);
+    }
+
+    private volatile ConnectionReleaseTrigger connection;
+    private volatile ScheduledFuture<?> deadline;
+    private volatile Listener listener;
+    private volatile boolean aborted;
+    private volatile boolean timedOut;
+    private volatile boolean completed;
+
+    /**
+     * creates request bound to the current thread, aborted after maxExecutionTimeMillis
+     *
+     * @param maxExecutionTimeMillis - 0 or less means no deadline
+     * @return AbortableRequest
+     */
+    public static AbortableRequest begin(long maxExecutionTimeMillis) {
+        final AbortableRequest request = new AbortableRequest();
+        if (maxExecutionTimeMillis > 0) {
+            request.deadline = Timer.INSTANCE.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    request.timeout();
+                }
+            }, maxExecutionTimeMillis, TimeUnit.MILLISECONDS);
+        }
+        CURRENT.set(request);
+        return request;
+    }
+
+    /**
+     * installs the interceptor capturing connections on the HTTP client of a DatabaseClient
+     *
+     * @param databaseClient
+     */
+    @SuppressWarnings("deprecation")
+    public static void install(DatabaseClient databaseClient) {
+        Object impl = databaseClient.getClientImplementation();
+        // deprecated, named in full as imports cannot be suppressed
+        if (impl instanceof org.apache.http.impl.client.AbstractHttpClient) {
+            org.apache.http.impl.client.AbstractHttpClient httpClient = (org.apache.http.impl.client.AbstractHttpClient) impl;
+            httpClient.removeRequestInterceptorByClass(ConnectionInterceptor.class);
+            httpClient.addRequestInterceptor(INTERCEPTOR);
+        } else {
+            logger.warn("unexpected client implementation, requests cannot be aborted");
+        }
+    }
+
+    /**
+     * true if the request bound to the current thread has been aborted
+     *
+     * @return boolean
+     */
+    static boolean isCurrentAborted() {
+        AbortableRequest current = CURRENT.get();
+        return current != null && current.aborted;
+    }
+
+    /**
+     * stops capturing connections on the current thread, call once the response headers are received
+     */
+    public void unbind() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * marks the response as fully read, the deadline no longer applies
+     */
+    public void complete() {
+        completed = true;
+        cancelDeadline();
+        connection = null;
+    }
+
+    /**
+     * aborts the connection unless the response has already been fully read
+     */
+    public void abort() {
+        if (completed || aborted) {
+            return;
+        }
+        aborted = true;
+        cancelDeadline();
+        ConnectionReleaseTrigger conn = connection;
+        connection = null;
+        if (conn != null) {
+            try {
+                conn.abortConnection();
+            } catch (IOException e) {
+                logger.debug("failed aborting connection: {}", e.getLocalizedMessage());
+            }
+        }
+        Listener l = listener;
+        if (l != null) {
+            l.aborted(this);
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (aborted && listener != null) {
+            listener.aborted(this);
+        }
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * true if the request was aborted because its deadline passed
+     *
+     * @return boolean
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void timeout() {
+        if (completed || aborted) {
+            return;
+        }
+        logger.debug("request exceeded max execution time, aborting");
+        timedOut = true;
+        abort();
+    }
+
+    private void cancelDeadline() {
+        ScheduledFuture<?> d = deadline;
+        if (d != null) {
+            d.cancel(false);
+        }
+    }
+
+    private void setConnection(ConnectionReleaseTrigger connection) {
+        this.connection = connection;
+        // deadline passed before the connection was obtained
+        if (aborted) {
+            try {
+                connection.abortConnection();
+            } catch (IOException e) {
+                logger.debug("failed aborting connection: {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * records the connection of each request sent by a thread with a bound AbortableRequest
+     */
+    private static final class ConnectionInterceptor implements HttpRequestInterceptor {
+        @Override
+        @SuppressWarnings("deprecation")
+        public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+            AbortableRequest current = CURRENT.get();
+            if (current != null) {
+                Object conn = context.getAttribute(org.apache.http.protocol.ExecutionContext.HTTP_CONNECTION);
+                if (conn instanceof ConnectionReleaseTrigger) {
+                    current.setConnection((ConnectionReleaseTrigger) conn);
+                }
+            }
+        }
+    }
+
+    /**
+     * single daemon thread firing deadlines, created on first use
+     */
+    private static final class Timer {
+        static final ScheduledExecutorService INSTANCE = newTimer();
+
+        private static ScheduledExecutorService newTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "marklogic-sesame-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // most requests complete before their deadline, do not keep cancelled tasks queued
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * HTTP transport, write cache and executor settings.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.DatabaseClient;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tuning for the HTTP connection pool of each DatabaseClient, the write cache
+ * and the executor running background result parsers.
+ *
+ * Defaults match the java api client and MarkLogicClient defaults, a timeout of 0
+ * leaves the java api client setting unchanged and a keepAliveMillis of -1 honours
+ * the server Keep-Alive header.
+ *
+ * @author James Fuller
+ */
+public class ConnectionSettings {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionSettings.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 100;
+    public static final long DEFAULT_EXECUTOR_KEEP_ALIVE_MILLIS = 60000;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int connectTimeoutMillis;
+    private int socketTimeoutMillis;
+    private long keepAliveMillis = -1;
+
+    private long writeCacheSize = TripleCache.DEFAULT_CACHE_SIZE;
+    private long writeCacheMillis = TripleCache.DEFAULT_CACHE_MILLIS;
+    private long writeCacheInitialDelay = TripleCache.DEFAULT_INITIAL_DELAY;
+
+    private int executorCoreThreads;
+    private long executorKeepAliveMillis = DEFAULT_EXECUTOR_KEEP_ALIVE_MILLIS;
+
+    /**
+     * applies transport settings to the HTTP client of a DatabaseClient
+     *
+     * @param databaseClient
+     */
+    @SuppressWarnings("deprecation")
+    public void apply(DatabaseClient databaseClient) {
+        Object impl = databaseClient.getClientImplementation();
+        if (!(impl instanceof HttpClient)) {
+            logger.warn("unexpected client implementation, connection settings not applied");
+            return;
+        }
+        HttpClient httpClient = (HttpClient) impl;
+        // the HttpClient 4.x types are deprecated, named in full as imports cannot be suppressed
+        org.apache.http.conn.ClientConnectionManager connMgr = httpClient.getConnectionManager();
+        if (connMgr instanceof org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager) {
+            org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager pool = (org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager) connMgr;
+            pool.setMaxTotal(maxConnections);
+            pool.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        } else if (connMgr instanceof org.apache.http.impl.conn.PoolingClientConnectionManager) {
+            org.apache.http.impl.conn.PoolingClientConnectionManager pool = (org.apache.http.impl.conn.PoolingClientConnectionManager) connMgr;
+            pool.setMaxTotal(maxConnections);
+            pool.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        }
+        if (connectTimeoutMillis > 0) {
+            org.apache.http.params.HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectTimeoutMillis);
+        }
+        if (socketTimeoutMillis > 0) {
+            org.apache.http.params.HttpConnectionParams.setSoTimeout(httpClient.getParams(), socketTimeoutMillis);
+        }
+        if (keepAliveMillis >= 0 && httpClient instanceof org.apache.http.impl.client.AbstractHttpClient) {
+            org.apache.http.impl.client.AbstractHttpClient client = (org.apache.http.impl.client.AbstractHttpClient) httpClient;
+            if (keepAliveMillis == 0) {
+                client.setReuseStrategy(new NoConnectionReuseStrategy());
+            } else {
+                client.setKeepAliveStrategy(new MaxKeepAliveStrategy(keepAliveMillis));
+            }
+        }
+    }
+
+    /**
+     * creates executor for background result parsers, threads beyond executorCoreThreads
+     * are created on demand and never queued (a queued parser would block its reader)
+     *
+     * @return ExecutorService
+     */
+    public ExecutorService newExecutor() {
+        return new ThreadPoolExecutor(executorCoreThreads, Integer.MAX_VALUE,
+                executorKeepAliveMillis, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * @param keepAliveMillis - -1 honours server Keep-Alive header, 0 disables connection reuse
+     */
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    public long getWriteCacheSize() {
+        return writeCacheSize;
+    }
+
+    public void setWriteCacheSize(long writeCacheSize) {
+        this.writeCacheSize = writeCacheSize;
+    }
+
+    public long getWriteCacheMillis() {
+        return writeCacheMillis;
+    }
+
+    public void setWriteCacheMillis(long writeCacheMillis) {
+        this.writeCacheMillis = writeCacheMillis;
+    }
+
+    public long getWriteCacheInitialDelay() {
+        return writeCacheInitialDelay;
+    }
+
+    public void setWriteCacheInitialDelay(long writeCacheInitialDelay) {
+        this.writeCacheInitialDelay = writeCacheInitialDelay;
+    }
+
+    public int getExecutorCoreThreads() {
+        return executorCoreThreads;
+    }
+
+    public void setExecutorCoreThreads(int executorCoreThreads) {
+        this.executorCoreThreads = executorCoreThreads;
+    }
+
+    public long getExecutorKeepAliveMillis() {
+        return executorKeepAliveMillis;
+    }
+
+    public void setExecutorKeepAliveMillis(long executorKeepAliveMillis) {
+        this.executorKeepAliveMillis = executorKeepAliveMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionSettings[maxConnections=" + maxConnections + ", maxConnectionsPerRoute=" + maxConnectionsPerRoute
+                + ", connectTimeoutMillis=" + connectTimeoutMillis + ", socketTimeoutMillis=" + socketTimeoutMillis
+                + ", keepAliveMillis=" + keepAliveMillis + ", writeCacheSize=" + writeCacheSize
+                + ", writeCacheMillis=" + writeCacheMillis + ", executorCoreThreads=" + executorCoreThreads + "]";
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * keeps idle connections for at most maxMillis, less if the server asks for less
+     */
+    private static final class MaxKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        private final long maxMillis;
+
+        MaxKeepAliveStrategy(long maxMillis) {
+            this.maxMillis = maxMillis;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long serverMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverMillis > 0 ? Math.min(serverMillis, maxMillis) : maxMillis;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A single MarkLogic e-node, with its DatabaseClient and load statistics.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.FailedRequestException;
+import com.marklogic.client.ForbiddenUserException;
+import com.marklogic.client.ResourceNotFoundException;
+import com.marklogic.client.ResourceNotResendableException;
+import com.marklogic.client.impl.FailedRequest;
+import com.marklogic.client.semantics.GraphManager;
+import com.marklogic.client.semantics.SPARQLQueryManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MarkLogic host (e-node) used by an {@link EndpointPool}.
+ *
+ * Tracks outstanding requests, an exponentially weighted moving average of
+ * request latency and consecutive failures used for passive health checking.
+ *
+ * @author James Fuller
+ */
+public class Endpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(Endpoint.class);
+
+    public static final double DEFAULT_EWMA_ALPHA = 0.2;
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final String auth;
+
+    // false when the DatabaseClient was supplied by the caller and cannot be recreated
+    private final boolean recreatable;
+
+    private ConnectionSettings settings;
+
+    private DatabaseClient databaseClient;
+    private SPARQLQueryManager sparqlManager;
+    private GraphManager graphManager;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong ejections = new AtomicLong();
+
+    private volatile double latencyMillis;
+    private volatile long ejectedUntil;
+
+    /**
+     * constructor, DatabaseClient is created on first use
+     *
+     * @param host
+     * @param port
+     * @param user
+     * @param password
+     * @param auth
+     */
+    public Endpoint(String host, int port, String user, String password, String auth) {
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+        this.auth = auth;
+        this.recreatable = true;
+    }
+
+    /**
+     * constructor
+     *
+     * @param databaseClient
+     */
+    public Endpoint(DatabaseClient databaseClient) {
+        this.host = databaseClient.getHost();
+        this.port = databaseClient.getPort();
+        this.user = databaseClient.getUser();
+        this.password = databaseClient.getPassword();
+        this.auth = databaseClient.getAuthentication() == null ? null : databaseClient.getAuthentication().name();
+        this.recreatable = false;
+        setDatabaseClient(databaseClient);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * returns DatabaseClient, creating it if required
+     *
+     * @return DatabaseClient
+     */
+    public synchronized DatabaseClient getDatabaseClient() {
+        if (databaseClient == null) {
+            setDatabaseClient(DatabaseClientFactory.newClient(host, port, user, password, DatabaseClientFactory.Authentication.valueOf(auth)));
+            if (settings != null) {
+                settings.apply(databaseClient);
+            }
+        }
+        return databaseClient;
+    }
+
+    /**
+     * applies transport settings now and whenever the DatabaseClient is recreated
+     *
+     * @param settings
+     */
+    public synchronized void setConnectionSettings(ConnectionSettings settings) {
+        this.settings = settings;
+        if (settings != null && databaseClient != null) {
+            settings.apply(databaseClient);
+        }
+    }
+
+    /**
+     * shared query manager, must not be mutated
+     *
+     * @return SPARQLQueryManager
+     */
+    public synchronized SPARQLQueryManager getSPARQLQueryManager() {
+        getDatabaseClient();
+        return sparqlManager;
+    }
+
+    /**
+     * shared graph manager, must not be mutated
+     *
+     * @return GraphManager
+     */
+    public synchronized GraphManager getGraphManager() {
+        getDatabaseClient();
+        return graphManager;
+    }
+
+    /**
+     * releases DatabaseClient, a client created by this endpoint is recreated on next use
+     */
+    public synchronized void release() {
+        if (databaseClient != null) {
+            try {
+                databaseClient.release();
+            } catch (Exception e) {
+                logger.info("Failed releasing DB client", e);
+            }
+            if (recreatable) {
+                databaseClient = null;
+                sparqlManager = null;
+                graphManager = null;
+            }
+        }
+    }
+
+    /**
+     * marks start of request
+     *
+     * @return start time (ns)
+     */
+    public long begin() {
+        outstanding.incrementAndGet();
+        requests.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * marks end of request
+     *
+     * @param started - value returned by begin()
+     * @param failure - null if request succeeded
+     * @param failureThreshold - consecutive failures before host is ejected
+     * @param ejectMillis - how long a failing host is ejected for
+     */
+    public void end(long started, Throwable failure, int failureThreshold, long ejectMillis) {
+        outstanding.decrementAndGet();
+        double millis = (System.nanoTime() - started) / 1000000.0;
+        synchronized (this) {
+            latencyMillis = latencyMillis == 0 ? millis : DEFAULT_EWMA_ALPHA * millis + (1 - DEFAULT_EWMA_ALPHA) * latencyMillis;
+        }
+        if (failure != null && AbortableRequest.isCurrentAborted()) {
+            // aborted by the client, says nothing about the host
+            return;
+        }
+        if (isHostFailure(failure)) {
+            failures.incrementAndGet();
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+                ejectedUntil = System.currentTimeMillis() + ejectMillis;
+                ejections.incrementAndGet();
+                logger.warn("ejecting {} for {} ms: {}", this, ejectMillis, failure.toString());
+            }
+        } else {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    /**
+     * true if host is currently ejected by passive health checking
+     *
+     * @param now
+     * @return boolean
+     */
+    public boolean isEjected(long now) {
+        return ejectedUntil > now;
+    }
+
+    public long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    public int getOutstandingRequests() {
+        return outstanding.get();
+    }
+
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public long getEjectionCount() {
+        return ejections.get();
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void setDatabaseClient(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        AbortableRequest.install(databaseClient);
+        this.sparqlManager = databaseClient.newSPARQLQueryManager();
+        this.graphManager = databaseClient.newGraphManager();
+    }
+
+    /**
+     * errors caused by the request itself (bad query, permissions) do not count against the host
+     *
+     * @param failure
+     * @return
+     */
+    private static boolean isHostFailure(Throwable failure) {
+        if (failure == null) {
+            return false;
+        }
+        if (failure instanceof FailedRequestException) {
+            FailedRequest failedRequest = ((FailedRequestException) failure).getFailedRequest();
+            return failedRequest != null && failedRequest.getStatusCode() >= 500;
+        }
+        return !(failure instanceof ForbiddenUserException
+                || failure instanceof ResourceNotFoundException
+                || failure instanceof ResourceNotResendableException
+                || failure instanceof IllegalArgumentException
+                || failure instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * Load balancing across a set of MarkLogic e-nodes.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the MarkLogic host (e-node) used for each request.
+ *
+ * Requests without a transaction are spread across hosts using the configured
+ * {@link Strategy}; requests within a transaction always go to the host the
+ * transaction was opened on. A host failing failureThreshold consecutive requests
+ * (connection errors or 5xx responses) is ejected for ejectMillis; if every host
+ * is ejected the one due back first is used.
+ *
+ * Latency and outstanding counts cover the request up to the response headers,
+ * streamed result bodies are not included.
+ *
+ * @author James Fuller
+ */
+public class EndpointPool {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_EJECT_MILLIS = 30000;
+
+    /**
+     * host selection strategy
+     */
+    public enum Strategy {
+        ROUND_ROBIN, LEAST_OUTSTANDING, EWMA_LATENCY
+    }
+
+    private final List<Endpoint> endpoints;
+
+    private final Strategy strategy;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Map<Transaction, Endpoint> pinned = new ConcurrentHashMap<Transaction, Endpoint>();
+
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long ejectMillis = DEFAULT_EJECT_MILLIS;
+
+    /**
+     * constructor
+     *
+     * @param strategy
+     * @param endpoints
+     */
+    public EndpointPool(Strategy strategy, List<Endpoint> endpoints) {
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("at least one endpoint is required");
+        }
+        this.strategy = strategy != null ? strategy : Strategy.ROUND_ROBIN;
+        this.endpoints = Collections.unmodifiableList(new ArrayList<Endpoint>(endpoints));
+    }
+
+    /**
+     * constructor, single host
+     *
+     * @param endpoint
+     */
+    public EndpointPool(Endpoint endpoint) {
+        this(Strategy.ROUND_ROBIN, Collections.singletonList(endpoint));
+    }
+
+    /**
+     * constructor, one endpoint per host, hosts are either "host" or "host:port"
+     *
+     * @param strategy
+     * @param hosts
+     * @param port - used for hosts without a port
+     * @param user
+     * @param password
+     * @param auth
+     */
+    public EndpointPool(Strategy strategy, List<String> hosts, int port, String user, String password, String auth) {
+        this(strategy, newEndpoints(hosts, port, user, password, auth));
+    }
+
+    /**
+     * selects host for request
+     *
+     * @param tx - if not null, the host the transaction was opened on is returned
+     * @return Endpoint
+     */
+    public Endpoint select(Transaction tx) {
+        if (tx != null) {
+            Endpoint endpoint = pinned.get(tx);
+            if (endpoint != null) {
+                return endpoint;
+            }
+        }
+        int size = endpoints.size();
+        if (size == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.currentTimeMillis();
+        int offset = next.getAndIncrement() & Integer.MAX_VALUE;
+        Endpoint selected = null;
+        Endpoint soonest = null;
+        for (int i = 0; i < size; i++) {
+            Endpoint candidate = endpoints.get((offset + i) % size);
+            if (candidate.isEjected(now)) {
+                if (soonest == null || candidate.getEjectedUntil() < soonest.getEjectedUntil()) {
+                    soonest = candidate;
+                }
+                continue;
+            }
+            if (strategy == Strategy.ROUND_ROBIN) {
+                return candidate;
+            }
+            if (selected == null || isBetter(candidate, selected)) {
+                selected = candidate;
+            }
+        }
+        return selected != null ? selected : soonest;
+    }
+
+    /**
+     * opens transaction on a selected host, requests in the transaction are pinned to that host
+     *
+     * @return Transaction
+     */
+    public Transaction openTransaction() {
+        Endpoint endpoint = select(null);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        try {
+            Transaction tx = endpoint.getDatabaseClient().openTransaction();
+            pinned.put(tx, endpoint);
+            return tx;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            end(endpoint, started, failure);
+        }
+    }
+
+    /**
+     * commits transaction and unpins it from its host, a failed transaction stays pinned until rolled back
+     *
+     * @param tx
+     */
+    public void commitTransaction(Transaction tx) {
+        Endpoint endpoint = select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        try {
+            tx.commit();
+            pinned.remove(tx);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            end(endpoint, started, failure);
+        }
+    }
+
+    /**
+     * rolls back transaction and unpins it from its host
+     *
+     * @param tx
+     */
+    public void rollbackTransaction(Transaction tx) {
+        Endpoint endpoint = select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        try {
+            tx.rollback();
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            pinned.remove(tx);
+            end(endpoint, started, failure);
+        }
+    }
+
+    /**
+     * records end of request on endpoint
+     *
+     * @param endpoint
+     * @param started
+     * @param failure
+     */
+    public void end(Endpoint endpoint, long started, Throwable failure) {
+        endpoint.end(started, failure, failureThreshold, ejectMillis);
+    }
+
+    /**
+     * DatabaseClient of the first host
+     *
+     * @return DatabaseClient
+     */
+    public DatabaseClient getDatabaseClient() {
+        return endpoints.get(0).getDatabaseClient();
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getEjectMillis() {
+        return ejectMillis;
+    }
+
+    public void setEjectMillis(long ejectMillis) {
+        this.ejectMillis = ejectMillis;
+    }
+
+    /**
+     * applies transport settings to the DatabaseClient of every host
+     *
+     * @param settings
+     */
+    public void setConnectionSettings(ConnectionSettings settings) {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.setConnectionSettings(settings);
+        }
+    }
+
+    /**
+     * releases DatabaseClient of every host
+     */
+    public void release() {
+        pinned.clear();
+        for (Endpoint endpoint : endpoints) {
+            endpoint.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointPool[" + strategy + ", " + endpoints + "]";
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean isBetter(Endpoint candidate, Endpoint selected) {
+        if (strategy == Strategy.LEAST_OUTSTANDING) {
+            return candidate.getOutstandingRequests() < selected.getOutstandingRequests();
+        }
+        // weight latency by queue depth so a fast host does not take every request
+        return (candidate.getOutstandingRequests() + 1) * candidate.getLatencyMillis()
+                < (selected.getOutstandingRequests() + 1) * selected.getLatencyMillis();
+    }
+
+    private static List<Endpoint> newEndpoints(List<String> hosts, int port, String user, String password, String auth) {
+        if (hosts == null) {
+            throw new IllegalArgumentException("hosts must not be null");
+        }
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (String host : hosts) {
+            String name = host.trim();
+            int hostPort = port;
+            int colon = name.lastIndexOf(':');
+            if (colon > 0) {
+                hostPort = Integer.parseInt(name.substring(colon + 1));
+                name = name.substring(0, colon);
+            }
+            endpoints.add(new Endpoint(name, hostPort, user, password, auth));
+        }
+        return endpoints;
+    }
+}
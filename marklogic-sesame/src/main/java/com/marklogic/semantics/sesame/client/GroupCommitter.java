@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.semantics.sesame.MarkLogicSesameException;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gathers autocommit writes of all connections of a repository into shared batches,
+ * each written by a single update once it holds maxStatements or maxDelayMillis after
+ * its first statement, whichever comes first.
+ *
+ * Every add returns the Ticket of the batch it joined; callers wait on it to learn the
+ * batch is durable. Batches are written one at a time, in the order they were started.
+ *
+ * @author James Fuller
+ */
+public class GroupCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitter.class);
+
+    public static final int DEFAULT_MAX_STATEMENTS = 2000;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final MarkLogicClient client;
+
+    private final int maxStatements;
+
+    private final long maxDelayMillis;
+
+    private final ScheduledThreadPoolExecutor flusher;
+
+    // batch accepting statements, guarded by this
+    private Batch current;
+
+    private boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * completion of a batch
+     */
+    public interface Ticket {
+
+        /**
+         * waits until the batch is written
+         *
+         * @throws MarkLogicSesameException if writing the batch failed
+         */
+        void await() throws MarkLogicSesameException;
+
+        boolean isDone();
+    }
+
+    /**
+     * constructor
+     *
+     * @param client - writes the batches, outside of any transaction
+     * @param maxStatements - a batch is written once it holds this many statements
+     * @param maxDelayMillis - a batch is written at the latest this long after its first statement
+     */
+    public GroupCommitter(MarkLogicClient client, int maxStatements, long maxDelayMillis) {
+        if (maxStatements < 1) {
+            throw new IllegalArgumentException("maxStatements must be at least 1");
+        }
+        this.client = client;
+        this.maxStatements = maxStatements;
+        this.maxDelayMillis = maxDelayMillis;
+        this.flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "marklogic-sesame-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.setRemoveOnCancelPolicy(true);
+        // close writes the open batch itself, its deadline need not be waited for
+        this.flusher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * adds statement to the current batch
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param contexts
+     * @return Ticket of the batch, null if closed so the caller has to write the statement itself
+     */
+    public Ticket add(Resource subject, URI predicate, Value object, Resource... contexts) {
+        Batch full = null;
+        Batch batch;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            if (current == null) {
+                current = new Batch();
+                final Batch started = current;
+                flusher.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        seal(started);
+                    }
+                }, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            batch = current;
+            batch.statements.add(subject, predicate, object, contexts);
+            if (batch.statements.size() >= maxStatements) {
+                full = batch;
+                current = null;
+            }
+        }
+        if (full != null) {
+            submit(full);
+        }
+        return batch;
+    }
+
+    /**
+     * writes the current batch without waiting for its deadline
+     *
+     * @return Ticket of the batch, null if there is none
+     */
+    public Ticket flush() {
+        Batch batch;
+        synchronized (this) {
+            batch = current;
+            current = null;
+        }
+        if (batch != null) {
+            submit(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * writes the current batch and stops once every batch is written, statements added
+     * afterwards are rejected
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("group commit batches still being written after {} seconds", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getMaxStatements() {
+        return maxStatements;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * number of batches written
+     *
+     * @return long
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * number of statements written
+     *
+     * @return long
+     */
+    public long getStatementCount() {
+        return statements.get();
+    }
+
+    /**
+     * number of batches that could not be written
+     *
+     * @return long
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * deadline of batch passed, written unless it was already sealed by size or flush
+     */
+    private void seal(Batch batch) {
+        synchronized (this) {
+            if (current != batch) {
+                return;
+            }
+            current = null;
+        }
+        write(batch);
+    }
+
+    private void submit(final Batch batch) {
+        flusher.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(batch);
+            }
+        });
+    }
+
+    private void write(Batch batch) {
+        try {
+            long started = System.nanoTime();
+            client.sendFlush(TripleWriteCache.insertData(batch.statements, client.getSkolemMapper()), batch.statements.size());
+            client.getMetrics().recordFlush(batch.statements.size(), System.nanoTime() - started);
+            batches.incrementAndGet();
+            statements.addAndGet(batch.statements.size());
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("group commit of {} statements failed: {}", batch.statements.size(), e.getLocalizedMessage());
+            batch.failure = e;
+        } finally {
+            batch.done.countDown();
+        }
+    }
+
+    /**
+     * statements written by one update
+     */
+    private static final class Batch implements Ticket {
+        final Model statements = new LinkedHashModel();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Exception failure;
+
+        @Override
+        public void await() throws MarkLogicSesameException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MarkLogicSesameException(e);
+            }
+            if (failure != null) {
+                throw new MarkLogicSesameException("Could not write group commit batch.", failure);
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+    }
+}
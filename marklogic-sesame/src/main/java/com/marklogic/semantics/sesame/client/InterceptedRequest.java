@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.Transaction;
+import com.marklogic.client.semantics.SPARQLQueryDefinition;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics.Operation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * one request passed through the RequestInterceptor chain, only created when interceptors
+ * are registered
+ *
+ * @author James Fuller
+ */
+public final class InterceptedRequest {
+
+    private static final Logger logger = LoggerFactory.getLogger(InterceptedRequest.class);
+
+    private final RequestInterceptor[] chain;
+    private final Operation operation;
+    private final String host;
+    private final Transaction tx;
+    private final SPARQLQueryDefinition queryDefinition;
+    private final long startedNanos;
+
+    private long bytesSent;
+    private long durationNanos = -1;
+    private Map<String, Object> attributes;
+
+    // interceptors whose before() returned, only those are called back
+    private int entered;
+
+    InterceptedRequest(RequestInterceptor[] chain, Operation operation, String host, Transaction tx, SPARQLQueryDefinition queryDefinition, long bytesSent, long startedNanos) {
+        this.chain = chain;
+        this.operation = operation;
+        this.host = host;
+        this.tx = tx;
+        this.queryDefinition = queryDefinition;
+        this.bytesSent = bytesSent;
+        this.startedNanos = startedNanos;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return String - host the request went to, null for transaction calls
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return Transaction - null in autocommit
+     */
+    public Transaction getTransaction() {
+        return tx;
+    }
+
+    /**
+     * @return SPARQLQueryDefinition - null for graph merges, deletes, clears and transaction calls
+     */
+    public SPARQLQueryDefinition getQueryDefinition() {
+        return queryDefinition;
+    }
+
+    /**
+     * @return String - SPARQL sent, null if the request is not a query or update
+     */
+    public String getSparql() {
+        return queryDefinition != null ? queryDefinition.getSparql() : null;
+    }
+
+    /**
+     * request body size, of an add from an InputStream it is only known in after() and error()
+     *
+     * @return long - bytes, -1 if unknown
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return long - System.nanoTime() the request started at
+     */
+    public long getStartedNanos() {
+        return startedNanos;
+    }
+
+    /**
+     * @return long - time taken in ns, -1 in before()
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * gets value stored by an interceptor, e.g. a trace span opened in before()
+     *
+     * @param name
+     * @return Object - null if not set
+     */
+    public Object getAttribute(String name) {
+        return attributes != null ? attributes.get(name) : null;
+    }
+
+    /**
+     * @param name
+     * @param value
+     */
+    public void setAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        attributes.put(name, value);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    /**
+     * calls before() of every interceptor, a RuntimeException thrown by one stops the chain,
+     * is passed to error() of those already called and rethrown
+     */
+    void before() {
+        try {
+            for (RequestInterceptor interceptor : chain) {
+                interceptor.before(this);
+                entered++;
+            }
+        } catch (RuntimeException e) {
+            complete(e);
+            throw e;
+        }
+    }
+
+    /**
+     * calls after() or error() of every interceptor whose before() returned, last first
+     *
+     * @param failure - null if the request succeeded
+     */
+    void complete(Throwable failure) {
+        durationNanos = System.nanoTime() - startedNanos;
+        for (int i = entered - 1; i >= 0; i--) {
+            try {
+                if (failure == null) {
+                    chain[i].after(this);
+                } else {
+                    chain[i].error(this, failure);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("request interceptor {} failed", chain[i], e);
+            }
+        }
+    }
+}
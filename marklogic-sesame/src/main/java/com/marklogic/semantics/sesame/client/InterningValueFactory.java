@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * ValueFactory sharing URI instances.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ValueFactory returning the same URI instance for repeated URIs, so predicates,
+ * classes and graph URIs appearing in millions of result rows are held once.
+ *
+ * Bounded by a segmented LRU; segments are locked independently so parser threads
+ * of concurrent queries rarely contend. Other values are created as by ValueFactoryImpl.
+ *
+ * @author James Fuller
+ */
+public class InterningValueFactory extends ValueFactoryImpl {
+
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final int maxLength;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * constructor
+     */
+    public InterningValueFactory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * constructor
+     *
+     * @param capacity - maximum number of interned URIs
+     */
+    public InterningValueFactory(int capacity) {
+        this(capacity, 1024);
+    }
+
+    /**
+     * constructor
+     *
+     * @param capacity - maximum number of interned URIs
+     * @param maxLength - longer URIs are not interned, they are rarely repeated
+     */
+    public InterningValueFactory(int capacity, int maxLength) {
+        if (capacity < SEGMENTS) {
+            throw new IllegalArgumentException("capacity must be at least " + SEGMENTS);
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public URI createURI(String uri) {
+        if (uri.length() > maxLength) {
+            return new URIImpl(uri);
+        }
+        Segment segment = segments[(uri.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+        synchronized (segment) {
+            URI interned = segment.get(uri);
+            if (interned != null) {
+                hits.incrementAndGet();
+                return interned;
+            }
+            interned = new URIImpl(uri);
+            segment.put(uri, interned);
+            misses.incrementAndGet();
+            return interned;
+        }
+    }
+
+    @Override
+    public URI createURI(String namespace, String localName) {
+        return createURI(namespace + localName);
+    }
+
+    /**
+     * number of URIs currently interned
+     *
+     * @return int
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * drops every interned URI
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * access ordered map evicting its least recently used URI
+     */
+    private static final class Segment extends LinkedHashMap<String, URI> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, URI> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -15,10 +15,18 @@
  */
 package com.marklogic.semantics.sesame.client;
 
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.metrics.PhaseTimed;
+import com.marklogic.semantics.sesame.metrics.PhaseTimingListener;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
 import org.openrdf.http.client.BackgroundGraphResult;
 import org.openrdf.http.client.QueueCursor;
 import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
+import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,10 +41,26 @@ import java.nio.charset.Charset;
  * @author James Fuller
  */
 
-class MarkLogicBackgroundGraphResult extends BackgroundGraphResult
+class MarkLogicBackgroundGraphResult extends BackgroundGraphResult implements PhaseTimed
 {
     private static final Logger logger = LoggerFactory.getLogger(MarkLogicBackgroundGraphResult.class);
 
+    private final AbortableRequest request;
+
+    private SkolemMapper skolemMapper;
+
+    private ClientMetrics metrics;
+
+    private PhaseTimings timings;
+
+    private PhaseTimingListener timingListener;
+
+    private SlowOperationLog.Entry slow;
+
+    private long parsed;
+
+    private ValueFactory f;
+
     /**
      *  constructor
      *
@@ -46,7 +70,21 @@ class MarkLogicBackgroundGraphResult extends BackgroundGraphResult
      * @param baseURI
      */
     public MarkLogicBackgroundGraphResult(RDFParser parser, InputStream in, Charset charset, String baseURI) {
+        this(parser, in, charset, baseURI, null);
+    }
+
+    /**
+     *  constructor
+     *
+     * @param parser
+     * @param in
+     * @param charset
+     * @param baseURI
+     * @param request - aborted when the max execution time passes, may be null
+     */
+    public MarkLogicBackgroundGraphResult(RDFParser parser, InputStream in, Charset charset, String baseURI, AbortableRequest request) {
         super(parser, in, charset, baseURI);
+        this.request = request;
     }
 
     /**
@@ -60,6 +98,7 @@ class MarkLogicBackgroundGraphResult extends BackgroundGraphResult
      */
     public MarkLogicBackgroundGraphResult(QueueCursor<Statement> queue, RDFParser parser, InputStream in, Charset charset, String baseURI) {
         super(queue, parser, in, charset, baseURI);
+        this.request = null;
     }
 
     /**
@@ -74,23 +113,147 @@ class MarkLogicBackgroundGraphResult extends BackgroundGraphResult
             return super.hasNext();
 
         }catch(QueryEvaluationException e){
+            checkTimedOut(e);
             logger.info("MarkLogicBackgroundGraphResult hasNext() stream closed");
             return false;
         }
     }
 
     /**
-     * wrap exception, debug log
+     * sets the mapper turning skolem IRIs back into blank nodes, must be called before parsing starts
+     *
+     * @param skolemMapper
+     * @param f - creates statements with blank nodes
+     */
+    void setSkolemMapper(SkolemMapper skolemMapper, ValueFactory f) {
+        this.skolemMapper = skolemMapper != null && skolemMapper.isDeskolemize() ? skolemMapper : null;
+        this.f = f;
+    }
+
+    /**
+     * counts this result as open in metrics until it is closed
+     *
+     * @param metrics
+     */
+    void setMetrics(ClientMetrics metrics) {
+        this.metrics = metrics;
+        metrics.resultOpened();
+    }
+
+    /**
+     * sets timings completed with the PARSE phase once the response has been parsed, must be called before parsing starts
+     *
+     * @param timings
+     * @param timingListener - notified once parsed, may be null
+     */
+    void setPhaseTimings(PhaseTimings timings, PhaseTimingListener timingListener) {
+        this.timings = timings;
+        this.timingListener = timingListener;
+    }
+
+    @Override
+    public PhaseTimings getPhaseTimings() {
+        return timings;
+    }
+
+    /**
+     * sets entry of the slow operation log finished with the statements parsed, must be called before parsing starts
+     *
+     * @param slow - null if slow operations are not logged
+     */
+    void setSlowOperation(SlowOperationLog.Entry slow) {
+        this.slow = slow;
+    }
+
+    /**
+     * deskolemizes and counts on the parser thread, before the statement is queued; time
+     * blocked on a full queue is the consumer's and is left out of the slow operation
+     *
+     */
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        parsed++;
+        Statement statement = skolemMapper == null ? st : skolemMapper.deskolemize(st, f);
+        if (slow == null) {
+            super.handleStatement(statement);
+            return;
+        }
+        long queued = System.nanoTime();
+        try {
+            super.handleStatement(statement);
+        } finally {
+            slow.exclude(System.nanoTime() - queued);
+        }
+    }
+
+    /**
+     * parses the response, the deadline no longer applies once it has been read
+     *
+     */
+    @Override
+    public void run() {
+        try {
+            super.run();
+        } finally {
+            if (request != null) {
+                request.complete();
+            }
+            if (timings != null) {
+                timings.lap(PhaseTimings.Phase.PARSE);
+                MarkLogicClient.notifyTimed(timingListener, timings);
+            }
+            MarkLogicClient.finishSlow(slow, parsed, "statements", null);
+        }
+    }
+
+    /**
+     * aborts the response if it has not been fully read, so closing early neither
+     * drains the rest of the body nor leaves the parser running; errors caused
+     * by the abort are expected and only debug logged
      *
      */
     @Override
     protected void handleClose() throws QueryEvaluationException {
+        boolean aborted = abortUnlessComplete();
         try {
             super.handleClose();
         }catch(Exception e){
+            if (aborted) {
+                logger.debug("MarkLogicBackgroundGraphResult handleClose() after abort: {}", e.getLocalizedMessage());
+                return;
+            }
             logger.error("MarkLogicBackgroundGraphResult handleClose() stream closed exception",e);
             throw new QueryEvaluationException(e);
+        } finally {
+            if (metrics != null) {
+                metrics.resultClosed();
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean abortUnlessComplete() {
+        if (request == null) {
+            return false;
         }
+        request.abort();
+        return request.isAborted();
     }
 
+    /**
+     * a response cut short by the deadline is reported rather than ending the result quietly
+     */
+    private void checkTimedOut(Exception e) throws QueryInterruptedException {
+        if (request != null && request.isTimedOut()) {
+            try {
+                close();
+            } catch (QueryEvaluationException closeException) {
+                logger.debug("closing timed out result: {}", closeException.getLocalizedMessage());
+            }
+            throw new QueryInterruptedException("query exceeded max execution time", e);
+        }
+    }
 }
@@ -15,10 +15,17 @@
  */
 package com.marklogic.semantics.sesame.client;
 
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.metrics.PhaseTimed;
+import com.marklogic.semantics.sesame.metrics.PhaseTimingListener;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
 import org.openrdf.http.client.BackgroundTupleResult;
 import org.openrdf.http.client.QueueCursor;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
+import org.openrdf.query.TupleQueryResultHandlerException;
 import org.openrdf.query.resultio.TupleQueryResultParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,10 +37,24 @@ import java.io.InputStream;
  *
  * @author James Fuller
  */
-class MarkLogicBackgroundTupleResult extends BackgroundTupleResult {
+class MarkLogicBackgroundTupleResult extends BackgroundTupleResult implements PhaseTimed {
 
     private static final Logger logger = LoggerFactory.getLogger(MarkLogicBackgroundGraphResult.class);
 
+    private final AbortableRequest request;
+
+    private SkolemMapper skolemMapper;
+
+    private ClientMetrics metrics;
+
+    private PhaseTimings timings;
+
+    private PhaseTimingListener timingListener;
+
+    private SlowOperationLog.Entry slow;
+
+    private long parsed;
+
     /**
      *  constructor
      *
@@ -41,7 +62,19 @@ class MarkLogicBackgroundTupleResult extends BackgroundTupleResult {
      * @param in
      */
     public MarkLogicBackgroundTupleResult(TupleQueryResultParser parser, InputStream in) {
+        this(parser, in, null);
+    }
+
+    /**
+     *  constructor
+     *
+     * @param parser
+     * @param in
+     * @param request - aborted when the max execution time passes, may be null
+     */
+    public MarkLogicBackgroundTupleResult(TupleQueryResultParser parser, InputStream in, AbortableRequest request) {
         super(parser, in);
+        this.request = request;
     }
 
     /**
@@ -53,6 +86,7 @@ class MarkLogicBackgroundTupleResult extends BackgroundTupleResult {
      */
     public MarkLogicBackgroundTupleResult(QueueCursor<BindingSet> queue, TupleQueryResultParser parser, InputStream in) {
         super(queue, parser, in);
+        this.request = null;
     }
 
     /**
@@ -66,22 +100,145 @@ class MarkLogicBackgroundTupleResult extends BackgroundTupleResult {
         try {
             return super.hasNext();
         }catch(Exception e){
+            checkTimedOut(e);
             logger.info("MarkLogicBackgroundTupleResult hasNext() stream closed");
             return false;
         }
     }
 
     /**
-     * wrap exception, debug log
+     * sets the mapper turning skolem IRIs back into blank nodes, must be called before parsing starts
+     *
+     * @param skolemMapper
+     */
+    void setSkolemMapper(SkolemMapper skolemMapper) {
+        this.skolemMapper = skolemMapper != null && skolemMapper.isDeskolemize() ? skolemMapper : null;
+    }
+
+    /**
+     * counts this result as open in metrics until it is closed
+     *
+     * @param metrics
+     */
+    void setMetrics(ClientMetrics metrics) {
+        this.metrics = metrics;
+        metrics.resultOpened();
+    }
+
+    /**
+     * sets timings completed with the PARSE phase once the response has been parsed, must be called before parsing starts
+     *
+     * @param timings
+     * @param timingListener - notified once parsed, may be null
+     */
+    void setPhaseTimings(PhaseTimings timings, PhaseTimingListener timingListener) {
+        this.timings = timings;
+        this.timingListener = timingListener;
+    }
+
+    @Override
+    public PhaseTimings getPhaseTimings() {
+        return timings;
+    }
+
+    /**
+     * sets entry of the slow operation log finished with the rows parsed, must be called before parsing starts
+     *
+     * @param slow - null if slow operations are not logged
+     */
+    void setSlowOperation(SlowOperationLog.Entry slow) {
+        this.slow = slow;
+    }
+
+    /**
+     * deskolemizes and counts on the parser thread, before the solution is queued; time
+     * blocked on a full queue is the consumer's and is left out of the slow operation
+     *
+     */
+    @Override
+    public void handleSolution(BindingSet bindingSet) throws TupleQueryResultHandlerException {
+        parsed++;
+        BindingSet solution = skolemMapper == null ? bindingSet : skolemMapper.deskolemize(bindingSet);
+        if (slow == null) {
+            super.handleSolution(solution);
+            return;
+        }
+        long queued = System.nanoTime();
+        try {
+            super.handleSolution(solution);
+        } finally {
+            slow.exclude(System.nanoTime() - queued);
+        }
+    }
+
+    /**
+     * parses the response, the deadline no longer applies once it has been read
+     *
+     */
+    @Override
+    public void run() {
+        try {
+            super.run();
+        } finally {
+            if (request != null) {
+                request.complete();
+            }
+            if (timings != null) {
+                timings.lap(PhaseTimings.Phase.PARSE);
+                MarkLogicClient.notifyTimed(timingListener, timings);
+            }
+            MarkLogicClient.finishSlow(slow, parsed, "rows", null);
+        }
+    }
+
+    /**
+     * aborts the response if it has not been fully read, so closing early neither
+     * drains the rest of the body nor leaves the parser running; errors caused
+     * by the abort are expected and only debug logged
      *
      */
     @Override
     protected void handleClose() throws QueryEvaluationException {
+        boolean aborted = abortUnlessComplete();
         try {
             super.handleClose();
         }catch(Exception e){
+            if (aborted) {
+                logger.debug("MarkLogicBackgroundTupleResult handleClose() after abort: {}", e.getLocalizedMessage());
+                return;
+            }
             logger.error("MarkLogicBackgroundTupleResult handleClose() stream closed exception",e);
             throw new QueryEvaluationException(e);
+        } finally {
+            if (metrics != null) {
+                metrics.resultClosed();
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean abortUnlessComplete() {
+        if (request == null) {
+            return false;
+        }
+        request.abort();
+        return request.isAborted();
+    }
+
+    /**
+     * a response cut short by the deadline is reported rather than ending the result quietly
+     */
+    private void checkTimedOut(Exception e) throws QueryInterruptedException {
+        if (request != null && request.isTimedOut()) {
+            try {
+                close();
+            } catch (QueryEvaluationException closeException) {
+                logger.debug("closing timed out result: {}", closeException.getLocalizedMessage());
+            }
+            throw new QueryInterruptedException("query exceeded max execution time", e);
         }
     }
 }
@@ -22,11 +22,17 @@ package com.marklogic.semantics.sesame.client;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.marklogic.client.DatabaseClient;
 import com.marklogic.client.Transaction;
+import com.marklogic.client.io.InputStreamHandle;
 import com.marklogic.client.query.QueryDefinition;
 import com.marklogic.client.semantics.GraphPermissions;
 import com.marklogic.client.semantics.SPARQLRuleset;
 import com.marklogic.semantics.sesame.MarkLogicSesameException;
 import com.marklogic.semantics.sesame.MarkLogicTransactionException;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics.Operation;
+import com.marklogic.semantics.sesame.metrics.PhaseTimingListener;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
 import org.apache.commons.io.input.ReaderInputStream;
 import org.openrdf.http.protocol.UnauthorizedException;
 import org.openrdf.model.Resource;
@@ -47,11 +53,23 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An internal class that straddles Sesame and MarkLogic Java API client.
@@ -67,20 +85,57 @@ public class MarkLogicClient {
 
 	protected static final TupleQueryResultFormat format = TupleQueryResultFormat.JSON;
 	protected static final RDFFormat rdfFormat = RDFFormat.NTRIPLES;
-	private MarkLogicClientImpl _client;
 
-	private final Executor executor = Executors.newCachedThreadPool();
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
-	private ValueFactory f;
+	// reused by every raw copy on a thread, raw results are typically large
+	private static final ThreadLocal<byte[]> COPY_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[COPY_BUFFER_SIZE];
+		}
+	};
+	private final MarkLogicClientImpl _client;
+
+	// set on sessions, which share transport, executor and cache scheduler with this root client
+	private final MarkLogicClient shared;
+
+	private volatile ExecutorService executor;
+
+	// times the write caches of all sessions of this client on a single thread, created on
+	// first use; flushes run on the executor so a slow flush does not hold back others
+	private ScheduledThreadPoolExecutor sessionScheduler;
+
+	private final List<ScheduledFuture<?>> sessionFlushes = new ArrayList<ScheduledFuture<?>>();
+
+	private volatile ConnectionSettings settings = new ConnectionSettings();
+
+	// fields are volatile as a client may be shared by threads using the same connection
+	private volatile ValueFactory f;
 
-	private ParserConfig parserConfig = new ParserConfig();
+	private volatile ParserConfig parserConfig = new ParserConfig();
 
-	private Transaction tx = null;
+	private volatile Transaction tx = null;
 
-	private TripleWriteCache timerWriteCache;
-	private Timer writeTimer;
-	private TripleDeleteCache timerDeleteCache;
-	private Timer deleteTimer;
+	private volatile RequestOptions defaultOptions = RequestOptions.DEFAULT;
+
+	private volatile QueryResultCache queryResultCache;
+
+	private volatile SkolemMapper skolemMapper = new SkolemMapper();
+
+	// bumped by reset, queries of a connection closed since hold an older lease
+	private final AtomicLong lease = new AtomicLong();
+
+	private volatile GroupCommitter groupCommitter;
+
+	// batches joined by autocommit adds since the last sync
+	private final List<GroupCommitter.Ticket> pendingTickets = new ArrayList<GroupCommitter.Ticket>();
+
+	private volatile TripleWriteCache timerWriteCache;
+	private volatile Timer writeTimer;
+	private volatile TripleDeleteCache timerDeleteCache;
+	private volatile Timer deleteTimer;
+	private volatile boolean customTimer;
 
 	private static boolean WRITE_CACHE_ENABLED = true;
 	private static boolean DELETE_CACHE_ENABLED = false;
@@ -95,8 +150,7 @@ public class MarkLogicClient {
 	 * @param auth
 	 */
 	public MarkLogicClient(String host, int port, String user, String password,String auth) {
-		this._client = new MarkLogicClientImpl(host,port,user,password,auth);
-		this.initTimer();
+		this(new MarkLogicClientImpl(host,port,user,password,auth));
 	}
 
 	/**
@@ -105,42 +159,123 @@ public class MarkLogicClient {
 	 * @param databaseClient
 	 */
 	public MarkLogicClient(DatabaseClient databaseClient) {
-		this._client = new MarkLogicClientImpl(databaseClient);
+		this(new MarkLogicClientImpl(databaseClient));
+	}
+
+	/**
+	 * constructor init with EndpointPool, requests are load balanced across hosts
+	 *
+	 * @param endpointPool
+	 */
+	public MarkLogicClient(EndpointPool endpointPool) {
+		this(new MarkLogicClientImpl(endpointPool));
+	}
+
+	/**
+	 * constructor init with separate EndpointPools for queries and for writes
+	 *
+	 * @param readEndpointPool
+	 * @param writeEndpointPool
+	 */
+	public MarkLogicClient(EndpointPool readEndpointPool, EndpointPool writeEndpointPool) {
+		this(new MarkLogicClientImpl(readEndpointPool, writeEndpointPool));
+	}
+
+	/**
+	 * constructor init as session of shared client, sharing its transport, executor and
+	 * connection settings. A session has its own transaction and write cache, so sessions
+	 * of one client can run transactions concurrently; its write cache is timed by a
+	 * scheduler shared by all sessions and flushed on the shared executor, rather than by
+	 * a Timer of its own.
+	 *
+	 * @param shared
+	 */
+	public MarkLogicClient(MarkLogicClient shared) {
+		MarkLogicClient root = shared.shared != null ? shared.shared : shared;
+		this._client = root._client;
+		this.shared = root;
+		this.settings = root.settings;
+		this.f = root.f;
+		this.skolemMapper = root.skolemMapper;
+		this.initTimer();
+	}
+
+	private MarkLogicClient(MarkLogicClientImpl client) {
+		this._client = client;
+		this.shared = null;
+		this.executor = Executors.newCachedThreadPool();
 		this.initTimer();
 	}
 
+	/**
+	 * checks if this client is a session of a shared client
+	 *
+	 * @return
+	 */
+	public boolean isSession() {
+		return this.shared != null;
+	}
+
 	/**
 	 * start Timer task (write cache)
 	 */
 	public void initTimer(){
 		stopTimer();
+		customTimer = false;
 		if(this.WRITE_CACHE_ENABLED) {
 			logger.debug("configuring write cache with defaults");
-			timerWriteCache = new TripleWriteCache(this);
-			writeTimer = new Timer();
-			writeTimer.scheduleAtFixedRate(timerWriteCache, TripleWriteCache.DEFAULT_INITIAL_DELAY, TripleWriteCache.DEFAULT_CACHE_MILLIS);
+			ConnectionSettings settings = this.settings;
+			timerWriteCache = new TripleWriteCache(this, settings.getWriteCacheSize());
+			writeTimer = schedule(timerWriteCache, settings.getWriteCacheInitialDelay(), settings.getWriteCacheMillis());
 		}
 		if(this.DELETE_CACHE_ENABLED) {
 			logger.debug("configuring delete cache with defaults");
 			timerDeleteCache = new TripleDeleteCache(this);
-			deleteTimer = new Timer();
-			deleteTimer.scheduleAtFixedRate(timerDeleteCache, TripleDeleteCache.DEFAULT_INITIAL_DELAY, TripleDeleteCache.DEFAULT_CACHE_MILLIS);
+			deleteTimer = schedule(timerDeleteCache, TripleDeleteCache.DEFAULT_INITIAL_DELAY, TripleDeleteCache.DEFAULT_CACHE_MILLIS);
+		}
+	}
+
+	/**
+	 * applies connection settings, write cache and executor are recreated and transport
+	 * settings are applied to the DatabaseClient of every host; sessions only recreate
+	 * their write cache, transport and executor belong to the shared client
+	 *
+	 * @param settings - null restores defaults
+	 */
+	public synchronized void configure(ConnectionSettings settings) {
+		this.settings = settings != null ? settings : new ConnectionSettings();
+		if (isSession()) {
+			initTimer();
+			return;
 		}
+		getClient().applyConnectionSettings(this.settings);
+		ExecutorService previous = this.executor;
+		this.executor = this.settings.newExecutor();
+		previous.shutdown();
+		initTimer();
+	}
+
+	/**
+	 * getter for ConnectionSettings
+	 *
+	 * @return
+	 */
+	public ConnectionSettings getConnectionSettings() {
+		return this.settings;
 	}
 
 	public void initTimer(long initDelay, long delayCache, long cacheSize ){
 		stopTimer();
+		customTimer = true;
 		if(this.WRITE_CACHE_ENABLED) {
 			logger.debug("configuring write cache");
 			timerWriteCache = new TripleWriteCache(this,cacheSize);
-			writeTimer = new Timer();
-			writeTimer.scheduleAtFixedRate(timerWriteCache, initDelay, delayCache);
+			writeTimer = schedule(timerWriteCache, initDelay, delayCache);
 		}
 		if(this.DELETE_CACHE_ENABLED) {
 			logger.debug("configuring delete cache");
 			timerDeleteCache = new TripleDeleteCache(this);
-			deleteTimer = new Timer();
-			deleteTimer.scheduleAtFixedRate(timerDeleteCache, initDelay, delayCache);
+			deleteTimer = schedule(timerDeleteCache, initDelay, delayCache);
 		}
 	}
 	/**
@@ -160,6 +295,12 @@ public class MarkLogicClient {
 			if(deleteTimer != null){
 				deleteTimer.cancel();
 			}
+			synchronized (sessionFlushes) {
+				for (ScheduledFuture<?> flush : sessionFlushes) {
+					flush.cancel(false);
+				}
+				sessionFlushes.clear();
+			}
 		}
 	}
 
@@ -173,6 +314,52 @@ public class MarkLogicClient {
 			timerWriteCache.forceRun();
 		if(DELETE_CACHE_ENABLED && timerDeleteCache != null)
 			timerDeleteCache.forceRun();
+		awaitGroupCommit();
+	}
+
+	/**
+	 * forces write cache to flush triples ahead of a query; when phase timing is enabled the
+	 * flush is timed as the SYNC phase of the next query or update sent from this thread.
+	 * Callers unbind the timings with PhaseTimings.unbind() in a finally block, in case no
+	 * query is sent.
+	 *
+	 * @throws MarkLogicSesameException
+	 */
+	public void syncForQuery() throws MarkLogicSesameException {
+		// timings of an earlier sync are stale even if no query took them
+		PhaseTimings.unbind();
+		if (!isPhaseTiming()) {
+			sync();
+			return;
+		}
+		PhaseTimings timings = new PhaseTimings();
+		sync();
+		timings.lap(PhaseTimings.Phase.SYNC);
+		// bound once flushed, the flush updates are timed on their own
+		timings.bind();
+	}
+
+	/**
+	 * lease of the connection using this client, queries, templates and batches take it
+	 * when created and pass it to checkLease before every request
+	 *
+	 * @return long
+	 */
+	public long getLease() {
+		return lease.get();
+	}
+
+	/**
+	 * checks the client was not reset since lease was taken, ie. that the connection which
+	 * created the caller is still open and the client was not handed to another connection
+	 *
+	 * @param lease
+	 * @throws MarkLogicSesameException
+	 */
+	public void checkLease(long lease) throws MarkLogicSesameException {
+		if (this.lease.get() != lease) {
+			throw new MarkLogicSesameException("connection is closed, its client was returned to the pool");
+		}
 	}
 
 	/**
@@ -210,16 +397,67 @@ public class MarkLogicClient {
 	 */
 	public TupleQueryResult sendTupleQuery(String queryString,SPARQLQueryBindingSet bindings, long start, long pageLength, boolean includeInferred, String baseURI) throws RepositoryException, MalformedQueryException,
 			QueryInterruptedException {
+		return sendTupleQuery(queryString, bindings, start, pageLength, getRequestOptions(includeInferred, baseURI));
+	}
+
+	/**
+	 * TupleQuery with per request options
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param start
+	 * @param pageLength
+	 * @param options
+	 * @return
+	 * @throws RepositoryException
+	 * @throws MalformedQueryException
+	 * @throws QueryInterruptedException
+	 */
+	public TupleQueryResult sendTupleQuery(String queryString, SPARQLQueryBindingSet bindings, long start, long pageLength, RequestOptions options) throws RepositoryException, MalformedQueryException,
+			QueryInterruptedException {
+		PhaseTimings timings = takePhaseTimings(Operation.TUPLE_QUERY, queryString);
+		SlowOperationLog.Entry slow = startSlow(Operation.TUPLE_QUERY, queryString, bindings, options);
+		QueryResultCache cache = getActiveQueryResultCache();
+		QueryResultCache.Key key = null;
+		long generation = 0;
+		if (cache != null) {
+			key = QueryResultCache.key("tuple", queryString, bindings, options, start, pageLength);
+			TupleQueryResult cached = cache.getTupleResult(key);
+			if (cached != null) {
+				recordCacheHit(Operation.TUPLE_QUERY, slow, timings);
+				return cached;
+			}
+			generation = cache.getWriteGeneration();
+		}
 		InputStream stream = null;
+		AbortableRequest request = AbortableRequest.begin(options.getMaxExecutionTimeMillis());
 		try {
-			stream = getClient().performSPARQLQuery(queryString, bindings, start, pageLength, this.tx, includeInferred, baseURI);
+			stream = getClient().performSPARQLQuery(queryString, skolemize(bindings), new InputStreamHandle(), start, pageLength, this.tx, options, timings);
 		} catch (JsonProcessingException e) {
+			request.complete();
+			finishSlow(slow, -1, null, e);
 			logger.error(e.getLocalizedMessage());
 			throw new MarkLogicSesameException("Issue processing json.");
+		} catch (RuntimeException e) {
+			request.complete();
+			finishSlow(slow, -1, null, e);
+			throwIfTimedOut(request, options, e);
+			throw e;
+		} finally {
+			request.unbind();
 		}
 		TupleQueryResultParser parser = QueryResultIO.createParser(format, getValueFactory());
-		MarkLogicBackgroundTupleResult tRes = new MarkLogicBackgroundTupleResult(parser,stream);
+		MarkLogicBackgroundTupleResult tRes = new MarkLogicBackgroundTupleResult(parser,stream,request);
+		tRes.setSkolemMapper(skolemMapper);
+		tRes.setMetrics(getMetrics());
+		if (timings != null) {
+			tRes.setPhaseTimings(timings, getPhaseTimingListener());
+		}
+		tRes.setSlowOperation(slow);
 		execute(tRes);
+		if (cache != null) {
+			return cache.cacheTupleResult(key, generation, tRes);
+		}
 		return tRes;
 	}
 
@@ -233,8 +471,46 @@ public class MarkLogicClient {
 	 * @return
 	 * @throws IOException
 	 */
-	public GraphQueryResult sendGraphQuery(String queryString, SPARQLQueryBindingSet bindings, boolean includeInferred, String baseURI) throws IOException, MarkLogicSesameException {
-		InputStream stream = getClient().performGraphQuery(queryString, bindings, this.tx, includeInferred, baseURI);
+	public GraphQueryResult sendGraphQuery(String queryString, SPARQLQueryBindingSet bindings, boolean includeInferred, String baseURI) throws IOException, MarkLogicSesameException, QueryInterruptedException {
+		return sendGraphQuery(queryString, bindings, getRequestOptions(includeInferred, baseURI));
+	}
+
+	/**
+	 * GraphQuery with per request options
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param options
+	 * @return
+	 * @throws IOException
+	 */
+	public GraphQueryResult sendGraphQuery(String queryString, SPARQLQueryBindingSet bindings, RequestOptions options) throws IOException, MarkLogicSesameException, QueryInterruptedException {
+		PhaseTimings timings = takePhaseTimings(Operation.GRAPH_QUERY, queryString);
+		SlowOperationLog.Entry slow = startSlow(Operation.GRAPH_QUERY, queryString, bindings, options);
+		QueryResultCache cache = getActiveQueryResultCache();
+		QueryResultCache.Key key = null;
+		long generation = 0;
+		if (cache != null) {
+			key = QueryResultCache.key("graph", queryString, bindings, options, 0, 0);
+			GraphQueryResult cached = cache.getGraphResult(key);
+			if (cached != null) {
+				recordCacheHit(Operation.GRAPH_QUERY, slow, timings);
+				return cached;
+			}
+			generation = cache.getWriteGeneration();
+		}
+		InputStream stream;
+		AbortableRequest request = AbortableRequest.begin(options.getMaxExecutionTimeMillis());
+		try {
+			stream = getClient().performGraphQuery(queryString, skolemize(bindings), new InputStreamHandle(), this.tx, options, timings);
+		} catch (RuntimeException e) {
+			request.complete();
+			finishSlow(slow, -1, null, e);
+			throwIfTimedOut(request, options, e);
+			throw e;
+		} finally {
+			request.unbind();
+		}
 
 		RDFParser parser = Rio.createParser(rdfFormat, getValueFactory());
 		parser.setParserConfig(getParserConfig());
@@ -244,16 +520,101 @@ public class MarkLogicClient {
 		MarkLogicBackgroundGraphResult gRes;
 
 		// fixup - baseURI cannot be null
-		if(baseURI != null){
-			gRes= new MarkLogicBackgroundGraphResult(parser,stream,charset,baseURI);
+		if(options.getBaseURI() != null){
+			gRes= new MarkLogicBackgroundGraphResult(parser,stream,charset,options.getBaseURI(),request);
 		}else{
-			gRes= new MarkLogicBackgroundGraphResult(parser,stream,charset,"");
+			gRes= new MarkLogicBackgroundGraphResult(parser,stream,charset,"",request);
 		}
 
+		gRes.setSkolemMapper(skolemMapper, getValueFactory());
+		gRes.setMetrics(getMetrics());
+		if (timings != null) {
+			gRes.setPhaseTimings(timings, getPhaseTimingListener());
+		}
+		gRes.setSlowOperation(slow);
 		execute(gRes);
+		if (cache != null) {
+			return cache.cacheGraphResult(key, generation, gRes);
+		}
 		return gRes;
 	}
 
+	/**
+	 * TupleQuery with results copied unparsed to out
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param start
+	 * @param pageLength
+	 * @param resultFormat - format requested from the server
+	 * @param out
+	 * @param options
+	 * @return number of bytes copied
+	 * @throws IOException
+	 * @throws MarkLogicSesameException
+	 * @throws QueryInterruptedException
+	 */
+	public long sendTupleQuery(String queryString, SPARQLQueryBindingSet bindings, long start, long pageLength, TupleQueryResultFormat resultFormat, OutputStream out, RequestOptions options) throws IOException, MarkLogicSesameException,
+			QueryInterruptedException {
+		return sendRawQuery(true, queryString, bindings, start, pageLength, resultFormat.getDefaultMIMEType(), out, null, options);
+	}
+
+	/**
+	 * TupleQuery with results copied unparsed to channel
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param start
+	 * @param pageLength
+	 * @param resultFormat - format requested from the server
+	 * @param channel
+	 * @param options
+	 * @return number of bytes copied
+	 * @throws IOException
+	 * @throws MarkLogicSesameException
+	 * @throws QueryInterruptedException
+	 */
+	public long sendTupleQuery(String queryString, SPARQLQueryBindingSet bindings, long start, long pageLength, TupleQueryResultFormat resultFormat, WritableByteChannel channel, RequestOptions options) throws IOException, MarkLogicSesameException,
+			QueryInterruptedException {
+		return sendRawQuery(true, queryString, bindings, start, pageLength, resultFormat.getDefaultMIMEType(), null, channel, options);
+	}
+
+	/**
+	 * GraphQuery with results copied unparsed to out
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param resultFormat - format requested from the server
+	 * @param out
+	 * @param options
+	 * @return number of bytes copied
+	 * @throws IOException
+	 * @throws MarkLogicSesameException
+	 * @throws QueryInterruptedException
+	 */
+	public long sendGraphQuery(String queryString, SPARQLQueryBindingSet bindings, RDFFormat resultFormat, OutputStream out, RequestOptions options) throws IOException, MarkLogicSesameException,
+			QueryInterruptedException {
+		return sendRawQuery(false, queryString, bindings, 1, -1, resultFormat.getDefaultMIMEType(), out, null, options);
+	}
+
+	/**
+	 * GraphQuery with results copied unparsed to channel
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param resultFormat - format requested from the server
+	 * @param channel
+	 * @param options
+	 * @return number of bytes copied
+	 * @throws IOException
+	 * @throws MarkLogicSesameException
+	 * @throws QueryInterruptedException
+	 */
+	public long sendGraphQuery(String queryString, SPARQLQueryBindingSet bindings, RDFFormat resultFormat, WritableByteChannel channel, RequestOptions options) throws IOException, MarkLogicSesameException,
+			QueryInterruptedException {
+		return sendRawQuery(false, queryString, bindings, 1, -1, resultFormat.getDefaultMIMEType(), null, channel, options);
+	}
+
 	/**
 	 * BooleanQuery
 	 *
@@ -270,7 +631,39 @@ public class MarkLogicClient {
 	 */
 	public boolean sendBooleanQuery(String queryString, SPARQLQueryBindingSet bindings, boolean includeInferred, String baseURI) throws IOException, RepositoryException, MalformedQueryException,
 			QueryInterruptedException {
-		return getClient().performBooleanQuery(queryString, bindings, this.tx, includeInferred, baseURI);
+		return sendBooleanQuery(queryString, bindings, getRequestOptions(includeInferred, baseURI));
+	}
+
+	/**
+	 * BooleanQuery with per request options
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param options
+	 * @return
+	 * @throws IOException
+	 * @throws RepositoryException
+	 * @throws MalformedQueryException
+	 * @throws QueryInterruptedException
+	 */
+	public boolean sendBooleanQuery(String queryString, SPARQLQueryBindingSet bindings, RequestOptions options) throws IOException, RepositoryException, MalformedQueryException,
+			QueryInterruptedException {
+		PhaseTimings timings = takePhaseTimings(Operation.BOOLEAN_QUERY, queryString);
+		SlowOperationLog.Entry slow = startSlow(Operation.BOOLEAN_QUERY, queryString, bindings, options);
+		QueryResultCache cache = getActiveQueryResultCache();
+		if (cache == null) {
+			return performBooleanQuery(queryString, bindings, options, timings, slow);
+		}
+		QueryResultCache.Key key = QueryResultCache.key("boolean", queryString, bindings, options, 0, 0);
+		Boolean cached = cache.getBooleanResult(key);
+		if (cached != null) {
+			recordCacheHit(Operation.BOOLEAN_QUERY, slow, timings);
+			return cached;
+		}
+		long generation = cache.getWriteGeneration();
+		boolean result = performBooleanQuery(queryString, bindings, options, timings, slow);
+		cache.cacheBooleanResult(key, generation, result);
+		return result;
 	}
 
 	/**
@@ -287,7 +680,38 @@ public class MarkLogicClient {
 	 * @throws UpdateExecutionException
 	 */
 	public void sendUpdateQuery(String queryString, SPARQLQueryBindingSet bindings, boolean includeInferred, String baseURI) throws IOException, RepositoryException, MalformedQueryException,UpdateExecutionException {
-		getClient().performUpdateQuery(queryString, bindings, this.tx, includeInferred, baseURI);
+		sendUpdateQuery(queryString, bindings, getRequestOptions(includeInferred, baseURI));
+	}
+
+	/**
+	 * UpdateQuery with per request options
+	 *
+	 * @param queryString
+	 * @param bindings
+	 * @param options
+	 * @throws IOException
+	 * @throws RepositoryException
+	 * @throws MalformedQueryException
+	 * @throws UpdateExecutionException
+	 */
+	public void sendUpdateQuery(String queryString, SPARQLQueryBindingSet bindings, RequestOptions options) throws IOException, RepositoryException, MalformedQueryException,UpdateExecutionException {
+		sendUpdateQuery(queryString, bindings, options, startSlow(Operation.UPDATE, queryString, bindings, options), -1);
+	}
+
+	/**
+	 * write cache or group commit flush, logged as a FLUSH of statements when slow
+	 *
+	 * @param insertData
+	 * @param statements
+	 * @throws IOException
+	 * @throws RepositoryException
+	 * @throws MalformedQueryException
+	 * @throws UpdateExecutionException
+	 */
+	void sendFlush(String insertData, long statements) throws IOException, RepositoryException, MalformedQueryException,UpdateExecutionException {
+		SlowOperationLog log = getSlowOperationLog();
+		SlowOperationLog.Entry slow = log != null ? log.start("FLUSH", insertData, null, null) : null;
+		sendUpdateQuery(insertData, new SPARQLQueryBindingSet(), getRequestOptions(false, null), slow, statements);
 	}
 
 	/**
@@ -300,7 +724,18 @@ public class MarkLogicClient {
 	 * @throws RDFParseException
 	 */
 	public void sendAdd(File file, String baseURI, RDFFormat dataFormat, Resource... contexts) throws RDFParseException {
-		getClient().performAdd(file, baseURI, dataFormat, this.tx, contexts);
+		SlowOperationLog.Entry slow = startSlow(Operation.ADD, null, null, null);
+		long bytes = -1;
+		Throwable failure = null;
+		try {
+			bytes = getClient().performAdd(file, baseURI, dataFormat, this.tx, getGraphPerms(), contexts);
+		} catch (Throwable e) {
+			failure = e;
+			throw e;
+		} finally {
+			finishSlow(slow, bytes, "bytes", failure);
+			invalidateQueryResultCache();
+		}
 	}
 
 	/**
@@ -312,7 +747,18 @@ public class MarkLogicClient {
 	 * @param contexts
 	 */
 	public void sendAdd(InputStream in, String baseURI, RDFFormat dataFormat, Resource... contexts) throws RDFParseException, MarkLogicSesameException {
-		getClient().performAdd(in, baseURI, dataFormat, this.tx, contexts);
+		SlowOperationLog.Entry slow = startSlow(Operation.ADD, null, null, null);
+		long bytes = -1;
+		Throwable failure = null;
+		try {
+			bytes = getClient().performAdd(in, baseURI, dataFormat, this.tx, getGraphPerms(), contexts);
+		} catch (Throwable e) {
+			failure = e;
+			throw e;
+		} finally {
+			finishSlow(slow, bytes, "bytes", failure);
+			invalidateQueryResultCache();
+		}
 	}
 
 	/**
@@ -325,7 +771,7 @@ public class MarkLogicClient {
 	 */
 	public void sendAdd(Reader in, String baseURI, RDFFormat dataFormat, Resource... contexts) throws RDFParseException, MarkLogicSesameException {
 		//TBD- must deal with char encoding
-		getClient().performAdd(new ReaderInputStream(in), baseURI, dataFormat, this.tx, contexts);
+		sendAdd(new ReaderInputStream(in), baseURI, dataFormat, contexts);
 	}
 
 	/**
@@ -338,10 +784,25 @@ public class MarkLogicClient {
 	 * @param contexts
 	 */
 	public void sendAdd(String baseURI, Resource subject, URI predicate, Value object, Resource... contexts) throws MarkLogicSesameException {
-		if (WRITE_CACHE_ENABLED) {
+		GroupCommitter groupCommitter = this.groupCommitter;
+		GroupCommitter.Ticket ticket = null;
+		if (groupCommitter != null && !isActiveTransaction()) {
+			ticket = groupCommitter.add(subject, predicate, object, contexts);
+		}
+		if (ticket != null) {
+			synchronized (pendingTickets) {
+				if (pendingTickets.isEmpty() || pendingTickets.get(pendingTickets.size() - 1) != ticket) {
+					pendingTickets.add(ticket);
+				}
+			}
+		} else if (WRITE_CACHE_ENABLED) {
 			timerWriteCache.add(subject, predicate, object, contexts);
 		} else {
-			getClient().performAdd(baseURI, (Resource) skolemize(subject), (URI) skolemize(predicate), skolemize(object), this.tx, contexts);
+			try {
+				getClient().performAdd(baseURI, (Resource) skolemize(subject), (URI) skolemize(predicate), skolemize(object), this.tx, getGraphPerms(), contexts);
+			} finally {
+				invalidateQueryResultCache();
+			}
 		}
 	}
 
@@ -360,7 +821,17 @@ public class MarkLogicClient {
 		} else {
 			if (WRITE_CACHE_ENABLED)
 				sync();
-			getClient().performRemove(baseURI, (Resource) skolemize(subject), (URI) skolemize(predicate), skolemize(object), this.tx, contexts);
+			SlowOperationLog.Entry slow = startSlow(Operation.REMOVE, null, pattern(subject, predicate, object), null);
+			Throwable failure = null;
+			try {
+				getClient().performRemove(baseURI, (Resource) skolemize(subject), (URI) skolemize(predicate), skolemize(object), this.tx, contexts);
+			} catch (Throwable e) {
+				failure = e;
+				throw e;
+			} finally {
+				finishSlow(slow, -1, null, failure);
+				invalidateQueryResultCache();
+			}
 		}
 	}
 
@@ -370,7 +841,11 @@ public class MarkLogicClient {
 	 * @param contexts
 	 */
 	public void sendClear(Resource... contexts) throws MarkLogicSesameException {
-		getClient().performClear(this.tx, contexts);
+		try {
+			getClient().performClear(this.tx, contexts);
+		} finally {
+			invalidateQueryResultCache();
+		}
 	}
 
 	/**
@@ -378,7 +853,11 @@ public class MarkLogicClient {
 	 *
 	 */
 	public void sendClearAll() throws MarkLogicSesameException {
-		getClient().performClearAll(this.tx);
+		try {
+			getClient().performClearAll(this.tx);
+		} finally {
+			invalidateQueryResultCache();
+		}
 	}
 
 	/**
@@ -386,9 +865,9 @@ public class MarkLogicClient {
 	 *
 	 * @throws MarkLogicTransactionException
 	 */
-	public void openTransaction() throws MarkLogicTransactionException {
+	public synchronized void openTransaction() throws MarkLogicTransactionException {
 		if (!isActiveTransaction()) {
-			this.tx = getClient().getDatabaseClient().openTransaction();
+			this.tx = getClient().openTransaction();
 		}else{
 			throw new MarkLogicTransactionException("Only one active transaction allowed.");
 		}
@@ -399,15 +878,17 @@ public class MarkLogicClient {
 	 *
 	 * @throws MarkLogicTransactionException
 	 */
-	public void commitTransaction() throws MarkLogicTransactionException {
+	public synchronized void commitTransaction() throws MarkLogicTransactionException {
 		if (isActiveTransaction()) {
 			try {
 				sync();
-				this.tx.commit();
+				getClient().commitTransaction(this.tx);
 				this.tx=null;
 			} catch (MarkLogicSesameException e) {
 				logger.error(e.getLocalizedMessage());
 				throw new MarkLogicTransactionException(e);
+			} finally {
+				invalidateQueryResultCache();
 			}
 		}else{
 			throw new MarkLogicTransactionException("No active transaction to commit.");
@@ -419,14 +900,14 @@ public class MarkLogicClient {
 	 *
 	 * @throws MarkLogicTransactionException
 	 */
-	public void rollbackTransaction() throws MarkLogicTransactionException {
+	public synchronized void rollbackTransaction() throws MarkLogicTransactionException {
 		if(isActiveTransaction()) {
 			try {
 				sync();
 			} catch (MarkLogicSesameException e) {
 				throw new MarkLogicTransactionException(e);
 			}
-			this.tx.rollback();
+			getClient().rollbackTransaction(this.tx);
 			this.tx = null;
 		}else{
 			throw new MarkLogicTransactionException("No active transaction to rollback.");
@@ -447,7 +928,7 @@ public class MarkLogicClient {
 	 *
 	 * @throws MarkLogicTransactionException
 	 */
-	public void setAutoCommit() throws MarkLogicTransactionException {
+	public synchronized void setAutoCommit() throws MarkLogicTransactionException {
 		if (isActiveTransaction()) {
 			throw new MarkLogicTransactionException("Active transaction.");
 		}else{
@@ -478,8 +959,8 @@ public class MarkLogicClient {
 	 *
 	 * @param rulesets
 	 */
-	public void setRulesets(SPARQLRuleset... rulesets){
-		getClient().setRulesets(rulesets);
+	public synchronized void setRulesets(SPARQLRuleset... rulesets){
+		this.defaultOptions = this.defaultOptions.withRulesets(rulesets);
 	}
 
 	/**
@@ -488,7 +969,7 @@ public class MarkLogicClient {
 	 * @return
 	 */
 	public SPARQLRuleset[] getRulesets(){
-		return getClient().getRulesets();
+		return this.defaultOptions.getRulesets();
 	}
 
 	/**
@@ -496,8 +977,8 @@ public class MarkLogicClient {
 	 *
 	 * @param constrainingQueryDefinition
 	 */
-	public void setConstrainingQueryDefinition(QueryDefinition constrainingQueryDefinition){
-		getClient().setConstrainingQueryDefinition(constrainingQueryDefinition);
+	public synchronized void setConstrainingQueryDefinition(QueryDefinition constrainingQueryDefinition){
+		this.defaultOptions = this.defaultOptions.withConstrainingQueryDefinition(constrainingQueryDefinition);
 	}
 
 	/**
@@ -506,7 +987,7 @@ public class MarkLogicClient {
 	 * @return
 	 */
 	public QueryDefinition getConstrainingQueryDefinition(){
-		return getClient().getConstrainingQueryDefinition();
+		return this.defaultOptions.getConstrainingQueryDefinition();
 	}
 
 	/**
@@ -514,12 +995,12 @@ public class MarkLogicClient {
 	 *
 	 * @param graphPerms
 	 */
-	public void setGraphPerms(GraphPermissions graphPerms){
+	public synchronized void setGraphPerms(GraphPermissions graphPerms){
 
 		if (graphPerms != null) {
-			getClient().setGraphPerms(graphPerms);
+			this.defaultOptions = this.defaultOptions.withGraphPerms(graphPerms);
 		}else {
-			getClient().setGraphPerms(getClient().getDatabaseClient().newGraphManager().newGraphPermissions());
+			this.defaultOptions = this.defaultOptions.withGraphPerms(emptyGraphPerms());
 		}
 	}
 
@@ -529,7 +1010,160 @@ public class MarkLogicClient {
 	 * @return
 	 */
 	public GraphPermissions getGraphPerms(){
-		return getClient().getGraphPerms();
+		return this.defaultOptions.getGraphPerms();
+	}
+
+	/**
+	 * setter for QueryResultCache, null disables result caching
+	 *
+	 * @param queryResultCache
+	 */
+	public void setQueryResultCache(QueryResultCache queryResultCache) {
+		this.queryResultCache = queryResultCache;
+	}
+
+	/**
+	 * getter for QueryResultCache
+	 *
+	 * @return
+	 */
+	public QueryResultCache getQueryResultCache() {
+		return this.queryResultCache;
+	}
+
+	/**
+	 * getter for GroupCommitter
+	 *
+	 * @return
+	 */
+	public GroupCommitter getGroupCommitter() {
+		return this.groupCommitter;
+	}
+
+	/**
+	 * sets the group committer autocommit adds are batched by, null or a closed group
+	 * committer writes them through the write cache of this client
+	 *
+	 * @param groupCommitter
+	 */
+	public void setGroupCommitter(GroupCommitter groupCommitter) {
+		this.groupCommitter = groupCommitter;
+	}
+
+	/**
+	 * getter for SkolemMapper
+	 *
+	 * @return
+	 */
+	public SkolemMapper getSkolemMapper() {
+		return this.skolemMapper;
+	}
+
+	/**
+	 * sets the mapping between blank nodes and skolem IRIs used when writing and reading
+	 *
+	 * @param skolemMapper
+	 */
+	public void setSkolemMapper(SkolemMapper skolemMapper) {
+		this.skolemMapper = skolemMapper != null ? skolemMapper : new SkolemMapper();
+	}
+
+	/**
+	 * getter for ClientMetrics, shared with sessions of this client
+	 *
+	 * @return
+	 */
+	public ClientMetrics getMetrics() {
+		return _client.getMetrics();
+	}
+
+	/**
+	 * sets metrics recorded by requests of this client and its sessions
+	 *
+	 * @param metrics
+	 */
+	public void setMetrics(ClientMetrics metrics) {
+		_client.setMetrics(metrics);
+	}
+
+	/**
+	 * true if queries and updates of this client and its sessions record PhaseTimings
+	 *
+	 * @return boolean
+	 */
+	public boolean isPhaseTiming() {
+		return _client.isPhaseTiming();
+	}
+
+	/**
+	 * enables timings, available from results as PhaseTimed
+	 *
+	 * @param phaseTiming
+	 */
+	public void setPhaseTiming(boolean phaseTiming) {
+		_client.setPhaseTiming(phaseTiming);
+	}
+
+	/**
+	 * getter for PhaseTimingListener
+	 *
+	 * @return
+	 */
+	public PhaseTimingListener getPhaseTimingListener() {
+		return _client.getPhaseTimingListener();
+	}
+
+	/**
+	 * sets listener notified of the timings of every query and update, enables phase timing
+	 *
+	 * @param phaseTimingListener - null to remove
+	 */
+	public void setPhaseTimingListener(PhaseTimingListener phaseTimingListener) {
+		_client.setPhaseTimingListener(phaseTimingListener);
+	}
+
+	/**
+	 * getter for SlowOperationLog, shared with sessions of this client
+	 *
+	 * @return
+	 */
+	public SlowOperationLog getSlowOperationLog() {
+		return _client.getSlowOperationLog();
+	}
+
+	/**
+	 * sets log of queries, updates, adds, removes and flushes of this client and its sessions slower than its threshold
+	 *
+	 * @param slowOperationLog - null disables slow operation logging
+	 */
+	public void setSlowOperationLog(SlowOperationLog slowOperationLog) {
+		_client.setSlowOperationLog(slowOperationLog);
+	}
+
+	/**
+	 * adds interceptor called around every request of this client and its sessions
+	 *
+	 * @param interceptor
+	 */
+	public void addRequestInterceptor(RequestInterceptor interceptor) {
+		_client.addRequestInterceptor(interceptor);
+	}
+
+	/**
+	 * @param interceptor
+	 * @return boolean - true if it was registered
+	 */
+	public boolean removeRequestInterceptor(RequestInterceptor interceptor) {
+		return _client.removeRequestInterceptor(interceptor);
+	}
+
+	/**
+	 * getter for registered interceptors, in the order before() is called
+	 *
+	 * @return
+	 */
+	public List<RequestInterceptor> getRequestInterceptors() {
+		return _client.getRequestInterceptors();
 	}
 
 	public GraphPermissions emptyGraphPerms(){
@@ -540,8 +1174,28 @@ public class MarkLogicClient {
 	 *exec
 	 * @param command
 	 */
-	protected void execute(Runnable command) {
-		executor.execute(command);
+	protected void execute(final Runnable command) {
+		if (isSession()) {
+			shared.execute(command);
+			return;
+		}
+		final ClientMetrics metrics = getMetrics();
+		metrics.taskSubmitted();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						command.run();
+					} finally {
+						metrics.taskFinished();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			metrics.taskFinished();
+			throw e;
+		}
 	}
 
 
@@ -549,6 +1203,224 @@ public class MarkLogicClient {
 	// private ////////////////////////////////////////////////////////////////////////////////////
 	///////////////////////////////////////////////////////////////////////////////////////////////
 
+	private boolean performBooleanQuery(String queryString, SPARQLQueryBindingSet bindings, RequestOptions options, PhaseTimings timings, SlowOperationLog.Entry slow) throws MarkLogicSesameException, QueryInterruptedException {
+		Throwable failure = null;
+		AbortableRequest request = AbortableRequest.begin(options.getMaxExecutionTimeMillis());
+		try {
+			boolean result = getClient().performBooleanQuery(queryString, skolemize(bindings), this.tx, options, timings);
+			if (timings != null) {
+				notifyTimed(getPhaseTimingListener(), timings);
+			}
+			return result;
+		} catch (MarkLogicSesameException e) {
+			failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			failure = e;
+			throwIfTimedOut(request, options, e);
+			throw e;
+		} finally {
+			request.complete();
+			request.unbind();
+			finishSlow(slow, -1, null, failure);
+		}
+	}
+
+	private void sendUpdateQuery(String queryString, SPARQLQueryBindingSet bindings, RequestOptions options, SlowOperationLog.Entry slow, long statements) throws UpdateExecutionException, MarkLogicSesameException {
+		PhaseTimings timings = takePhaseTimings(Operation.UPDATE, queryString);
+		Throwable failure = null;
+		AbortableRequest request = AbortableRequest.begin(options.getMaxExecutionTimeMillis());
+		try {
+			getClient().performUpdateQuery(queryString, skolemize(bindings), this.tx, options, timings);
+			if (timings != null) {
+				notifyTimed(getPhaseTimingListener(), timings);
+			}
+		} catch (MarkLogicSesameException e) {
+			failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			failure = e;
+			if (request.isTimedOut()) {
+				throw new UpdateExecutionException("update exceeded max execution time of " + options.getMaxExecutionTimeMillis() + " ms", e);
+			}
+			throw e;
+		} finally {
+			request.complete();
+			request.unbind();
+			finishSlow(slow, statements, "statements", failure);
+			invalidateQueryResultCache();
+		}
+	}
+
+	/**
+	 * copies the response body to out or channel without parsing, results are not cached
+	 */
+	private long sendRawQuery(boolean tuple, String queryString, SPARQLQueryBindingSet bindings, long start, long pageLength, String mimetype, OutputStream out, WritableByteChannel channel, RequestOptions options) throws IOException, MarkLogicSesameException,
+			QueryInterruptedException {
+		PhaseTimings timings = takePhaseTimings(tuple ? Operation.TUPLE_QUERY : Operation.GRAPH_QUERY, queryString);
+		SlowOperationLog.Entry slow = startSlow(tuple ? Operation.TUPLE_QUERY : Operation.GRAPH_QUERY, queryString, bindings, options);
+		InputStreamHandle handle = new InputStreamHandle().withMimetype(mimetype);
+		AbortableRequest request = AbortableRequest.begin(options.getMaxExecutionTimeMillis());
+		InputStream stream;
+		try {
+			if (tuple) {
+				stream = getClient().performSPARQLQuery(queryString, skolemize(bindings), handle, start, pageLength, this.tx, options, timings);
+			} else {
+				stream = getClient().performGraphQuery(queryString, skolemize(bindings), handle, this.tx, options, timings);
+			}
+		} catch (JsonProcessingException e) {
+			request.complete();
+			finishSlow(slow, -1, null, e);
+			logger.error(e.getLocalizedMessage());
+			throw new MarkLogicSesameException("Issue processing json.");
+		} catch (RuntimeException e) {
+			request.complete();
+			finishSlow(slow, -1, null, e);
+			throwIfTimedOut(request, options, e);
+			throw e;
+		} finally {
+			request.unbind();
+		}
+		long copied = -1;
+		Exception failure = null;
+		try {
+			copied = channel != null ? copy(stream, channel) : copy(stream, out);
+			request.complete();
+			if (timings != null) {
+				// nothing is parsed, the copy is timed by the reads as TRANSFER
+				notifyTimed(getPhaseTimingListener(), timings);
+			}
+			return copied;
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+			throwIfTimedOut(request, options, e);
+			throw e;
+		} finally {
+			finishSlow(slow, copied, "bytes", failure);
+			// a copy that failed part way does not drain the rest of the response
+			request.abort();
+			closeQuietly(stream);
+		}
+	}
+
+	private static long copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = COPY_BUFFER.get();
+		long copied = 0;
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+			copied += n;
+		}
+		out.flush();
+		return copied;
+	}
+
+	private static long copy(InputStream in, WritableByteChannel channel) throws IOException {
+		byte[] buffer = COPY_BUFFER.get();
+		ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+		long copied = 0;
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			wrapped.clear();
+			wrapped.limit(n);
+			while (wrapped.hasRemaining()) {
+				channel.write(wrapped);
+			}
+			copied += n;
+		}
+		return copied;
+	}
+
+	private static void closeQuietly(InputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			logger.debug("closing raw result: {}", e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * timings bound by syncForQuery, or new ones if the query was sent without it
+	 */
+	private PhaseTimings takePhaseTimings(Operation operation, String queryString) {
+		PhaseTimings timings = PhaseTimings.unbind();
+		if (!isPhaseTiming()) {
+			return null;
+		}
+		if (timings == null) {
+			timings = new PhaseTimings();
+		}
+		timings.setQuery(operation, queryString);
+		return timings;
+	}
+
+	private SlowOperationLog.Entry startSlow(Operation operation, String queryString, SPARQLQueryBindingSet bindings, RequestOptions options) {
+		SlowOperationLog log = getSlowOperationLog();
+		if (log == null) {
+			return null;
+		}
+		return log.start(operation.name(), queryString, bindings, options != null ? options.getRulesets() : null);
+	}
+
+	/**
+	 * a query answered by the result cache sends no request, it is counted apart from requests;
+	 * its timings hold the sync and the cache lookup, as PREPARE
+	 */
+	private void recordCacheHit(Operation operation, SlowOperationLog.Entry slow, PhaseTimings timings) {
+		getMetrics().cacheHit(operation);
+		finishSlow(slow, -1, null, null);
+		if (timings != null) {
+			timings.lap(PhaseTimings.Phase.PREPARE);
+			notifyTimed(getPhaseTimingListener(), timings);
+		}
+	}
+
+	/**
+	 * statement pattern of a remove as bindings of s, p and o, logged when the remove is slow
+	 */
+	private SPARQLQueryBindingSet pattern(Resource subject, URI predicate, Value object) {
+		if (getSlowOperationLog() == null) {
+			return null;
+		}
+		SPARQLQueryBindingSet pattern = new SPARQLQueryBindingSet();
+		if (subject != null) {
+			pattern.addBinding("s", subject);
+		}
+		if (predicate != null) {
+			pattern.addBinding("p", predicate);
+		}
+		if (object != null) {
+			pattern.addBinding("o", object);
+		}
+		return pattern;
+	}
+
+	static void finishSlow(SlowOperationLog.Entry slow, long count, String unit, Throwable failure) {
+		if (slow != null) {
+			slow.finish(count, unit, failure);
+		}
+	}
+
+	/**
+	 * a failing listener does not fail the query
+	 */
+	static void notifyTimed(PhaseTimingListener listener, PhaseTimings timings) {
+		if (listener == null) {
+			return;
+		}
+		try {
+			listener.timed(timings);
+		} catch (RuntimeException e) {
+			logger.warn("phase timing listener failed: {}", e.getLocalizedMessage());
+		}
+	}
+
+	private static void throwIfTimedOut(AbortableRequest request, RequestOptions options, Exception e) throws QueryInterruptedException {
+		if (request.isTimedOut()) {
+			throw new QueryInterruptedException("query exceeded max execution time of " + options.getMaxExecutionTimeMillis() + " ms", e);
+		}
+	}
+
 	/**
 	 *
 	 * @return
@@ -558,28 +1430,212 @@ public class MarkLogicClient {
 	}
 
 	/**
+	 * runs cache periodically on a Timer of its own, sessions use the scheduler of the
+	 * shared client and get no Timer
+	 *
+	 * @param cache
+	 * @param initialDelay
+	 * @param period
+	 * @return
+	 */
+	private Timer schedule(TripleCache cache, long initialDelay, long period) {
+		if (isSession()) {
+			synchronized (sessionFlushes) {
+				sessionFlushes.add(shared.scheduleSessionFlush(cache, initialDelay, period));
+			}
+			return null;
+		}
+		Timer timer = new Timer();
+		timer.scheduleAtFixedRate(cache, initialDelay, period);
+		return timer;
+	}
+
+	/**
+	 * schedules write cache of a session, the single scheduler thread only hands each
+	 * flush to the executor
+	 *
+	 * @param cache
+	 * @param initialDelay
+	 * @param period
+	 * @return
+	 */
+	private synchronized ScheduledFuture<?> scheduleSessionFlush(TripleCache cache, long initialDelay, long period) {
+		if (sessionScheduler == null) {
+			sessionScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "marklogic-sesame-session-cache");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			sessionScheduler.setRemoveOnCancelPolicy(true);
+		}
+		return sessionScheduler.scheduleAtFixedRate(new SessionFlush(cache), initialDelay, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * flushes a session write cache on the executor, a tick is skipped while the previous
+	 * flush of the same cache is still running
+	 */
+	private final class SessionFlush implements Runnable {
+		private final TripleCache cache;
+		private final AtomicBoolean running = new AtomicBoolean();
+
+		SessionFlush(TripleCache cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public void run() {
+			if (!running.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							cache.run();
+						} finally {
+							running.set(false);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// executor replaced or closed, retried on the next tick
+				running.set(false);
+				logger.debug("session write cache flush rejected: {}", e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * options from client defaults
+	 *
+	 * @param includeInferred
+	 * @param baseURI
+	 * @return
+	 */
+	private RequestOptions getRequestOptions(boolean includeInferred, String baseURI) {
+		RequestOptions defaults = this.defaultOptions;
+		return new RequestOptions(baseURI, includeInferred, defaults.rulesets(), defaults.getConstrainingQueryDefinition(), defaults.getGraphPerms());
+	}
+
+	/**
+	 * results are not cached (or served from cache) within a transaction
+	 *
+	 * @return
+	 */
+	private QueryResultCache getActiveQueryResultCache() {
+		if (this.queryResultCache == null || isActiveTransaction()) {
+			return null;
+		}
+		return this.queryResultCache;
+	}
+
+	/**
+	 * bumps write generation of the shared result cache
+	 */
+	private void invalidateQueryResultCache() {
+		if (this.queryResultCache != null) {
+			this.queryResultCache.invalidate();
+		}
+	}
+
+	/**
+	 * waits for the group commit batches joined since the last sync, a batch still open
+	 * is not cut short so that it keeps gathering writes of other connections
+	 *
+	 * @throws MarkLogicSesameException
+	 */
+	private void awaitGroupCommit() throws MarkLogicSesameException {
+		List<GroupCommitter.Ticket> tickets;
+		synchronized (pendingTickets) {
+			if (pendingTickets.isEmpty()) {
+				return;
+			}
+			tickets = new ArrayList<GroupCommitter.Ticket>(pendingTickets);
+			pendingTickets.clear();
+		}
+		MarkLogicSesameException failure = null;
+		for (GroupCommitter.Ticket ticket : tickets) {
+			try {
+				ticket.await();
+			} catch (MarkLogicSesameException e) {
+				failure = e;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * skolem IRI for blank nodes, other values are returned as is
 	 *
 	 * @param s
 	 * @return
 	 */
 	private Value skolemize(Value s) {
-		if (s instanceof org.openrdf.model.BNode) {
-			return getValueFactory().createURI("http://marklogic.com/semantics/blank/" + s.toString());
-		} else {
-			return s;
-		}
+		return skolemMapper.skolemize(s);
 	}
 
 	/**
+	 * blank node bindings as skolem IRIs when results are deskolemized, so blank
+	 * nodes read back from results match what is stored
 	 *
+	 * @param bindings
+	 * @return
+	 */
+	private SPARQLQueryBindingSet skolemize(SPARQLQueryBindingSet bindings) {
+		return skolemMapper.skolemize(bindings);
+	}
+
+	/**
+	 * restores client defaults so the client can be reused by another connection
+	 *
+	 * @throws MarkLogicSesameException
+	 */
+	public void reset() throws MarkLogicSesameException {
+		// queries, templates and batches of the previous connection must not reach its successor
+		lease.incrementAndGet();
+		if (isActiveTransaction()) {
+			throw new MarkLogicTransactionException("Active transaction.");
+		}
+		sync();
+		if (customTimer) {
+			initTimer();
+		}
+		this.defaultOptions = RequestOptions.DEFAULT;
+		this.parserConfig = new ParserConfig();
+		this.queryResultCache = null;
+	}
+
+	/**
+	 * closes client, background result parsers already running are allowed to finish;
+	 * closing a session leaves the shared client open
 	 */
 	public void close() {
+		if (isSession()) {
+			stopTimer();
+			return;
+		}
 		_client.close();
+		executor.shutdown();
+		synchronized (this) {
+			if (sessionScheduler != null) {
+				sessionScheduler.shutdown();
+			}
+		}
 	}
 	/**
 	 *
 	 */
 	public void release() {
+		if (isSession()) {
+			return;
+		}
 		_client.release();
 	}
 }
\ No newline at end of file
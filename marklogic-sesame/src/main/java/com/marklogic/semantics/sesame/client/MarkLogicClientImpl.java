@@ -23,16 +23,21 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
+import org.openrdf.model.BNode;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.query.Binding;
+import org.openrdf.repository.sparql.query.QueryStringUtil;
 import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFParseException;
@@ -41,7 +46,6 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.marklogic.client.DatabaseClient;
-import com.marklogic.client.DatabaseClientFactory;
 import com.marklogic.client.FailedRequestException;
 import com.marklogic.client.Transaction;
 import com.marklogic.client.impl.SPARQLBindingsImpl;
@@ -56,6 +60,12 @@ import com.marklogic.client.semantics.SPARQLQueryDefinition;
 import com.marklogic.client.semantics.SPARQLQueryManager;
 import com.marklogic.client.semantics.SPARQLRuleset;
 import com.marklogic.semantics.sesame.MarkLogicSesameException;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics.Operation;
+import com.marklogic.semantics.sesame.metrics.PhaseTimingListener;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings.Phase;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
 
 /**
  * internal class for interacting with java api client
@@ -68,14 +78,25 @@ class MarkLogicClientImpl {
 
     private static final String DEFAULT_GRAPH_URI = "http://marklogic.com/semantics#default-graph";
 
-    private SPARQLRuleset[] ruleset;
-    private QueryDefinition constrainingQueryDef;
-    private GraphPermissions graphPerms;
+    // each endpoint holds a DatabaseClient with managers shared between threads,
+    // queries go to readEndpoints, updates, merges and clears go to writeEndpoints
+    private final EndpointPool readEndpoints;
+    private final EndpointPool writeEndpoints;
 
-    private SPARQLQueryManager sparqlManager;
-    private GraphManager graphManager;
+    // true if the endpoints were created (and must be released) by this object
+    private final boolean ownsEndpoints;
 
-    private DatabaseClient databaseClient;
+    private volatile ClientMetrics metrics = new ClientMetrics();
+
+    private volatile boolean phaseTiming;
+    private volatile PhaseTimingListener phaseTimingListener;
+
+    private volatile SlowOperationLog slowOperationLog;
+
+    private static final RequestInterceptor[] NO_INTERCEPTORS = new RequestInterceptor[0];
+
+    // copied on write, requests read it once and skip the chain when it is empty
+    private volatile RequestInterceptor[] interceptors = NO_INTERCEPTORS;
 
     /**
      * constructor
@@ -87,7 +108,10 @@ class MarkLogicClientImpl {
      * @param auth
      */
     public MarkLogicClientImpl(String host, int port, String user, String password, String auth) {
-        setDatabaseClient(DatabaseClientFactory.newClient(host, port, user, password, DatabaseClientFactory.Authentication.valueOf(auth)));
+        this.readEndpoints = new EndpointPool(new Endpoint(host, port, user, password, auth));
+        this.writeEndpoints = readEndpoints;
+        this.ownsEndpoints = true;
+        this.readEndpoints.getDatabaseClient();
     }
 
     /**
@@ -96,168 +120,368 @@ class MarkLogicClientImpl {
      * @param databaseClient
      */
     public MarkLogicClientImpl(DatabaseClient databaseClient) {
-        setDatabaseClient(databaseClient);
+        this.readEndpoints = new EndpointPool(new Endpoint(databaseClient));
+        this.writeEndpoints = readEndpoints;
+        this.ownsEndpoints = false;
     }
 
     /**
-     * set databaseclient and instantate related managers
+     * constructor, requests are load balanced across the endpoints
      *
-     * @param databaseClient
+     * @param endpoints
      */
-    private void setDatabaseClient(DatabaseClient databaseClient) {
-        this.databaseClient = databaseClient;
-        this.sparqlManager = getDatabaseClient().newSPARQLQueryManager();
-        this.graphManager = getDatabaseClient().newGraphManager();
+    public MarkLogicClientImpl(EndpointPool endpoints) {
+        this(endpoints, endpoints);
     }
 
     /**
-     * gets database client
+     * constructor, queries and writes are routed to separate hosts
+     *
+     * @param readEndpoints - tuple, graph and boolean queries
+     * @param writeEndpoints - updates, graph merges and clears, transactions
+     */
+    public MarkLogicClientImpl(EndpointPool readEndpoints, EndpointPool writeEndpoints) {
+        this.readEndpoints = readEndpoints;
+        this.writeEndpoints = writeEndpoints != null ? writeEndpoints : readEndpoints;
+        this.ownsEndpoints = false;
+    }
+
+    /**
+     * gets database client of the first write host
      *
      * @return DatabaseClient
      */
     public DatabaseClient getDatabaseClient() {
-        return this.databaseClient;
+        return writeEndpoints.getDatabaseClient();
     }
 
     /**
-     * executes SPARQLQuery
+     * gets endpoints used for queries
+     *
+     * @return EndpointPool
+     */
+    public EndpointPool getReadEndpointPool() {
+        return readEndpoints;
+    }
+
+    /**
+     * gets endpoints used for writes and transactions
+     *
+     * @return EndpointPool
+     */
+    public EndpointPool getWriteEndpointPool() {
+        return writeEndpoints;
+    }
+
+    /**
+     * gets metrics recorded by requests
+     *
+     * @return ClientMetrics
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * sets metrics recorded by requests, clients of a repository share one
+     *
+     * @param metrics
+     */
+    public void setMetrics(ClientMetrics metrics) {
+        this.metrics = metrics != null ? metrics : new ClientMetrics();
+    }
+
+    /**
+     * true if queries and updates record PhaseTimings
+     *
+     * @return boolean
+     */
+    public boolean isPhaseTiming() {
+        return phaseTiming || phaseTimingListener != null;
+    }
+
+    /**
+     * @param phaseTiming
+     */
+    public void setPhaseTiming(boolean phaseTiming) {
+        this.phaseTiming = phaseTiming;
+    }
+
+    public PhaseTimingListener getPhaseTimingListener() {
+        return phaseTimingListener;
+    }
+
+    /**
+     * sets listener notified of the timings of every query and update, enables phase timing
+     *
+     * @param phaseTimingListener - null to remove
+     */
+    public void setPhaseTimingListener(PhaseTimingListener phaseTimingListener) {
+        this.phaseTimingListener = phaseTimingListener;
+    }
+
+    public SlowOperationLog getSlowOperationLog() {
+        return slowOperationLog;
+    }
+
+    /**
+     * @param slowOperationLog - null disables slow operation logging
+     */
+    public void setSlowOperationLog(SlowOperationLog slowOperationLog) {
+        this.slowOperationLog = slowOperationLog;
+    }
+
+    /**
+     * adds interceptor called around every request, after those added before it
+     *
+     * @param interceptor
+     */
+    public synchronized void addRequestInterceptor(RequestInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("interceptor must not be null");
+        }
+        RequestInterceptor[] chain = Arrays.copyOf(interceptors, interceptors.length + 1);
+        chain[chain.length - 1] = interceptor;
+        interceptors = chain;
+    }
+
+    /**
+     * @param interceptor
+     * @return boolean - true if it was registered
+     */
+    public synchronized boolean removeRequestInterceptor(RequestInterceptor interceptor) {
+        List<RequestInterceptor> chain = new ArrayList<>(Arrays.asList(interceptors));
+        if (!chain.remove(interceptor)) {
+            return false;
+        }
+        interceptors = chain.isEmpty() ? NO_INTERCEPTORS : chain.toArray(new RequestInterceptor[chain.size()]);
+        return true;
+    }
+
+    public List<RequestInterceptor> getRequestInterceptors() {
+        return Collections.unmodifiableList(Arrays.asList(interceptors));
+    }
+
+    /**
+     * applies transport settings to every host
+     *
+     * @param settings
+     */
+    public void applyConnectionSettings(ConnectionSettings settings) {
+        readEndpoints.setConnectionSettings(settings);
+        if (writeEndpoints != readEndpoints) {
+            writeEndpoints.setConnectionSettings(settings);
+        }
+    }
+
+    /**
+     * opens transaction on a write host, subsequent requests in the transaction (including queries) go to the same host
+     *
+     * @return Transaction
+     */
+    public Transaction openTransaction() {
+        long started = System.nanoTime();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            request = intercept(Operation.TRANSACTION, null, null, null, 0, started);
+            return writeEndpoints.openTransaction();
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.end(Operation.TRANSACTION, started, failure);
+            complete(request, failure);
+        }
+    }
+
+    /**
+     * commits transaction
      *
-     * @param queryString
-     * @param bindings
-     * @param start
-     * @param pageLength
      * @param tx
-     * @param includeInferred
-     * @param baseURI
-     * @return
-     * @throws JsonProcessingException
      */
-    public InputStream performSPARQLQuery(String queryString, SPARQLQueryBindingSet bindings, long start, long pageLength, Transaction tx, boolean includeInferred, String baseURI) throws JsonProcessingException {
-        return performSPARQLQuery(queryString, bindings, new InputStreamHandle(), start, pageLength, tx, includeInferred, baseURI);
+    public void commitTransaction(Transaction tx) {
+        long started = System.nanoTime();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            request = intercept(Operation.TRANSACTION, null, tx, null, 0, started);
+            writeEndpoints.commitTransaction(tx);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.end(Operation.TRANSACTION, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
-     * executes SPARQLQuery
+     * rolls back transaction
      *
-     * @param queryString
-     * @param bindings
-     * @param handle
-     * @param start
-     * @param pageLength
      * @param tx
-     * @param includeInferred
-     * @param baseURI
-     * @return
-     * @throws JsonProcessingException
      */
-    public InputStream performSPARQLQuery(String queryString, SPARQLQueryBindingSet bindings, InputStreamHandle handle, long start, long pageLength, Transaction tx, boolean includeInferred, String baseURI) throws JsonProcessingException {
-        SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(queryString);
-        if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
-        if (notNull(ruleset)){qdef.setRulesets(ruleset);}
-        if (notNull(getConstrainingQueryDefinition())) {
-        	qdef.setConstrainingQueryDefinition(getConstrainingQueryDefinition());
-            qdef.setDirectory(getConstrainingQueryDefinition().getDirectory());
-            qdef.setCollections(getConstrainingQueryDefinition().getCollections());
-            qdef.setResponseTransform(getConstrainingQueryDefinition().getResponseTransform());
-            qdef.setOptionsName(getConstrainingQueryDefinition().getOptionsName());
-        }
-        qdef.setIncludeDefaultRulesets(includeInferred);
-        if(notNull(graphPerms)){ qdef.setUpdatePermissions(graphPerms);}
-        if(pageLength > 0){
-            sparqlManager.setPageLength(pageLength);
-        }else{
-            sparqlManager.clearPageLength();
+    public void rollbackTransaction(Transaction tx) {
+        long started = System.nanoTime();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            request = intercept(Operation.TRANSACTION, null, tx, null, 0, started);
+            writeEndpoints.rollbackTransaction(tx);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.end(Operation.TRANSACTION, started, failure);
+            complete(request, failure);
         }
-        sparqlManager.executeSelect(qdef, handle, start, tx);
-        return new BufferedInputStream(handle.get());
     }
 
     /**
-     * executes GraphQuery
+     * executes SPARQLQuery with per request options
+     *
      * @param queryString
      * @param bindings
+     * @param handle
+     * @param start
+     * @param pageLength
      * @param tx
-     * @param includeInferred
-     * @param baseURI
+     * @param options
+     * @param timings - phases recorded up to the response headers and reads of the response, may be null
      * @return
      * @throws JsonProcessingException
      */
-    public InputStream performGraphQuery(String queryString, SPARQLQueryBindingSet bindings, Transaction tx, boolean includeInferred, String baseURI) throws JsonProcessingException {
-        return performGraphQuery(queryString, bindings, new InputStreamHandle(), tx, includeInferred, baseURI);
+    public InputStream performSPARQLQuery(String queryString, SPARQLQueryBindingSet bindings, InputStreamHandle handle, long start, long pageLength, Transaction tx, RequestOptions options, PhaseTimings timings) throws JsonProcessingException, MarkLogicSesameException {
+        EndpointPool endpoints = readEndpoints(tx);
+        Endpoint endpoint = endpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            SPARQLQueryDefinition qdef = newQueryDefinition(endpoint.getSPARQLQueryManager(), queryString, bindings, options);
+            long bytes = utf8Length(qdef.getSparql());
+            metrics.addBytesSent(bytes);
+            SPARQLQueryManager sparqlManager = getSPARQLQueryManager(endpoint, pageLength);
+            request = intercept(Operation.TUPLE_QUERY, endpoint, tx, qdef, bytes, started);
+            lap(timings, Phase.PREPARE);
+            sparqlManager.executeSelect(qdef, handle, start, tx);
+            lap(timings, Phase.FIRST_BYTE);
+            return new BufferedInputStream(new MeteredInputStream(handle.get(), metrics, false, timings));
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            endpoints.end(endpoint, started, failure);
+            metrics.end(Operation.TUPLE_QUERY, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
-     * executes GraphQuery
+     * executes GraphQuery with per request options
      *
      * @param queryString
      * @param bindings
      * @param handle
      * @param tx
-     * @param includeInferred
-     * @param baseURI
+     * @param options
+     * @param timings - phases recorded up to the response headers and reads of the response, may be null
      * @return
      * @throws JsonProcessingException
      */
-    public InputStream performGraphQuery(String queryString, SPARQLQueryBindingSet bindings, InputStreamHandle handle, Transaction tx, boolean includeInferred, String baseURI) throws JsonProcessingException  {
-        SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(queryString);
-        if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
-        if (notNull(ruleset)) {qdef.setRulesets(ruleset);}
-        if (notNull(getConstrainingQueryDefinition())){
-        	qdef.setConstrainingQueryDefinition(getConstrainingQueryDefinition());
-            qdef.setDirectory(getConstrainingQueryDefinition().getDirectory());
-            qdef.setCollections(getConstrainingQueryDefinition().getCollections());
-            qdef.setResponseTransform(getConstrainingQueryDefinition().getResponseTransform());
-            qdef.setOptionsName(getConstrainingQueryDefinition().getOptionsName());
-        	}
-        if(notNull(graphPerms)){ qdef.setUpdatePermissions(graphPerms);}
-        qdef.setIncludeDefaultRulesets(includeInferred);
-        sparqlManager.executeDescribe(qdef, handle, tx);
-        return new BufferedInputStream(handle.get());
+    public InputStream performGraphQuery(String queryString, SPARQLQueryBindingSet bindings, InputStreamHandle handle, Transaction tx, RequestOptions options, PhaseTimings timings) throws JsonProcessingException, MarkLogicSesameException {
+        EndpointPool endpoints = readEndpoints(tx);
+        Endpoint endpoint = endpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            SPARQLQueryManager sparqlManager = endpoint.getSPARQLQueryManager();
+            SPARQLQueryDefinition qdef = newQueryDefinition(sparqlManager, queryString, bindings, options);
+            long bytes = utf8Length(qdef.getSparql());
+            metrics.addBytesSent(bytes);
+            request = intercept(Operation.GRAPH_QUERY, endpoint, tx, qdef, bytes, started);
+            lap(timings, Phase.PREPARE);
+            sparqlManager.executeDescribe(qdef, handle, tx);
+            lap(timings, Phase.FIRST_BYTE);
+            return new BufferedInputStream(new MeteredInputStream(handle.get(), metrics, false, timings));
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            endpoints.end(endpoint, started, failure);
+            metrics.end(Operation.GRAPH_QUERY, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
-     * executes BooleanQuery
+     * executes BooleanQuery with per request options
      *
      * @param queryString
      * @param bindings
      * @param tx
-     * @param includeInferred
-     * @param baseURI
+     * @param options
+     * @param timings - phases recorded up to the response, may be null
      * @return
      */
-    public boolean performBooleanQuery(String queryString, SPARQLQueryBindingSet bindings, Transaction tx, boolean includeInferred, String baseURI) {
-        SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(queryString);
-        if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
-        qdef.setIncludeDefaultRulesets(includeInferred);
-        if (notNull(ruleset)) {qdef.setRulesets(ruleset);}
-        if (notNull(getConstrainingQueryDefinition())){
-        	qdef.setConstrainingQueryDefinition(getConstrainingQueryDefinition());
-            qdef.setDirectory(getConstrainingQueryDefinition().getDirectory());
-            qdef.setCollections(getConstrainingQueryDefinition().getCollections());
-            qdef.setResponseTransform(getConstrainingQueryDefinition().getResponseTransform());
-            qdef.setOptionsName(getConstrainingQueryDefinition().getOptionsName());
-        	}
-        if(notNull(graphPerms)){ qdef.setUpdatePermissions(graphPerms);}
-        return sparqlManager.executeAsk(qdef,tx);
+    public boolean performBooleanQuery(String queryString, SPARQLQueryBindingSet bindings, Transaction tx, RequestOptions options, PhaseTimings timings) throws MarkLogicSesameException {
+        EndpointPool endpoints = readEndpoints(tx);
+        Endpoint endpoint = endpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            SPARQLQueryManager sparqlManager = endpoint.getSPARQLQueryManager();
+            SPARQLQueryDefinition qdef = newQueryDefinition(sparqlManager, queryString, bindings, options);
+            long bytes = utf8Length(qdef.getSparql());
+            metrics.addBytesSent(bytes);
+            request = intercept(Operation.BOOLEAN_QUERY, endpoint, tx, qdef, bytes, started);
+            lap(timings, Phase.PREPARE);
+            boolean result = sparqlManager.executeAsk(qdef,tx);
+            lap(timings, Phase.FIRST_BYTE);
+            return result;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            endpoints.end(endpoint, started, failure);
+            metrics.end(Operation.BOOLEAN_QUERY, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
-     * executes UpdateQuery
+     * executes UpdateQuery with per request options, constraining query is not applied to updates
      *
      * @param queryString
      * @param bindings
      * @param tx
-     * @param includeInferred
-     * @param baseURI
+     * @param options
+     * @param timings - phases recorded up to the response, may be null
      */
-    public void performUpdateQuery(String queryString, SPARQLQueryBindingSet bindings, Transaction tx, boolean includeInferred, String baseURI) {
-        SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(queryString);
-        if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
-        if (notNull(ruleset) ) {qdef.setRulesets(ruleset);}
-        if(notNull(graphPerms)){ qdef.setUpdatePermissions(graphPerms);}
-        qdef.setIncludeDefaultRulesets(includeInferred);
-        sparqlManager.clearPageLength();
-        sparqlManager.executeUpdate(qdef, tx);
+    public void performUpdateQuery(String queryString, SPARQLQueryBindingSet bindings, Transaction tx, RequestOptions options, PhaseTimings timings) throws MarkLogicSesameException {
+        Endpoint endpoint = writeEndpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            SPARQLQueryManager sparqlManager = endpoint.getSPARQLQueryManager();
+            SPARQLQueryDefinition qdef = newQueryDefinition(sparqlManager, queryString, bindings, options.withConstrainingQueryDefinition(null));
+            long bytes = utf8Length(qdef.getSparql());
+            metrics.addBytesSent(bytes);
+            request = intercept(Operation.UPDATE, endpoint, tx, qdef, bytes, started);
+            lap(timings, Phase.PREPARE);
+            sparqlManager.executeUpdate(qdef, tx);
+            lap(timings, Phase.FIRST_BYTE);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writeEndpoints.end(endpoint, started, failure);
+            metrics.end(Operation.UPDATE, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
@@ -267,32 +491,53 @@ class MarkLogicClientImpl {
      * @param baseURI
      * @param dataFormat
      * @param tx
+     * @param graphPerms
      * @param contexts
+     * @return bytes uploaded
      * @throws RDFParseException
      */
     // performAdd
     // as we use mergeGraphs, baseURI is always file.toURI
-    public void performAdd(File file, String baseURI, RDFFormat dataFormat, Transaction tx, Resource... contexts) throws RDFParseException {
+    public long performAdd(File file, String baseURI, RDFFormat dataFormat, Transaction tx, GraphPermissions graphPerms, Resource... contexts) throws RDFParseException {
+        String mimetype = dataFormat.getDefaultMIMEType();
+        Endpoint endpoint = writeEndpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
         try {
-            graphManager.setDefaultMimetype(dataFormat.getDefaultMIMEType());
+            // every merge uploads the whole file
+            boolean quads = dataFormat.equals(RDFFormat.NQUADS) || dataFormat.equals(RDFFormat.TRIG);
+            long bytes = file.length() * (!quads && notNull(contexts) && contexts.length > 0 ? contexts.length : 1);
+            metrics.addBytesSent(bytes);
+            request = intercept(Operation.ADD, endpoint, tx, null, bytes, started);
+            GraphManager graphManager = endpoint.getGraphManager();
             if (dataFormat.equals(RDFFormat.NQUADS) || dataFormat.equals(RDFFormat.TRIG)) {
-                graphManager.mergeGraphs(new FileHandle(file),tx);
+                graphManager.mergeGraphs(new FileHandle(file).withMimetype(mimetype),tx);
             } else {
                 if (notNull(contexts) && contexts.length>0) {
                     for (int i = 0; i < contexts.length; i++) {
                         if(notNull(contexts[i])){
-                            graphManager.mergeAs(contexts[i].toString(), new FileHandle(file), getGraphPerms(),tx);
+                            graphManager.merge(contexts[i].toString(), new FileHandle(file).withMimetype(mimetype), graphPerms,tx);
                         }else{
-                            graphManager.mergeAs(DEFAULT_GRAPH_URI, new FileHandle(file),getGraphPerms(), tx);
+                            graphManager.merge(DEFAULT_GRAPH_URI, new FileHandle(file).withMimetype(mimetype),graphPerms, tx);
                         }
                     }
                 } else {
-                    graphManager.mergeAs(DEFAULT_GRAPH_URI, new FileHandle(file), getGraphPerms(),tx);
+                    graphManager.merge(DEFAULT_GRAPH_URI, new FileHandle(file).withMimetype(mimetype), graphPerms,tx);
                 }
             }
+            return bytes;
         } catch (FailedRequestException e) {
+            failure = e;
             logger.error(e.getLocalizedMessage());
             throw new RDFParseException("Request to MarkLogic server failed, check file and format.");
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writeEndpoints.end(endpoint, started, failure);
+            metrics.end(Operation.ADD, started, failure);
+            complete(request, failure);
         }
     }
 
@@ -303,34 +548,57 @@ class MarkLogicClientImpl {
      * @param baseURI
      * @param dataFormat
      * @param tx
+     * @param graphPerms
      * @param contexts
+     * @return bytes uploaded
      * @throws RDFParseException
      */
-    public void performAdd(InputStream in, String baseURI, RDFFormat dataFormat, Transaction tx, Resource... contexts) throws RDFParseException, MarkLogicSesameException {
+    public long performAdd(InputStream in, String baseURI, RDFFormat dataFormat, Transaction tx, GraphPermissions graphPerms, Resource... contexts) throws RDFParseException, MarkLogicSesameException {
+        MeteredInputStream metered = new MeteredInputStream(in, metrics, true);
+        in = metered;
+        String mimetype = dataFormat.getDefaultMIMEType();
+        Endpoint endpoint = writeEndpoints.select(tx);
+        long started = endpoint.begin();
+        Throwable failure = null;
+        InterceptedRequest request = null;
         try {
-            graphManager.setDefaultMimetype(dataFormat.getDefaultMIMEType());
+            request = intercept(Operation.ADD, endpoint, tx, null, -1, started);
+            GraphManager graphManager = endpoint.getGraphManager();
             if (dataFormat.equals(RDFFormat.NQUADS) || dataFormat.equals(RDFFormat.TRIG)) {
-                graphManager.mergeGraphs(new InputStreamHandle(in),tx);
+                graphManager.mergeGraphs(new InputStreamHandle(in).withMimetype(mimetype),tx);
             } else {
                 if (notNull(contexts) && contexts.length > 0) {
                     for (int i = 0; i < contexts.length; i++) {
                         if (notNull(contexts[i])) {
-                            graphManager.mergeAs(contexts[i].toString(), new InputStreamHandle(in), getGraphPerms(), tx);
+                            graphManager.merge(contexts[i].toString(), new InputStreamHandle(in).withMimetype(mimetype), graphPerms, tx);
                         } else {
-                            graphManager.mergeAs(DEFAULT_GRAPH_URI, new InputStreamHandle(in),getGraphPerms(), tx);
+                            graphManager.merge(DEFAULT_GRAPH_URI, new InputStreamHandle(in).withMimetype(mimetype),graphPerms, tx);
                         }
                     }
                 } else {
-                    graphManager.mergeAs(DEFAULT_GRAPH_URI, new InputStreamHandle(in),getGraphPerms(), tx);
+                    graphManager.merge(DEFAULT_GRAPH_URI, new InputStreamHandle(in).withMimetype(mimetype),graphPerms, tx);
                 }
             }
             in.close();
+            return metered.getCount();
         } catch (FailedRequestException e) {
+            failure = e;
             logger.error(e.getLocalizedMessage());
             throw new RDFParseException("Request to MarkLogic server failed, check input is valid.");
         } catch (IOException e) {
+            failure = e;
             logger.error(e.getLocalizedMessage());
-            throw new MarkLogicSesameException("IO error");
+            throw new MarkLogicSesameException("IO error", e);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writeEndpoints.end(endpoint, started, failure);
+            metrics.end(Operation.ADD, started, failure);
+            if (request != null) {
+                request.setBytesSent(metered.getCount());
+            }
+            complete(request, failure);
         }
     }
 
@@ -342,10 +610,11 @@ class MarkLogicClientImpl {
      * @param predicate
      * @param object
      * @param tx
+     * @param graphPerms
      * @param contexts
      * @throws MarkLogicSesameException
      */
-    public void performAdd(String baseURI, Resource subject, URI predicate, Value object, Transaction tx, Resource... contexts) throws MarkLogicSesameException {
+    public void performAdd(String baseURI, Resource subject, URI predicate, Value object, Transaction tx, GraphPermissions graphPerms, Resource... contexts) throws MarkLogicSesameException {
         StringBuilder sb = new StringBuilder();
         if(notNull(contexts) && contexts.length>0) {
             if (notNull(baseURI)) sb.append("BASE <" + baseURI + ">\n");
@@ -361,15 +630,31 @@ class MarkLogicClientImpl {
         } else {
             sb.append("INSERT DATA { GRAPH <" + DEFAULT_GRAPH_URI + "> {?s ?p ?o .}}");
         }
-        SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(sb.toString());
-        if (notNull(ruleset) ) {qdef.setRulesets(ruleset);}
-        if(notNull(graphPerms)){ qdef.setUpdatePermissions(graphPerms);}
-        if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
+        Endpoint endpoint = writeEndpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            SPARQLQueryManager sparqlManager = endpoint.getSPARQLQueryManager();
+            SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(sb.toString());
+            long bytes = utf8Length(sb);
+            metrics.addBytesSent(bytes);
+            if(notNull(graphPerms)){ qdef.setUpdatePermissions(graphPerms);}
+            if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
 
-        if(notNull(subject)) qdef.withBinding("s", subject.stringValue());
-        if(notNull(predicate)) qdef.withBinding("p", predicate.stringValue());
-        if(notNull(object)) bindObject(qdef, "o", object);
-        sparqlManager.executeUpdate(qdef, tx);
+            if(notNull(subject)) qdef.withBinding("s", subject.stringValue());
+            if(notNull(predicate)) qdef.withBinding("p", predicate.stringValue());
+            if(notNull(object)) bindObject(qdef, "o", object);
+            request = intercept(Operation.ADD, endpoint, tx, qdef, bytes, started);
+            sparqlManager.executeUpdate(qdef, tx);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writeEndpoints.end(endpoint, started, failure);
+            metrics.end(Operation.ADD, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
@@ -400,12 +685,29 @@ class MarkLogicClientImpl {
             sb.append("DELETE WHERE { GRAPH ?ctx { ?s ?p ?o .}}");
         }
 
-        SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(sb.toString());
-        if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
-        if(notNull(subject)) qdef.withBinding("s", subject.stringValue());
-        if(notNull(predicate)) qdef.withBinding("p", predicate.stringValue());
-        if(notNull(object)) bindObject(qdef, "o", object);
-        sparqlManager.executeUpdate(qdef, tx);
+        Endpoint endpoint = writeEndpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            SPARQLQueryManager sparqlManager = endpoint.getSPARQLQueryManager();
+            SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(sb.toString());
+            long bytes = utf8Length(sb);
+            metrics.addBytesSent(bytes);
+            if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
+            if(notNull(subject)) qdef.withBinding("s", subject.stringValue());
+            if(notNull(predicate)) qdef.withBinding("p", predicate.stringValue());
+            if(notNull(object)) bindObject(qdef, "o", object);
+            request = intercept(Operation.REMOVE, endpoint, tx, qdef, bytes, started);
+            sparqlManager.executeUpdate(qdef, tx);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writeEndpoints.end(endpoint, started, failure);
+            metrics.end(Operation.REMOVE, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
@@ -415,16 +717,31 @@ class MarkLogicClientImpl {
      * @param contexts
      */
     public void performClear(Transaction tx, Resource... contexts) {
-        if(notNull(contexts)) {
-            for (int i = 0; i < contexts.length; i++) {
-                if (notNull(contexts[i])) {
-                    graphManager.delete(contexts[i].stringValue(), tx);
-                } else {
-                    graphManager.delete(DEFAULT_GRAPH_URI, tx);
+        Endpoint endpoint = writeEndpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            request = intercept(Operation.CLEAR, endpoint, tx, null, 0, started);
+            GraphManager graphManager = endpoint.getGraphManager();
+            if(notNull(contexts)) {
+                for (int i = 0; i < contexts.length; i++) {
+                    if (notNull(contexts[i])) {
+                        graphManager.delete(contexts[i].stringValue(), tx);
+                    } else {
+                        graphManager.delete(DEFAULT_GRAPH_URI, tx);
+                    }
                 }
+            }else{
+                graphManager.delete(DEFAULT_GRAPH_URI, tx);
             }
-        }else{
-            graphManager.delete(DEFAULT_GRAPH_URI, tx);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writeEndpoints.end(endpoint, started, failure);
+            metrics.end(Operation.CLEAR, started, failure);
+            complete(request, failure);
         }
     }
 
@@ -434,108 +751,234 @@ class MarkLogicClientImpl {
      * @param tx
      */
     public void performClearAll(Transaction tx) {
-        graphManager.deleteGraphs(tx);
+        Endpoint endpoint = writeEndpoints.select(tx);
+        long started = endpoint.begin();
+        RuntimeException failure = null;
+        InterceptedRequest request = null;
+        try {
+            request = intercept(Operation.CLEAR, endpoint, tx, null, 0, started);
+            endpoint.getGraphManager().deleteGraphs(tx);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            writeEndpoints.end(endpoint, started, failure);
+            metrics.end(Operation.CLEAR, started, failure);
+            complete(request, failure);
+        }
     }
 
     /**
-     * getter rulesets
+     * close client
      *
      * @return
      */
-    public SPARQLRuleset[] getRulesets() {
-        return this.ruleset;
+    public void close() {
+        // a shared DatabaseClient is released by its owner
+        if (ownsEndpoints) {
+            release();
+        }
+    }
+
+    public void release() {
+        readEndpoints.release();
+        if (writeEndpoints != readEndpoints) {
+            writeEndpoints.release();
+        }
     }
+    ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * setter for rulesets, filters out nulls
+     * converts Sesame BindingSet to java api client SPARQLBindings
      *
-     * @param rulesets
+     * @param bindings
+     * @return
      */
-    public void setRulesets(SPARQLRuleset ... rulesets) {
-        if(notNull(rulesets)) {
-            List<SPARQLRuleset> list = new ArrayList<>();
-            for(Object r : rulesets) {
-                if(r != null && rulesets.length > 0) {
-                    list.add((SPARQLRuleset)r);
-                }
-            }
-            this.ruleset = list.toArray(new SPARQLRuleset[list.size()]);
-        }else{
-            this.ruleset = null;
+    protected SPARQLBindings getSPARQLBindings(SPARQLQueryBindingSet bindings) {
+        SPARQLBindings sps = new SPARQLBindingsImpl();
+        for (Binding binding : bindings) {
+            sps.bind(binding.getName(), binding.getValue().stringValue());
         }
+        return sps;
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
     /**
-     * setter for graph permissions
+     * queries in a transaction must go to the write host the transaction was opened on
      *
-     * @param graphPerms
+     * @param tx
+     * @return
      */
-    public void setGraphPerms(GraphPermissions graphPerms) {
-        this.graphPerms = graphPerms;
+    private EndpointPool readEndpoints(Transaction tx) {
+        return tx != null ? writeEndpoints : readEndpoints;
     }
 
     /**
-     * getter for graph permissions
+     * shared query manager is never mutated, a paged request gets its own manager
      *
+     * @param endpoint
+     * @param pageLength
      * @return
      */
-    public GraphPermissions getGraphPerms() {
-        return this.graphPerms;
+    private static SPARQLQueryManager getSPARQLQueryManager(Endpoint endpoint, long pageLength) {
+        if (pageLength > 0) {
+            SPARQLQueryManager pagedManager = endpoint.getDatabaseClient().newSPARQLQueryManager();
+            pagedManager.setPageLength(pageLength);
+            return pagedManager;
+        }
+        return endpoint.getSPARQLQueryManager();
     }
 
     /**
-     * setter for ConstrainingQueryDefinition
+     * runs before() of the interceptors
      *
-     * @param constrainingQueryDefinition
+     * @return InterceptedRequest - null when no interceptors are registered
      */
-    public void setConstrainingQueryDefinition(QueryDefinition constrainingQueryDefinition) {
-        this.constrainingQueryDef = constrainingQueryDefinition;
+    private InterceptedRequest intercept(Operation operation, Endpoint endpoint, Transaction tx, SPARQLQueryDefinition qdef, long bytesSent, long started) {
+        RequestInterceptor[] chain = interceptors;
+        if (chain.length == 0) {
+            return null;
+        }
+        InterceptedRequest request = new InterceptedRequest(chain, operation, endpoint != null ? endpoint.getHost() : null, tx, qdef, bytesSent, started);
+        request.before();
+        return request;
+    }
+
+    private static void complete(InterceptedRequest request, Throwable failure) {
+        if (request != null) {
+            request.complete(failure);
+        }
+    }
+
+    private static void lap(PhaseTimings timings, Phase phase) {
+        if (timings != null) {
+            timings.lap(phase);
+        }
     }
 
     /**
-     * getter for ConstrainingQueryDefinition
+     * creates query definition with request options applied
      *
+     * @param sparqlManager
+     * @param queryString
+     * @param bindings
+     * @param options
      * @return
+     * @throws MarkLogicSesameException
      */
-    public QueryDefinition getConstrainingQueryDefinition() {
-        return this.constrainingQueryDef;
+    private static SPARQLQueryDefinition newQueryDefinition(SPARQLQueryManager sparqlManager, String queryString, SPARQLQueryBindingSet bindings, RequestOptions options) throws MarkLogicSesameException {
+        SPARQLQueryDefinition qdef = newQueryDefinition(sparqlManager, queryString, bindings);
+        String baseURI = options.getBaseURI();
+        if(notNull(baseURI) && !baseURI.isEmpty()){ qdef.setBaseUri(baseURI);}
+        if (notNull(options.rulesets())){qdef.setRulesets(options.rulesets());}
+        QueryDefinition constrainingQueryDefinition = options.getConstrainingQueryDefinition();
+        if (notNull(constrainingQueryDefinition)) {
+            qdef.setConstrainingQueryDefinition(constrainingQueryDefinition);
+            qdef.setDirectory(constrainingQueryDefinition.getDirectory());
+            qdef.setCollections(constrainingQueryDefinition.getCollections());
+            qdef.setResponseTransform(constrainingQueryDefinition.getResponseTransform());
+            qdef.setOptionsName(constrainingQueryDefinition.getOptionsName());
+        }
+        qdef.setIncludeDefaultRulesets(options.getIncludeInferred());
+        if(notNull(options.getGraphPerms())){ qdef.setUpdatePermissions(options.getGraphPerms());}
+        return qdef;
     }
 
     /**
-     * close client
+     * creates query definition, sending bindings as request parameters so the query text
+     * stays constant; blank nodes are sent as the skolem IRIs they are stored as, bindings
+     * that cannot be sent (non xsd datatypes) are inlined
      *
+     * @param sparqlManager
+     * @param queryString
+     * @param bindings
      * @return
+     * @throws MarkLogicSesameException
      */
-    public void close() {
-        // close MarkLogicClientImpl
+    private static SPARQLQueryDefinition newQueryDefinition(SPARQLQueryManager sparqlManager, String queryString, SPARQLQueryBindingSet bindings) throws MarkLogicSesameException {
+        if (notNull(bindings) && bindings.size() > 0) {
+            if (!isBindable(bindings)) {
+                return sparqlManager.newQueryDefinition(QueryStringUtil.getQueryString(queryString, skolemize(bindings)));
+            }
+            SPARQLQueryDefinition qdef = sparqlManager.newQueryDefinition(queryString);
+            for (Binding binding : bindings) {
+                bindObject(qdef, binding.getName(), binding.getValue());
+            }
+            return qdef;
+        }
+        return sparqlManager.newQueryDefinition(queryString);
     }
 
-    public void release() {
-        if (this.databaseClient != null) {
-            try {
-                this.databaseClient.release();
-            } catch (Exception e) {
-                logger.info("Failed releasing DB client", e);
+    /**
+     * checks if all bindings can be sent as request parameters
+     *
+     * @param bindings
+     * @return
+     */
+    private static boolean isBindable(SPARQLQueryBindingSet bindings) {
+        for (Binding binding : bindings) {
+            Value value = binding.getValue();
+            if (value instanceof URI || value instanceof BNode) {
+                continue;
+            }
+            if (value instanceof Literal) {
+                Literal lit = (Literal) value;
+                if (lit.getLanguage() != null || rdfType(lit) != null) {
+                    continue;
+                }
             }
+            return false;
         }
+        return true;
     }
-    ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * converts Sesame BindingSet to java api client SPARQLBindings
+     * bindings with blank nodes replaced by skolem IRIs, as QueryStringUtil cannot inline
+     * blank nodes
      *
      * @param bindings
      * @return
      */
-    protected SPARQLBindings getSPARQLBindings(SPARQLQueryBindingSet bindings) {
-        SPARQLBindings sps = new SPARQLBindingsImpl();
+    private static SPARQLQueryBindingSet skolemize(SPARQLQueryBindingSet bindings) {
+        SPARQLQueryBindingSet skolemized = new SPARQLQueryBindingSet(bindings.size());
         for (Binding binding : bindings) {
-            sps.bind(binding.getName(), binding.getValue().stringValue());
+            Value value = binding.getValue();
+            skolemized.addBinding(binding.getName(), value instanceof BNode ? skolemIRI((BNode) value) : value);
         }
-        return sps;
+        return skolemized;
     }
 
-    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * skolem IRI of a blank node, the form adds store it in
+     *
+     * @param bnode
+     * @return
+     */
+    private static URI skolemIRI(BNode bnode) {
+        return new URIImpl(SkolemMapper.SKOLEM_PREFIX + bnode.getID());
+    }
+
+    /**
+     * maps literal datatype to java api client RDFTypes, null if it has no equivalent
+     *
+     * @param lit
+     * @return
+     */
+    private static RDFTypes rdfType(Literal lit) {
+        URI datatype = lit.getDatatype();
+        if (datatype == null) {
+            return RDFTypes.STRING;
+        }
+        if (!XMLSchema.NAMESPACE.equals(datatype.getNamespace())) {
+            return null;
+        }
+        try {
+            return RDFTypes.valueOf(datatype.getLocalName().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
     /**
      * bind object
@@ -551,23 +994,20 @@ class MarkLogicClientImpl {
         if(object != null){
             if (object instanceof URI) {
                 bindings.bind(variableName, object.stringValue());
+            } else if (object instanceof BNode) {
+                bindings.bind(variableName, skolemIRI((BNode) object).stringValue());
             } else if (object instanceof Literal) {
                 Literal lit = (Literal) object;
                 if (lit.getLanguage() != null) {
                     String languageTag = lit.getLanguage();
                     bindings.bind(variableName, lit.getLabel(), Locale.forLanguageTag(languageTag));
-                }else if (((Literal) object).getDatatype() != null) {
-                    try {
-                        String xsdType = lit.getDatatype().toString();
-                        String fragment = new java.net.URI(xsdType).getFragment();
-                        bindings.bind(variableName,lit.getLabel(),RDFTypes.valueOf(fragment.toUpperCase()));
-                    } catch (URISyntaxException e) {
-                        logger.error(e.getLocalizedMessage());
+                }else {
+                    RDFTypes type = rdfType(lit);
+                    if (type == null) {
+                        logger.error("unsupported datatype {}", lit.getDatatype());
                         throw new MarkLogicSesameException("Problem with object datatype.");
                     }
-                }else {
-                    // assume we have a string value
-                    bindings.bind(variableName, lit.getLabel(), RDFTypes.STRING);
+                    bindings.bind(variableName, lit.getLabel(), type);
                 }
             }
             qdef.setBindings(bindings);
@@ -575,6 +1015,33 @@ class MarkLogicClientImpl {
         return qdef;
     }
 
+    /**
+     * number of bytes of s encoded as UTF-8, without encoding it
+     *
+     * @param s
+     * @return
+     */
+    static long utf8Length(CharSequence s) {
+        if (s == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
     /**
      * tedious utility for checking if object is null or not
      *
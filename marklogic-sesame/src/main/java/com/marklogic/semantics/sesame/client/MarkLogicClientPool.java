@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A bounded pool of idle MarkLogicClient objects.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles MarkLogicClient objects (with their managers, executor and write
+ * cache Timer) between connections.
+ *
+ * Borrowing never blocks; when no idle client is available a new one is created.
+ * At most maxIdle clients are retained, the most recently returned client is reused
+ * first and clients idle for longer than maxIdleMillis are evicted.
+ *
+ * @author James Fuller
+ */
+public class MarkLogicClientPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarkLogicClientPool.class);
+
+    public static final int DEFAULT_MAX_IDLE = 16;
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 60000;
+
+    /**
+     * creates clients for the pool
+     */
+    public interface Factory {
+        MarkLogicClient create();
+    }
+
+    private final Factory factory;
+
+    // head is the most recently returned client
+    private final Deque<IdleClient> idle = new ArrayDeque<IdleClient>();
+
+    private volatile int maxIdle;
+    private volatile long maxIdleMillis;
+    private boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong returned = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * constructor, uses default bounds
+     *
+     * @param factory
+     */
+    public MarkLogicClientPool(Factory factory) {
+        this(factory, DEFAULT_MAX_IDLE, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * constructor
+     *
+     * @param factory
+     * @param maxIdle - maximum number of idle clients retained, 0 disables pooling
+     * @param maxIdleMillis - idle clients older than this are evicted, 0 or less never expires
+     */
+    public MarkLogicClientPool(Factory factory, int maxIdle, long maxIdleMillis) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * returns an idle client or creates a new one
+     *
+     * @return MarkLogicClient
+     */
+    public MarkLogicClient borrow() {
+        MarkLogicClient client = null;
+        List<MarkLogicClient> expired = null;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            IdleClient candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (isExpired(candidate, now)) {
+                    expired = add(expired, candidate.client);
+                } else {
+                    client = candidate.client;
+                    break;
+                }
+            }
+        }
+        destroy(expired);
+        if (client != null) {
+            reused.incrementAndGet();
+        } else {
+            client = factory.create();
+            created.incrementAndGet();
+        }
+        active.incrementAndGet();
+        return client;
+    }
+
+    /**
+     * resets the client and returns it to the pool, the client must not be used by the caller afterwards
+     *
+     * @param client
+     */
+    public void release(MarkLogicClient client) {
+        if (client == null) {
+            return;
+        }
+        active.decrementAndGet();
+        returned.incrementAndGet();
+        try {
+            client.reset();
+        } catch (Exception e) {
+            logger.debug("discarding client that could not be reset: {}", e.getLocalizedMessage());
+            destroy(client);
+            return;
+        }
+        List<MarkLogicClient> discard = null;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (closed || idle.size() >= maxIdle) {
+                discard = add(discard, client);
+            } else {
+                idle.offerFirst(new IdleClient(client, now));
+            }
+            // oldest clients are at the tail
+            while (!idle.isEmpty() && isExpired(idle.peekLast(), now)) {
+                discard = add(discard, idle.pollLast().client);
+            }
+        }
+        destroy(discard);
+    }
+
+    /**
+     * destroys all idle clients
+     */
+    public void clear() {
+        List<MarkLogicClient> discard = new ArrayList<MarkLogicClient>();
+        synchronized (this) {
+            for (IdleClient candidate : idle) {
+                discard.add(candidate.client);
+            }
+            idle.clear();
+        }
+        destroy(discard);
+    }
+
+    /**
+     * destroys all idle clients, clients released afterwards are destroyed
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        clear();
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public long getMaxIdleMillis() {
+        return maxIdleMillis;
+    }
+
+    public void setMaxIdleMillis(long maxIdleMillis) {
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * number of idle clients
+     *
+     * @return int
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * number of borrowed clients not yet released
+     *
+     * @return int
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public long getReturnedCount() {
+        return returned.get();
+    }
+
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MarkLogicClientPool[idle=" + getIdleCount() + ", active=" + getActiveCount() + ", created=" + getCreatedCount()
+                + ", reused=" + getReusedCount() + ", evicted=" + getEvictedCount() + "]";
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean isExpired(IdleClient candidate, long now) {
+        long millis = maxIdleMillis;
+        return millis > 0 && now - candidate.since > millis;
+    }
+
+    private static List<MarkLogicClient> add(List<MarkLogicClient> list, MarkLogicClient client) {
+        if (list == null) {
+            list = new ArrayList<MarkLogicClient>();
+        }
+        list.add(client);
+        return list;
+    }
+
+    private void destroy(List<MarkLogicClient> clients) {
+        if (clients != null) {
+            for (MarkLogicClient client : clients) {
+                destroy(client);
+            }
+        }
+    }
+
+    private void destroy(MarkLogicClient client) {
+        evicted.incrementAndGet();
+        try {
+            client.stopTimer();
+            client.close();
+        } catch (Exception e) {
+            logger.debug("failed closing client: {}", e.getLocalizedMessage());
+        }
+    }
+
+    private static final class IdleClient {
+        final MarkLogicClient client;
+        final long since;
+
+        IdleClient(MarkLogicClient client, long since) {
+            this.client = client;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * counts bytes read into ClientMetrics, as received for responses or as sent for uploads,
+ * and the time spent reading a response as its TRANSFER phase when timings are given
+ *
+ * @author James Fuller
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private final ClientMetrics metrics;
+
+    private final boolean sent;
+
+    private final PhaseTimings timings;
+
+    private long count;
+
+    /**
+     * constructor
+     *
+     * @param in
+     * @param metrics
+     * @param sent - true if the stream is uploaded, false if it is a response
+     */
+    MeteredInputStream(InputStream in, ClientMetrics metrics, boolean sent) {
+        this(in, metrics, sent, null);
+    }
+
+    /**
+     * constructor
+     *
+     * @param in
+     * @param metrics
+     * @param sent - true if the stream is uploaded, false if it is a response
+     * @param timings - times reads as TRANSFER, may be null
+     */
+    MeteredInputStream(InputStream in, ClientMetrics metrics, boolean sent, PhaseTimings timings) {
+        super(in);
+        this.metrics = metrics;
+        this.sent = sent;
+        this.timings = timings;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long started = timings != null ? System.nanoTime() : 0;
+        int b = super.read();
+        if (timings != null) {
+            timings.add(PhaseTimings.Phase.TRANSFER, System.nanoTime() - started);
+        }
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long started = timings != null ? System.nanoTime() : 0;
+        int n = super.read(b, off, len);
+        if (timings != null) {
+            timings.add(PhaseTimings.Phase.TRANSFER, System.nanoTime() - started);
+        }
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            count(skipped);
+        }
+        return skipped;
+    }
+
+    /**
+     * @return long - bytes read so far
+     */
+    long getCount() {
+        return count;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void count(long bytes) {
+        count += bytes;
+        if (sent) {
+            metrics.addBytesSent(bytes);
+        } else {
+            metrics.addBytesReceived(bytes);
+        }
+    }
+}
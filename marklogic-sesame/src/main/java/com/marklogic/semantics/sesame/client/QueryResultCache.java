@@ -0,0 +1,597 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * An LRU cache of materialized query results, invalidated by a
+ * write generation counter.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.query.QueryDefinition;
+import com.marklogic.client.query.StringQueryDefinition;
+import com.marklogic.client.query.StructuredQueryDefinition;
+import com.marklogic.client.semantics.SPARQLRuleset;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.GraphQueryResultImpl;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side cache of tuple, graph and boolean query results.
+ *
+ * Entries are keyed by query text, bindings, rulesets, constraining query,
+ * base URI and paging, bounded by entry count and time to live. Every write
+ * through a {@link MarkLogicClient} sharing this cache bumps the write
+ * generation, which makes all existing entries stale.
+ *
+ * @author James Fuller
+ */
+public class QueryResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCache.class);
+
+    public static final long DEFAULT_CACHE_SIZE = 1000;
+    public static final long DEFAULT_CACHE_MILLIS = 60000;
+    public static final long DEFAULT_MAX_RESULT_SIZE = 10000;
+
+    private final long cacheSize;
+    private final long cacheMillis;
+    private final long maxResultSize;
+
+    private final LinkedHashMap<Key, CachedResult> cache;
+
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * constructor, uses default size and time to live
+     */
+    public QueryResultCache() {
+        this(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_MILLIS);
+    }
+
+    /**
+     * constructor
+     *
+     * @param cacheSize - maximum number of cached results
+     * @param cacheMillis - time to live (ms) of a cached result, 0 or less never expires
+     */
+    public QueryResultCache(long cacheSize, long cacheMillis) {
+        this(cacheSize, cacheMillis, DEFAULT_MAX_RESULT_SIZE);
+    }
+
+    /**
+     * constructor
+     *
+     * @param cacheSize - maximum number of cached results
+     * @param cacheMillis - time to live (ms) of a cached result, 0 or less never expires
+     * @param maxResultSize - results with more rows (or statements) than this are not cached
+     */
+    public QueryResultCache(long cacheSize, long cacheMillis, long maxResultSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be 1 or greater");
+        }
+        this.cacheSize = cacheSize;
+        this.cacheMillis = cacheMillis;
+        this.maxResultSize = maxResultSize;
+        this.cache = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                if (size() > QueryResultCache.this.cacheSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * builds the key identifying a query evaluation
+     *
+     * @param queryType
+     * @param queryString
+     * @param bindings
+     * @param rulesets
+     * @param constrainingQueryDefinition
+     * @param baseURI
+     * @param includeInferred
+     * @param start
+     * @param pageLength
+     * @return Key
+     */
+    public static Key key(String queryType, String queryString, BindingSet bindings, SPARQLRuleset[] rulesets, QueryDefinition constrainingQueryDefinition, String baseURI, boolean includeInferred, long start, long pageLength) {
+        return new Key(queryType, queryString, bindings, rulesets, constrainingQueryDefinition, baseURI, includeInferred, start, pageLength);
+    }
+
+    /**
+     * builds the key identifying a query evaluation
+     *
+     * @param queryType
+     * @param queryString
+     * @param bindings
+     * @param options
+     * @param start
+     * @param pageLength
+     * @return Key
+     */
+    public static Key key(String queryType, String queryString, BindingSet bindings, RequestOptions options, long start, long pageLength) {
+        return new Key(queryType, queryString, bindings, options.rulesets(), options.getConstrainingQueryDefinition(), options.getBaseURI(), options.getIncludeInferred(), start, pageLength);
+    }
+
+    /**
+     * returns the current write generation, to be captured before a query is sent
+     *
+     * @return long
+     */
+    public long getWriteGeneration() {
+        return writeGeneration.get();
+    }
+
+    /**
+     * bumps the write generation, all cached results become stale
+     */
+    public void invalidate() {
+        writeGeneration.incrementAndGet();
+        invalidations.incrementAndGet();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * returns cached tuple result or null
+     *
+     * @param key
+     * @return TupleQueryResult
+     */
+    public TupleQueryResult getTupleResult(Key key) {
+        CachedResult entry = lookup(key);
+        if (entry == null) {
+            return null;
+        }
+        return new TupleQueryResultImpl(entry.bindingNames, entry.bindingSets);
+    }
+
+    /**
+     * returns cached graph result or null
+     *
+     * @param key
+     * @return GraphQueryResult
+     */
+    public GraphQueryResult getGraphResult(Key key) {
+        CachedResult entry = lookup(key);
+        if (entry == null) {
+            return null;
+        }
+        return new GraphQueryResultImpl(entry.namespaces, entry.statements);
+    }
+
+    /**
+     * returns cached boolean result or null
+     *
+     * @param key
+     * @return Boolean
+     */
+    public Boolean getBooleanResult(Key key) {
+        CachedResult entry = lookup(key);
+        if (entry == null) {
+            return null;
+        }
+        return entry.booleanResult;
+    }
+
+    /**
+     * wraps a tuple result so that it is cached once fully consumed
+     *
+     * @param key
+     * @param generation - write generation captured before the query was sent
+     * @param result
+     * @return TupleQueryResult
+     */
+    public TupleQueryResult cacheTupleResult(Key key, long generation, TupleQueryResult result) {
+        return new RecordingTupleQueryResult(key, generation, result);
+    }
+
+    /**
+     * wraps a graph result so that it is cached once fully consumed
+     *
+     * @param key
+     * @param generation - write generation captured before the query was sent
+     * @param result
+     * @return GraphQueryResult
+     */
+    public GraphQueryResult cacheGraphResult(Key key, long generation, GraphQueryResult result) {
+        return new RecordingGraphQueryResult(key, generation, result);
+    }
+
+    /**
+     * caches boolean result
+     *
+     * @param key
+     * @param generation - write generation captured before the query was sent
+     * @param result
+     */
+    public void cacheBooleanResult(Key key, long generation, boolean result) {
+        CachedResult entry = new CachedResult(generation, expiry());
+        entry.booleanResult = result;
+        store(key, entry);
+    }
+
+    /**
+     * number of results currently cached
+     *
+     * @return int
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getCacheMillis() {
+        return cacheMillis;
+    }
+
+    public long getMaxResultSize() {
+        return maxResultSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * ratio of hits to lookups, 0 if there were no lookups
+     *
+     * @return double
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * resets hit, miss, eviction and invalidation counters
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+        invalidations.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", invalidations=" + getInvalidationCount()
+                + ", generation=" + getWriteGeneration() + "]";
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private CachedResult lookup(Key key) {
+        long generation = writeGeneration.get();
+        synchronized (cache) {
+            CachedResult entry = cache.get(key);
+            if (entry != null) {
+                if (entry.generation == generation && !entry.isExpired(System.currentTimeMillis())) {
+                    hits.incrementAndGet();
+                    return entry;
+                }
+                cache.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void store(Key key, CachedResult entry) {
+        synchronized (cache) {
+            // a write happened while the query was in flight, result may be stale
+            if (entry.generation != writeGeneration.get()) {
+                log.debug("discarding stale result for write generation {}", entry.generation);
+                return;
+            }
+            cache.put(key, entry);
+        }
+    }
+
+    private long expiry() {
+        return cacheMillis > 0 ? System.currentTimeMillis() + cacheMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * identifies a query evaluation
+     */
+    public static final class Key {
+
+        private final String queryType;
+        private final String queryString;
+        private final Map<String, Value> bindings;
+        private final List<String> rulesets;
+        private final Object constrainingQuery;
+        private final String baseURI;
+        private final boolean includeInferred;
+        private final long start;
+        private final long pageLength;
+        private final int hash;
+
+        private Key(String queryType, String queryString, BindingSet bindings, SPARQLRuleset[] rulesets, QueryDefinition constrainingQueryDefinition, String baseURI, boolean includeInferred, long start, long pageLength) {
+            this.queryType = queryType;
+            this.queryString = queryString;
+            this.bindings = copyBindings(bindings);
+            this.rulesets = rulesetNames(rulesets);
+            this.constrainingQuery = fingerprint(constrainingQueryDefinition);
+            this.baseURI = baseURI;
+            this.includeInferred = includeInferred;
+            this.start = start;
+            this.pageLength = pageLength;
+            this.hash = Arrays.hashCode(new Object[]{queryType, queryString, this.bindings, this.rulesets, constrainingQuery, baseURI, includeInferred, start, pageLength});
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                    && includeInferred == other.includeInferred
+                    && start == other.start
+                    && pageLength == other.pageLength
+                    && eq(queryType, other.queryType)
+                    && eq(queryString, other.queryString)
+                    && eq(baseURI, other.baseURI)
+                    && bindings.equals(other.bindings)
+                    && rulesets.equals(other.rulesets)
+                    && eq(constrainingQuery, other.constrainingQuery);
+        }
+
+        private static boolean eq(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        private static Map<String, Value> copyBindings(BindingSet bindings) {
+            if (bindings == null || bindings.size() == 0) {
+                return Collections.emptyMap();
+            }
+            Map<String, Value> copy = new HashMap<String, Value>();
+            for (Binding binding : bindings) {
+                copy.put(binding.getName(), binding.getValue());
+            }
+            return copy;
+        }
+
+        private static List<String> rulesetNames(SPARQLRuleset[] rulesets) {
+            if (rulesets == null || rulesets.length == 0) {
+                return Collections.emptyList();
+            }
+            List<String> names = new ArrayList<String>(rulesets.length);
+            for (SPARQLRuleset ruleset : rulesets) {
+                if (ruleset != null) {
+                    names.add(ruleset.getName());
+                }
+            }
+            return names;
+        }
+
+        // query definitions do not implement equals, so compare on their serialized criteria where possible
+        private static Object fingerprint(QueryDefinition qdef) {
+            if (qdef == null) {
+                return null;
+            }
+            String criteria;
+            if (qdef instanceof StructuredQueryDefinition) {
+                criteria = ((StructuredQueryDefinition) qdef).serialize();
+            } else if (qdef instanceof StringQueryDefinition) {
+                criteria = ((StringQueryDefinition) qdef).getCriteria();
+            } else {
+                return qdef;
+            }
+            return Arrays.asList(qdef.getClass().getName(), criteria, qdef.getOptionsName(), qdef.getDirectory(),
+                    qdef.getCollections() == null ? null : Arrays.asList(qdef.getCollections()));
+        }
+    }
+
+    /**
+     * cached result
+     */
+    private static final class CachedResult {
+        final long generation;
+        final long expires;
+        List<String> bindingNames;
+        List<BindingSet> bindingSets;
+        Map<String, String> namespaces;
+        List<Statement> statements;
+        Boolean booleanResult;
+
+        CachedResult(long generation, long expires) {
+            this.generation = generation;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now > expires;
+        }
+    }
+
+    /**
+     * records rows as they are consumed, caching them when the result is exhausted
+     */
+    private class RecordingTupleQueryResult implements TupleQueryResult {
+
+        private final Key key;
+        private final long generation;
+        private final TupleQueryResult delegate;
+        private List<BindingSet> rows = new ArrayList<BindingSet>();
+
+        RecordingTupleQueryResult(Key key, long generation, TupleQueryResult delegate) {
+            this.key = key;
+            this.generation = generation;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<String> getBindingNames() throws QueryEvaluationException {
+            return delegate.getBindingNames();
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext && rows != null) {
+                CachedResult entry = new CachedResult(generation, expiry());
+                // shared by every hit, so read only
+                entry.bindingNames = Collections.unmodifiableList(new ArrayList<String>(delegate.getBindingNames()));
+                entry.bindingSets = Collections.unmodifiableList(rows);
+                rows = null;
+                store(key, entry);
+            }
+            return hasNext;
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            BindingSet next = delegate.next();
+            if (rows != null) {
+                if (rows.size() < maxResultSize) {
+                    rows.add(next);
+                } else {
+                    rows = null;
+                }
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            delegate.remove();
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            rows = null;
+            delegate.close();
+        }
+    }
+
+    /**
+     * records statements as they are consumed, caching them when the result is exhausted
+     */
+    private class RecordingGraphQueryResult implements GraphQueryResult {
+
+        private final Key key;
+        private final long generation;
+        private final GraphQueryResult delegate;
+        private List<Statement> statements = new ArrayList<Statement>();
+
+        RecordingGraphQueryResult(Key key, long generation, GraphQueryResult delegate) {
+            this.key = key;
+            this.generation = generation;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() throws QueryEvaluationException {
+            return delegate.getNamespaces();
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext && statements != null) {
+                CachedResult entry = new CachedResult(generation, expiry());
+                // shared by every hit, so read only
+                entry.namespaces = Collections.unmodifiableMap(new LinkedHashMap<String, String>(delegate.getNamespaces()));
+                entry.statements = Collections.unmodifiableList(statements);
+                statements = null;
+                store(key, entry);
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Statement next() throws QueryEvaluationException {
+            Statement next = delegate.next();
+            if (statements != null) {
+                if (statements.size() < maxResultSize) {
+                    statements.add(next);
+                } else {
+                    statements = null;
+                }
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            delegate.remove();
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            statements = null;
+            delegate.close();
+        }
+    }
+}
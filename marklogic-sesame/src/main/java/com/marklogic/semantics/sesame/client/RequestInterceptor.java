@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+/**
+ * Called around every request sent to MarkLogic: queries, updates, graph merges, deletes,
+ * clears and transaction calls. Interceptors run in the order they were added for before()
+ * and in reverse order for after() and error(), on the thread issuing the request.
+ *
+ * A RuntimeException thrown by before() fails the request with that exception before
+ * anything is sent, which can be used for fault injection; interceptors whose before()
+ * already ran are then told through error(). Exceptions thrown by after() and error()
+ * are logged and ignored.
+ *
+ * For streamed query results after() is called once the response headers are in, the body
+ * is read later by the result.
+ *
+ * @author James Fuller
+ */
+public interface RequestInterceptor {
+
+    /**
+     * called before the request is sent
+     *
+     * @param request
+     */
+    void before(InterceptedRequest request);
+
+    /**
+     * called after the request succeeded
+     *
+     * @param request
+     */
+    void after(InterceptedRequest request);
+
+    /**
+     * called after the request failed
+     *
+     * @param request
+     * @param failure
+     */
+    void error(InterceptedRequest request, Throwable failure);
+}
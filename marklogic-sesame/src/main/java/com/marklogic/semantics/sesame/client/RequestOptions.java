@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.query.QueryDefinition;
+import com.marklogic.client.semantics.GraphPermissions;
+import com.marklogic.client.semantics.SPARQLRuleset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable options sent with a single request; base URI, inference,
+ * rulesets, constraining query, graph permissions and max execution time.
+ *
+ * Instances are safe to share between threads, with* methods return a copy.
+ *
+ * @author James Fuller
+ */
+public final class RequestOptions {
+
+    public static final RequestOptions DEFAULT = new RequestOptions(null, true, null, null, null);
+
+    private static final SPARQLRuleset[] NO_RULESETS = new SPARQLRuleset[0];
+
+    private final String baseURI;
+    private final boolean includeInferred;
+    private final SPARQLRuleset[] rulesets;
+    private final QueryDefinition constrainingQueryDefinition;
+    private final GraphPermissions graphPerms;
+    private final long maxExecutionTimeMillis;
+
+    /**
+     * constructor
+     *
+     * @param baseURI
+     * @param includeInferred
+     * @param rulesets - null entries are filtered out
+     * @param constrainingQueryDefinition
+     * @param graphPerms
+     */
+    public RequestOptions(String baseURI, boolean includeInferred, SPARQLRuleset[] rulesets, QueryDefinition constrainingQueryDefinition, GraphPermissions graphPerms) {
+        this(baseURI, includeInferred, rulesets, constrainingQueryDefinition, graphPerms, 0);
+    }
+
+    /**
+     * constructor
+     *
+     * @param baseURI
+     * @param includeInferred
+     * @param rulesets - null entries are filtered out
+     * @param constrainingQueryDefinition
+     * @param graphPerms
+     * @param maxExecutionTimeMillis - 0 or less means no limit
+     */
+    public RequestOptions(String baseURI, boolean includeInferred, SPARQLRuleset[] rulesets, QueryDefinition constrainingQueryDefinition, GraphPermissions graphPerms, long maxExecutionTimeMillis) {
+        this.baseURI = baseURI;
+        this.includeInferred = includeInferred;
+        this.rulesets = copyRulesets(rulesets);
+        this.constrainingQueryDefinition = constrainingQueryDefinition;
+        this.graphPerms = graphPerms;
+        this.maxExecutionTimeMillis = maxExecutionTimeMillis > 0 ? maxExecutionTimeMillis : 0;
+    }
+
+    public String getBaseURI() {
+        return baseURI;
+    }
+
+    public boolean getIncludeInferred() {
+        return includeInferred;
+    }
+
+    /**
+     * returns copy of rulesets, null if none are set
+     *
+     * @return
+     */
+    public SPARQLRuleset[] getRulesets() {
+        return rulesets == null ? null : rulesets.clone();
+    }
+
+    public QueryDefinition getConstrainingQueryDefinition() {
+        return constrainingQueryDefinition;
+    }
+
+    public GraphPermissions getGraphPerms() {
+        return graphPerms;
+    }
+
+    /**
+     * time after which the request is aborted, 0 if unlimited
+     *
+     * @return
+     */
+    public long getMaxExecutionTimeMillis() {
+        return maxExecutionTimeMillis;
+    }
+
+    public RequestOptions withBaseURI(String baseURI) {
+        return new RequestOptions(baseURI, includeInferred, rulesets, constrainingQueryDefinition, graphPerms, maxExecutionTimeMillis);
+    }
+
+    public RequestOptions withIncludeInferred(boolean includeInferred) {
+        return new RequestOptions(baseURI, includeInferred, rulesets, constrainingQueryDefinition, graphPerms, maxExecutionTimeMillis);
+    }
+
+    public RequestOptions withRulesets(SPARQLRuleset... rulesets) {
+        return new RequestOptions(baseURI, includeInferred, rulesets, constrainingQueryDefinition, graphPerms, maxExecutionTimeMillis);
+    }
+
+    public RequestOptions withConstrainingQueryDefinition(QueryDefinition constrainingQueryDefinition) {
+        return new RequestOptions(baseURI, includeInferred, rulesets, constrainingQueryDefinition, graphPerms, maxExecutionTimeMillis);
+    }
+
+    public RequestOptions withGraphPerms(GraphPermissions graphPerms) {
+        return new RequestOptions(baseURI, includeInferred, rulesets, constrainingQueryDefinition, graphPerms, maxExecutionTimeMillis);
+    }
+
+    public RequestOptions withMaxExecutionTimeMillis(long maxExecutionTimeMillis) {
+        return new RequestOptions(baseURI, includeInferred, rulesets, constrainingQueryDefinition, graphPerms, maxExecutionTimeMillis);
+    }
+
+    /**
+     * rulesets without copying, for internal use
+     *
+     * @return
+     */
+    SPARQLRuleset[] rulesets() {
+        return rulesets;
+    }
+
+    private static SPARQLRuleset[] copyRulesets(SPARQLRuleset[] rulesets) {
+        if (rulesets == null) {
+            return null;
+        }
+        List<SPARQLRuleset> list = new ArrayList<SPARQLRuleset>(rulesets.length);
+        for (SPARQLRuleset r : rulesets) {
+            if (r != null) {
+                list.add(r);
+            }
+        }
+        return list.isEmpty() ? NO_RULESETS : list.toArray(new SPARQLRuleset[list.size()]);
+    }
+}
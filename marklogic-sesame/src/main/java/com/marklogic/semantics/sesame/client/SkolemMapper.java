@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps blank nodes to the skolem IRIs they are stored as in MarkLogic and, when
+ * enabled, skolem IRIs in query results back to blank nodes.
+ *
+ * Both directions are cached in bounded LRU maps, so blank node heavy data such
+ * as OWL ontologies does not build the same IRI for every statement. Shared by all
+ * clients of a repository; safe for concurrent use.
+ *
+ * @author James Fuller
+ */
+public class SkolemMapper {
+
+    public static final String SKOLEM_PREFIX = "http://marklogic.com/semantics/blank/";
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final boolean deskolemize;
+
+    private final Lru<String, URI> skolems;
+
+    private final Lru<String, BNode> bnodes;
+
+    /**
+     * constructor, skolem IRIs in results are left as IRIs
+     */
+    public SkolemMapper() {
+        this(false);
+    }
+
+    /**
+     * constructor
+     *
+     * @param deskolemize - turn skolem IRIs in query results back into blank nodes
+     */
+    public SkolemMapper(boolean deskolemize) {
+        this(DEFAULT_CAPACITY, deskolemize);
+    }
+
+    /**
+     * constructor
+     *
+     * @param capacity - maximum number of cached mappings in each direction
+     * @param deskolemize - turn skolem IRIs in query results back into blank nodes
+     */
+    public SkolemMapper(int capacity, boolean deskolemize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.deskolemize = deskolemize;
+        this.skolems = new Lru<String, URI>(capacity);
+        this.bnodes = new Lru<String, BNode>(deskolemize ? capacity : 1);
+    }
+
+    public boolean isDeskolemize() {
+        return deskolemize;
+    }
+
+    /**
+     * skolem IRI for a blank node
+     *
+     * @param bnode
+     * @return URI
+     */
+    public URI skolemize(BNode bnode) {
+        String id = bnode.getID();
+        synchronized (skolems) {
+            URI skolem = skolems.get(id);
+            if (skolem == null) {
+                skolem = new URIImpl(SKOLEM_PREFIX + id);
+                skolems.put(id, skolem);
+            }
+            return skolem;
+        }
+    }
+
+    /**
+     * skolem IRI for a blank node, other values are returned as is
+     *
+     * @param value
+     * @return Value
+     */
+    public Value skolemize(Value value) {
+        return value instanceof BNode ? skolemize((BNode) value) : value;
+    }
+
+    /**
+     * bindings with blank nodes replaced by skolem IRIs, the same instance if there are none
+     * or results are not deskolemized
+     *
+     * @param bindings
+     * @return SPARQLQueryBindingSet
+     */
+    public SPARQLQueryBindingSet skolemize(SPARQLQueryBindingSet bindings) {
+        if (!deskolemize || bindings == null || !hasBNode(bindings)) {
+            return bindings;
+        }
+        SPARQLQueryBindingSet skolemized = new SPARQLQueryBindingSet(bindings.size());
+        for (Binding binding : bindings) {
+            skolemized.addBinding(binding.getName(), skolemize(binding.getValue()));
+        }
+        return skolemized;
+    }
+
+    /**
+     * appends the SPARQL IRI term of value, skolemizing blank nodes
+     *
+     * @param query
+     * @param value - a URI or BNode
+     */
+    public void appendIRI(StringBuffer query, Value value) {
+        query.append('<').append(skolemize(value).stringValue()).append("> ");
+    }
+
+    /**
+     * true if value is a skolem IRI
+     *
+     * @param value
+     * @return boolean
+     */
+    public static boolean isSkolem(Value value) {
+        return value instanceof URI && value.stringValue().startsWith(SKOLEM_PREFIX);
+    }
+
+    /**
+     * blank node for a skolem IRI if results are deskolemized, other values are returned as is
+     *
+     * @param value
+     * @return Value
+     */
+    public Value deskolemize(Value value) {
+        if (!deskolemize || !isSkolem(value)) {
+            return value;
+        }
+        String iri = value.stringValue();
+        synchronized (bnodes) {
+            BNode bnode = bnodes.get(iri);
+            if (bnode == null) {
+                bnode = new BNodeImpl(iri.substring(SKOLEM_PREFIX.length()));
+                bnodes.put(iri, bnode);
+            }
+            return bnode;
+        }
+    }
+
+    /**
+     * bindings with skolem IRIs replaced by blank nodes, the same instance if there are none
+     *
+     * @param bindings
+     * @return BindingSet
+     */
+    public BindingSet deskolemize(BindingSet bindings) {
+        if (!deskolemize || !hasSkolem(bindings)) {
+            return bindings;
+        }
+        MapBindingSet deskolemized = new MapBindingSet(bindings.size());
+        for (Binding binding : bindings) {
+            deskolemized.addBinding(binding.getName(), deskolemize(binding.getValue()));
+        }
+        return deskolemized;
+    }
+
+    /**
+     * statement with skolem IRI subject or object replaced by blank nodes, the same instance
+     * if there are none
+     *
+     * @param st
+     * @param f - creates the replacement statement
+     * @return Statement
+     */
+    public Statement deskolemize(Statement st, ValueFactory f) {
+        if (!deskolemize || !isSkolem(st.getSubject()) && !isSkolem(st.getObject())) {
+            return st;
+        }
+        Resource subject = (Resource) deskolemize(st.getSubject());
+        Value object = deskolemize(st.getObject());
+        if (st.getContext() == null) {
+            return f.createStatement(subject, st.getPredicate(), object);
+        }
+        return f.createStatement(subject, st.getPredicate(), object, st.getContext());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static boolean hasBNode(SPARQLQueryBindingSet bindings) {
+        for (Binding binding : bindings) {
+            if (binding.getValue() instanceof BNode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasSkolem(BindingSet bindings) {
+        for (Binding binding : bindings) {
+            if (isSkolem(binding.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * access ordered map evicting its least recently used mapping
+     */
+    private static final class Lru<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Lru(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -41,6 +41,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Date;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Timer implements write cache for efficient adding of triples
@@ -67,6 +68,9 @@ public abstract class TripleCache extends TimerTask {
 
     protected Date lastCacheAccess = new Date();
 
+    // statements last added to the write cache depth of client metrics
+    private final AtomicLong reportedDepth = new AtomicLong();
+
     /**
      * constructor
      *
@@ -146,6 +150,8 @@ public abstract class TripleCache extends TimerTask {
             } catch (IOException e) {
                 log.error(e.getLocalizedMessage());
                 throw new RuntimeException(e);
+            } finally {
+                reportDepth();
             }
         }
     }
@@ -170,6 +176,8 @@ public abstract class TripleCache extends TimerTask {
                 throw new MarkLogicSesameException("Could not flush write cache, query update failed.",e);
             } catch (IOException e) {
                 throw new MarkLogicSesameException("Could not flush write cache, encountered IO issue.",e);
+            } finally {
+                reportDepth();
             }
         }
     }
@@ -186,7 +194,28 @@ public abstract class TripleCache extends TimerTask {
         cache.add(subject,predicate,object,contexts);
         if( cache.size() > cacheSize - 1){
             forceRun();
+        } else {
+            reportDepth();
         }
     }
 
+    /**
+     * cancels the task, statements still cached no longer count towards the write cache depth
+     *
+     * @return
+     */
+    @Override
+    public boolean cancel() {
+        client.getMetrics().addWriteCacheDepth(-reportedDepth.getAndSet(0));
+        return super.cancel();
+    }
+
+    /**
+     * reports change in the number of cached statements to client metrics
+     */
+    protected void reportDepth() {
+        long depth = cache.size();
+        client.getMetrics().addWriteCacheDepth(depth - reportedDepth.getAndSet(depth));
+    }
+
 }
\ No newline at end of file
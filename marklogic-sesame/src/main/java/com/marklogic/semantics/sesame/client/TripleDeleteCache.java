@@ -55,6 +55,7 @@ public class TripleDeleteCache extends TripleCache {
         if (cache.isEmpty()) { return; }
         StringBuffer entireQuery = new StringBuffer();
         SPARQLQueryBindingSet bindingSet = new SPARQLQueryBindingSet();
+        SkolemMapper skolemMapper = client.getSkolemMapper();
 
         for (Namespace ns :cache.getNamespaces()){
             entireQuery.append("PREFIX "+ns.getPrefix()+": <"+ns.getName()+">. ");
@@ -71,8 +72,8 @@ public class TripleDeleteCache extends TripleCache {
                    entireQuery.append(" GRAPH <" + ctx + "> { ");
                }
                 for (Statement stmt : cache.filter(null, null, null, ctx)) {
-                    entireQuery.append("<" + stmt.getSubject().stringValue() + "> ");
-                    entireQuery.append("<" + stmt.getPredicate().stringValue() + "> ");
+                    skolemMapper.appendIRI(entireQuery, stmt.getSubject());
+                    skolemMapper.appendIRI(entireQuery, stmt.getPredicate());
                     Value object=stmt.getObject();
                     if (object instanceof Literal) {
                         Literal lit = (Literal) object;
@@ -85,7 +86,7 @@ public class TripleDeleteCache extends TripleCache {
                             entireQuery.append("@" + lit.getLanguage().toString());
                         }
                     } else {
-                        entireQuery.append("<" + object.stringValue() + "> ");
+                        skolemMapper.appendIRI(entireQuery, object);
                     }
                     entireQuery.append(".");
                 }
@@ -25,7 +25,6 @@ import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.UpdateExecutionException;
 import org.openrdf.query.parser.sparql.SPARQLUtil;
 import org.openrdf.repository.RepositoryException;
-import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.Rio;
@@ -61,8 +60,26 @@ public class TripleWriteCache extends TripleCache {
 
     protected synchronized void flush() throws RepositoryException, MalformedQueryException, UpdateExecutionException, IOException {
         if (cache.isEmpty()) { return; }
+        String entireQuery = insertData(cache, client.getSkolemMapper());
+        log.debug(entireQuery);
+        long started = System.nanoTime();
+        client.sendFlush(entireQuery, cache.size());
+        client.getMetrics().recordFlush(cache.size(), System.nanoTime() - started);
+        lastCacheAccess = new Date();
+        log.debug("success writing cache: {}",String.valueOf(cache.size()));
+        cache.clear();
+
+    }
+
+    /**
+     * builds INSERT DATA update writing triples as graph
+     *
+     * @param cache
+     * @param skolemMapper
+     * @return
+     */
+    static String insertData(Model cache, SkolemMapper skolemMapper) {
         StringBuffer entireQuery = new StringBuffer();
-        SPARQLQueryBindingSet bindingSet = new SPARQLQueryBindingSet();
 
         for (Namespace ns :cache.getNamespaces()){
             entireQuery.append("PREFIX "+ns.getPrefix()+": <"+ns.getName()+">. ");
@@ -79,16 +96,8 @@ public class TripleWriteCache extends TripleCache {
                    entireQuery.append(" GRAPH <" + ctx + "> { ");
                }
                 for (Statement stmt : cache.filter(null, null, null, ctx)) {
-                    if (stmt.getSubject() instanceof org.openrdf.model.BNode) {
-                        entireQuery.append("<http://marklogic.com/semantics/blank/" + stmt.getSubject().stringValue() + "> ");
-                    }else {
-                        entireQuery.append("<" + stmt.getSubject().stringValue() + "> ");
-                    }
-                    if (stmt.getPredicate() instanceof org.openrdf.model.BNode) {
-                        entireQuery.append("<http://marklogic.com/semantics/blank/" + stmt.getPredicate().stringValue() + "> ");
-                    }else{
-                        entireQuery.append("<" + stmt.getPredicate().stringValue() + "> ");
-                    }
+                    skolemMapper.appendIRI(entireQuery, stmt.getSubject());
+                    skolemMapper.appendIRI(entireQuery, stmt.getPredicate());
                     Value object=stmt.getObject();
                     if (object instanceof Literal) {
                         Literal lit = (Literal) object;
@@ -101,11 +110,7 @@ public class TripleWriteCache extends TripleCache {
                             entireQuery.append("@" + lit.getLanguage().toString());
                         }
                     } else {
-                        if (stmt.getObject() instanceof org.openrdf.model.BNode) {
-                            entireQuery.append("<http://marklogic.com/semantics/blank/" + stmt.getObject().stringValue() + "> ");
-                        }else {
-                            entireQuery.append("<" + object.stringValue() + "> ");
-                        }
+                        skolemMapper.appendIRI(entireQuery, object);
                     }
                     entireQuery.append(".");
                 }
@@ -115,12 +120,6 @@ public class TripleWriteCache extends TripleCache {
         }
 
         entireQuery.append("} ");
-        log.debug(entireQuery.toString());
-        client.sendUpdateQuery(entireQuery.toString(),bindingSet,false,null);
-        lastCacheAccess = new Date();
-        log.debug("success writing cache: {}",String.valueOf(cache.size()));
-        cache.clear();
-
+        return entireQuery.toString();
     }
-
 }
@@ -19,9 +19,13 @@
  */
 package com.marklogic.semantics.sesame.config;
 
+import com.marklogic.semantics.sesame.client.ConnectionSettings;
+import com.marklogic.semantics.sesame.client.GroupCommitter;
 import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
+import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.URIImpl;
 import org.openrdf.model.impl.ValueFactoryImpl;
@@ -32,6 +36,9 @@ import org.openrdf.repository.config.RepositoryImplConfigBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * representation of Repository config
  *
@@ -49,6 +56,50 @@ public class MarkLogicRepositoryConfig extends RepositoryImplConfigBase {
     public static final URI UPDATE_ENDPOINT = new URIImpl(
             "http://www.marklogic.com/v1/graphs");
 
+    public static final String CONFIG_NAMESPACE = "http://www.marklogic.com/v1/config#";
+
+    // repeatable, "host" or "host:port" of each e-node requests are load balanced across
+    public static final URI HOST = new URIImpl(CONFIG_NAMESPACE + "host");
+
+    // repeatable, if present updates, merges and clears go to these hosts instead
+    public static final URI WRITE_HOST = new URIImpl(CONFIG_NAMESPACE + "writeHost");
+
+    // ROUND_ROBIN, LEAST_OUTSTANDING or EWMA_LATENCY
+    public static final URI LOAD_BALANCING = new URIImpl(CONFIG_NAMESPACE + "loadBalancing");
+
+    // HTTP connection pool and transport
+    public static final URI MAX_CONNECTIONS = new URIImpl(CONFIG_NAMESPACE + "maxConnections");
+    public static final URI MAX_CONNECTIONS_PER_ROUTE = new URIImpl(CONFIG_NAMESPACE + "maxConnectionsPerRoute");
+    public static final URI CONNECT_TIMEOUT = new URIImpl(CONFIG_NAMESPACE + "connectTimeoutMillis");
+    public static final URI SOCKET_TIMEOUT = new URIImpl(CONFIG_NAMESPACE + "socketTimeoutMillis");
+    public static final URI KEEP_ALIVE = new URIImpl(CONFIG_NAMESPACE + "keepAliveMillis");
+
+    // write cache
+    public static final URI WRITE_CACHE_SIZE = new URIImpl(CONFIG_NAMESPACE + "writeCacheSize");
+    public static final URI WRITE_CACHE_MILLIS = new URIImpl(CONFIG_NAMESPACE + "writeCacheMillis");
+    public static final URI WRITE_CACHE_INITIAL_DELAY = new URIImpl(CONFIG_NAMESPACE + "writeCacheInitialDelay");
+
+    // executor for background result parsing
+    public static final URI EXECUTOR_CORE_THREADS = new URIImpl(CONFIG_NAMESPACE + "executorCoreThreads");
+    public static final URI EXECUTOR_KEEP_ALIVE = new URIImpl(CONFIG_NAMESPACE + "executorKeepAliveMillis");
+
+    // maximum number of URIs shared between results, 0 disables interning
+    public static final URI INTERN_CAPACITY = new URIImpl(CONFIG_NAMESPACE + "internCapacity");
+
+    // return skolem IRIs of stored blank nodes as blank nodes in results
+    public static final URI DESKOLEMIZE = new URIImpl(CONFIG_NAMESPACE + "deskolemize");
+
+    // connections share one client, each running its own transaction
+    public static final URI SHARED_CLIENT = new URIImpl(CONFIG_NAMESPACE + "sharedClient");
+
+    // autocommit adds of all connections written in shared batches, 0 disables group commit
+    public static final URI GROUP_COMMIT_MAX_STATEMENTS = new URIImpl(CONFIG_NAMESPACE + "groupCommitMaxStatements");
+    public static final URI GROUP_COMMIT_MAX_DELAY = new URIImpl(CONFIG_NAMESPACE + "groupCommitMaxDelayMillis");
+
+    // operations slower than the threshold are logged, sampled at the rate, 0 disables the slow operation log
+    public static final URI SLOW_OPERATION_THRESHOLD = new URIImpl(CONFIG_NAMESPACE + "slowOperationThresholdMillis");
+    public static final URI SLOW_OPERATION_SAMPLE_RATE = new URIImpl(CONFIG_NAMESPACE + "slowOperationSampleRate");
+
 	private String queryEndpointUrl;
 	private String updateEndpointUrl;
 
@@ -58,6 +109,24 @@ public class MarkLogicRepositoryConfig extends RepositoryImplConfigBase {
 	private String password;
 	private String auth;
 
+	private List<String> hosts = new ArrayList<String>();
+	private List<String> writeHosts = new ArrayList<String>();
+	private String loadBalancing;
+
+	private ConnectionSettings connectionSettings = new ConnectionSettings();
+
+	private int internCapacity;
+
+	private boolean deskolemize;
+
+	private boolean sharedClient;
+
+	private int groupCommitMaxStatements;
+	private long groupCommitMaxDelayMillis = GroupCommitter.DEFAULT_MAX_DELAY_MILLIS;
+
+	private long slowOperationThresholdMillis;
+	private double slowOperationSampleRate = 1.0;
+
     /**
 	 * base constructor
 	 */
@@ -183,6 +252,133 @@ public class MarkLogicRepositoryConfig extends RepositoryImplConfigBase {
 		this.updateEndpointUrl = url;
 	}
 	
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for load balanced hosts
+	 *
+	 */
+	public List<String> getHosts() {
+		return hosts;
+	}
+	public void setHosts(List<String> hosts) {
+		this.hosts = hosts != null ? new ArrayList<String>(hosts) : new ArrayList<String>();
+	}
+	public void addHost(String host) {
+		this.hosts.add(host);
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for hosts dedicated to writes
+	 *
+	 */
+	public List<String> getWriteHosts() {
+		return writeHosts;
+	}
+	public void setWriteHosts(List<String> writeHosts) {
+		this.writeHosts = writeHosts != null ? new ArrayList<String>(writeHosts) : new ArrayList<String>();
+	}
+	public void addWriteHost(String writeHost) {
+		this.writeHosts.add(writeHost);
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for load balancing strategy
+	 *
+	 */
+	public String getLoadBalancing() {
+		return loadBalancing;
+	}
+	public void setLoadBalancing(String loadBalancing) {
+		this.loadBalancing = loadBalancing;
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for transport, write cache and executor settings
+	 *
+	 */
+	public ConnectionSettings getConnectionSettings() {
+		return connectionSettings;
+	}
+	public void setConnectionSettings(ConnectionSettings connectionSettings) {
+		this.connectionSettings = connectionSettings != null ? connectionSettings : new ConnectionSettings();
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for the number of interned URIs, 0 disables interning
+	 *
+	 */
+	public int getInternCapacity() {
+		return internCapacity;
+	}
+	public void setInternCapacity(int internCapacity) {
+		this.internCapacity = internCapacity;
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for turning skolem IRIs in results back into blank nodes
+	 *
+	 */
+	public boolean isDeskolemize() {
+		return deskolemize;
+	}
+	public void setDeskolemize(boolean deskolemize) {
+		this.deskolemize = deskolemize;
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for sharing one client between connections
+	 *
+	 */
+	public boolean isSharedClient() {
+		return sharedClient;
+	}
+	public void setSharedClient(boolean sharedClient) {
+		this.sharedClient = sharedClient;
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for group commit batch size, 0 disables group commit
+	 *
+	 */
+	public int getGroupCommitMaxStatements() {
+		return groupCommitMaxStatements;
+	}
+	public void setGroupCommitMaxStatements(int groupCommitMaxStatements) {
+		this.groupCommitMaxStatements = groupCommitMaxStatements;
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for the longest a group commit batch stays open
+	 *
+	 */
+	public long getGroupCommitMaxDelayMillis() {
+		return groupCommitMaxDelayMillis;
+	}
+	public void setGroupCommitMaxDelayMillis(long groupCommitMaxDelayMillis) {
+		this.groupCommitMaxDelayMillis = groupCommitMaxDelayMillis;
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for the slow operation log threshold, 0 disables the log
+	 *
+	 */
+	public long getSlowOperationThresholdMillis() {
+		return slowOperationThresholdMillis;
+	}
+	public void setSlowOperationThresholdMillis(long slowOperationThresholdMillis) {
+		this.slowOperationThresholdMillis = slowOperationThresholdMillis;
+	}
+
+	/**
+	 * MarkLogicRepositoryConfig specific getter/setter for the fraction of slow operations logged
+	 *
+	 */
+	public double getSlowOperationSampleRate() {
+		return slowOperationSampleRate;
+	}
+	public void setSlowOperationSampleRate(double slowOperationSampleRate) {
+		this.slowOperationSampleRate = slowOperationSampleRate;
+	}
+
 	@Override
 	/**
 	 * validate configuration
@@ -190,7 +386,7 @@ public class MarkLogicRepositoryConfig extends RepositoryImplConfigBase {
 	 */
 	public void validate() throws RepositoryConfigException {
 		super.validate();
-		if (getQueryEndpointUrl() == null) {
+		if (getQueryEndpointUrl() == null && getHosts().isEmpty()) {
 			throw new RepositoryConfigException(
 					"No endpoint URL specified for SPARQL repository");
 		}
@@ -212,6 +408,66 @@ public class MarkLogicRepositoryConfig extends RepositoryImplConfigBase {
 		if (getUpdateEndpointUrl() != null) {
 			graph.add(implNode, UPDATE_ENDPOINT, vf.createURI(getUpdateEndpointUrl()));
 		}
+		for (String host : getHosts()) {
+			graph.add(implNode, HOST, vf.createLiteral(host));
+		}
+		for (String writeHost : getWriteHosts()) {
+			graph.add(implNode, WRITE_HOST, vf.createLiteral(writeHost));
+		}
+		if (getLoadBalancing() != null) {
+			graph.add(implNode, LOAD_BALANCING, vf.createLiteral(getLoadBalancing()));
+		}
+
+		// only settings differing from defaults are exported
+		ConnectionSettings settings = getConnectionSettings();
+		ConnectionSettings defaults = new ConnectionSettings();
+		if (settings.getMaxConnections() != defaults.getMaxConnections()) {
+			graph.add(implNode, MAX_CONNECTIONS, vf.createLiteral(settings.getMaxConnections()));
+		}
+		if (settings.getMaxConnectionsPerRoute() != defaults.getMaxConnectionsPerRoute()) {
+			graph.add(implNode, MAX_CONNECTIONS_PER_ROUTE, vf.createLiteral(settings.getMaxConnectionsPerRoute()));
+		}
+		if (settings.getConnectTimeoutMillis() != defaults.getConnectTimeoutMillis()) {
+			graph.add(implNode, CONNECT_TIMEOUT, vf.createLiteral(settings.getConnectTimeoutMillis()));
+		}
+		if (settings.getSocketTimeoutMillis() != defaults.getSocketTimeoutMillis()) {
+			graph.add(implNode, SOCKET_TIMEOUT, vf.createLiteral(settings.getSocketTimeoutMillis()));
+		}
+		if (settings.getKeepAliveMillis() != defaults.getKeepAliveMillis()) {
+			graph.add(implNode, KEEP_ALIVE, vf.createLiteral(settings.getKeepAliveMillis()));
+		}
+		if (settings.getWriteCacheSize() != defaults.getWriteCacheSize()) {
+			graph.add(implNode, WRITE_CACHE_SIZE, vf.createLiteral(settings.getWriteCacheSize()));
+		}
+		if (settings.getWriteCacheMillis() != defaults.getWriteCacheMillis()) {
+			graph.add(implNode, WRITE_CACHE_MILLIS, vf.createLiteral(settings.getWriteCacheMillis()));
+		}
+		if (settings.getWriteCacheInitialDelay() != defaults.getWriteCacheInitialDelay()) {
+			graph.add(implNode, WRITE_CACHE_INITIAL_DELAY, vf.createLiteral(settings.getWriteCacheInitialDelay()));
+		}
+		if (settings.getExecutorCoreThreads() != defaults.getExecutorCoreThreads()) {
+			graph.add(implNode, EXECUTOR_CORE_THREADS, vf.createLiteral(settings.getExecutorCoreThreads()));
+		}
+		if (settings.getExecutorKeepAliveMillis() != defaults.getExecutorKeepAliveMillis()) {
+			graph.add(implNode, EXECUTOR_KEEP_ALIVE, vf.createLiteral(settings.getExecutorKeepAliveMillis()));
+		}
+		if (getInternCapacity() > 0) {
+			graph.add(implNode, INTERN_CAPACITY, vf.createLiteral(getInternCapacity()));
+		}
+		if (isDeskolemize()) {
+			graph.add(implNode, DESKOLEMIZE, vf.createLiteral(true));
+		}
+		if (isSharedClient()) {
+			graph.add(implNode, SHARED_CLIENT, vf.createLiteral(true));
+		}
+		if (getGroupCommitMaxStatements() > 0) {
+			graph.add(implNode, GROUP_COMMIT_MAX_STATEMENTS, vf.createLiteral(getGroupCommitMaxStatements()));
+			graph.add(implNode, GROUP_COMMIT_MAX_DELAY, vf.createLiteral(getGroupCommitMaxDelayMillis()));
+		}
+		if (getSlowOperationThresholdMillis() > 0) {
+			graph.add(implNode, SLOW_OPERATION_THRESHOLD, vf.createLiteral(getSlowOperationThresholdMillis()));
+			graph.add(implNode, SLOW_OPERATION_SAMPLE_RATE, vf.createLiteral(getSlowOperationSampleRate()));
+		}
 
 		return implNode;
 	}
@@ -236,8 +492,99 @@ public class MarkLogicRepositoryConfig extends RepositoryImplConfigBase {
 			if (uri != null) {
 				setUpdateEndpointUrl(uri.stringValue());
 			}
+
+			List<String> parsedHosts = new ArrayList<String>();
+			for (Value host : GraphUtil.getObjects(graph, implNode, HOST)) {
+				parsedHosts.add(host.stringValue());
+			}
+			setHosts(parsedHosts);
+
+			List<String> parsedWriteHosts = new ArrayList<String>();
+			for (Value writeHost : GraphUtil.getObjects(graph, implNode, WRITE_HOST)) {
+				parsedWriteHosts.add(writeHost.stringValue());
+			}
+			setWriteHosts(parsedWriteHosts);
+
+			Literal loadBalancingLit = GraphUtil.getOptionalObjectLiteral(graph, implNode, LOAD_BALANCING);
+			if (loadBalancingLit != null) {
+				setLoadBalancing(loadBalancingLit.getLabel());
+			}
+
+			ConnectionSettings settings = new ConnectionSettings();
+			Literal lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, MAX_CONNECTIONS);
+			if (lit != null) {
+				settings.setMaxConnections(lit.intValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, MAX_CONNECTIONS_PER_ROUTE);
+			if (lit != null) {
+				settings.setMaxConnectionsPerRoute(lit.intValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, CONNECT_TIMEOUT);
+			if (lit != null) {
+				settings.setConnectTimeoutMillis(lit.intValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, SOCKET_TIMEOUT);
+			if (lit != null) {
+				settings.setSocketTimeoutMillis(lit.intValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, KEEP_ALIVE);
+			if (lit != null) {
+				settings.setKeepAliveMillis(lit.longValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, WRITE_CACHE_SIZE);
+			if (lit != null) {
+				settings.setWriteCacheSize(lit.longValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, WRITE_CACHE_MILLIS);
+			if (lit != null) {
+				settings.setWriteCacheMillis(lit.longValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, WRITE_CACHE_INITIAL_DELAY);
+			if (lit != null) {
+				settings.setWriteCacheInitialDelay(lit.longValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, EXECUTOR_CORE_THREADS);
+			if (lit != null) {
+				settings.setExecutorCoreThreads(lit.intValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, EXECUTOR_KEEP_ALIVE);
+			if (lit != null) {
+				settings.setExecutorKeepAliveMillis(lit.longValue());
+			}
+			setConnectionSettings(settings);
+
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, INTERN_CAPACITY);
+			if (lit != null) {
+				setInternCapacity(lit.intValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, DESKOLEMIZE);
+			if (lit != null) {
+				setDeskolemize(lit.booleanValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, SHARED_CLIENT);
+			if (lit != null) {
+				setSharedClient(lit.booleanValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, GROUP_COMMIT_MAX_STATEMENTS);
+			if (lit != null) {
+				setGroupCommitMaxStatements(lit.intValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, GROUP_COMMIT_MAX_DELAY);
+			if (lit != null) {
+				setGroupCommitMaxDelayMillis(lit.longValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, SLOW_OPERATION_THRESHOLD);
+			if (lit != null) {
+				setSlowOperationThresholdMillis(lit.longValue());
+			}
+			lit = GraphUtil.getOptionalObjectLiteral(graph, implNode, SLOW_OPERATION_SAMPLE_RATE);
+			if (lit != null) {
+				setSlowOperationSampleRate(lit.doubleValue());
+			}
 		} catch (GraphUtilException e) {
 			throw new RepositoryConfigException(e.getMessage(), e);
+		} catch (NumberFormatException e) {
+			throw new RepositoryConfigException(e.getMessage(), e);
 		}
 	}
 }
\ No newline at end of file
@@ -20,6 +20,10 @@
 package com.marklogic.semantics.sesame.config;
 
 import com.marklogic.semantics.sesame.MarkLogicRepository;
+import com.marklogic.semantics.sesame.client.EndpointPool;
+import com.marklogic.semantics.sesame.client.InterningValueFactory;
+import com.marklogic.semantics.sesame.client.SkolemMapper;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.config.RepositoryConfigException;
 import org.openrdf.repository.config.RepositoryFactory;
@@ -67,7 +71,10 @@ public class MarkLogicRepositoryFactory implements RepositoryFactory {
     public Repository getRepository(RepositoryImplConfig config) throws RepositoryConfigException {
         MarkLogicRepository repo = null;
         MarkLogicRepositoryConfig cfg = (MarkLogicRepositoryConfig) config;
-        if (cfg.getHost() != null && cfg.getPort() != 0) {
+        if (!cfg.getHosts().isEmpty()) {
+            // init with several hosts, load balanced
+            repo = newLoadBalancedRepository(cfg);
+        } else if (cfg.getHost() != null && cfg.getPort() != 0) {
             // init with MarkLogicRepositoryConfig
             repo = new MarkLogicRepository(cfg.getHost(),cfg.getPort(),cfg.getUser(),cfg.getPassword(),cfg.getAuth());
         } else if (cfg.getHost() == null) {
@@ -81,6 +88,63 @@ public class MarkLogicRepositoryFactory implements RepositoryFactory {
         }else{
             throw new RepositoryConfigException("Invalid configuration class: " + config.getClass());
         }
+        repo.setConnectionSettings(cfg.getConnectionSettings());
+        if (cfg.getInternCapacity() > 0) {
+            repo.setValueFactory(new InterningValueFactory(cfg.getInternCapacity()));
+        }
+        if (cfg.isDeskolemize()) {
+            repo.setSkolemMapper(new SkolemMapper(true));
+        }
+        repo.setSharedClient(cfg.isSharedClient());
+        if (cfg.getGroupCommitMaxStatements() > 0) {
+            repo.setGroupCommit(cfg.getGroupCommitMaxStatements(), cfg.getGroupCommitMaxDelayMillis());
+        }
+        if (cfg.getSlowOperationThresholdMillis() > 0) {
+            SlowOperationLog slowOperationLog = new SlowOperationLog(cfg.getSlowOperationThresholdMillis());
+            slowOperationLog.setSampleRate(cfg.getSlowOperationSampleRate());
+            repo.setSlowOperationLog(slowOperationLog);
+        }
         return repo;
     }
+
+    /**
+     * instantiate repository load balanced across configured hosts (and write hosts), credentials and port
+     * are taken from config or else from the query endpoint
+     *
+     */
+    private MarkLogicRepository newLoadBalancedRepository(MarkLogicRepositoryConfig cfg) throws RepositoryConfigException {
+        String user = cfg.getUser();
+        String password = cfg.getPassword();
+        int port = cfg.getPort();
+        if ((user == null || port == 0) && cfg.getQueryEndpointUrl() != null) {
+            try {
+                URL url = new URL(cfg.getQueryEndpointUrl());
+                if (port == 0) {
+                    port = url.getPort();
+                }
+                if (user == null && url.getUserInfo() != null) {
+                    String[] cred = url.getUserInfo().split(":");
+                    user = cred[0];
+                    password = cred.length > 1 ? cred[1] : null;
+                }
+            } catch (MalformedURLException e) {
+                logger.debug(e.getMessage());
+                throw new RepositoryConfigException(e.getMessage());
+            }
+        }
+        EndpointPool.Strategy strategy = EndpointPool.Strategy.ROUND_ROBIN;
+        if (cfg.getLoadBalancing() != null) {
+            try {
+                strategy = EndpointPool.Strategy.valueOf(cfg.getLoadBalancing());
+            } catch (IllegalArgumentException e) {
+                throw new RepositoryConfigException("Invalid load balancing strategy: " + cfg.getLoadBalancing());
+            }
+        }
+        String auth = cfg.getAuth() != null ? cfg.getAuth() : "DIGEST";
+        EndpointPool readPool = new EndpointPool(strategy, cfg.getHosts(), port, user, password, auth);
+        if (cfg.getWriteHosts().isEmpty()) {
+            return new MarkLogicRepository(readPool);
+        }
+        return new MarkLogicRepository(readPool, new EndpointPool(strategy, cfg.getWriteHosts(), port, user, password, auth));
+    }
 }
\ No newline at end of file
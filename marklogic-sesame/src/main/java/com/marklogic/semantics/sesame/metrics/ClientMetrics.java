@@ -0,0 +1,369 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import com.marklogic.semantics.sesame.MarkLogicSesameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the requests made by MarkLogicClient, shared by every client of a repository:
+ * per operation counts, errors and latency histograms, bytes sent and received, write cache
+ * depth, flush sizes and durations, open results and background executor tasks.
+ *
+ * Recording is lock-free and allocation-free so metrics stay on in production. Exposed
+ * through JMX by registerMBean and pushed to MetricsReporters by startReporter.
+ *
+ * @author James Fuller
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientMetrics.class);
+
+    public static final String MBEAN_DOMAIN = "com.marklogic.semantics.sesame";
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * requests timed by the client, a query is timed until its response starts to arrive
+     */
+    public enum Operation {
+        TUPLE_QUERY, GRAPH_QUERY, BOOLEAN_QUERY, UPDATE, ADD, REMOVE, CLEAR, TRANSACTION
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final StripedCounter[] requests = new StripedCounter[OPERATIONS.length];
+    private final StripedCounter[] errors = new StripedCounter[OPERATIONS.length];
+    private final StripedCounter[] cacheHits = new StripedCounter[OPERATIONS.length];
+    private final Histogram[] latencies = new Histogram[OPERATIONS.length];
+
+    private final StripedCounter bytesSent = new StripedCounter();
+    private final StripedCounter bytesReceived = new StripedCounter();
+    private final StripedCounter writeCacheDepth = new StripedCounter();
+    private final StripedCounter openResults = new StripedCounter();
+    private final StripedCounter executorTasks = new StripedCounter();
+
+    private final Histogram flushSizes = new Histogram();
+    private final Histogram flushDurations = new Histogram();
+
+    private ScheduledThreadPoolExecutor reporting;
+
+    private ObjectName objectName;
+
+    /**
+     * constructor
+     */
+    public ClientMetrics() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            requests[i] = new StripedCounter();
+            errors[i] = new StripedCounter();
+            cacheHits[i] = new StripedCounter();
+            latencies[i] = new Histogram();
+        }
+    }
+
+    /**
+     * records completed request
+     *
+     * @param operation
+     * @param startedNanos - System.nanoTime() when the request started
+     * @param failure - null if the request succeeded
+     */
+    public void end(Operation operation, long startedNanos, Throwable failure) {
+        int i = operation.ordinal();
+        requests[i].increment();
+        if (failure != null) {
+            errors[i].increment();
+        }
+        latencies[i].record(System.nanoTime() - startedNanos);
+    }
+
+    /**
+     * records query answered by the query result cache, which sends no request and is
+     * not counted in requests or latencies
+     *
+     * @param operation
+     */
+    public void cacheHit(Operation operation) {
+        cacheHits[operation.ordinal()].increment();
+    }
+
+    public void addBytesSent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    public void addBytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * @param delta - statements added to (positive) or flushed from (negative) a write cache
+     */
+    public void addWriteCacheDepth(long delta) {
+        writeCacheDepth.add(delta);
+    }
+
+    /**
+     * records write cache or group commit flush
+     *
+     * @param statements
+     * @param durationNanos
+     */
+    public void recordFlush(long statements, long durationNanos) {
+        flushSizes.record(statements);
+        flushDurations.record(durationNanos);
+    }
+
+    public void resultOpened() {
+        openResults.increment();
+    }
+
+    public void resultClosed() {
+        openResults.decrement();
+    }
+
+    public void taskSubmitted() {
+        executorTasks.increment();
+    }
+
+    public void taskFinished() {
+        executorTasks.decrement();
+    }
+
+    public long getRequestCount(Operation operation) {
+        return requests[operation.ordinal()].get();
+    }
+
+    public long getErrorCount(Operation operation) {
+        return errors[operation.ordinal()].get();
+    }
+
+    public long getCacheHitCount(Operation operation) {
+        return cacheHits[operation.ordinal()].get();
+    }
+
+    /**
+     * @param operation
+     * @return Snapshot - latencies in ns
+     */
+    public Histogram.Snapshot getLatency(Operation operation) {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    /**
+     * @return Snapshot - statements per flush
+     */
+    public Histogram.Snapshot getFlushSizes() {
+        return flushSizes.snapshot();
+    }
+
+    /**
+     * @return Snapshot - flush durations in ns
+     */
+    public Histogram.Snapshot getFlushDurations() {
+        return flushDurations.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Operation operation : OPERATIONS) {
+            counts.put(operation.name(), getRequestCount(operation));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Operation operation : OPERATIONS) {
+            counts.put(operation.name(), getErrorCount(operation));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getCacheHitCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Operation operation : OPERATIONS) {
+            counts.put(operation.name(), getCacheHitCount(operation));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        Map<String, Double> millis = new LinkedHashMap<String, Double>();
+        for (Operation operation : OPERATIONS) {
+            millis.put(operation.name(), getLatency(operation).getMean() / NANOS_PER_MILLI);
+        }
+        return millis;
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMillis() {
+        Map<String, Double> millis = new LinkedHashMap<String, Double>();
+        for (Operation operation : OPERATIONS) {
+            millis.put(operation.name(), getLatency(operation).getValue(0.99) / NANOS_PER_MILLI);
+        }
+        return millis;
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMillis() {
+        Map<String, Double> millis = new LinkedHashMap<String, Double>();
+        for (Operation operation : OPERATIONS) {
+            millis.put(operation.name(), getLatency(operation).getMax() / NANOS_PER_MILLI);
+        }
+        return millis;
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public long getWriteCacheDepth() {
+        return writeCacheDepth.get();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushSizes.snapshot().getCount();
+    }
+
+    @Override
+    public double getMeanFlushSize() {
+        return flushSizes.snapshot().getMean();
+    }
+
+    @Override
+    public double getMeanFlushMillis() {
+        return flushDurations.snapshot().getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getOpenResults() {
+        return openResults.get();
+    }
+
+    /**
+     * background result parsers submitted and not yet finished
+     *
+     * @return long
+     */
+    @Override
+    public long getExecutorTasks() {
+        return executorTasks.get();
+    }
+
+    /**
+     * calls reporter every periodMillis on a daemon thread until stopReporters
+     *
+     * @param reporter
+     * @param periodMillis
+     */
+    public synchronized void startReporter(final MetricsReporter reporter, long periodMillis) {
+        if (reporting == null) {
+            reporting = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "marklogic-sesame-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        reporting.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reporter.report(ClientMetrics.this);
+                } catch (RuntimeException e) {
+                    logger.warn("metrics reporter failed: {}", e.getLocalizedMessage());
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stops every reporter started
+     */
+    public synchronized void stopReporters() {
+        if (reporting != null) {
+            reporting.shutdownNow();
+            reporting = null;
+        }
+    }
+
+    /**
+     * registers these metrics with the platform MBean server
+     *
+     * @param name - distinguishes metrics of several repositories
+     * @return ObjectName
+     * @throws MarkLogicSesameException
+     */
+    public synchronized ObjectName registerMBean(String name) throws MarkLogicSesameException {
+        unregisterMBean();
+        try {
+            ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":type=ClientMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new MarkLogicSesameException("Could not register metrics MBean.", e);
+        }
+    }
+
+    /**
+     * unregisters the MBean registered by registerMBean, if any
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("could not unregister {}: {}", objectName, e.getLocalizedMessage());
+        }
+        objectName = null;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of ClientMetrics, per operation attributes are keyed by operation name
+ *
+ * @author James Fuller
+ */
+public interface ClientMetricsMXBean {
+
+    Map<String, Long> getRequestCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Long> getCacheHitCounts();
+
+    Map<String, Double> getMeanLatencyMillis();
+
+    Map<String, Double> getP99LatencyMillis();
+
+    Map<String, Double> getMaxLatencyMillis();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    long getWriteCacheDepth();
+
+    long getFlushCount();
+
+    double getMeanFlushSize();
+
+    double getMeanFlushMillis();
+
+    long getOpenResults();
+
+    long getExecutorTasks();
+}
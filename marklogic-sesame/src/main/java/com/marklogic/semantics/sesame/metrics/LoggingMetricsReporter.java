@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * reports metrics at info level, one line per operation used so far and one for the rest
+ *
+ * @author James Fuller
+ */
+public class LoggingMetricsReporter implements MetricsReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingMetricsReporter.class);
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    @Override
+    public void report(ClientMetrics metrics) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        for (ClientMetrics.Operation operation : ClientMetrics.Operation.values()) {
+            Histogram.Snapshot latency = metrics.getLatency(operation);
+            long cacheHits = metrics.getCacheHitCount(operation);
+            if (latency.getCount() == 0 && cacheHits == 0) {
+                continue;
+            }
+            logger.info(String.format("%s count=%d errors=%d cacheHits=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                    operation, latency.getCount(), metrics.getErrorCount(operation), cacheHits,
+                    latency.getMean() / NANOS_PER_MILLI, latency.getValue(0.5) / NANOS_PER_MILLI,
+                    latency.getValue(0.99) / NANOS_PER_MILLI, latency.getMax() / NANOS_PER_MILLI));
+        }
+        logger.info(String.format("sent=%dB received=%dB writeCacheDepth=%d flushes=%d meanFlushSize=%.1f meanFlush=%.2fms openResults=%d executorTasks=%d",
+                metrics.getBytesSent(), metrics.getBytesReceived(), metrics.getWriteCacheDepth(),
+                metrics.getFlushCount(), metrics.getMeanFlushSize(), metrics.getMeanFlushMillis(),
+                metrics.getOpenResults(), metrics.getExecutorTasks()));
+    }
+}
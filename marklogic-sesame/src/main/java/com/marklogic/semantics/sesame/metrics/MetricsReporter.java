@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+/**
+ * receives metrics periodically, see ClientMetrics.startReporter
+ *
+ * @author James Fuller
+ */
+public interface MetricsReporter {
+
+    /**
+     * called on the reporting thread, exceptions are logged and reporting continues
+     *
+     * @param metrics
+     */
+    void report(ClientMetrics metrics);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Breakdown of where the time of one query or update execution went.
+ *
+ * Phases are recorded in order by lap(), each taking the time since the previous lap:
+ * SYNC is the write cache flush forced before the query, PREPARE the query string,
+ * binding and query definition work up to sending the request, FIRST_BYTE the wait
+ * for response headers. TRANSFER is the time spent blocked reading the response body,
+ * added as it is read, and PARSE the rest of the time until the background parser finished,
+ * which includes waiting for a parser thread and for the consumer to take results.
+ *
+ * Created by MarkLogicClient when phase timing is enabled, bound to the thread issuing
+ * the query between bind() and unbind() so the sync done by a query is attributed to it.
+ *
+ * @author James Fuller
+ */
+public final class PhaseTimings {
+
+    private static final ThreadLocal<PhaseTimings> CURRENT = new ThreadLocal<PhaseTimings>();
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    public enum Phase {
+        SYNC, PREPARE, FIRST_BYTE, TRANSFER, PARSE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+
+    private volatile long mark = System.nanoTime();
+
+    private volatile long addedSinceMark;
+
+    private volatile ClientMetrics.Operation operation;
+
+    private volatile String queryString;
+
+    /**
+     * binds these timings to the current thread, replacing any bound before
+     */
+    public void bind() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * unbinds timings from the current thread
+     *
+     * @return PhaseTimings - bound by bind(), null if none
+     */
+    public static PhaseTimings unbind() {
+        PhaseTimings timings = CURRENT.get();
+        CURRENT.remove();
+        return timings;
+    }
+
+    /**
+     * adds the time since the previous lap to phase, less the time added by add() meanwhile
+     *
+     * @param phase
+     */
+    public void lap(Phase phase) {
+        long now = System.nanoTime();
+        long elapsed = now - mark - addedSinceMark;
+        nanos.addAndGet(phase.ordinal(), Math.max(elapsed, 0));
+        addedSinceMark = 0;
+        mark = now;
+    }
+
+    /**
+     * adds time measured separately, for a phase overlapping the current lap
+     *
+     * @param phase
+     * @param durationNanos
+     */
+    public void add(Phase phase, long durationNanos) {
+        nanos.addAndGet(phase.ordinal(), durationNanos);
+        addedSinceMark += durationNanos;
+    }
+
+    /**
+     * sets what was timed
+     *
+     * @param operation
+     * @param queryString
+     */
+    public void setQuery(ClientMetrics.Operation operation, String queryString) {
+        this.operation = operation;
+        this.queryString = queryString;
+    }
+
+    public ClientMetrics.Operation getOperation() {
+        return operation;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.get(phase.ordinal());
+    }
+
+    public double getMillis(Phase phase) {
+        return getNanos(phase) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return long - sum of every phase in ns
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (int i = 0; i < PHASES.length; i++) {
+            total += nanos.get(i);
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(operation);
+        for (Phase phase : PHASES) {
+            sb.append(' ').append(phase.name().toLowerCase()).append('=')
+                    .append(String.format("%.2fms", getMillis(phase)));
+        }
+        return sb.append(String.format(" total=%.2fms", getTotalNanos() / NANOS_PER_MILLI)).toString();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import com.marklogic.client.semantics.SPARQLRuleset;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs queries, updates, adds, removes and flushes slower than a threshold at warn level,
+ * with their SPARQL truncated, bindings, rulesets, row, byte or statement count and duration.
+ * The duration of a streamed query excludes the time its results wait for the consumer.
+ *
+ * Operations under the threshold cost a subtraction and a comparison. Slow operations are
+ * sampled, then rate limited by a token bucket refilled at maxPerSecond holding up to
+ * burst lines; operations sampled out or over the limit are counted and reported as
+ * suppressed on the next line logged.
+ *
+ * @author James Fuller
+ */
+public class SlowOperationLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowOperationLog.class);
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    public static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+    public static final double DEFAULT_MAX_PER_SECOND = 10;
+    public static final int DEFAULT_BURST = 20;
+    public static final int DEFAULT_MAX_QUERY_LENGTH = 500;
+
+    private volatile long thresholdNanos;
+    private volatile double sampleRate = 1.0;
+    private volatile long intervalNanos;
+    private volatile long burstNanos;
+    private volatile int maxQueryLength = DEFAULT_MAX_QUERY_LENGTH;
+
+    // token bucket kept as the time it is full again, each line logged pushes that time
+    // intervalNanos further, lines are refused while it is more than burstNanos ahead
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong suppressedSinceLogged = new AtomicLong();
+
+    /**
+     * constructor, logs operations slower than DEFAULT_THRESHOLD_MILLIS
+     */
+    public SlowOperationLog() {
+        this(DEFAULT_THRESHOLD_MILLIS);
+    }
+
+    /**
+     * constructor
+     *
+     * @param thresholdMillis
+     */
+    public SlowOperationLog(long thresholdMillis) {
+        setThresholdMillis(thresholdMillis);
+        setRateLimit(DEFAULT_MAX_PER_SECOND, DEFAULT_BURST);
+    }
+
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * @param thresholdMillis - operations taking at least this long are logged
+     */
+    public void setThresholdMillis(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(thresholdMillis, 0));
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param sampleRate - fraction of slow operations logged, from 0 to 1
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = Math.min(Math.max(sampleRate, 0), 1);
+    }
+
+    /**
+     * limits lines logged
+     *
+     * @param maxPerSecond - sustained rate
+     * @param burst - lines logged at once after a quiet period
+     */
+    public void setRateLimit(double maxPerSecond, int burst) {
+        if (maxPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("maxPerSecond must be above 0 and burst at least 1");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxPerSecond);
+        this.burstNanos = intervalNanos * burst;
+    }
+
+    public int getMaxQueryLength() {
+        return maxQueryLength;
+    }
+
+    /**
+     * @param maxQueryLength - SPARQL longer than this is truncated
+     */
+    public void setMaxQueryLength(int maxQueryLength) {
+        this.maxQueryLength = Math.max(maxQueryLength, 0);
+    }
+
+    public long getLoggedCount() {
+        return logged.get();
+    }
+
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    /**
+     * starts timing an operation
+     *
+     * @param operation - name logged, e.g. TUPLE_QUERY or FLUSH
+     * @param sparql - may be null
+     * @param bindings - may be null
+     * @param rulesets - may be null
+     * @return Entry
+     */
+    public Entry start(String operation, String sparql, BindingSet bindings, SPARQLRuleset[] rulesets) {
+        return new Entry(operation, sparql, bindings, rulesets);
+    }
+
+    /**
+     * operation being timed, finished once
+     */
+    public final class Entry {
+        private final String operation;
+        private final String sparql;
+        private final BindingSet bindings;
+        private final SPARQLRuleset[] rulesets;
+        private final long started = System.nanoTime();
+        private long excludedNanos;
+
+        private Entry(String operation, String sparql, BindingSet bindings, SPARQLRuleset[] rulesets) {
+            this.operation = operation;
+            this.sparql = sparql;
+            this.bindings = bindings;
+            this.rulesets = rulesets;
+        }
+
+        /**
+         * excludes time not spent on the operation from its duration, such as the time a
+         * streamed result waits for its consumer; called from the thread that finishes it
+         *
+         * @param nanos
+         */
+        public void exclude(long nanos) {
+            excludedNanos += nanos;
+        }
+
+        /**
+         * logs the operation if it was slow
+         *
+         * @param count - rows, bytes or statements, negative if unknown
+         * @param unit - what count is, e.g. rows
+         * @param failure - null if the operation succeeded
+         */
+        public void finish(long count, String unit, Throwable failure) {
+            long duration = System.nanoTime() - started - excludedNanos;
+            if (duration < thresholdNanos || !logger.isWarnEnabled()) {
+                return;
+            }
+            if (!admit()) {
+                suppressed.incrementAndGet();
+                suppressedSinceLogged.incrementAndGet();
+                return;
+            }
+            logged.incrementAndGet();
+            logger.warn(format(this, duration, count, unit, failure));
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean admit() {
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return false;
+        }
+        long interval = intervalNanos;
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long from = current - now < 0 ? now : current;
+            long next = from + interval;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    String format(Entry entry, long duration, long count, String unit, Throwable failure) {
+        StringBuilder sb = new StringBuilder("slow ").append(entry.operation)
+                .append(String.format(" %.1fms", duration / NANOS_PER_MILLI));
+        if (count >= 0) {
+            sb.append(' ').append(unit).append('=').append(count);
+        }
+        if (failure != null) {
+            sb.append(" failed=").append(failure.getClass().getSimpleName());
+        }
+        if (entry.rulesets != null && entry.rulesets.length > 0) {
+            sb.append(" rulesets=[");
+            for (int i = 0; i < entry.rulesets.length; i++) {
+                sb.append(i > 0 ? "," : "").append(entry.rulesets[i].getName());
+            }
+            sb.append(']');
+        }
+        if (entry.bindings != null && entry.bindings.size() > 0) {
+            sb.append(" bindings=[");
+            boolean first = true;
+            for (Binding binding : entry.bindings) {
+                sb.append(first ? "" : ",").append(truncate(binding.toString(), 100));
+                first = false;
+            }
+            sb.append(']');
+        }
+        long suppressedSoFar = suppressedSinceLogged.getAndSet(0);
+        if (suppressedSoFar > 0) {
+            sb.append(" suppressed=").append(suppressedSoFar);
+        }
+        if (entry.sparql != null) {
+            sb.append(" sparql=").append(truncate(entry.sparql, maxQueryLength).replaceAll("\\s+", " "));
+        }
+        return sb.toString();
+    }
+
+    private static String truncate(String s, int max) {
+        if (s.length() <= max) {
+            return s;
+        }
+        return s.substring(0, max) + "...(" + s.length() + " chars)";
+    }
+}
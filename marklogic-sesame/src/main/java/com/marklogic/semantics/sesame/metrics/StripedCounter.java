@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells so threads updating it concurrently rarely touch
+ * the same cache line; reading sums the cells.
+ *
+ * Updates are lock-free and allocation-free. May go down as well as up, so it also
+ * serves as a gauge of things opened and closed on different threads.
+ *
+ * @author James Fuller
+ */
+public final class StripedCounter {
+
+    // cells are spaced a cache line (8 longs) apart to avoid false sharing
+    private static final int SPACING = 8;
+
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * SPACING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    /**
+     * @param delta
+     */
+    public void add(long delta) {
+        cells.addAndGet(cell(), delta);
+    }
+
+    /**
+     * sum of the cells, not an atomic snapshot while updates are in progress
+     *
+     * @return long
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * SPACING);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static int cell() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) & (STRIPES - 1)) * SPACING;
+    }
+
+    /**
+     * power of two at or above twice the number of processors
+     */
+    private static int stripes() {
+        int stripes = 1;
+        int wanted = Math.min(2 * Runtime.getRuntime().availableProcessors(), 64);
+        while (stripes < wanted) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.query;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.AbstractBindingSet;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.BindingImpl;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Tuple query result held in memory for repeated scans, stored column by column
+ * as int codes into a dictionary of distinct values.
+ *
+ * Each row costs one int per binding name, each distinct value is held once;
+ * BindingSets are created on access and are not retained. Immutable once
+ * materialized and safe to scan from several threads.
+ *
+ * @author James Fuller
+ */
+public final class CompactTupleResult implements Iterable<BindingSet> {
+
+    private static final int UNBOUND = -1;
+
+    private final List<String> bindingNames;
+
+    private final Value[] dictionary;
+
+    private final int[][] columns;
+
+    private final int size;
+
+    private CompactTupleResult(List<String> bindingNames, Value[] dictionary, int[][] columns, int size) {
+        this.bindingNames = bindingNames;
+        this.dictionary = dictionary;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    /**
+     * reads result to the end, result is closed
+     *
+     * @param result
+     * @return CompactTupleResult
+     * @throws QueryEvaluationException
+     */
+    public static CompactTupleResult materialize(TupleQueryResult result) throws QueryEvaluationException {
+        try {
+            List<String> names = Collections.unmodifiableList(new ArrayList<String>(result.getBindingNames()));
+            Map<Value, Integer> codes = new HashMap<Value, Integer>();
+            List<Value> values = new ArrayList<Value>();
+            int capacity = 16;
+            int[][] columns = new int[names.size()][capacity];
+            int size = 0;
+            while (result.hasNext()) {
+                BindingSet row = result.next();
+                if (size == capacity) {
+                    capacity *= 2;
+                    for (int c = 0; c < columns.length; c++) {
+                        columns[c] = Arrays.copyOf(columns[c], capacity);
+                    }
+                }
+                for (int c = 0; c < columns.length; c++) {
+                    Value value = row.getValue(names.get(c));
+                    int code = UNBOUND;
+                    if (value != null) {
+                        Integer existing = codes.get(value);
+                        if (existing == null) {
+                            existing = values.size();
+                            codes.put(value, existing);
+                            values.add(value);
+                        }
+                        code = existing;
+                    }
+                    columns[c][size] = code;
+                }
+                size++;
+            }
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = Arrays.copyOf(columns[c], size);
+            }
+            return new CompactTupleResult(names, values.toArray(new Value[values.size()]), columns, size);
+        } finally {
+            result.close();
+        }
+    }
+
+    /**
+     * new TupleQueryResult over the materialized rows, may be called any number of times
+     *
+     * @return TupleQueryResult
+     */
+    public TupleQueryResult evaluate() {
+        return new TupleQueryResultImpl(bindingNames, this);
+    }
+
+    @Override
+    public Iterator<BindingSet> iterator() {
+        return new Iterator<BindingSet>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public BindingSet next() {
+                if (row >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new RowBindingSet(row++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @param row
+     * @return BindingSet
+     */
+    public BindingSet get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        }
+        return new RowBindingSet(row);
+    }
+
+    /**
+     * @param row
+     * @param bindingName
+     * @return Value - null if unbound
+     */
+    public Value getValue(int row, String bindingName) {
+        int c = bindingNames.indexOf(bindingName);
+        return c < 0 ? null : value(row, c);
+    }
+
+    public List<String> getBindingNames() {
+        return bindingNames;
+    }
+
+    /**
+     * number of rows
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * number of distinct values
+     *
+     * @return int
+     */
+    public int getDictionarySize() {
+        return dictionary.length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Value value(int row, int column) {
+        int code = columns[column][row];
+        return code == UNBOUND ? null : dictionary[code];
+    }
+
+    /**
+     * view of a single row, serialized as a detached MapBindingSet copy
+     */
+    private final class RowBindingSet extends AbstractBindingSet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int row;
+
+        RowBindingSet(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Iterator<Binding> iterator() {
+            List<Binding> bindings = new ArrayList<Binding>(bindingNames.size());
+            for (int c = 0; c < bindingNames.size(); c++) {
+                Value value = value(row, c);
+                if (value != null) {
+                    bindings.add(new BindingImpl(bindingNames.get(c), value));
+                }
+            }
+            return bindings.iterator();
+        }
+
+        @Override
+        public Set<String> getBindingNames() {
+            Set<String> names = new LinkedHashSet<String>();
+            for (int c = 0; c < bindingNames.size(); c++) {
+                if (columns[c][row] != UNBOUND) {
+                    names.add(bindingNames.get(c));
+                }
+            }
+            return names;
+        }
+
+        @Override
+        public Binding getBinding(String bindingName) {
+            Value value = getValue(bindingName);
+            return value == null ? null : new BindingImpl(bindingName, value);
+        }
+
+        @Override
+        public boolean hasBinding(String bindingName) {
+            return getValue(bindingName) != null;
+        }
+
+        @Override
+        public Value getValue(String bindingName) {
+            return CompactTupleResult.this.getValue(row, bindingName);
+        }
+
+        @Override
+        public int size() {
+            int bound = 0;
+            for (int[] column : columns) {
+                if (column[row] != UNBOUND) {
+                    bound++;
+                }
+            }
+            return bound;
+        }
+
+        private Object writeReplace() {
+            MapBindingSet copy = new MapBindingSet(bindingNames.size());
+            for (Binding binding : this) {
+                copy.addBinding(binding);
+            }
+            return copy;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import com.marklogic.client.query.QueryDefinition;
 import com.marklogic.client.semantics.SPARQLRuleset;
 import com.marklogic.semantics.sesame.MarkLogicSesameException;
 import com.marklogic.semantics.sesame.client.MarkLogicClient;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
 import org.openrdf.query.BooleanQuery;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
@@ -66,7 +67,7 @@ public class MarkLogicBooleanQuery extends MarkLogicQuery implements BooleanQuer
     public boolean evaluate() throws QueryEvaluationException {
         try {
             sync();
-            return getMarkLogicClient().sendBooleanQuery(getQueryString(), getBindings(), getIncludeInferred(),getBaseURI());
+            return getMarkLogicClient().sendBooleanQuery(getQueryString(), getBindings(), getRequestOptions());
         }catch (RepositoryException e) {
             throw new QueryEvaluationException(e.getMessage(), e);
         }catch (MalformedQueryException e) {
@@ -75,6 +76,8 @@ public class MarkLogicBooleanQuery extends MarkLogicQuery implements BooleanQuer
             throw new QueryEvaluationException(e.getMessage(), e);
         }catch(FailedRequestException e){
             throw new QueryEvaluationException(e.getMessage(), e);
+        } finally {
+            PhaseTimings.unbind();
         }
     }
 
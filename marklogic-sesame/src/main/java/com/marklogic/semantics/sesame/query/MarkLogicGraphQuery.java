@@ -24,17 +24,21 @@ import com.marklogic.client.semantics.GraphPermissions;
 import com.marklogic.client.semantics.SPARQLRuleset;
 import com.marklogic.semantics.sesame.MarkLogicSesameException;
 import com.marklogic.semantics.sesame.client.MarkLogicClient;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
 import org.openrdf.query.GraphQuery;
 import org.openrdf.query.GraphQueryResult;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryResults;
 import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * graph query
@@ -68,11 +72,13 @@ public class MarkLogicGraphQuery extends MarkLogicQuery implements GraphQuery,Ma
             throws QueryEvaluationException {
         try {
             sync();
-            return getMarkLogicClient().sendGraphQuery(getQueryString(),getBindings(),getIncludeInferred(),getBaseURI());
+            return getMarkLogicClient().sendGraphQuery(getQueryString(),getBindings(),getRequestOptions());
         } catch (IOException e) {
             throw new QueryEvaluationException(e);
         } catch (MarkLogicSesameException e) {
             throw new QueryEvaluationException(e);
+        } finally {
+            PhaseTimings.unbind();
         }
     }
 
@@ -91,4 +97,46 @@ public class MarkLogicGraphQuery extends MarkLogicQuery implements GraphQuery,Ma
             QueryResults.report(queryResult, resultHandler);
         }
     }
+
+    /**
+     * evaluate graph query, copying results unparsed to out
+     *
+     * @param out
+     * @param resultFormat - format requested from the server
+     * @return number of bytes copied
+     * @throws QueryEvaluationException
+     */
+    public long evaluate(OutputStream out, RDFFormat resultFormat) throws QueryEvaluationException {
+        try {
+            sync();
+            return getMarkLogicClient().sendGraphQuery(getQueryString(), getBindings(), resultFormat, out, getRequestOptions());
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MarkLogicSesameException e) {
+            throw new QueryEvaluationException(e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * evaluate graph query, copying results unparsed to channel
+     *
+     * @param channel
+     * @param resultFormat - format requested from the server
+     * @return number of bytes copied
+     * @throws QueryEvaluationException
+     */
+    public long evaluate(WritableByteChannel channel, RDFFormat resultFormat) throws QueryEvaluationException {
+        try {
+            sync();
+            return getMarkLogicClient().sendGraphQuery(getQueryString(), getBindings(), resultFormat, channel, getRequestOptions());
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MarkLogicSesameException e) {
+            throw new QueryEvaluationException(e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
 }
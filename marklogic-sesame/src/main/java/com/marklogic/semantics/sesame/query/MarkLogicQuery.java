@@ -25,16 +25,19 @@ import com.marklogic.client.semantics.SPARQLRuleset;
 import com.marklogic.semantics.sesame.MarkLogicSesameException;
 import com.marklogic.semantics.sesame.client.MarkLogicClient;
 import com.marklogic.semantics.sesame.client.MarkLogicClientDependent;
+import com.marklogic.semantics.sesame.client.RequestOptions;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.Query;
 import org.openrdf.query.impl.AbstractQuery;
-import org.openrdf.repository.sparql.query.QueryStringUtil;
 import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * base query class
  *
@@ -46,6 +49,9 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
 
     private MarkLogicClient client;
 
+    // lease of the connection that created this query
+    private long lease;
+
     private String queryString;
 
     private String baseURI;
@@ -54,6 +60,14 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
 
     private boolean includeInferred;
 
+    private SPARQLRuleset[] rulesets;
+
+    private QueryDefinition constrainingQueryDefinition;
+
+    private GraphPermissions graphPerms;
+
+    private int maxExecutionTime;
+
     /**
      * constructor
      *
@@ -82,6 +96,7 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
     @Override
     public void setMarkLogicClient(MarkLogicClient client) {
         this.client=client;
+        this.lease = client != null ? client.getLease() : 0;
     }
 
     /**
@@ -95,12 +110,12 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
     }
 
     /**
-     * sets the query string
+     * gets the query string, bindings are sent separately to the server
      *
      * @return
      */
     public String getQueryString() {
-        return QueryStringUtil.getQueryString(this.queryString, getBindings());
+        return this.queryString;
     }
 
     /**
@@ -210,21 +225,22 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
     }
 
     /**
-     * sets maximum execution time for query
+     * sets maximum execution time for query, enforced client side by aborting the request
      *
-     * @param maxExecTime
+     * @param maxExecTime - seconds, 0 or less means no limit
      */
     @Override
     public void setMaxExecutionTime(int maxExecTime) {
+        this.maxExecutionTime = Math.max(maxExecTime, 0);
     }
 
     /**
      *
-     * @return int
+     * @return int - seconds
      */
     @Override
     public int getMaxExecutionTime() {
-        return 0;
+        return maxExecutionTime;
     }
 
     /**
@@ -252,7 +268,7 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
      */
     @Override
     public void setConstrainingQueryDefinition(QueryDefinition constrainingQueryDefinition) {
-        getMarkLogicClient().setConstrainingQueryDefinition(constrainingQueryDefinition);
+        this.constrainingQueryDefinition = constrainingQueryDefinition;
     }
 
     /**
@@ -261,7 +277,7 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
      */
     @Override
     public QueryDefinition getConstrainingQueryDefinition() {
-        return getMarkLogicClient().getConstrainingQueryDefinition();
+        return this.constrainingQueryDefinition;
     }
 
     /**
@@ -270,7 +286,17 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
      * @param ruleset
      */
     public void setRulesets(SPARQLRuleset ... ruleset){
-        getMarkLogicClient().setRulesets(ruleset);
+        if (ruleset != null) {
+            List<SPARQLRuleset> list = new ArrayList<>();
+            for (SPARQLRuleset r : ruleset) {
+                if (r != null) {
+                    list.add(r);
+                }
+            }
+            this.rulesets = list.toArray(new SPARQLRuleset[list.size()]);
+        } else {
+            this.rulesets = null;
+        }
     }
 
     /**
@@ -278,7 +304,7 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
      * @return
      */
     public SPARQLRuleset[] getRulesets(){
-        return getMarkLogicClient().getRulesets();
+        return this.rulesets;
     }
 
     /**
@@ -288,7 +314,7 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
      */
     @Override
     public void setGraphPerms(GraphPermissions graphPerms) {
-        getMarkLogicClient().setGraphPerms(graphPerms);
+        this.graphPerms = graphPerms;
     }
 
     /**
@@ -297,10 +323,26 @@ public class MarkLogicQuery extends AbstractQuery implements Query,MarkLogicClie
      */
     @Override
     public GraphPermissions getGraphPerms() {
-        return getMarkLogicClient().getGraphPerms();
+        return this.graphPerms;
     }
 
+    /**
+     * options for a single evaluation, queries do not share option state via the client
+     *
+     * @return RequestOptions
+     */
+    protected RequestOptions getRequestOptions() {
+        return new RequestOptions(getBaseURI(), getIncludeInferred(), this.rulesets, this.constrainingQueryDefinition, this.graphPerms, this.maxExecutionTime * 1000L);
+    }
+
+    /**
+     * flushes the write cache ahead of a request, failing if the connection that created
+     * this query was closed
+     *
+     * @throws MarkLogicSesameException
+     */
     protected void sync() throws MarkLogicSesameException {
-        getMarkLogicClient().sync();
+        getMarkLogicClient().checkLease(lease);
+        getMarkLogicClient().syncForQuery();
     }
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.query;
+
+import com.marklogic.client.FailedRequestException;
+import com.marklogic.client.ForbiddenUserException;
+import com.marklogic.client.query.QueryDefinition;
+import com.marklogic.client.semantics.GraphPermissions;
+import com.marklogic.client.semantics.SPARQLRuleset;
+import com.marklogic.semantics.sesame.MarkLogicSesameException;
+import com.marklogic.semantics.sesame.client.MarkLogicClient;
+import com.marklogic.semantics.sesame.client.RequestOptions;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.UpdateExecutionException;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+import org.openrdf.rio.RDFFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Immutable query template; query text and request options are frozen when the
+ * template is created and the template may be evaluated concurrently by any number
+ * of threads, each call supplying its own bindings.
+ *
+ * with* methods return a new template, the original is left unchanged.
+ *
+ * @author James Fuller
+ */
+public final class MarkLogicQueryTemplate {
+
+    private final MarkLogicClient client;
+
+    // lease of the connection that created this template
+    private final long lease;
+
+    private final String queryString;
+
+    private final RequestOptions options;
+
+    /**
+     * constructor
+     *
+     * @param client
+     * @param queryString
+     * @param options
+     */
+    public MarkLogicQueryTemplate(MarkLogicClient client, String queryString, RequestOptions options) {
+        this(client, client != null ? client.getLease() : 0, queryString, options);
+    }
+
+    private MarkLogicQueryTemplate(MarkLogicClient client, long lease, String queryString, RequestOptions options) {
+        if (client == null || queryString == null) {
+            throw new IllegalArgumentException("client and queryString must not be null");
+        }
+        this.client = client;
+        this.lease = lease;
+        this.queryString = queryString;
+        this.options = options != null ? options : RequestOptions.DEFAULT;
+    }
+
+    /**
+     * constructor
+     *
+     * @param client
+     * @param queryString
+     * @param baseURI
+     * @param graphPerms
+     * @param constrainingQueryDefinition
+     * @param rulesets
+     */
+    public MarkLogicQueryTemplate(MarkLogicClient client, String queryString, String baseURI, GraphPermissions graphPerms, QueryDefinition constrainingQueryDefinition, SPARQLRuleset[] rulesets) {
+        this(client, queryString, new RequestOptions(baseURI, true, rulesets, constrainingQueryDefinition, graphPerms));
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public RequestOptions getRequestOptions() {
+        return options;
+    }
+
+    public MarkLogicQueryTemplate withIncludeInferred(boolean includeInferred) {
+        return new MarkLogicQueryTemplate(client, lease, queryString, options.withIncludeInferred(includeInferred));
+    }
+
+    public MarkLogicQueryTemplate withRulesets(SPARQLRuleset... rulesets) {
+        return new MarkLogicQueryTemplate(client, lease, queryString, options.withRulesets(rulesets));
+    }
+
+    public MarkLogicQueryTemplate withConstrainingQueryDefinition(QueryDefinition constrainingQueryDefinition) {
+        return new MarkLogicQueryTemplate(client, lease, queryString, options.withConstrainingQueryDefinition(constrainingQueryDefinition));
+    }
+
+    public MarkLogicQueryTemplate withGraphPerms(GraphPermissions graphPerms) {
+        return new MarkLogicQueryTemplate(client, lease, queryString, options.withGraphPerms(graphPerms));
+    }
+
+    public MarkLogicQueryTemplate withMaxExecutionTimeMillis(long maxExecutionTimeMillis) {
+        return new MarkLogicQueryTemplate(client, lease, queryString, options.withMaxExecutionTimeMillis(maxExecutionTimeMillis));
+    }
+
+    /**
+     * evaluate as tuple query
+     *
+     * @param bindings - may be null
+     * @return TupleQueryResult
+     * @throws QueryEvaluationException
+     */
+    public TupleQueryResult evaluateTuple(BindingSet bindings) throws QueryEvaluationException {
+        return evaluateTuple(bindings, 1, -1);
+    }
+
+    /**
+     * evaluate as tuple query with pagination
+     *
+     * @param bindings - may be null
+     * @param start
+     * @param pageLength
+     * @return TupleQueryResult
+     * @throws QueryEvaluationException
+     */
+    public TupleQueryResult evaluateTuple(BindingSet bindings, long start, long pageLength) throws QueryEvaluationException {
+        try {
+            sync();
+            return client.sendTupleQuery(queryString, toSPARQLQueryBindingSet(bindings), start, pageLength, options);
+        } catch (RepositoryException e) {
+            throw new QueryEvaluationException(e.getMessage(), e);
+        } catch (MalformedQueryException e) {
+            throw new QueryEvaluationException(e.getMessage(), e);
+        } catch (FailedRequestException e) {
+            throw new QueryEvaluationException(e.getMessage(), e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * evaluate as graph query
+     *
+     * @param bindings - may be null
+     * @return GraphQueryResult
+     * @throws QueryEvaluationException
+     */
+    public GraphQueryResult evaluateGraph(BindingSet bindings) throws QueryEvaluationException {
+        try {
+            sync();
+            return client.sendGraphQuery(queryString, toSPARQLQueryBindingSet(bindings), options);
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MarkLogicSesameException e) {
+            throw new QueryEvaluationException(e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * evaluate as tuple query, copying results unparsed to out
+     *
+     * @param bindings - may be null
+     * @param resultFormat - format requested from the server
+     * @param out
+     * @return number of bytes copied
+     * @throws QueryEvaluationException
+     */
+    public long evaluateTuple(BindingSet bindings, TupleQueryResultFormat resultFormat, OutputStream out) throws QueryEvaluationException {
+        try {
+            sync();
+            return client.sendTupleQuery(queryString, toSPARQLQueryBindingSet(bindings), 1, -1, resultFormat, out, options);
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MarkLogicSesameException e) {
+            throw new QueryEvaluationException(e);
+        } catch (FailedRequestException e) {
+            throw new QueryEvaluationException(e.getMessage(), e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * evaluate as graph query, copying results unparsed to out
+     *
+     * @param bindings - may be null
+     * @param resultFormat - format requested from the server
+     * @param out
+     * @return number of bytes copied
+     * @throws QueryEvaluationException
+     */
+    public long evaluateGraph(BindingSet bindings, RDFFormat resultFormat, OutputStream out) throws QueryEvaluationException {
+        try {
+            sync();
+            return client.sendGraphQuery(queryString, toSPARQLQueryBindingSet(bindings), resultFormat, out, options);
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MarkLogicSesameException e) {
+            throw new QueryEvaluationException(e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * evaluate as boolean query
+     *
+     * @param bindings - may be null
+     * @return boolean
+     * @throws QueryEvaluationException
+     */
+    public boolean evaluateBoolean(BindingSet bindings) throws QueryEvaluationException {
+        try {
+            sync();
+            return client.sendBooleanQuery(queryString, toSPARQLQueryBindingSet(bindings), options);
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (RepositoryException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MalformedQueryException e) {
+            throw new QueryEvaluationException(e);
+        } catch (FailedRequestException e) {
+            throw new QueryEvaluationException(e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * execute as update
+     *
+     * @param bindings - may be null
+     * @throws UpdateExecutionException
+     */
+    public void executeUpdate(BindingSet bindings) throws UpdateExecutionException {
+        try {
+            sync();
+            client.sendUpdateQuery(queryString, toSPARQLQueryBindingSet(bindings), options);
+        } catch (ForbiddenUserException | FailedRequestException e) {
+            throw new UpdateExecutionException(e);
+        } catch (RepositoryException e) {
+            throw new UpdateExecutionException(e);
+        } catch (MalformedQueryException e) {
+            throw new UpdateExecutionException(e);
+        } catch (IOException e) {
+            throw new UpdateExecutionException(e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * flushes the write cache ahead of a request, failing if the connection that created
+     * this template was closed
+     */
+    private void sync() throws MarkLogicSesameException {
+        client.checkLease(lease);
+        client.syncForQuery();
+    }
+
+    private static SPARQLQueryBindingSet toSPARQLQueryBindingSet(BindingSet bindings) {
+        if (bindings instanceof SPARQLQueryBindingSet) {
+            return (SPARQLQueryBindingSet) bindings;
+        }
+        SPARQLQueryBindingSet bindingSet = new SPARQLQueryBindingSet();
+        if (bindings != null) {
+            for (Binding binding : bindings) {
+                bindingSet.addBinding(binding);
+            }
+        }
+        return bindingSet;
+    }
+}
@@ -25,13 +25,17 @@ import com.marklogic.client.query.QueryDefinition;
 import com.marklogic.client.semantics.SPARQLRuleset;
 import com.marklogic.semantics.sesame.MarkLogicSesameException;
 import com.marklogic.semantics.sesame.client.MarkLogicClient;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
 import org.openrdf.query.*;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * tuple query
@@ -80,13 +84,15 @@ public class MarkLogicTupleQuery extends MarkLogicQuery implements TupleQuery,Ma
             throws QueryEvaluationException {
         try {
             sync();
-            return getMarkLogicClient().sendTupleQuery(getQueryString(), getBindings(), start, pageLength, getIncludeInferred(), getBaseURI());
+            return getMarkLogicClient().sendTupleQuery(getQueryString(), getBindings(), start, pageLength, getRequestOptions());
         }catch (RepositoryException e) {
             throw new QueryEvaluationException(e.getMessage(), e);
         }catch (MalformedQueryException e) {
             throw new QueryEvaluationException(e.getMessage(), e);
         }catch(FailedRequestException e){
             throw new QueryEvaluationException(e.getMessage(), e);
+        } finally {
+            PhaseTimings.unbind();
         }
     }
 
@@ -126,4 +132,72 @@ public class MarkLogicTupleQuery extends MarkLogicQuery implements TupleQuery,Ma
         }
         queryResult.close();
     }
+
+    /**
+     * evaluate tuple query, copying results unparsed to out
+     *
+     * @param out
+     * @param resultFormat - format requested from the server
+     * @return number of bytes copied
+     * @throws QueryEvaluationException
+     */
+    public long evaluate(OutputStream out, TupleQueryResultFormat resultFormat) throws QueryEvaluationException {
+        try {
+            sync();
+            return getMarkLogicClient().sendTupleQuery(getQueryString(), getBindings(), this.start, this.pageLength, resultFormat, out, getRequestOptions());
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MarkLogicSesameException e) {
+            throw new QueryEvaluationException(e);
+        } catch (FailedRequestException e) {
+            throw new QueryEvaluationException(e.getMessage(), e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * evaluate tuple query, copying results unparsed to channel
+     *
+     * @param channel
+     * @param resultFormat - format requested from the server
+     * @return number of bytes copied
+     * @throws QueryEvaluationException
+     */
+    public long evaluate(WritableByteChannel channel, TupleQueryResultFormat resultFormat) throws QueryEvaluationException {
+        try {
+            sync();
+            return getMarkLogicClient().sendTupleQuery(getQueryString(), getBindings(), this.start, this.pageLength, resultFormat, channel, getRequestOptions());
+        } catch (IOException e) {
+            throw new QueryEvaluationException(e);
+        } catch (MarkLogicSesameException e) {
+            throw new QueryEvaluationException(e);
+        } catch (FailedRequestException e) {
+            throw new QueryEvaluationException(e.getMessage(), e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * evaluate tuple query, materializing every result into a compact in memory form
+     *
+     * @return CompactTupleResult
+     * @throws QueryEvaluationException
+     */
+    public CompactTupleResult evaluateCompact() throws QueryEvaluationException {
+        return evaluateCompact(this.start, this.pageLength);
+    }
+
+    /**
+     * evaluate tuple query with pagination, materializing every result into a compact in memory form
+     *
+     * @param start
+     * @param pageLength
+     * @return CompactTupleResult
+     * @throws QueryEvaluationException
+     */
+    public CompactTupleResult evaluateCompact(long start, long pageLength) throws QueryEvaluationException {
+        return CompactTupleResult.materialize(evaluate(start, pageLength));
+    }
 }
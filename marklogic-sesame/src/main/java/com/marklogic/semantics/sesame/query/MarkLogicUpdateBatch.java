@@ -0,0 +1,420 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.query;
+
+import com.marklogic.client.FailedRequestException;
+import com.marklogic.client.ForbiddenUserException;
+import com.marklogic.client.semantics.GraphPermissions;
+import com.marklogic.client.semantics.SPARQLRuleset;
+import com.marklogic.semantics.sesame.client.MarkLogicClient;
+import com.marklogic.semantics.sesame.client.RequestOptions;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.UpdateExecutionException;
+import org.openrdf.query.parser.QueryParserUtil;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Queue of SPARQL updates sent to the server as a single ';' separated update request,
+ * one round trip for the whole batch.
+ *
+ * Bindings are sent to the server with the request rather than inlined. A variable whose
+ * name is already used by another operation of the batch is renamed within its operation
+ * as it is added, so operations may bind the same variable names to different values;
+ * each keeps its own PREFIX and BASE declarations.
+ * Operations are parsed when added and a malformed one is rejected with its index; the
+ * contents of INSERT DATA and DELETE DATA blocks are only checked by the server. The
+ * server applies the request in a single transaction, so a failure reported by execute
+ * means none of the operations were applied.
+ *
+ * @author James Fuller
+ */
+public class MarkLogicUpdateBatch {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarkLogicUpdateBatch.class);
+
+    private static final String SEPARATOR = " ;\n";
+
+    private final MarkLogicClient client;
+
+    // lease of the connection that created this batch
+    private final long lease;
+
+    private final List<String> operations = new ArrayList<String>();
+
+    // bindings of every queued operation, under their names in the batch
+    private final SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+
+    // variables of every queued operation
+    private final Set<String> variables = new HashSet<String>();
+
+    private String baseURI;
+
+    private boolean includeInferred = true;
+
+    private SPARQLRuleset[] rulesets;
+
+    private GraphPermissions graphPerms;
+
+    private int maxExecutionTime;
+
+    private boolean validate = true;
+
+    /**
+     * constructor
+     *
+     * @param client
+     * @param baseURI
+     * @param graphPerms
+     * @param rulesets
+     */
+    public MarkLogicUpdateBatch(MarkLogicClient client, String baseURI, GraphPermissions graphPerms, SPARQLRuleset[] rulesets) {
+        this.client = client;
+        this.lease = client.getLease();
+        this.baseURI = baseURI;
+        this.graphPerms = graphPerms;
+        this.rulesets = rulesets;
+    }
+
+    /**
+     * queues update operation
+     *
+     * @param update
+     * @return this batch
+     * @throws MalformedQueryException
+     */
+    public MarkLogicUpdateBatch add(String update) throws MalformedQueryException {
+        return add(update, null);
+    }
+
+    /**
+     * queues update operation with its bindings, variables clashing with those of
+     * operations already queued are renamed
+     *
+     * @param update
+     * @param bindings
+     * @return this batch
+     * @throws MalformedQueryException if the operation does not parse, naming its index in the batch
+     */
+    public MarkLogicUpdateBatch add(String update, BindingSet bindings) throws MalformedQueryException {
+        Set<String> found = new LinkedHashSet<String>();
+        scanVariables(update, null, found);
+        Map<String, String> renames = new HashMap<String, String>();
+        for (String name : found) {
+            boolean bound = bindings != null && bindings.hasBinding(name);
+            // a bound name must not reach earlier operations, an unbound one must not pick up their bindings
+            if (bound ? variables.contains(name) : this.bindings.hasBinding(name)) {
+                renames.put(name, freshName(name, found));
+            }
+        }
+        String operation = renames.isEmpty() ? update : scanVariables(update, renames, null);
+        if (validate) {
+            try {
+                QueryParserUtil.parseUpdate(QueryLanguage.SPARQL, operation, baseURI);
+            } catch (MalformedQueryException e) {
+                throw new MalformedQueryException("update operation " + operations.size() + " of batch is malformed: " + e.getMessage(), e);
+            }
+        }
+        for (String name : found) {
+            String renamed = renames.containsKey(name) ? renames.get(name) : name;
+            variables.add(renamed);
+            Binding binding = bindings != null ? bindings.getBinding(name) : null;
+            if (binding != null) {
+                this.bindings.addBinding(renamed, binding.getValue());
+            }
+        }
+        operations.add(operation);
+        return this;
+    }
+
+    /**
+     * queues prepared update with its current bindings, options of the batch apply
+     *
+     * @param update
+     * @return this batch
+     * @throws MalformedQueryException
+     */
+    public MarkLogicUpdateBatch add(MarkLogicUpdateQuery update) throws MalformedQueryException {
+        return add(update.getQueryString(), update.getBindings());
+    }
+
+    /**
+     * sends every queued operation in a single request, the batch is emptied once it succeeds
+     *
+     * @throws UpdateExecutionException if the request failed, none of the operations were applied
+     */
+    public void execute() throws UpdateExecutionException {
+        if (operations.isEmpty()) {
+            return;
+        }
+        try {
+            client.checkLease(lease);
+            client.syncForQuery();
+            client.sendUpdateQuery(getUpdateString(), bindings, getRequestOptions());
+            clear();
+        } catch (ForbiddenUserException | FailedRequestException e) {
+            throw new UpdateExecutionException("batch of " + operations.size() + " update operations failed, none were applied", e);
+        } catch (RepositoryException e) {
+            throw new UpdateExecutionException(e);
+        } catch (MalformedQueryException e) {
+            throw new UpdateExecutionException(e);
+        } catch (IOException e) {
+            throw new UpdateExecutionException(e);
+        } finally {
+            PhaseTimings.unbind();
+        }
+    }
+
+    /**
+     * the update request sent by execute
+     *
+     * @return String
+     */
+    public String getUpdateString() {
+        StringBuilder update = new StringBuilder();
+        for (String operation : operations) {
+            if (update.length() > 0) {
+                update.append(SEPARATOR);
+            }
+            update.append(operation);
+        }
+        return update.toString();
+    }
+
+    /**
+     * queued operations, with clashing variables renamed
+     *
+     * @return List
+     */
+    public List<String> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * bindings sent with the update request, under the names used in getOperations
+     *
+     * @return BindingSet
+     */
+    public BindingSet getBindings() {
+        return new SPARQLQueryBindingSet(bindings);
+    }
+
+    /**
+     * number of queued operations
+     *
+     * @return int
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * drops every queued operation
+     */
+    public void clear() {
+        operations.clear();
+        bindings.retainAll(Collections.<String>emptySet());
+        variables.clear();
+    }
+
+    public String getBaseURI() {
+        return baseURI;
+    }
+
+    public void setBaseURI(String baseURI) {
+        this.baseURI = baseURI;
+    }
+
+    public boolean getIncludeInferred() {
+        return includeInferred;
+    }
+
+    public void setIncludeInferred(boolean includeInferred) {
+        this.includeInferred = includeInferred;
+    }
+
+    public SPARQLRuleset[] getRulesets() {
+        return rulesets;
+    }
+
+    public void setRulesets(SPARQLRuleset... rulesets) {
+        this.rulesets = rulesets;
+    }
+
+    public GraphPermissions getGraphPerms() {
+        return graphPerms;
+    }
+
+    public void setGraphPerms(GraphPermissions graphPerms) {
+        this.graphPerms = graphPerms;
+    }
+
+    /**
+     *
+     * @return int - seconds
+     */
+    public int getMaxExecutionTime() {
+        return maxExecutionTime;
+    }
+
+    /**
+     * sets maximum execution time for the whole batch, enforced client side by aborting the request
+     *
+     * @param maxExecTime - seconds, 0 or less means no limit
+     */
+    public void setMaxExecutionTime(int maxExecTime) {
+        this.maxExecutionTime = Math.max(maxExecTime, 0);
+    }
+
+    public boolean isValidate() {
+        return validate;
+    }
+
+    /**
+     * set false to skip parsing operations as they are added, syntax errors are then only
+     * reported by the server for the batch as a whole
+     *
+     * @param validate
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * name for variable not used by the batch nor by the operation being added
+     */
+    private String freshName(String name, Set<String> found) {
+        String fresh = name + "_" + operations.size();
+        for (int i = 1; variables.contains(fresh) || found.contains(fresh) || bindings.hasBinding(fresh); i++) {
+            fresh = name + "_" + operations.size() + "_" + i;
+        }
+        return fresh;
+    }
+
+    /**
+     * collects variable names of operation into found and renames variables in renames,
+     * text of IRIs, string literals and comments is copied as is
+     *
+     * @param operation
+     * @param renames - null to only collect
+     * @param found - null to only rename
+     * @return operation with variables renamed
+     */
+    private static String scanVariables(String operation, Map<String, String> renames, Set<String> found) {
+        StringBuilder out = renames != null ? new StringBuilder(operation.length() + 16) : null;
+        int n = operation.length();
+        int i = 0;
+        while (i < n) {
+            char c = operation.charAt(i);
+            int end = i + 1;
+            if (c == '#') {
+                end = operation.indexOf('\n', i);
+                end = end < 0 ? n : end;
+            } else if (c == '"' || c == '\'') {
+                end = endOfString(operation, i);
+            } else if (c == '<') {
+                end = endOfIRI(operation, i);
+            } else if ((c == '?' || c == '$') && i + 1 < n && isVarChar(operation.charAt(i + 1))) {
+                end = i + 1;
+                while (end < n && isVarChar(operation.charAt(end))) {
+                    end++;
+                }
+                String name = operation.substring(i + 1, end);
+                if (found != null) {
+                    found.add(name);
+                }
+                if (out != null && renames.containsKey(name)) {
+                    out.append(c).append(renames.get(name));
+                    i = end;
+                    continue;
+                }
+            }
+            if (out != null) {
+                out.append(operation, i, end);
+            }
+            i = end;
+        }
+        return out != null ? out.toString() : operation;
+    }
+
+    private static boolean isVarChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '\u00B7';
+    }
+
+    /**
+     * index after string literal starting at start, long ''' and """ forms included
+     */
+    private static int endOfString(String s, int start) {
+        char quote = s.charAt(start);
+        boolean triple = s.startsWith("" + quote + quote + quote, start);
+        int i = start + (triple ? 3 : 1);
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote && (!triple || s.startsWith("" + quote + quote + quote, i))) {
+                return i + (triple ? 3 : 1);
+            } else {
+                i++;
+            }
+        }
+        return s.length();
+    }
+
+    /**
+     * index after IRI reference starting at start, or after the '<' when it is an operator
+     */
+    private static int endOfIRI(String s, int start) {
+        for (int i = start + 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            }
+            if (c <= ' ' || c == '<' || c == '"' || c == '{' || c == '}' || c == '|' || c == '^' || c == '`' || c == '\\') {
+                break;
+            }
+        }
+        return start + 1;
+    }
+
+    private RequestOptions getRequestOptions() {
+        return new RequestOptions(baseURI, includeInferred, rulesets, null, graphPerms, maxExecutionTime * 1000L);
+    }
+}
@@ -26,6 +26,7 @@ import com.marklogic.client.query.QueryDefinition;
 import com.marklogic.client.semantics.SPARQLRuleset;
 import com.marklogic.semantics.sesame.MarkLogicSesameException;
 import com.marklogic.semantics.sesame.client.MarkLogicClient;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.Update;
 import org.openrdf.query.UpdateExecutionException;
@@ -66,7 +67,7 @@ public class MarkLogicUpdateQuery extends MarkLogicQuery implements Update,MarkL
     public void execute() throws UpdateExecutionException {
         try {
             sync();
-            getMarkLogicClient().sendUpdateQuery(getQueryString(), getBindings(), getIncludeInferred(), getBaseURI());
+            getMarkLogicClient().sendUpdateQuery(getQueryString(), getBindings(), getRequestOptions());
         }catch(ForbiddenUserException | FailedRequestException e){
             throw new UpdateExecutionException(e);
         } catch (RepositoryException e) {
@@ -75,6 +76,8 @@ public class MarkLogicUpdateQuery extends MarkLogicQuery implements Update,MarkL
             throw new UpdateExecutionException(e);
         } catch (IOException e) {
             throw new UpdateExecutionException(e);
+        } finally {
+            PhaseTimings.unbind();
         }
     }
 
@@ -40,11 +40,13 @@ import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.sparql.SPARQLRepository;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.Rio;
 import org.openrdf.rio.helpers.RDFHandlerBase;
 import org.openrdf.rio.rdfxml.RDFXMLWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -728,6 +730,37 @@ conn.sync();
         conn.clear(context1);
     }
 
+    @Test
+    public void testExportParallel()
+            throws Exception {
+        Resource context1 = conn.getValueFactory().createURI("http://marklogic.com/test/context1");
+        Resource context2 = conn.getValueFactory().createURI("http://marklogic.com/test/context2");
+        ValueFactory f= conn.getValueFactory();
+        URI alice = f.createURI("http://example.org/people/alice");
+        URI bob = f.createURI("http://example.org/people/bob");
+        URI name = f.createURI("http://example.org/ontology/name");
+        conn.add(f.createStatement(alice, name, f.createLiteral("Alice")), context1);
+        conn.add(f.createStatement(bob, name, f.createLiteral("Bob")), context2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        conn.exportParallel(out, 2, context1, context2);
+        Model model = Rio.parse(new ByteArrayInputStream(out.toByteArray()), "", RDFFormat.NQUADS);
+        Assert.assertEquals(2, model.size());
+        Assert.assertTrue(model.contains(alice, name, null, context1));
+        Assert.assertTrue(model.contains(bob, name, null, context2));
+
+        File directory = File.createTempFile("export", "");
+        directory.delete();
+        conn.exportParallel(directory, 2, context1, context2);
+        Assert.assertEquals(2, directory.listFiles().length);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+
+        conn.clear(context1, context2);
+    }
+
     @Ignore
     public void testIntegrateWithRemoteRepository() throws Exception{
         final Resource context1 = conn.getValueFactory().createURI("http://marklogic.com/test/context1");
@@ -5,14 +5,18 @@ package com.marklogic.semantics.sesame;
 
 import static java.util.Arrays.asList;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.marklogic.client.DatabaseClient;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.openrdf.model.Resource;
@@ -24,6 +28,9 @@ import org.slf4j.LoggerFactory;
 
 import com.marklogic.client.DatabaseClientFactory;
 import com.marklogic.client.semantics.GraphManager;
+import com.marklogic.client.semantics.SPARQLRuleset;
+import com.marklogic.semantics.sesame.query.MarkLogicTupleQuery;
+import org.openrdf.query.TupleQueryResult;
 
 public class MultiThreadedPersistenceTest extends SesameTestBase {
 
@@ -222,6 +229,53 @@ public class MultiThreadedPersistenceTest extends SesameTestBase {
         }
     }
 
+    @Test
+    public void sharedConnectionMultiThreadedQuery() throws Exception {
+        MarkLogicRepository markLogicRepository = new MarkLogicRepository(SesameTestBase.host, SesameTestBase.port, SesameTestBase.adminUser, SesameTestBase.adminPassword, DatabaseClientFactory.Authentication.DIGEST.toString());
+        markLogicRepository.initialize();
+        final MarkLogicRepositoryConnection connection = markLogicRepository.getConnection();
+        for (String identifier : identifiers.subList(0, 10)) {
+            for (Entity e : entitiesFor(identifier)) {
+                connection.add(e.getStatements(), e.getGraph());
+            }
+        }
+        connection.sync();
+
+        // page length and rulesets are per request, so threads sharing the connection must not see each other's options
+        ExecutorService executorService = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 100; i++) {
+                final long pageLength = 1 + (i % 10);
+                final boolean withRuleset = i % 2 == 0;
+                results.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        MarkLogicTupleQuery query = connection.prepareTupleQuery("SELECT ?s { GRAPH <http://graph/meta> { ?s ?p ?o } }");
+                        if (withRuleset) {
+                            query.setRulesets(SPARQLRuleset.RDFS);
+                        }
+                        TupleQueryResult result = query.evaluate(1, pageLength);
+                        long count = 0;
+                        while (result.hasNext()) {
+                            result.next();
+                            count++;
+                        }
+                        result.close();
+                        return count == pageLength && (withRuleset ? query.getRulesets().length == 1 : query.getRulesets() == null);
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+            connection.close();
+            markLogicRepository.shutDown();
+        }
+    }
+
     class MultipleConnectionPersistenceService {
         MarkLogicRepository markLogicRepository;
 
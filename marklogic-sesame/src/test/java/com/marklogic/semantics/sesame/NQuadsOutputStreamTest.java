@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * tests N-Triples to N-Quads rewriting (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class NQuadsOutputStreamTest {
+
+    private static final String TRIPLES =
+            "<urn:s> <urn:p> <urn:o> .\n" +
+            "# comment\n" +
+            "\n" +
+            "<urn:s> <urn:p> \"ends with a dot.\"@en .\r\n" +
+            "_:b1 <urn:p> \"1\"^^<http://www.w3.org/2001/XMLSchema#int>.";
+
+    @Test
+    public void testNamedGraph() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NQuadsOutputStream quads = new NQuadsOutputStream(out, "<urn:g>");
+        quads.write(TRIPLES.getBytes("UTF-8"));
+        quads.close();
+        Assert.assertEquals(
+                "<urn:s> <urn:p> <urn:o> <urn:g> .\n" +
+                "# comment\n" +
+                "<urn:s> <urn:p> \"ends with a dot.\"@en <urn:g> .\n" +
+                "_:b1 <urn:p> \"1\"^^<http://www.w3.org/2001/XMLSchema#int> <urn:g> .\n",
+                out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testDefaultGraphSplitWrites() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NQuadsOutputStream quads = new NQuadsOutputStream(out, null);
+        byte[] bytes = TRIPLES.getBytes("UTF-8");
+        // lines split across writes
+        for (int i = 0; i < bytes.length; i += 7) {
+            quads.write(bytes, i, Math.min(7, bytes.length - i));
+        }
+        quads.close();
+        Assert.assertEquals(
+                "<urn:s> <urn:p> <urn:o> .\n" +
+                "# comment\n" +
+                "<urn:s> <urn:p> \"ends with a dot.\"@en .\n" +
+                "_:b1 <urn:p> \"1\"^^<http://www.w3.org/2001/XMLSchema#int> .\n",
+                out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testFileName() throws Exception {
+        Assert.assertEquals("http%3A%2F%2Fexample.org%2Fg%231.nq", ParallelExport.fileName(new URIImpl("http://example.org/g#1")));
+    }
+
+    @Test
+    public void testLongFileName() throws Exception {
+        StringBuilder path = new StringBuilder("http://example.org/");
+        for (int i = 0; i < 100; i++) {
+            path.append("segment/");
+        }
+        String a = ParallelExport.fileName(new URIImpl(path + "a"));
+        String b = ParallelExport.fileName(new URIImpl(path + "b"));
+        Assert.assertEquals(ParallelExport.MAX_FILE_NAME, a.length());
+        Assert.assertTrue(a.startsWith("http%3A%2F%2Fexample.org%2Fsegment"));
+        Assert.assertTrue(a.endsWith(".nq"));
+        Assert.assertNotEquals(a, b);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.query.QueryInterruptedException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tests max execution time (does not require MarkLogic server, the host is a local stub answering slowly)
+ *
+ * @author James Fuller
+ */
+public class AbortableRequestTest {
+
+    private static final String SELECT = "SELECT ?s WHERE {?s ?p ?o}";
+
+    private static final String HEAD = "{\"head\":{\"vars\":[\"s\"]},\"results\":{\"bindings\":[";
+    private static final String BINDING = "{\"s\":{\"type\":\"uri\",\"value\":\"urn:s\"}}";
+
+    private SlowHost stub;
+    private EndpointPool pool;
+    private MarkLogicClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new SlowHost();
+        pool = stub.newPool();
+        client = stub.newClient(pool);
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testCompletesWithinDeadline() throws Exception {
+        TupleQueryResult result = client.sendTupleQuery(SELECT, new SPARQLQueryBindingSet(), 1, -1,
+                RequestOptions.DEFAULT.withMaxExecutionTimeMillis(5000));
+        int count = 0;
+        while (result.hasNext()) {
+            result.next();
+            count++;
+        }
+        result.close();
+        Assert.assertEquals(2, count);
+    }
+
+    @Test
+    public void testDeadlineBeforeHeaders() throws Exception {
+        stub.headerDelayMillis = 10000;
+        long started = System.currentTimeMillis();
+        try {
+            client.sendTupleQuery(SELECT, new SPARQLQueryBindingSet(), 1, -1,
+                    RequestOptions.DEFAULT.withMaxExecutionTimeMillis(200));
+            Assert.fail("expected QueryInterruptedException");
+        } catch (QueryInterruptedException e) {
+            Assert.assertTrue(System.currentTimeMillis() - started < 5000);
+        }
+        // aborting is not a host failure
+        Assert.assertEquals(0, pool.getEndpoints().get(0).getFailureCount());
+    }
+
+    @Test
+    public void testDeadlineWhileStreaming() throws Exception {
+        stub.bodyDelayMillis = 10000;
+        long started = System.currentTimeMillis();
+        TupleQueryResult result = client.sendTupleQuery(SELECT, new SPARQLQueryBindingSet(), 1, -1,
+                RequestOptions.DEFAULT.withMaxExecutionTimeMillis(500));
+        try {
+            while (result.hasNext()) {
+                result.next();
+            }
+            Assert.fail("expected QueryInterruptedException");
+        } catch (QueryInterruptedException e) {
+            Assert.assertTrue(System.currentTimeMillis() - started < 5000);
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void testDeadlineOnBooleanQuery() throws Exception {
+        stub.headerDelayMillis = 10000;
+        try {
+            client.sendBooleanQuery("ASK {?s ?p ?o}", new SPARQLQueryBindingSet(),
+                    RequestOptions.DEFAULT.withMaxExecutionTimeMillis(200));
+            Assert.fail("expected QueryInterruptedException");
+        } catch (QueryInterruptedException e) {
+            Assert.assertTrue(e.getMessage().contains("200 ms"));
+        }
+    }
+
+    @Test
+    public void testCloseAbortsUnreadResponse() throws Exception {
+        stub.bodyDelayMillis = 10000;
+        TupleQueryResult result = client.sendTupleQuery(SELECT, new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT);
+        Assert.assertTrue(result.hasNext());
+        result.next();
+        long started = System.currentTimeMillis();
+        result.close();
+        // the rest of the body is not waited for
+        Assert.assertTrue(System.currentTimeMillis() - started < 2000);
+        Assert.assertFalse(result.hasNext());
+
+        // connection pool is still usable
+        stub.bodyDelayMillis = 0;
+        TupleQueryResult next = client.sendTupleQuery(SELECT, new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT);
+        int count = 0;
+        while (next.hasNext()) {
+            next.next();
+            count++;
+        }
+        next.close();
+        Assert.assertEquals(2, count);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * answers every query with two bindings, optionally delaying headers or the end of the body
+     */
+    private static class SlowHost extends StubHost {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        volatile long headerDelayMillis;
+        volatile long bodyDelayMillis;
+
+        SlowHost() throws IOException {
+            super();
+        }
+
+        @Override
+        protected void stopping() {
+            stopped.countDown();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            drain(exchange);
+            try {
+                pause(headerDelayMillis);
+                exchange.getResponseHeaders().add("Content-Type", "application/sparql-results+json");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write((HEAD + BINDING + ",").getBytes("UTF-8"));
+                out.flush();
+                pause(bodyDelayMillis);
+                out.write((BINDING + "]}}").getBytes("UTF-8"));
+                out.close();
+            } catch (IOException e) {
+                // client went away
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void pause(long millis) {
+            try {
+                stopped.await(millis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
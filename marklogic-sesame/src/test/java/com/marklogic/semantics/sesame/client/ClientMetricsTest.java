@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.semantics.sesame.MarkLogicSesameException;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics.Operation;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParseException;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * tests metrics recorded by the client (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class ClientMetricsTest {
+
+    private static final String SELECT_RESULT = "{\"head\":{\"vars\":[\"s\"]},\"results\":{\"bindings\":["
+            + "{\"s\":{\"type\":\"uri\",\"value\":\"urn:s0\"}},{\"s\":{\"type\":\"uri\",\"value\":\"urn:s1\"}}]}}";
+
+    private MetricsHost stub;
+    private MarkLogicClient client;
+    private ClientMetrics metrics;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new MetricsHost();
+        client = stub.newClient();
+        metrics = client.getMetrics();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testQueryMetrics() throws Exception {
+        TupleQueryResult result = client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT);
+        Assert.assertEquals(1, metrics.getOpenResults());
+        int rows = 0;
+        while (result.hasNext()) {
+            result.next();
+            rows++;
+        }
+        result.close();
+        Assert.assertEquals(2, rows);
+        Assert.assertEquals(0, metrics.getOpenResults());
+        Assert.assertEquals(1, metrics.getRequestCount(Operation.TUPLE_QUERY));
+        Assert.assertEquals(0, metrics.getErrorCount(Operation.TUPLE_QUERY));
+        Assert.assertEquals(1, metrics.getLatency(Operation.TUPLE_QUERY).getCount());
+        Assert.assertEquals(SELECT_RESULT.length(), metrics.getBytesReceived());
+        Assert.assertEquals("SELECT ?s WHERE { ?s ?p ?o }".length(), metrics.getBytesSent());
+        for (int i = 0; i < 100 && metrics.getExecutorTasks() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, metrics.getExecutorTasks());
+    }
+
+    @Test
+    public void testWriteCacheMetrics() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            client.sendAdd(null, new URIImpl("urn:s" + i), new URIImpl("urn:p"), new URIImpl("urn:o"));
+        }
+        Assert.assertEquals(3, metrics.getWriteCacheDepth());
+        client.sync();
+        Assert.assertEquals(0, metrics.getWriteCacheDepth());
+        Assert.assertEquals(1, metrics.getFlushCount());
+        Assert.assertEquals(3, metrics.getMeanFlushSize(), 0);
+        Assert.assertEquals(1, metrics.getRequestCount(Operation.UPDATE));
+
+        stub.status = 500;
+        try {
+            client.sendUpdateQuery("CLEAR ALL", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+            Assert.fail("expected failed update");
+        } catch (Exception e) {
+            Assert.assertEquals(1, metrics.getErrorCount(Operation.UPDATE));
+        }
+    }
+
+    @Test
+    public void testRegisteredWithJmx() throws Exception {
+        client.sendUpdateQuery("CLEAR ALL", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+        ObjectName name = metrics.registerMBean("test");
+        try {
+            Object counts = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesSent");
+            Assert.assertEquals(9L, counts);
+        } finally {
+            metrics.unregisterMBean();
+        }
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void testSlowOperationLog() throws Exception {
+        SlowOperationLog slowOperationLog = new SlowOperationLog(0);
+        client.setSlowOperationLog(slowOperationLog);
+
+        TupleQueryResult result = client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT);
+        while (result.hasNext()) {
+            result.next();
+        }
+        result.close();
+        // logged by the parser thread once the response is parsed
+        for (int i = 0; i < 100 && slowOperationLog.getLoggedCount() < 1; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, slowOperationLog.getLoggedCount());
+
+        for (int i = 0; i < 3; i++) {
+            client.sendAdd(null, new URIImpl("urn:s" + i), new URIImpl("urn:p"), new URIImpl("urn:o"));
+        }
+        client.sync();
+        Assert.assertEquals("flush logged once, not again as its update", 2, slowOperationLog.getLoggedCount());
+
+        client.setSlowOperationLog(null);
+        client.sendUpdateQuery("CLEAR ALL", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+        Assert.assertEquals(2, slowOperationLog.getLoggedCount());
+    }
+
+    @Test
+    public void testSlowRemoveAndFailedAdd() throws Exception {
+        SlowOperationLog slowOperationLog = new SlowOperationLog(0);
+        client.setSlowOperationLog(slowOperationLog);
+
+        client.sendRemove(null, new URIImpl("urn:s"), new URIImpl("urn:p"), null);
+        Assert.assertEquals(1, slowOperationLog.getLoggedCount());
+        Assert.assertEquals(1, metrics.getRequestCount(Operation.REMOVE));
+
+        stub.status = 500;
+        try {
+            client.sendAdd(new ByteArrayInputStream("<urn:s> <urn:p> <urn:o> .".getBytes("UTF-8")), null, RDFFormat.NTRIPLES);
+            Assert.fail("expected add to fail");
+        } catch (RDFParseException e) {
+            // checked failures are logged as well
+        }
+        Assert.assertEquals(2, slowOperationLog.getLoggedCount());
+    }
+
+    @Test
+    public void testStreamFailureCountedAsError() throws Exception {
+        RequestRecorder recorder = new RequestRecorder();
+        client.addRequestInterceptor(recorder);
+        // closed once by the request, closing it again after the merge fails
+        final AtomicInteger closes = new AtomicInteger();
+        InputStream in = new ByteArrayInputStream("<urn:s> <urn:p> <urn:o> .".getBytes("UTF-8")) {
+            @Override
+            public void close() throws IOException {
+                if (closes.incrementAndGet() > 1) {
+                    throw new IOException("stream broken");
+                }
+            }
+        };
+        try {
+            client.sendAdd(in, null, RDFFormat.NTRIPLES);
+            Assert.fail("expected add to fail");
+        } catch (MarkLogicSesameException e) {
+            Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(1, metrics.getErrorCount(Operation.ADD));
+        Assert.assertEquals(1, recorder.errors.get());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static class RequestRecorder implements RequestInterceptor {
+        final AtomicInteger errors = new AtomicInteger();
+
+        @Override
+        public void before(InterceptedRequest request) {
+        }
+
+        @Override
+        public void after(InterceptedRequest request) {
+        }
+
+        @Override
+        public void error(InterceptedRequest request, Throwable failure) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * answers queries with two rows and updates with no content
+     */
+    private static class MetricsHost extends StubHost {
+        volatile int status = 204;
+
+        MetricsHost() throws IOException {
+            super();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            drain(exchange);
+            if (isUpdate(exchange) || status != 204) {
+                respond(exchange, status, null, null);
+                return;
+            }
+            respond(exchange, 200, "application/sparql-results+json", SELECT_RESULT.getBytes("UTF-8"));
+        }
+    }
+}
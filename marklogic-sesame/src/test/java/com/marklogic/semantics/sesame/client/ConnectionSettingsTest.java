@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * tests connection settings (does not require MarkLogic server, settings are applied without requests)
+ *
+ * @author James Fuller
+ */
+@SuppressWarnings("deprecation")
+public class ConnectionSettingsTest {
+
+    private DatabaseClient databaseClient;
+
+    @Before
+    public void setUp() {
+        databaseClient = DatabaseClientFactory.newClient("localhost", 8200, "user", "password", DatabaseClientFactory.Authentication.DIGEST);
+    }
+
+    @After
+    public void tearDown() {
+        databaseClient.release();
+    }
+
+    @Test
+    public void testTransportSettingsAreApplied() {
+        ConnectionSettings settings = new ConnectionSettings();
+        settings.setMaxConnections(400);
+        settings.setMaxConnectionsPerRoute(250);
+        settings.setConnectTimeoutMillis(2000);
+        settings.setSocketTimeoutMillis(30000);
+        settings.apply(databaseClient);
+
+        HttpClient httpClient = (HttpClient) databaseClient.getClientImplementation();
+        ThreadSafeClientConnManager connMgr = (ThreadSafeClientConnManager) httpClient.getConnectionManager();
+        Assert.assertEquals(400, connMgr.getMaxTotal());
+        Assert.assertEquals(250, connMgr.getDefaultMaxPerRoute());
+        Assert.assertEquals(2000, HttpConnectionParams.getConnectionTimeout(httpClient.getParams()));
+        Assert.assertEquals(30000, HttpConnectionParams.getSoTimeout(httpClient.getParams()));
+    }
+
+    @Test
+    public void testUnsetTimeoutsAreUnchanged() {
+        HttpClient httpClient = (HttpClient) databaseClient.getClientImplementation();
+        int soTimeout = HttpConnectionParams.getSoTimeout(httpClient.getParams());
+        new ConnectionSettings().apply(databaseClient);
+        Assert.assertEquals(soTimeout, HttpConnectionParams.getSoTimeout(httpClient.getParams()));
+    }
+
+    @Test
+    public void testClientIsConfigured() throws Exception {
+        ConnectionSettings settings = new ConnectionSettings();
+        settings.setMaxConnections(300);
+        settings.setWriteCacheSize(50);
+        settings.setExecutorCoreThreads(2);
+
+        MarkLogicClient client = new MarkLogicClient(databaseClient);
+        client.configure(settings);
+        Assert.assertSame(settings, client.getConnectionSettings());
+        HttpClient httpClient = (HttpClient) databaseClient.getClientImplementation();
+        Assert.assertEquals(300, ((ThreadSafeClientConnManager) httpClient.getConnectionManager()).getMaxTotal());
+
+        // settings survive reset, as when the client is returned to a pool
+        client.reset();
+        Assert.assertSame(settings, client.getConnectionSettings());
+
+        client.configure(null);
+        Assert.assertEquals(ConnectionSettings.DEFAULT_MAX_CONNECTIONS, client.getConnectionSettings().getMaxConnections());
+        client.stopTimer();
+        client.close();
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * tests load balancing across hosts (does not require MarkLogic server, each host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class EndpointPoolTest {
+
+    private static final String ASK = "ASK {?s ?p ?o}";
+
+    private List<QueryHost> stubs;
+
+    @Before
+    public void setUp() throws IOException {
+        stubs = new ArrayList<QueryHost>();
+        for (int i = 0; i < 3; i++) {
+            stubs.add(new QueryHost());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (QueryHost stub : stubs) {
+            stub.stop();
+        }
+    }
+
+    @Test
+    public void testRoundRobinSpreadsRequests() throws Exception {
+        EndpointPool pool = newPool(EndpointPool.Strategy.ROUND_ROBIN);
+        MarkLogicClient client = new MarkLogicClient(pool);
+        try {
+            for (int i = 0; i < 30; i++) {
+                Assert.assertTrue(client.sendBooleanQuery(ASK, new SPARQLQueryBindingSet(), RequestOptions.DEFAULT));
+            }
+            for (QueryHost stub : stubs) {
+                Assert.assertEquals(10, stub.queries.get());
+            }
+        } finally {
+            client.stopTimer();
+            pool.release();
+        }
+    }
+
+    @Test
+    public void testEwmaLatencyUsesEveryHost() throws Exception {
+        EndpointPool pool = newPool(EndpointPool.Strategy.EWMA_LATENCY);
+        MarkLogicClient client = new MarkLogicClient(pool);
+        try {
+            for (int i = 0; i < 30; i++) {
+                client.sendBooleanQuery(ASK, new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+            }
+            for (Endpoint endpoint : pool.getEndpoints()) {
+                Assert.assertTrue(endpoint.getRequestCount() > 0);
+                Assert.assertEquals(0, endpoint.getOutstandingRequests());
+            }
+        } finally {
+            client.stopTimer();
+            pool.release();
+        }
+    }
+
+    @Test
+    public void testFailingHostIsEjected() throws Exception {
+        stubs.get(1).status = 500;
+        EndpointPool pool = newPool(EndpointPool.Strategy.ROUND_ROBIN);
+        MarkLogicClient client = new MarkLogicClient(pool);
+        try {
+            int failed = 0;
+            for (int i = 0; i < 30; i++) {
+                try {
+                    client.sendBooleanQuery(ASK, new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+                } catch (RuntimeException e) {
+                    failed++;
+                }
+            }
+            Assert.assertEquals(EndpointPool.DEFAULT_FAILURE_THRESHOLD, failed);
+            Assert.assertEquals(EndpointPool.DEFAULT_FAILURE_THRESHOLD, stubs.get(1).queries.get());
+            Assert.assertEquals(1, pool.getEndpoints().get(1).getEjectionCount());
+            Assert.assertTrue(pool.getEndpoints().get(1).isEjected(System.currentTimeMillis()));
+        } finally {
+            client.stopTimer();
+            pool.release();
+        }
+    }
+
+    @Test
+    public void testUnreachableHostIsEjected() throws Exception {
+        stubs.get(2).stop();
+        EndpointPool pool = newPool(EndpointPool.Strategy.LEAST_OUTSTANDING);
+        pool.setFailureThreshold(1);
+        MarkLogicClient client = new MarkLogicClient(pool);
+        try {
+            int failed = 0;
+            for (int i = 0; i < 30; i++) {
+                try {
+                    client.sendBooleanQuery(ASK, new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+                } catch (RuntimeException e) {
+                    failed++;
+                }
+            }
+            Assert.assertTrue(failed <= 1);
+            Assert.assertEquals(30 - failed, stubs.get(0).queries.get() + stubs.get(1).queries.get());
+        } finally {
+            client.stopTimer();
+            pool.release();
+        }
+    }
+
+    @Test
+    public void testTransactionIsPinnedToHost() throws Exception {
+        EndpointPool pool = newPool(EndpointPool.Strategy.ROUND_ROBIN);
+        MarkLogicClient client = new MarkLogicClient(pool);
+        try {
+            client.openTransaction();
+            for (int i = 0; i < 9; i++) {
+                client.sendBooleanQuery(ASK, new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+            }
+            client.commitTransaction();
+            int pinnedHosts = 0;
+            for (QueryHost stub : stubs) {
+                if (stub.transactions.get() > 0) {
+                    pinnedHosts++;
+                    Assert.assertEquals(2, stub.transactions.get());
+                    Assert.assertEquals(9, stub.queries.get());
+                } else {
+                    Assert.assertEquals(0, stub.queries.get());
+                }
+            }
+            Assert.assertEquals(1, pinnedHosts);
+        } finally {
+            client.stopTimer();
+            pool.release();
+        }
+    }
+
+    @Test
+    public void testReadsAndWritesUseSeparateHosts() throws Exception {
+        List<Endpoint> readHosts = new ArrayList<Endpoint>();
+        readHosts.add(new Endpoint("localhost", stubs.get(0).port, "user", "password", "BASIC"));
+        readHosts.add(new Endpoint("localhost", stubs.get(1).port, "user", "password", "BASIC"));
+        EndpointPool readPool = new EndpointPool(EndpointPool.Strategy.ROUND_ROBIN, readHosts);
+        EndpointPool writePool = new EndpointPool(new Endpoint("localhost", stubs.get(2).port, "user", "password", "BASIC"));
+        MarkLogicClient client = new MarkLogicClient(readPool, writePool);
+        try {
+            for (int i = 0; i < 10; i++) {
+                client.sendBooleanQuery(ASK, new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+            }
+            for (int i = 0; i < 5; i++) {
+                client.sendUpdateQuery("INSERT DATA {<urn:s> <urn:p> <urn:o>}", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+            }
+            Assert.assertEquals(5, stubs.get(0).queries.get());
+            Assert.assertEquals(5, stubs.get(1).queries.get());
+            Assert.assertEquals(5, stubs.get(2).queries.get());
+
+            // queries in a transaction go to the write host
+            client.openTransaction();
+            client.sendBooleanQuery(ASK, new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+            client.rollbackTransaction();
+            Assert.assertEquals(6, stubs.get(2).queries.get());
+            Assert.assertEquals(2, stubs.get(2).transactions.get());
+        } finally {
+            client.stopTimer();
+            readPool.release();
+            writePool.release();
+        }
+    }
+
+    @Test
+    public void testHostsWithPort() {
+        List<String> hosts = new ArrayList<String>();
+        hosts.add("alpha");
+        hosts.add("beta:8010");
+        EndpointPool pool = new EndpointPool(EndpointPool.Strategy.ROUND_ROBIN, hosts, 8000, "user", "password", "DIGEST");
+        Assert.assertEquals("alpha:8000", pool.getEndpoints().get(0).toString());
+        Assert.assertEquals("beta:8010", pool.getEndpoints().get(1).toString());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private EndpointPool newPool(EndpointPool.Strategy strategy) {
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (QueryHost stub : stubs) {
+            endpoints.add(stub.newEndpoint());
+        }
+        return new EndpointPool(strategy, endpoints);
+    }
+
+    /**
+     * answers SPARQL ASK and transaction requests, as MarkLogic REST api would
+     */
+    private static class QueryHost extends StubHost {
+        final AtomicInteger queries = new AtomicInteger();
+        final AtomicInteger transactions = new AtomicInteger();
+        volatile int status = 200;
+
+        QueryHost() throws IOException {
+            super();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            drain(exchange);
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/v1/transactions")) {
+                transactions.incrementAndGet();
+                if (path.equals("/v1/transactions")) {
+                    exchange.getResponseHeaders().add("Location", "/v1/transactions/stub" + port);
+                    respond(exchange, 303, null, null);
+                } else {
+                    respond(exchange, 204, null, null);
+                }
+                return;
+            }
+            queries.incrementAndGet();
+            if (status == 200) {
+                respond(exchange, status, "application/sparql-results+json", "{\"head\":{},\"boolean\":true}".getBytes("UTF-8"));
+            } else {
+                respond(exchange, status, "application/json", "{\"errorResponse\":{\"statusCode\":500}}".getBytes("UTF-8"));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.semantics.sesame.MarkLogicSesameException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * tests group commit of autocommit adds (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class GroupCommitterTest {
+
+    private UpdateHost stub;
+    private MarkLogicClient writer;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new UpdateHost();
+        writer = stub.newClient();
+        writer.stopTimer();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testWritesOfManyClientsShareBatches() throws Exception {
+        final GroupCommitter groupCommitter = new GroupCommitter(writer, 1000, 200);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Void>> done = new ArrayList<Future<Void>>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            done.add(threads.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    MarkLogicClient client = new MarkLogicClient(writer);
+                    client.setValueFactory(ValueFactoryImpl.getInstance());
+                    client.setGroupCommitter(groupCommitter);
+                    for (int i = 0; i < 10; i++) {
+                        client.sendAdd(null, new URIImpl("urn:s" + thread + "-" + i), new URIImpl("urn:p"), new URIImpl("urn:o"));
+                    }
+                    // returns once the batches holding the adds are written
+                    client.sync();
+                    Assert.assertEquals(String.valueOf(stub.updates), 0, missing(thread));
+                    client.close();
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : done) {
+            future.get();
+        }
+        threads.shutdown();
+        groupCommitter.close();
+
+        Assert.assertTrue("80 adds in " + stub.updates.size() + " updates", stub.updates.size() < 8);
+        Assert.assertEquals(80, groupCommitter.getStatementCount());
+        Assert.assertEquals(stub.updates.size(), groupCommitter.getBatchCount());
+    }
+
+    @Test
+    public void testBatchWrittenWhenFull() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter(writer, 5, 60000);
+        MarkLogicClient client = new MarkLogicClient(writer);
+        client.setGroupCommitter(groupCommitter);
+        for (int i = 0; i < 10; i++) {
+            client.sendAdd(null, new URIImpl("urn:s0-" + i), new URIImpl("urn:p"), new URIImpl("urn:o"));
+        }
+        client.sync();
+        Assert.assertEquals(2, stub.updates.size());
+        Assert.assertEquals(0, missing(0));
+        groupCommitter.close();
+        client.close();
+    }
+
+    @Test
+    public void testFailedBatchReportedBySync() throws Exception {
+        stub.status = 500;
+        GroupCommitter groupCommitter = new GroupCommitter(writer, 1000, 10);
+        MarkLogicClient client = new MarkLogicClient(writer);
+        client.setGroupCommitter(groupCommitter);
+        client.sendAdd(null, new URIImpl("urn:s"), new URIImpl("urn:p"), new URIImpl("urn:o"));
+        try {
+            client.sync();
+            Assert.fail("expected failed batch to be reported");
+        } catch (MarkLogicSesameException e) {
+            Assert.assertEquals(1, groupCommitter.getFailureCount());
+        }
+        groupCommitter.close();
+
+        // a closed group committer is bypassed
+        Assert.assertNull(groupCommitter.add(new URIImpl("urn:s"), new URIImpl("urn:p"), new URIImpl("urn:o")));
+        client.close();
+    }
+
+    private int missing(int thread) {
+        int missing = 0;
+        for (int i = 0; i < 10; i++) {
+            boolean found = false;
+            synchronized (stub.updates) {
+                for (String update : stub.updates) {
+                    if (update.contains("<urn:s" + thread + "-" + i + ">")) {
+                        found = true;
+                    }
+                }
+            }
+            if (!found) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.TupleQueryResultBuilder;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * tests interning ValueFactory (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class InterningValueFactoryTest {
+
+    @Test
+    public void testRepeatedURIsShareInstance() {
+        InterningValueFactory f = new InterningValueFactory();
+        URI first = f.createURI("http://example.org/ontology/name");
+        Assert.assertSame(first, f.createURI("http://example.org/ontology/name"));
+        Assert.assertSame(first, f.createURI("http://example.org/ontology/", "name"));
+        Assert.assertEquals(1, f.getMissCount());
+        Assert.assertEquals(2, f.getHitCount());
+        Assert.assertEquals(1, f.size());
+    }
+
+    @Test
+    public void testBounded() {
+        InterningValueFactory f = new InterningValueFactory(64);
+        for (int i = 0; i < 10000; i++) {
+            f.createURI("urn:x" + i);
+        }
+        Assert.assertTrue(f.size() <= 64);
+
+        // recently used URIs survive eviction
+        URI hot = f.createURI("urn:hot");
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertSame(hot, f.createURI("urn:hot"));
+            f.createURI("urn:y" + i);
+        }
+    }
+
+    @Test
+    public void testLongURIsAreNotInterned() {
+        InterningValueFactory f = new InterningValueFactory(64, 10);
+        Assert.assertNotSame(f.createURI("urn:long-uri"), f.createURI("urn:long-uri"));
+        Assert.assertEquals(0, f.size());
+    }
+
+    @Test
+    public void testParsedResultsShareURIs() throws Exception {
+        StringBuilder json = new StringBuilder("{\"head\":{\"vars\":[\"s\",\"p\"]},\"results\":{\"bindings\":[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"s\":{\"type\":\"uri\",\"value\":\"urn:s").append(i)
+                    .append("\"},\"p\":{\"type\":\"uri\",\"value\":\"http://example.org/ontology/name\"}}");
+        }
+        json.append("]}}");
+
+        InterningValueFactory f = new InterningValueFactory();
+        TupleQueryResultBuilder builder = new TupleQueryResultBuilder();
+        QueryResultIO.parse(new ByteArrayInputStream(json.toString().getBytes("UTF-8")),
+                TupleQueryResultFormat.JSON, builder, f);
+        TupleQueryResult result = builder.getQueryResult();
+        List<URI> predicates = new ArrayList<URI>();
+        while (result.hasNext()) {
+            BindingSet bindings = result.next();
+            predicates.add((URI) bindings.getValue("p"));
+        }
+        Assert.assertEquals(100, predicates.size());
+        for (URI p : predicates) {
+            Assert.assertSame(predicates.get(0), p);
+        }
+    }
+}
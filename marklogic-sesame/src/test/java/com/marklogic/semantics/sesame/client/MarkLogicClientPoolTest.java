@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.client.DatabaseClient;
+import com.marklogic.client.DatabaseClientFactory;
+import com.marklogic.client.semantics.SPARQLRuleset;
+import com.marklogic.semantics.sesame.MarkLogicRepository;
+import com.marklogic.semantics.sesame.MarkLogicRepositoryConnection;
+import com.marklogic.semantics.sesame.query.MarkLogicQueryTemplate;
+import com.marklogic.semantics.sesame.query.MarkLogicTupleQuery;
+import com.marklogic.semantics.sesame.query.MarkLogicUpdateBatch;
+import com.marklogic.semantics.sesame.server.EmbeddedMarkLogicServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.UpdateExecutionException;
+
+/**
+ * tests client pool (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class MarkLogicClientPoolTest {
+
+    private DatabaseClient databaseClient;
+    private MarkLogicClientPool.Factory factory;
+
+    @Before
+    public void setUp() {
+        databaseClient = DatabaseClientFactory.newClient("localhost", 8200, "user", "password", DatabaseClientFactory.Authentication.DIGEST);
+        factory = new MarkLogicClientPool.Factory() {
+            @Override
+            public MarkLogicClient create() {
+                return new MarkLogicClient(databaseClient);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        databaseClient.release();
+    }
+
+    @Test
+    public void testClientIsReused() {
+        MarkLogicClientPool pool = new MarkLogicClientPool(factory, 4, 0);
+        MarkLogicClient client = pool.borrow();
+        Assert.assertEquals(1, pool.getActiveCount());
+        pool.release(client);
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        Assert.assertSame(client, pool.borrow());
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(1, pool.getReusedCount());
+        pool.close();
+    }
+
+    @Test
+    public void testClientIsResetOnRelease() {
+        MarkLogicClientPool pool = new MarkLogicClientPool(factory, 4, 0);
+        MarkLogicClient client = pool.borrow();
+        client.setRulesets(SPARQLRuleset.RDFS);
+        client.setQueryResultCache(new QueryResultCache());
+        pool.release(client);
+
+        client = pool.borrow();
+        Assert.assertNull(client.getRulesets());
+        Assert.assertNull(client.getQueryResultCache());
+        pool.close();
+    }
+
+    @Test
+    public void testMaxIdle() {
+        MarkLogicClientPool pool = new MarkLogicClientPool(factory, 2, 0);
+        MarkLogicClient a = pool.borrow();
+        MarkLogicClient b = pool.borrow();
+        MarkLogicClient c = pool.borrow();
+        Assert.assertEquals(3, pool.getCreatedCount());
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        Assert.assertEquals(2, pool.getIdleCount());
+        Assert.assertEquals(1, pool.getEvictedCount());
+        pool.close();
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertEquals(3, pool.getEvictedCount());
+    }
+
+    @Test
+    public void testIdleClientsExpire() throws Exception {
+        MarkLogicClientPool pool = new MarkLogicClientPool(factory, 4, 1);
+        MarkLogicClient client = pool.borrow();
+        pool.release(client);
+        Thread.sleep(20);
+        Assert.assertNotSame(client, pool.borrow());
+        Assert.assertEquals(1, pool.getEvictedCount());
+        Assert.assertEquals(2, pool.getCreatedCount());
+        pool.close();
+    }
+
+    @Test
+    public void testClosedConnectionCannotUseReusedClient() throws Exception {
+        EmbeddedMarkLogicServer server = new EmbeddedMarkLogicServer();
+        MarkLogicRepository rep = server.newRepository();
+        rep.initialize();
+        try {
+            MarkLogicRepositoryConnection closed = rep.getConnection();
+            MarkLogicTupleQuery query = closed.prepareTupleQuery("SELECT ?s WHERE { ?s ?p ?o }");
+            MarkLogicQueryTemplate template = closed.prepareQueryTemplate("SELECT ?s WHERE { ?s ?p ?o }");
+            MarkLogicUpdateBatch batch = closed.prepareUpdateBatch();
+            batch.add("INSERT DATA { <http://example.org/stale> <http://example.org/p> \"stale\" }");
+            closed.close();
+
+            MarkLogicRepositoryConnection conn = rep.getConnection();
+            Assert.assertEquals(1, rep.getClientPool().getReusedCount());
+            ValueFactory f = conn.getValueFactory();
+            URI s = f.createURI("http://example.org/s");
+            conn.begin();
+            conn.add(s, f.createURI("http://example.org/p"), f.createLiteral("in transaction"));
+            try {
+                query.evaluate();
+                Assert.fail("query of a closed connection must not run");
+            } catch (QueryEvaluationException e) {
+                // expected
+            }
+            try {
+                template.evaluateTuple(null);
+                Assert.fail("template of a closed connection must not run");
+            } catch (QueryEvaluationException e) {
+                // expected
+            }
+            try {
+                batch.execute();
+                Assert.fail("batch of a closed connection must not run");
+            } catch (UpdateExecutionException e) {
+                // expected
+            }
+            Assert.assertTrue(conn.isActive());
+            conn.rollback();
+            Assert.assertEquals(0, conn.size());
+            conn.close();
+        } finally {
+            rep.shutDown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testClientReleasedWhenCloseFails() throws Exception {
+        EmbeddedMarkLogicServer server = new EmbeddedMarkLogicServer();
+        MarkLogicRepository rep = server.newRepository();
+        rep.initialize();
+        try {
+            MarkLogicRepositoryConnection conn = rep.getConnection();
+            conn.begin();
+            Assert.assertEquals(1, rep.getClientPool().getActiveCount());
+            // rollback of the open transaction fails once the server is gone
+            server.stop();
+            try {
+                conn.close();
+                Assert.fail("rollback on close must fail");
+            } catch (Exception e) {
+                // expected
+            }
+            Assert.assertFalse(conn.isOpen());
+            Assert.assertEquals(0, rep.getClientPool().getActiveCount());
+            Assert.assertEquals(1, rep.getClientPool().getReturnedCount());
+        } finally {
+            rep.shutDown();
+            server.stop();
+        }
+    }
+}
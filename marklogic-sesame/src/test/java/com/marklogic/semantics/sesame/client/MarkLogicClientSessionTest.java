@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * tests sessions of a shared client (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class MarkLogicClientSessionTest {
+
+    private TransactionHost stub;
+    private MarkLogicClient shared;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new TransactionHost();
+        shared = stub.newClient();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testConcurrentTransactions() throws Exception {
+        MarkLogicClient first = new MarkLogicClient(shared);
+        MarkLogicClient second = new MarkLogicClient(shared);
+        Assert.assertTrue(first.isSession());
+
+        first.openTransaction();
+        second.openTransaction();
+        Assert.assertTrue(first.isActiveTransaction());
+        Assert.assertTrue(second.isActiveTransaction());
+
+        first.sendAdd(null, new URIImpl("urn:first"), new URIImpl("urn:p"), new URIImpl("urn:o"));
+        second.sendAdd(null, new URIImpl("urn:second"), new URIImpl("urn:p"), new URIImpl("urn:o"));
+        second.commitTransaction();
+        first.commitTransaction();
+
+        // each write cache is flushed into the transaction of its own session
+        Assert.assertEquals(2, stub.updates.size());
+        for (String update : stub.updates) {
+            if (update.contains("urn:first")) {
+                Assert.assertTrue(update, update.startsWith("tx1|"));
+            } else {
+                Assert.assertTrue(update, update.startsWith("tx2|") && update.contains("urn:second"));
+            }
+        }
+        Assert.assertEquals(2, stub.commits.get());
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testSessionsShareExecutor() throws Exception {
+        MarkLogicClient first = new MarkLogicClient(shared);
+        // a session of a session belongs to the shared client
+        MarkLogicClient second = new MarkLogicClient(first);
+        first.close();
+
+        // closing a session leaves the shared executor running
+        final CountDownLatch ran = new CountDownLatch(1);
+        second.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+        second.close();
+    }
+
+    @Test
+    public void testSlowFlushDoesNotStallOtherSessions() throws Exception {
+        MarkLogicClient slow = new MarkLogicClient(shared);
+        MarkLogicClient fast = new MarkLogicClient(shared);
+        slow.initTimer(0, 20, 100);
+        fast.initTimer(0, 20, 100);
+        try {
+            slow.sendAdd(null, new URIImpl("urn:slow"), new URIImpl("urn:p"), new URIImpl("urn:o"));
+            Assert.assertTrue(stub.slowArrived.await(5, TimeUnit.SECONDS));
+
+            // the slow flush is held by the host while the other session flushes
+            fast.sendAdd(null, new URIImpl("urn:fast"), new URIImpl("urn:p"), new URIImpl("urn:o"));
+            Assert.assertTrue(stub.fastArrived.await(5, TimeUnit.SECONDS));
+        } finally {
+            stub.releaseSlow.countDown();
+            slow.close();
+            fast.close();
+        }
+    }
+
+    @Test
+    public void testSessionsShareOneSchedulerThread() throws Exception {
+        List<MarkLogicClient> sessions = new ArrayList<MarkLogicClient>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                MarkLogicClient session = new MarkLogicClient(shared);
+                session.initTimer(0, 10, 100);
+                sessions.add(session);
+            }
+            Thread.sleep(100);
+            int schedulers = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("marklogic-sesame-session-cache")) {
+                    schedulers++;
+                }
+            }
+            Assert.assertEquals(1, schedulers);
+        } finally {
+            for (MarkLogicClient session : sessions) {
+                session.close();
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * opens numbered transactions and records the transaction of every SPARQL update,
+     * updates of urn:slow are held until released
+     */
+    private static class TransactionHost extends StubHost {
+        final AtomicInteger transactions = new AtomicInteger();
+        final AtomicInteger commits = new AtomicInteger();
+        final List<String> updates = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch slowArrived = new CountDownLatch(1);
+        final CountDownLatch releaseSlow = new CountDownLatch(1);
+        final CountDownLatch fastArrived = new CountDownLatch(1);
+
+        TransactionHost() throws IOException {
+            super();
+        }
+
+        @Override
+        protected void stopping() {
+            releaseSlow.countDown();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = readBody(exchange);
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+            if (path.equals("/v1/transactions")) {
+                exchange.getResponseHeaders().add("Location", "/v1/transactions/tx" + transactions.incrementAndGet());
+                respond(exchange, 303, null, null);
+            } else if (path.startsWith("/v1/transactions/")) {
+                commits.incrementAndGet();
+                respond(exchange, 204, null, null);
+            } else {
+                String txid = param(query, "txid");
+                String update = URLDecoder.decode(new String(body, "UTF-8"), "UTF-8");
+                if (update.contains("urn:slow")) {
+                    // held until released by the test
+                    slowArrived.countDown();
+                    try {
+                        releaseSlow.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else if (update.contains("urn:fast")) {
+                    fastArrived.countDown();
+                }
+                updates.add(txid + "|" + update);
+                respond(exchange, 204, null, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.semantics.sesame.metrics.ClientMetrics.Operation;
+import com.marklogic.semantics.sesame.metrics.PhaseTimed;
+import com.marklogic.semantics.sesame.metrics.PhaseTimingListener;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings;
+import com.marklogic.semantics.sesame.metrics.PhaseTimings.Phase;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tests phase timings of queries and updates (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class PhaseTimingsTest {
+
+    private static final String SELECT_HEAD = "{\"head\":{\"vars\":[\"s\"]},\"results\":{\"bindings\":[";
+    private static final String SELECT_TAIL = "{\"s\":{\"type\":\"uri\",\"value\":\"urn:s0\"}}]}}";
+
+    private static final long DELAY_MILLIS = 100;
+    private static final long MIN_NANOS = TimeUnit.MILLISECONDS.toNanos(DELAY_MILLIS - 10);
+
+    private SlowHost stub;
+    private MarkLogicClient client;
+    private final BlockingQueue<PhaseTimings> timed = new LinkedBlockingQueue<PhaseTimings>();
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new SlowHost();
+        client = stub.newClient();
+        client.setPhaseTimingListener(new PhaseTimingListener() {
+            @Override
+            public void timed(PhaseTimings timings) {
+                PhaseTimingsTest.this.timed.add(timings);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testTupleQueryPhases() throws Exception {
+        // first query loads the parser classes, which would overlap the stalled body
+        consume(client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT));
+        Assert.assertNotNull(timed.poll(5, TimeUnit.SECONDS));
+
+        client.sendAdd(null, new URIImpl("urn:s"), new URIImpl("urn:p"), new URIImpl("urn:o"));
+        client.syncForQuery();
+        PhaseTimings flush = timed.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals("flush is timed on its own", Operation.UPDATE, flush.getOperation());
+
+        TupleQueryResult result = client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT);
+        consume(result);
+
+        PhaseTimings timings = timed.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(timings);
+        Assert.assertSame(timings, ((PhaseTimed) result).getPhaseTimings());
+        Assert.assertEquals(Operation.TUPLE_QUERY, timings.getOperation());
+        Assert.assertEquals("SELECT ?s WHERE { ?s ?p ?o }", timings.getQueryString());
+        Assert.assertTrue("flush timed as sync", timings.getNanos(Phase.SYNC) >= MIN_NANOS);
+        Assert.assertTrue("wait for headers", timings.getNanos(Phase.FIRST_BYTE) >= MIN_NANOS);
+        Assert.assertTrue("body read", timings.getNanos(Phase.TRANSFER) > 0);
+        // how much of the stalled body is waited for before the response is handed over depends on the http client
+        long response = timings.getNanos(Phase.FIRST_BYTE) + timings.getNanos(Phase.TRANSFER) + timings.getNanos(Phase.PARSE);
+        Assert.assertTrue(timings.toString(), response >= 2 * MIN_NANOS);
+        Assert.assertTrue(timings.getTotalNanos() >= 3 * MIN_NANOS);
+    }
+
+    @Test
+    public void testUpdatePhasesWithoutSync() throws Exception {
+        client.sendUpdateQuery("CLEAR ALL", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+        PhaseTimings timings = timed.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(timings);
+        Assert.assertEquals(Operation.UPDATE, timings.getOperation());
+        Assert.assertEquals(0, timings.getNanos(Phase.SYNC));
+        Assert.assertTrue(timings.getNanos(Phase.FIRST_BYTE) >= MIN_NANOS);
+        Assert.assertEquals(0, timings.getNanos(Phase.PARSE));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        client.setPhaseTimingListener(null);
+        Assert.assertFalse(client.isPhaseTiming());
+        client.syncForQuery();
+        TupleQueryResult result = client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT);
+        consume(result);
+        Assert.assertNull(((PhaseTimed) result).getPhaseTimings());
+        Assert.assertNull(PhaseTimings.unbind());
+    }
+
+    @Test
+    public void testCacheHitTimed() throws Exception {
+        client.setQueryResultCache(new QueryResultCache());
+        consume(client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT));
+        Assert.assertNotNull(timed.poll(5, TimeUnit.SECONDS));
+
+        client.syncForQuery();
+        consume(client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT));
+        PhaseTimings timings = timed.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("cache hit is timed", timings);
+        Assert.assertEquals(Operation.TUPLE_QUERY, timings.getOperation());
+        Assert.assertEquals(0, timings.getNanos(Phase.FIRST_BYTE));
+        Assert.assertNull(PhaseTimings.unbind());
+    }
+
+    @Test
+    public void testSyncTimingsUnboundWhenTimingDisabled() throws Exception {
+        client.syncForQuery();
+        client.setPhaseTimingListener(null);
+        client.sendUpdateQuery("CLEAR ALL", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+        Assert.assertNull("timings of the sync are not left on the thread", PhaseTimings.unbind());
+    }
+
+    private static void consume(TupleQueryResult result) throws Exception {
+        while (result.hasNext()) {
+            result.next();
+        }
+        result.close();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * delays every response before its headers, and query responses part way through their body
+     */
+    private static class SlowHost extends StubHost {
+
+        SlowHost() throws IOException {
+            super();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            drain(exchange);
+            pause();
+            if (isUpdate(exchange)) {
+                respond(exchange, 204, null, null);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/sparql-results+json");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(SELECT_HEAD.getBytes("UTF-8"));
+            out.flush();
+            pause();
+            out.write(SELECT_TAIL.getBytes("UTF-8"));
+            out.close();
+        }
+
+        private static void pause() {
+            try {
+                Thread.sleep(DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+
+/**
+ * tests how query bindings reach the server (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class QueryBindingsTest {
+
+    private static final String ASK = "ASK { ?s ?p ?o }";
+
+    private final ValueFactory f = ValueFactoryImpl.getInstance();
+
+    private AskHost stub;
+    private MarkLogicClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new AskHost();
+        client = stub.newClient();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testTypedAndLanguageBindingsSent() throws Exception {
+        SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+        bindings.addBinding("s", f.createURI("urn:s"));
+        bindings.addBinding("o", f.createLiteral("5", XMLSchema.INT));
+        bindings.addBinding("p", f.createLiteral("chat", "fr"));
+        client.sendBooleanQuery(ASK, bindings, RequestOptions.DEFAULT);
+
+        Assert.assertEquals("query text is not rewritten", ASK, stub.query);
+        Assert.assertTrue(stub.params, stub.params.contains("bind:s=urn:s"));
+        Assert.assertTrue(stub.params, stub.params.contains("bind:o:int=5"));
+        Assert.assertTrue(stub.params, stub.params.contains("bind:p@fr=chat"));
+    }
+
+    @Test
+    public void testPlainLiteralSentAsString() throws Exception {
+        SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+        bindings.addBinding("o", f.createLiteral("plain"));
+        client.sendBooleanQuery(ASK, bindings, RequestOptions.DEFAULT);
+
+        Assert.assertEquals(ASK, stub.query);
+        Assert.assertTrue(stub.params, stub.params.contains("bind:o:string=plain"));
+    }
+
+    @Test
+    public void testBlankNodeSentAsSkolemIRI() throws Exception {
+        SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+        bindings.addBinding("s", f.createBNode("b1"));
+        client.sendBooleanQuery(ASK, bindings, RequestOptions.DEFAULT);
+
+        Assert.assertEquals(ASK, stub.query);
+        Assert.assertTrue(stub.params, stub.params.contains("bind:s=" + SkolemMapper.SKOLEM_PREFIX + "b1"));
+    }
+
+    @Test
+    public void testUnsupportedDatatypeInlined() throws Exception {
+        SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+        bindings.addBinding("s", f.createBNode("b1"));
+        bindings.addBinding("o", f.createLiteral("x", f.createURI("urn:type")));
+        client.sendBooleanQuery(ASK, bindings, RequestOptions.DEFAULT);
+
+        // every binding of the set is inlined, none is sent as a parameter
+        Assert.assertFalse(stub.params, stub.params.contains("bind:"));
+        Assert.assertTrue(stub.query, stub.query.contains("\"x\"^^<urn:type>"));
+        Assert.assertTrue(stub.query, stub.query.contains("<" + SkolemMapper.SKOLEM_PREFIX + "b1>"));
+        Assert.assertFalse(stub.query, stub.query.contains("?o"));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * answers every query with true, recording the decoded request parameters and query text
+     */
+    private static class AskHost extends StubHost {
+        volatile String params;
+        volatile String query;
+
+        AskHost() throws IOException {
+            super();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            query = new String(readBody(exchange), "UTF-8");
+            String raw = exchange.getRequestURI().getRawQuery();
+            params = raw == null ? "" : URLDecoder.decode(raw, "UTF-8");
+            respond(exchange, 200, "application/sparql-results+json", "{\"head\":{},\"boolean\":true}".getBytes("UTF-8"));
+        }
+    }
+}
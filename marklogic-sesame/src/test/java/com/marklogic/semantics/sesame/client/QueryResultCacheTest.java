@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.semantics.sesame.MarkLogicRepository;
+import com.marklogic.semantics.sesame.MarkLogicRepositoryConnection;
+import com.marklogic.semantics.sesame.metrics.ClientMetrics;
+import com.marklogic.semantics.sesame.server.EmbeddedMarkLogicServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.ListBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * tests query result cache (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class QueryResultCacheTest {
+
+    private static final String QUERY = "select ?s where {?s ?p ?o}";
+
+    private ValueFactory f;
+    private List<String> names;
+
+    @Before
+    public void setUp() {
+        f = new ValueFactoryImpl();
+        names = Arrays.asList("s");
+    }
+
+    @Test
+    public void testTupleResultCachedWhenConsumed() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        QueryResultCache.Key key = key(QUERY, null);
+
+        Assert.assertNull(cache.getTupleResult(key));
+        consume(cache.cacheTupleResult(key, cache.getWriteGeneration(), result(3)));
+
+        TupleQueryResult cached = cache.getTupleResult(key(QUERY, null));
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(names, cached.getBindingNames());
+        Assert.assertEquals(3, consume(cached));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testTupleResultNotCachedWhenClosedEarly() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        QueryResultCache.Key key = key(QUERY, null);
+        TupleQueryResult result = cache.cacheTupleResult(key, cache.getWriteGeneration(), result(3));
+        result.next();
+        result.close();
+        Assert.assertNull(cache.getTupleResult(key));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBindingsArePartOfKey() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        SPARQLQueryBindingSet a = new SPARQLQueryBindingSet();
+        a.addBinding("s", f.createURI("http://example.org/a"));
+        SPARQLQueryBindingSet b = new SPARQLQueryBindingSet();
+        b.addBinding("s", f.createURI("http://example.org/b"));
+
+        cache.cacheBooleanResult(key(QUERY, a), cache.getWriteGeneration(), true);
+        Assert.assertEquals(Boolean.TRUE, cache.getBooleanResult(key(QUERY, a)));
+        Assert.assertNull(cache.getBooleanResult(key(QUERY, b)));
+    }
+
+    @Test
+    public void testWriteGenerationInvalidates() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        cache.cacheBooleanResult(key(QUERY, null), cache.getWriteGeneration(), true);
+        Assert.assertEquals(1, cache.size());
+        cache.invalidate();
+        Assert.assertNull(cache.getBooleanResult(key(QUERY, null)));
+        Assert.assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testWriteDuringQueryDiscardsResult() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        QueryResultCache.Key key = key(QUERY, null);
+        long generation = cache.getWriteGeneration();
+        TupleQueryResult result = cache.cacheTupleResult(key, generation, result(2));
+        cache.invalidate();
+        consume(result);
+        Assert.assertNull(cache.getTupleResult(key));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        QueryResultCache cache = new QueryResultCache(2, 0);
+        long generation = cache.getWriteGeneration();
+        cache.cacheBooleanResult(key("ask {?s ?p 1}", null), generation, true);
+        cache.cacheBooleanResult(key("ask {?s ?p 2}", null), generation, true);
+        cache.getBooleanResult(key("ask {?s ?p 1}", null));
+        cache.cacheBooleanResult(key("ask {?s ?p 3}", null), generation, true);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNotNull(cache.getBooleanResult(key("ask {?s ?p 1}", null)));
+        Assert.assertNull(cache.getBooleanResult(key("ask {?s ?p 2}", null)));
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 1);
+        cache.cacheBooleanResult(key(QUERY, null), cache.getWriteGeneration(), false);
+        Thread.sleep(20);
+        Assert.assertNull(cache.getBooleanResult(key(QUERY, null)));
+    }
+
+    @Test
+    public void testOversizedResultNotCached() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0, 2);
+        QueryResultCache.Key key = key(QUERY, null);
+        Assert.assertEquals(3, consume(cache.cacheTupleResult(key, cache.getWriteGeneration(), result(3))));
+        Assert.assertNull(cache.getTupleResult(key));
+    }
+
+    @Test
+    public void testCachedResultIsReadOnly() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 0);
+        QueryResultCache.Key key = key(QUERY, null);
+        consume(cache.cacheTupleResult(key, cache.getWriteGeneration(), result(3)));
+
+        TupleQueryResult cached = cache.getTupleResult(key);
+        cached.next();
+        try {
+            cached.remove();
+            Assert.fail("cached rows must not be removable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        cached.close();
+        Assert.assertEquals(3, consume(cache.getTupleResult(key)));
+    }
+
+    @Test
+    public void testCacheHitsAreCounted() throws Exception {
+        EmbeddedMarkLogicServer server = new EmbeddedMarkLogicServer();
+        MarkLogicRepository rep = server.newRepository();
+        try {
+            rep.setQueryResultCache(new QueryResultCache(10, 0));
+            rep.initialize();
+            MarkLogicRepositoryConnection conn = rep.getConnection();
+            try {
+                conn.add(f.createURI("http://example.org/s"), f.createURI("http://example.org/p"), f.createLiteral("o"));
+                Assert.assertEquals(1, consume(conn.prepareTupleQuery(QUERY).evaluate()));
+                Assert.assertEquals(1, consume(conn.prepareTupleQuery(QUERY).evaluate()));
+            } finally {
+                conn.close();
+            }
+            ClientMetrics metrics = rep.getMetrics();
+            Assert.assertEquals(1, metrics.getRequestCount(ClientMetrics.Operation.TUPLE_QUERY));
+            Assert.assertEquals(1, metrics.getCacheHitCount(ClientMetrics.Operation.TUPLE_QUERY));
+            Assert.assertEquals(Long.valueOf(1), metrics.getCacheHitCounts().get("TUPLE_QUERY"));
+        } finally {
+            rep.shutDown();
+            server.stop();
+        }
+    }
+
+    private QueryResultCache.Key key(String query, BindingSet bindings) {
+        return QueryResultCache.key("tuple", query, bindings, null, null, null, true, 1, -1);
+    }
+
+    private TupleQueryResult result(int size) {
+        List<BindingSet> rows = new ArrayList<BindingSet>();
+        for (int i = 0; i < size; i++) {
+            rows.add(new ListBindingSet(names, f.createURI("http://example.org/" + i)));
+        }
+        return new TupleQueryResultImpl(names, rows);
+    }
+
+    private int consume(TupleQueryResult result) throws Exception {
+        int count = 0;
+        while (result.hasNext()) {
+            result.next();
+            count++;
+        }
+        result.close();
+        return count;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+import org.openrdf.rio.RDFFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+/**
+ * tests raw result export (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class RawQueryTest {
+
+    private RawHost stub;
+    private MarkLogicClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new RawHost();
+        client = stub.newClient();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testGraphQueryCopiedUnparsed() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long copied = client.sendGraphQuery("CONSTRUCT {?s ?p ?o} WHERE {?s ?p ?o}", new SPARQLQueryBindingSet(),
+                RDFFormat.NTRIPLES, out, RequestOptions.DEFAULT);
+        Assert.assertEquals(RDFFormat.NTRIPLES.getDefaultMIMEType(), stub.accept);
+        Assert.assertEquals(stub.body.length, copied);
+        Assert.assertArrayEquals(stub.body, out.toByteArray());
+    }
+
+    @Test
+    public void testTupleQueryCopiedToChannel() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long copied = client.sendTupleQuery("SELECT ?s WHERE {?s ?p ?o}", new SPARQLQueryBindingSet(), 1, -1,
+                TupleQueryResultFormat.CSV, Channels.newChannel(out), RequestOptions.DEFAULT);
+        Assert.assertEquals(TupleQueryResultFormat.CSV.getDefaultMIMEType(), stub.accept);
+        Assert.assertEquals(stub.body.length, copied);
+        Assert.assertArrayEquals(stub.body, out.toByteArray());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * answers every query with the same body, larger than the copy buffer
+     */
+    private static class RawHost extends StubHost {
+        final byte[] body;
+        volatile String accept;
+
+        RawHost() throws IOException {
+            super();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 20000; i++) {
+                sb.append("<urn:s").append(i).append("> <urn:p> \"").append(i).append("\" .\n");
+            }
+            body = sb.toString().getBytes("UTF-8");
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            drain(exchange);
+            accept = exchange.getRequestHeaders().getFirst("Accept");
+            respond(exchange, 200, accept, body);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.marklogic.semantics.sesame.metrics.ClientMetrics.Operation;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+import org.openrdf.rio.RDFFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * tests interceptors called around requests (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class RequestInterceptorTest {
+
+    private static final String SELECT_RESULT = "{\"head\":{\"vars\":[\"s\"]},\"results\":{\"bindings\":["
+            + "{\"s\":{\"type\":\"uri\",\"value\":\"urn:s0\"}}]}}";
+
+    private CountingHost stub;
+    private MarkLogicClient client;
+    private final List<String> calls = new CopyOnWriteArrayList<String>();
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new CountingHost();
+        client = stub.newClient();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testChainOrder() throws Exception {
+        Recorder first = new Recorder("first");
+        client.addRequestInterceptor(first);
+        client.addRequestInterceptor(new Recorder("second"));
+
+        TupleQueryResult result = client.sendTupleQuery("SELECT ?s WHERE { ?s ?p ?o }", new SPARQLQueryBindingSet(), 1, -1, RequestOptions.DEFAULT);
+        while (result.hasNext()) {
+            result.next();
+        }
+        result.close();
+
+        Assert.assertEquals("[first before TUPLE_QUERY, second before TUPLE_QUERY, second after TUPLE_QUERY, first after TUPLE_QUERY]", calls.toString());
+        InterceptedRequest request = first.last;
+        Assert.assertEquals(Operation.TUPLE_QUERY, request.getOperation());
+        Assert.assertEquals("localhost", request.getHost());
+        Assert.assertEquals("SELECT ?s WHERE { ?s ?p ?o }", request.getSparql());
+        Assert.assertEquals("SELECT ?s WHERE { ?s ?p ?o }".length(), request.getBytesSent());
+        Assert.assertTrue(request.getDurationNanos() >= 0);
+        Assert.assertEquals("attribute set in before()", Boolean.TRUE, request.getAttribute("first"));
+
+        calls.clear();
+        Assert.assertTrue(client.removeRequestInterceptor(first));
+        Assert.assertFalse(client.removeRequestInterceptor(first));
+        client.sendUpdateQuery("CLEAR ALL", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+        Assert.assertEquals("[second before UPDATE, second after UPDATE]", calls.toString());
+    }
+
+    @Test
+    public void testFaultInjection() throws Exception {
+        client.addRequestInterceptor(new Recorder("outer"));
+        client.addRequestInterceptor(new Recorder("fault") {
+            @Override
+            public void before(InterceptedRequest request) {
+                super.before(request);
+                throw new IllegalStateException("injected");
+            }
+        });
+        try {
+            client.sendUpdateQuery("CLEAR ALL", new SPARQLQueryBindingSet(), RequestOptions.DEFAULT);
+            Assert.fail("expected injected fault");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("injected", e.getMessage());
+        }
+        Assert.assertEquals("[outer before UPDATE, fault before UPDATE, outer error UPDATE]", calls.toString());
+        Assert.assertEquals("nothing sent", 0, stub.requests.get());
+        Assert.assertEquals(1, client.getMetrics().getErrorCount(Operation.UPDATE));
+    }
+
+    @Test
+    public void testStreamSizeKnownAfter() throws Exception {
+        Recorder recorder = new Recorder("r");
+        client.addRequestInterceptor(recorder);
+        byte[] triples = "<urn:s> <urn:p> <urn:o> .\n".getBytes("UTF-8");
+        client.sendAdd(new ByteArrayInputStream(triples), null, RDFFormat.NTRIPLES);
+        Assert.assertEquals("[r before ADD, r after ADD]", calls.toString());
+        Assert.assertEquals(triples.length, recorder.last.getBytesSent());
+        Assert.assertNull(recorder.last.getSparql());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        client.addRequestInterceptor(new Recorder("r"));
+        client.sendClearAll();
+        Assert.assertEquals("[r before CLEAR, r after CLEAR]", calls.toString());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private class Recorder implements RequestInterceptor {
+        final String name;
+        volatile InterceptedRequest last;
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void before(InterceptedRequest request) {
+            Assert.assertEquals(-1, request.getDurationNanos());
+            request.setAttribute(name, Boolean.TRUE);
+            calls.add(name + " before " + request.getOperation());
+        }
+
+        @Override
+        public void after(InterceptedRequest request) {
+            last = request;
+            calls.add(name + " after " + request.getOperation());
+        }
+
+        @Override
+        public void error(InterceptedRequest request, Throwable failure) {
+            last = request;
+            calls.add(name + " error " + request.getOperation());
+        }
+    }
+
+    /**
+     * answers queries with one row and every other request with no content
+     */
+    private static class CountingHost extends StubHost {
+        final AtomicInteger requests = new AtomicInteger();
+
+        CountingHost() throws IOException {
+            super();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            drain(exchange);
+            if (!exchange.getRequestURI().getPath().endsWith("/sparql") || isUpdate(exchange)) {
+                respond(exchange, 204, null, null);
+                return;
+            }
+            respond(exchange, 200, "application/sparql-results+json", SELECT_RESULT.getBytes("UTF-8"));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+/**
+ * tests blank node skolemization (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class SkolemMapperTest {
+
+    @Test
+    public void testSkolemize() {
+        SkolemMapper mapper = new SkolemMapper();
+        URI skolem = mapper.skolemize(new BNodeImpl("b1"));
+        Assert.assertEquals("http://marklogic.com/semantics/blank/b1", skolem.stringValue());
+        Assert.assertSame(skolem, mapper.skolemize(new BNodeImpl("b1")));
+        Assert.assertTrue(SkolemMapper.isSkolem(skolem));
+
+        URI uri = new URIImpl("urn:x");
+        Assert.assertSame(uri, mapper.skolemize(uri));
+    }
+
+    @Test
+    public void testAppendIRI() {
+        StringBuffer query = new StringBuffer();
+        SkolemMapper mapper = new SkolemMapper();
+        mapper.appendIRI(query, new BNodeImpl("b1"));
+        mapper.appendIRI(query, new URIImpl("urn:p"));
+        Assert.assertEquals("<http://marklogic.com/semantics/blank/b1> <urn:p> ", query.toString());
+    }
+
+    @Test
+    public void testResultsKeptAsIRIsByDefault() {
+        SkolemMapper mapper = new SkolemMapper();
+        URI skolem = mapper.skolemize(new BNodeImpl("b1"));
+        Assert.assertSame(skolem, mapper.deskolemize(skolem));
+
+        SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+        bindings.addBinding("s", new BNodeImpl("b1"));
+        Assert.assertSame(bindings, mapper.skolemize(bindings));
+    }
+
+    @Test
+    public void testDeskolemize() {
+        SkolemMapper mapper = new SkolemMapper(true);
+        BNode bnode = new BNodeImpl("b1");
+        BNode read = (BNode) mapper.deskolemize(mapper.skolemize(bnode));
+        Assert.assertEquals(bnode, read);
+        Assert.assertSame(read, mapper.deskolemize(new URIImpl("http://marklogic.com/semantics/blank/b1")));
+
+        MapBindingSet row = new MapBindingSet();
+        row.addBinding("s", new URIImpl("http://marklogic.com/semantics/blank/b2"));
+        row.addBinding("o", new LiteralImpl("x"));
+        BindingSet deskolemized = mapper.deskolemize(row);
+        Assert.assertEquals(new BNodeImpl("b2"), deskolemized.getValue("s"));
+        Assert.assertEquals(new LiteralImpl("x"), deskolemized.getValue("o"));
+
+        MapBindingSet plain = new MapBindingSet();
+        plain.addBinding("s", new URIImpl("urn:s"));
+        Assert.assertSame(plain, mapper.deskolemize(plain));
+
+        Statement st = new StatementImpl(new URIImpl("http://marklogic.com/semantics/blank/b3"), new URIImpl("urn:p"),
+                new URIImpl("http://marklogic.com/semantics/blank/b4"));
+        Statement read3 = mapper.deskolemize(st, ValueFactoryImpl.getInstance());
+        Assert.assertEquals(new BNodeImpl("b3"), read3.getSubject());
+        Assert.assertEquals(new BNodeImpl("b4"), read3.getObject());
+
+        // blank nodes read back are skolemized again when bound in queries
+        SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+        bindings.addBinding("s", read);
+        Assert.assertEquals(mapper.skolemize(bnode), mapper.skolemize(bindings).getValue("s"));
+    }
+}
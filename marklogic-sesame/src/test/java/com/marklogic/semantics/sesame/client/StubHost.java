@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * local stub of a MarkLogic host for tests that do not require MarkLogic server,
+ * subclasses answer the requests; pools and clients created by the stub are closed
+ * when it stops. Use EmbeddedMarkLogicServer where a working endpoint is needed.
+ *
+ * @author James Fuller
+ */
+public abstract class StubHost implements HttpHandler {
+
+    public final int port;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<EndpointPool> pools = new ArrayList<EndpointPool>();
+    private final List<MarkLogicClient> clients = new ArrayList<MarkLogicClient>();
+    private boolean stopped;
+
+    protected StubHost() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this);
+        server.start();
+        port = server.getAddress().getPort();
+    }
+
+    /**
+     * @return endpoint of this host
+     */
+    public Endpoint newEndpoint() {
+        return new Endpoint("localhost", port, "user", "password", "BASIC");
+    }
+
+    /**
+     * @return pool of this host alone, released on stop
+     */
+    public synchronized EndpointPool newPool() {
+        EndpointPool pool = new EndpointPool(newEndpoint());
+        pools.add(pool);
+        return pool;
+    }
+
+    /**
+     * @return client of a new pool of this host, closed on stop
+     */
+    public MarkLogicClient newClient() {
+        return newClient(newPool());
+    }
+
+    /**
+     * @param pool
+     * @return client with the default value factory, closed on stop
+     */
+    public synchronized MarkLogicClient newClient(EndpointPool pool) {
+        MarkLogicClient client = new MarkLogicClient(pool);
+        client.setValueFactory(ValueFactoryImpl.getInstance());
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * closes clients and pools of this host, stops listening and interrupts requests
+     * still being answered; later calls do nothing
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        stopping();
+        for (MarkLogicClient client : clients) {
+            client.stopTimer();
+            client.close();
+        }
+        for (EndpointPool pool : pools) {
+            pool.release();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * called once before the host stops, by default does nothing
+     */
+    protected void stopping() {
+    }
+
+    /**
+     * reads the request body
+     *
+     * @param exchange
+     * @return
+     * @throws IOException
+     */
+    protected static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * reads and discards the request body
+     *
+     * @param exchange
+     * @throws IOException
+     */
+    protected static void drain(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+            // drain request
+        }
+    }
+
+    /**
+     * sends the whole response and closes the exchange
+     *
+     * @param exchange
+     * @param status
+     * @param contentType - not sent if null
+     * @param body - no content if null
+     * @throws IOException
+     */
+    protected static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+        }
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * @param exchange
+     * @return if the request is a SPARQL update
+     */
+    protected static boolean isUpdate(HttpExchange exchange) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return contentType != null && contentType.contains("sparql-update");
+    }
+
+    /**
+     * @param query - raw query string, may be null
+     * @param name
+     * @return undecoded value of the first parameter called name, or null
+     */
+    protected static String param(String query, String name) {
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith(name + "=")) {
+                    return param.substring(name.length() + 1);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.client;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * stub host recording every SPARQL update and its decoded request parameters, answering
+ * with status (only successful updates are recorded)
+ *
+ * @author James Fuller
+ */
+public class UpdateHost extends StubHost {
+
+    public final List<String> updates = Collections.synchronizedList(new ArrayList<String>());
+    public final List<String> params = Collections.synchronizedList(new ArrayList<String>());
+    public volatile int status = 204;
+
+    public UpdateHost() throws IOException {
+        super();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = readBody(exchange);
+        if (status == 204) {
+            updates.add(URLDecoder.decode(new String(body, "UTF-8"), "UTF-8"));
+            String query = exchange.getRequestURI().getRawQuery();
+            params.add(query == null ? "" : URLDecoder.decode(query, "UTF-8"));
+        }
+        respond(exchange, status, null, null);
+    }
+}
@@ -19,11 +19,18 @@
  */
 package com.marklogic.semantics.sesame.config;
 
+import com.marklogic.semantics.sesame.MarkLogicRepository;
 import com.marklogic.semantics.sesame.MarkLogicRepositoryConnection;
+import com.marklogic.semantics.sesame.client.GroupCommitter;
+import com.marklogic.semantics.sesame.client.InterningValueFactory;
+import com.marklogic.semantics.sesame.metrics.SlowOperationLog;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.openrdf.model.Graph;
+import org.openrdf.model.Resource;
+import org.openrdf.model.impl.GraphImpl;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.config.RepositoryFactory;
@@ -81,4 +88,69 @@ public class MarkLogicRepositoryFactoryTest {
         otherrepo.initialize();
         Assert.assertTrue(otherrepo.getConnection() instanceof RepositoryConnection);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConfigRoundTrip() throws Exception {
+        MarkLogicRepositoryConfig config = new MarkLogicRepositoryConfig("localhost", 8200, "user", "password", "DIGEST");
+        config.getConnectionSettings().setMaxConnections(400);
+        config.getConnectionSettings().setSocketTimeoutMillis(30000);
+        config.getConnectionSettings().setKeepAliveMillis(5000);
+        config.getConnectionSettings().setWriteCacheSize(2000);
+        config.getConnectionSettings().setExecutorCoreThreads(4);
+        config.setInternCapacity(4096);
+        config.setDeskolemize(true);
+        config.setSharedClient(true);
+        config.setGroupCommitMaxStatements(500);
+        config.setGroupCommitMaxDelayMillis(25);
+        config.setSlowOperationThresholdMillis(250);
+        config.setSlowOperationSampleRate(0.5);
+
+        Graph graph = new GraphImpl();
+        Resource implNode = config.export(graph);
+
+        MarkLogicRepositoryConfig parsed = new MarkLogicRepositoryConfig();
+        parsed.parse(graph, implNode);
+        Assert.assertEquals(400, parsed.getConnectionSettings().getMaxConnections());
+        Assert.assertEquals(30000, parsed.getConnectionSettings().getSocketTimeoutMillis());
+        Assert.assertEquals(5000, parsed.getConnectionSettings().getKeepAliveMillis());
+        Assert.assertEquals(2000, parsed.getConnectionSettings().getWriteCacheSize());
+        Assert.assertEquals(4, parsed.getConnectionSettings().getExecutorCoreThreads());
+        Assert.assertEquals(0, parsed.getConnectionSettings().getConnectTimeoutMillis());
+        Assert.assertEquals(4096, parsed.getInternCapacity());
+        Assert.assertTrue(parsed.isDeskolemize());
+        Assert.assertTrue(parsed.isSharedClient());
+        Assert.assertEquals(500, parsed.getGroupCommitMaxStatements());
+        Assert.assertEquals(25, parsed.getGroupCommitMaxDelayMillis());
+        Assert.assertEquals(250, parsed.getSlowOperationThresholdMillis());
+        Assert.assertEquals(0.5, parsed.getSlowOperationSampleRate(), 0);
+
+        // initializing sends no request, so no server is needed
+        MarkLogicRepository repo = (MarkLogicRepository) new MarkLogicRepositoryFactory().getRepository(parsed);
+        repo.initialize();
+        try {
+            Assert.assertEquals(400, repo.getConnectionSettings().getMaxConnections());
+            Assert.assertTrue(repo.getValueFactory() instanceof InterningValueFactory);
+            Assert.assertTrue(repo.getSkolemMapper().isDeskolemize());
+            Assert.assertTrue(repo.isSharedClient());
+            GroupCommitter groupCommitter = repo.getGroupCommitter();
+            Assert.assertEquals(500, groupCommitter.getMaxStatements());
+            Assert.assertEquals(25, groupCommitter.getMaxDelayMillis());
+            SlowOperationLog slowOperationLog = repo.getSlowOperationLog();
+            Assert.assertEquals(250, slowOperationLog.getThresholdMillis());
+            Assert.assertEquals(0.5, slowOperationLog.getSampleRate(), 0);
+        } finally {
+            repo.shutDown();
+        }
+
+        MarkLogicRepository defaults = (MarkLogicRepository) new MarkLogicRepositoryFactory().getRepository(
+                new MarkLogicRepositoryConfig("localhost", 8200, "user", "password", "DIGEST"));
+        defaults.initialize();
+        try {
+            Assert.assertNull(defaults.getSlowOperationLog());
+            Assert.assertNull(defaults.getGroupCommitter());
+            Assert.assertFalse(defaults.isSharedClient());
+        } finally {
+            defaults.shutDown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * tests histogram and striped counter (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class HistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = Histogram.bucket(value);
+            Assert.assertTrue(value + " above its bucket", value <= Histogram.upperBound(bucket));
+            if (bucket > 0) {
+                Assert.assertTrue(value + " below its bucket", value > Histogram.upperBound(bucket - 1));
+            }
+        }
+        Assert.assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testQuantilesWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(10000, snapshot.getCount());
+        Assert.assertEquals(10000000, snapshot.getMax());
+        Assert.assertEquals(5000500, snapshot.getMean(), 0.5);
+        assertClose(5000000, snapshot.getValue(0.5));
+        assertClose(9900000, snapshot.getValue(0.99));
+        Assert.assertEquals(10000000, snapshot.getValue(1));
+        Assert.assertEquals(0, new Histogram().snapshot().getValue(0.99));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final Histogram histogram = new Histogram();
+        final StripedCounter counter = new StripedCounter();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Void>> done = new ArrayList<Future<Void>>();
+        for (int t = 0; t < 8; t++) {
+            done.add(threads.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = 0; i < 100000; i++) {
+                        histogram.record(i);
+                        counter.increment();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : done) {
+            future.get();
+        }
+        threads.shutdown();
+        Assert.assertEquals(800000, histogram.snapshot().getCount());
+        Assert.assertEquals(800000, counter.get());
+        Assert.assertEquals(99999, histogram.snapshot().getMax());
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue(actual + " not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
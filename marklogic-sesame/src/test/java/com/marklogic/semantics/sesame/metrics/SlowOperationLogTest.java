@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.metrics;
+
+import com.marklogic.client.semantics.SPARQLRuleset;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tests thresholds, sampling, rate limiting and formatting of the slow operation log (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class SlowOperationLogTest {
+
+    @Test
+    public void testFastOperationsNotLogged() {
+        SlowOperationLog log = new SlowOperationLog(60000);
+        log.start("UPDATE", "CLEAR ALL", null, null).finish(-1, null, null);
+        Assert.assertEquals(0, log.getLoggedCount());
+        Assert.assertEquals(0, log.getSuppressedCount());
+    }
+
+    @Test
+    public void testExcludedTimeNotCounted() throws Exception {
+        SlowOperationLog log = new SlowOperationLog(50);
+        SlowOperationLog.Entry waited = log.start("TUPLE_QUERY", "SELECT * WHERE { ?s ?p ?o }", null, null);
+        Thread.sleep(100);
+        // time the result spent waiting for its consumer
+        waited.exclude(TimeUnit.SECONDS.toNanos(1));
+        waited.finish(1, "rows", null);
+        Assert.assertEquals(0, log.getLoggedCount());
+
+        SlowOperationLog.Entry slow = log.start("TUPLE_QUERY", "SELECT * WHERE { ?s ?p ?o }", null, null);
+        Thread.sleep(100);
+        slow.finish(1, "rows", null);
+        Assert.assertEquals(1, log.getLoggedCount());
+    }
+
+    @Test
+    public void testRateLimitAndSampling() {
+        SlowOperationLog log = new SlowOperationLog(0);
+        log.setRateLimit(0.001, 3);
+        for (int i = 0; i < 10; i++) {
+            log.start("TUPLE_QUERY", "SELECT * WHERE { ?s ?p ?o }", null, null).finish(i, "rows", null);
+        }
+        Assert.assertEquals(3, log.getLoggedCount());
+        Assert.assertEquals(7, log.getSuppressedCount());
+
+        SlowOperationLog sampled = new SlowOperationLog(0);
+        sampled.setSampleRate(0);
+        sampled.start("ADD", null, null, null).finish(10, "bytes", null);
+        Assert.assertEquals(0, sampled.getLoggedCount());
+        Assert.assertEquals(1, sampled.getSuppressedCount());
+    }
+
+    @Test
+    public void testFormat() {
+        SlowOperationLog log = new SlowOperationLog(0);
+        log.setMaxQueryLength(20);
+        SPARQLQueryBindingSet bindings = new SPARQLQueryBindingSet();
+        bindings.addBinding("s", new URIImpl("urn:s"));
+        StringBuilder query = new StringBuilder("SELECT ?p ?o\nWHERE { ?s ?p ?o }");
+        for (int i = 0; i < 100; i++) {
+            query.append(' ');
+        }
+        SlowOperationLog.Entry entry = log.start("TUPLE_QUERY", query.toString(), bindings, new SPARQLRuleset[]{SPARQLRuleset.RDFS});
+        String line = log.format(entry, 1500000000L, 42, "rows", null);
+        Assert.assertTrue(line, line.startsWith("slow TUPLE_QUERY 1500.0ms rows=42 rulesets=[rdfs.rules] bindings=[s=urn:s]"));
+        Assert.assertTrue(line, line.endsWith(" sparql=SELECT ?p ?o WHERE {...(" + query.length() + " chars)"));
+    }
+}
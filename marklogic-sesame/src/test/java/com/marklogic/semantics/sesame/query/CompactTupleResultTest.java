@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.query;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.ListBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * tests compact tuple result (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class CompactTupleResultTest {
+
+    private static final List<String> NAMES = Arrays.asList("s", "p", "o");
+
+    private static TupleQueryResult source(int rows) {
+        List<BindingSet> bindings = new ArrayList<BindingSet>();
+        for (int i = 0; i < rows; i++) {
+            bindings.add(new ListBindingSet(NAMES,
+                    new URIImpl("urn:s" + i),
+                    new URIImpl("http://example.org/ontology/name"),
+                    i % 2 == 0 ? new LiteralImpl("name" + i) : null));
+        }
+        return new TupleQueryResultImpl(NAMES, bindings);
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        CompactTupleResult result = CompactTupleResult.materialize(source(100));
+        Assert.assertEquals(100, result.size());
+        Assert.assertEquals(NAMES, result.getBindingNames());
+        Assert.assertEquals(new URIImpl("urn:s7"), result.getValue(7, "s"));
+        Assert.assertEquals(new LiteralImpl("name8"), result.get(8).getValue("o"));
+        Assert.assertNull(result.getValue(7, "x"));
+    }
+
+    @Test
+    public void testUnbound() throws Exception {
+        CompactTupleResult result = CompactTupleResult.materialize(source(2));
+        BindingSet row = result.get(1);
+        Assert.assertNull(row.getValue("o"));
+        Assert.assertFalse(row.hasBinding("o"));
+        Assert.assertEquals(2, row.size());
+        Assert.assertFalse(row.getBindingNames().contains("o"));
+        Assert.assertEquals(3, result.get(0).size());
+    }
+
+    @Test
+    public void testDictionaryHoldsDistinctValues() throws Exception {
+        CompactTupleResult result = CompactTupleResult.materialize(source(100));
+        // 100 subjects, 1 predicate, 50 literals
+        Assert.assertEquals(151, result.getDictionarySize());
+        Assert.assertSame(result.getValue(0, "p"), result.getValue(99, "p"));
+    }
+
+    @Test
+    public void testReiterate() throws Exception {
+        CompactTupleResult compact = CompactTupleResult.materialize(source(40));
+        for (int pass = 0; pass < 2; pass++) {
+            TupleQueryResult result = compact.evaluate();
+            Assert.assertEquals(NAMES, result.getBindingNames());
+            int i = 0;
+            while (result.hasNext()) {
+                BindingSet row = result.next();
+                Assert.assertEquals(new URIImpl("urn:s" + i), row.getValue("s"));
+                Assert.assertEquals(source(40).next().getValue("p"), row.getValue("p"));
+                i++;
+            }
+            result.close();
+            Assert.assertEquals(40, i);
+        }
+
+        TupleQueryResult expected = source(4);
+        for (int i = 0; i < 3; i++) {
+            expected.next();
+        }
+        Assert.assertEquals(expected.next(), compact.get(3));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        CompactTupleResult result = CompactTupleResult.materialize(source(0));
+        Assert.assertEquals(0, result.size());
+        Assert.assertFalse(result.evaluate().hasNext());
+    }
+
+    @Test
+    public void testRowIsSerializable() throws Exception {
+        CompactTupleResult result = CompactTupleResult.materialize(source(2));
+        for (int row = 0; row < 2; row++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(result.get(row));
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            BindingSet copy = (BindingSet) in.readObject();
+            Assert.assertEquals(result.get(row), copy);
+            Assert.assertEquals(result.get(row).getBindingNames(), copy.getBindingNames());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marklogic.semantics.sesame.query;
+
+import com.marklogic.client.io.FileHandle;
+import com.marklogic.client.semantics.GraphManager;
+import com.marklogic.client.semantics.RDFMimeTypes;
+import com.marklogic.semantics.sesame.MarkLogicRepositoryConnection;
+import com.marklogic.semantics.sesame.SesameTestBase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * test MarkLogicQueryTemplate
+ *
+ * @author James Fuller
+ */
+public class MarkLogicQueryTemplateTest extends SesameTestBase {
+
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected MarkLogicRepositoryConnection conn;
+    protected ValueFactory f;
+
+    @Before
+    public void setUp() throws Exception {
+        logger.debug("setting up test");
+        rep.initialize();
+        f = rep.getValueFactory();
+        conn = rep.getConnection();
+        logger.info("test setup complete.");
+        File testData = new File("src/test/resources/testdata/test.owl");
+
+        GraphManager gmgr = writerClient.newGraphManager();
+        gmgr.setDefaultMimetype(RDFMimeTypes.RDFXML);
+
+        gmgr.write("http://example.org/test/g28", new FileHandle(testData));
+    }
+
+    @After
+    public void tearDown()
+            throws Exception {
+        logger.debug("tearing down...");
+        conn.close();
+        conn = null;
+        rep.shutDown();
+        rep = null;
+        logger.info("tearDown complete.");
+        GraphManager gmgr = writerClient.newGraphManager();
+        gmgr.delete("http://example.org/test/g28");
+    }
+
+    @Test
+    public void testBooleanTemplateWithBindings()
+            throws Exception {
+        MarkLogicQueryTemplate template = conn.prepareQueryTemplate("ASK {GRAPH <http://example.org/test/g28> {?s ?p ?o}}");
+
+        MapBindingSet bindings = new MapBindingSet();
+        bindings.addBinding("s", f.createURI("http://semanticbible.org/ns/2006/NTNames#Shelah"));
+        Assert.assertTrue(template.evaluateBoolean(bindings));
+
+        bindings = new MapBindingSet();
+        bindings.addBinding("s", f.createURI("http://semanticbible.org/ns/2006/NTNames#Shelah1"));
+        Assert.assertFalse(template.evaluateBoolean(bindings));
+    }
+
+    @Test
+    public void testTemplateIsImmutable()
+            throws Exception {
+        MarkLogicQueryTemplate template = conn.prepareQueryTemplate("SELECT ?o {GRAPH <http://example.org/test/g28> {?s ?p ?o}}");
+        MarkLogicQueryTemplate other = template.withIncludeInferred(false);
+        Assert.assertTrue(template.getRequestOptions().getIncludeInferred());
+        Assert.assertFalse(other.getRequestOptions().getIncludeInferred());
+        Assert.assertEquals(template.getQueryString(), other.getQueryString());
+    }
+
+    @Test
+    public void testConcurrentTupleTemplate()
+            throws Exception {
+        final MarkLogicQueryTemplate template = conn.prepareQueryTemplate("SELECT ?o {GRAPH <http://example.org/test/g28> {?s <http://www.w3.org/2000/01/rdf-schema#label> ?o}}");
+        final String[] names = {"Shelah", "Shelah1"};
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 32; i++) {
+                final String name = names[i % 2];
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        MapBindingSet bindings = new MapBindingSet();
+                        bindings.addBinding("s", f.createURI("http://semanticbible.org/ns/2006/NTNames#" + name));
+                        TupleQueryResult result = template.evaluateTuple(bindings);
+                        int count = 0;
+                        while (result.hasNext()) {
+                            BindingSet bindingSet = result.next();
+                            Assert.assertEquals(name, bindingSet.getValue("o").stringValue());
+                            count++;
+                        }
+                        result.close();
+                        return count;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(i % 2 == 0 ? 1 : 0, futures.get(i).get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.query;
+
+import com.marklogic.semantics.sesame.client.MarkLogicClient;
+import com.marklogic.semantics.sesame.client.UpdateHost;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.UpdateExecutionException;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.repository.sparql.query.SPARQLQueryBindingSet;
+
+import java.io.IOException;
+
+/**
+ * tests pipelined update batches (does not require MarkLogic server, the host is a local stub)
+ *
+ * @author James Fuller
+ */
+public class MarkLogicUpdateBatchTest {
+
+    private UpdateHost stub;
+    private MarkLogicClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new UpdateHost();
+        client = stub.newClient();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    public void testOperationsSentInOneRequest() throws Exception {
+        MarkLogicUpdateBatch batch = new MarkLogicUpdateBatch(client, null, null, null);
+        for (int i = 0; i < 3; i++) {
+            MapBindingSet bindings = new MapBindingSet();
+            bindings.addBinding("s", new URIImpl("urn:s" + i));
+            batch.add("PREFIX ex: <urn:ex:> INSERT { ?s ex:p ex:o } WHERE {}", bindings);
+        }
+        MarkLogicUpdateQuery update = new MarkLogicUpdateQuery(client, new SPARQLQueryBindingSet(), null,
+                "DELETE WHERE { ?s <urn:ex:q> ?o }", null, null, null);
+        update.setBinding("s", new URIImpl("urn:s0"));
+        batch.add(update);
+        Assert.assertEquals(4, batch.size());
+
+        batch.execute();
+        Assert.assertEquals(1, stub.updates.size());
+        String sent = stub.updates.get(0);
+        // bindings are sent as request parameters, variables renamed per operation
+        Assert.assertTrue(sent, sent.contains("INSERT { ?s ex:p ex:o }"));
+        Assert.assertTrue(sent, sent.contains("INSERT { ?s_1 ex:p ex:o }"));
+        Assert.assertTrue(sent, sent.contains("INSERT { ?s_2 ex:p ex:o }"));
+        Assert.assertTrue(sent, sent.contains("DELETE WHERE { ?s_3 <urn:ex:q> ?o }"));
+        Assert.assertEquals(3, sent.split(" ;\n").length - 1);
+        String params = stub.params.get(0);
+        Assert.assertTrue(params, params.contains("bind:s=urn:s0"));
+        Assert.assertTrue(params, params.contains("bind:s_1=urn:s1"));
+        Assert.assertTrue(params, params.contains("bind:s_2=urn:s2"));
+        Assert.assertTrue(params, params.contains("bind:s_3=urn:s0"));
+        Assert.assertFalse(params, params.contains("bind:o"));
+        Assert.assertEquals(0, batch.size());
+        Assert.assertEquals(0, batch.getBindings().size());
+
+        // nothing queued, nothing sent
+        batch.execute();
+        Assert.assertEquals(1, stub.updates.size());
+    }
+
+    @Test
+    public void testVariablesRenamedOnlyWhenClashing() throws Exception {
+        MarkLogicUpdateBatch batch = new MarkLogicUpdateBatch(client, null, null, null);
+        batch.add("DELETE WHERE { ?s <urn:p> ?o }");
+        MapBindingSet bindings = new MapBindingSet();
+        bindings.addBinding("o", new URIImpl("urn:o"));
+        batch.add("INSERT { ?s <urn:p> ?o } WHERE { ?s <urn:q> \"?o\" . FILTER(?s != <urn:x?o=1>) } # ?o", bindings);
+        batch.add("INSERT { ?x <urn:p> ?o } WHERE { ?x <urn:r> ?o_1 }");
+
+        // a bound variable used before is renamed, IRIs, strings and comments are left alone
+        Assert.assertEquals("INSERT { ?s <urn:p> ?o_1 } WHERE { ?s <urn:q> \"?o\" . FILTER(?s != <urn:x?o=1>) } # ?o",
+                batch.getOperations().get(1));
+        // an unbound variable is renamed when it would pick up the binding of another operation
+        Assert.assertEquals("INSERT { ?x <urn:p> ?o } WHERE { ?x <urn:r> ?o_1_2 }", batch.getOperations().get(2));
+        Assert.assertEquals(1, batch.getBindings().size());
+        Assert.assertEquals(new URIImpl("urn:o"), batch.getBindings().getValue("o_1"));
+    }
+
+    @Test
+    public void testMalformedOperationRejectedWithIndex() throws Exception {
+        MarkLogicUpdateBatch batch = new MarkLogicUpdateBatch(client, null, null, null);
+        batch.add("INSERT DATA { <urn:s> <urn:p> <urn:o> }");
+        try {
+            batch.add("INSERT { <urn:s> <urn:p> } WHERE {}");
+            Assert.fail("expected malformed operation to be rejected");
+        } catch (MalformedQueryException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("operation 1"));
+        }
+        Assert.assertEquals(1, batch.size());
+
+        batch.setValidate(false);
+        batch.add("INSERT { <urn:s> <urn:p> } WHERE {}");
+        Assert.assertEquals(2, batch.size());
+    }
+
+    @Test
+    public void testFailedBatchKeepsOperations() throws Exception {
+        stub.status = 500;
+        MarkLogicUpdateBatch batch = new MarkLogicUpdateBatch(client, null, null, null);
+        batch.add("INSERT DATA { <urn:s> <urn:p> <urn:o> }");
+        batch.add("DELETE DATA { <urn:s> <urn:p> <urn:x> }");
+        try {
+            batch.execute();
+            Assert.fail("expected failed batch to be reported");
+        } catch (UpdateExecutionException e) {
+            Assert.assertEquals(2, batch.size());
+        }
+
+        stub.status = 204;
+        batch.execute();
+        Assert.assertEquals(1, stub.updates.size());
+    }
+}
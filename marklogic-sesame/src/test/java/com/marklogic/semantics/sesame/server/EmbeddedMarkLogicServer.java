@@ -0,0 +1,795 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.server;
+
+import com.marklogic.semantics.sesame.MarkLogicRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.BooleanQuery;
+import org.openrdf.query.GraphQuery;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.Operation;
+import org.openrdf.query.Query;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.openrdf.query.TupleQueryResultHandlerBase;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.Update;
+import org.openrdf.query.impl.DatasetImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.openrdf.sail.memory.MemoryStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the MarkLogic REST endpoints this library calls, backed by a
+ * Sesame MemoryStore, so tests and benchmarks run without a MarkLogic server.
+ *
+ * Implements POST /v1/graphs/sparql (SELECT, CONSTRUCT, DESCRIBE, ASK and updates, with
+ * bindings, base, start and pageLength), POST, PUT and DELETE on /v1/graphs and
+ * /v1/transactions with txid on every request. Triples written without a graph go to the
+ * MarkLogic default graph; queries without FROM see every graph. Credentials are not
+ * checked, so connect with BASIC auth. Rulesets, permissions and constraining queries are
+ * accepted and ignored.
+ *
+ * Latency is added before each response and bandwidth limits request and response bodies,
+ * both may be changed while the server runs.
+ *
+ * @author James Fuller
+ */
+public class EmbeddedMarkLogicServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedMarkLogicServer.class);
+
+    public static final String DEFAULT_GRAPH_URI = "http://marklogic.com/semantics#default-graph";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int CHUNK = 8192;
+
+    private final Repository store;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final URI defaultGraph;
+
+    private final Map<String, RepositoryConnection> transactions = new ConcurrentHashMap<>();
+    private final AtomicLong txids = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+
+    /**
+     * constructor, listens on a free port of localhost
+     *
+     * @throws IOException
+     */
+    public EmbeddedMarkLogicServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * constructor
+     *
+     * @param port - 0 for a free port
+     * @throws IOException
+     */
+    public EmbeddedMarkLogicServer(int port) throws IOException {
+        try {
+            store = new SailRepository(new MemoryStore());
+            store.initialize();
+        } catch (RepositoryException e) {
+            throw new IOException("could not initialize store", e);
+        }
+        defaultGraph = store.getValueFactory().createURI(DEFAULT_GRAPH_URI);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "embedded-marklogic");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                EmbeddedMarkLogicServer.this.handle(exchange);
+            }
+        });
+        server.start();
+    }
+
+    public String getHost() {
+        return "localhost";
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * creates an uninitialized repository connecting to this server
+     *
+     * @return MarkLogicRepository
+     */
+    public MarkLogicRepository newRepository() {
+        return new MarkLogicRepository(getHost(), getPort(), "admin", "admin", "BASIC");
+    }
+
+    /**
+     * gets the store requests are served from, e.g. to load or check data directly
+     *
+     * @return Repository
+     */
+    public Repository getStore() {
+        return store;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * @param latencyMillis - added before every response, 0 for none
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = Math.max(latencyMillis, 0);
+    }
+
+    public long getBandwidth() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @param bytesPerSecond - limit on each request and response body, 0 for none
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(bytesPerSecond, 0);
+    }
+
+    /**
+     * @return long - requests served
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return int - transactions opened and not yet committed or rolled back
+     */
+    public int getOpenTransactions() {
+        return transactions.size();
+    }
+
+    /**
+     * removes every triple
+     *
+     * @throws RepositoryException
+     */
+    public void clear() throws RepositoryException {
+        RepositoryConnection conn = store.getConnection();
+        try {
+            conn.clear();
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * stops listening, rolls back open transactions and shuts the store down
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        for (RepositoryConnection conn : transactions.values()) {
+            closeQuietly(conn);
+        }
+        transactions.clear();
+        try {
+            store.shutDown();
+        } catch (RepositoryException e) {
+            logger.warn("could not shut down store", e);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // private ////////////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            Params params = new Params(exchange.getRequestURI().getRawQuery());
+            InputStream body = throttle(exchange.getRequestBody());
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/v1/graphs/sparql") && method.equals("POST")) {
+                sparql(exchange, params, readString(body));
+            } else if (path.equals("/v1/graphs")) {
+                graphs(exchange, method, params, body);
+            } else if (path.equals("/v1/transactions") && method.equals("POST")) {
+                drain(body);
+                openTransaction(exchange);
+            } else if (path.startsWith("/v1/transactions/") && method.equals("POST")) {
+                drain(body);
+                endTransaction(exchange, path.substring("/v1/transactions/".length()), params.get("result"));
+            } else {
+                drain(body);
+                error(exchange, 404, "Not Found", "RESTAPI-INVALIDREQ", method + " " + path + " is not supported");
+            }
+        } catch (MalformedQueryException | RDFParseException e) {
+            error(exchange, 400, "Bad Request", "XDMP-UNEXPECTED", e.getMessage());
+        } catch (UnknownTransactionException e) {
+            error(exchange, 400, "Bad Request", "XDMP-NOTXN", e.getMessage());
+        } catch (Exception e) {
+            logger.warn("request failed", e);
+            error(exchange, 500, "Internal Server Error", "XDMP-INTERNAL", String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void sparql(HttpExchange exchange, Params params, String sparql) throws Exception {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String txid = params.get("txid");
+        RepositoryConnection conn = connection(txid);
+        try {
+            String base = params.get("base");
+            if (contentType != null && contentType.startsWith("application/sparql-update")) {
+                Update update = conn.prepareUpdate(QueryLanguage.SPARQL, sparql, base);
+                bind(update, params, conn.getValueFactory());
+                // WHERE matches every graph as queries do, only writes default to the default graph
+                DatasetImpl dataset = new DatasetImpl();
+                dataset.setDefaultInsertGraph(defaultGraph);
+                dataset.addDefaultRemoveGraph(defaultGraph);
+                update.setDataset(dataset);
+                update.execute();
+                pause();
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            Query query = conn.prepareQuery(QueryLanguage.SPARQL, sparql, base);
+            bind(query, params, conn.getValueFactory());
+            if (query instanceof TupleQuery) {
+                select(exchange, (TupleQuery) query, params);
+            } else if (query instanceof GraphQuery) {
+                construct(exchange, (GraphQuery) query);
+            } else {
+                boolean result = ((BooleanQuery) query).evaluate();
+                respond(exchange, "application/json", ("{\"boolean\":" + result + "}").getBytes(UTF8));
+            }
+        } finally {
+            release(txid, conn);
+        }
+    }
+
+    private void select(HttpExchange exchange, TupleQuery query, Params params) throws Exception {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        TupleQueryResultFormat format = accept != null ? QueryResultIO.getWriterFormatForMIMEType(accept, TupleQueryResultFormat.JSON) : TupleQueryResultFormat.JSON;
+        long start = params.getLong("start", 1);
+        long pageLength = params.getLong("pageLength", -1);
+        TupleQueryResult result = query.evaluate();
+        try {
+            pause();
+            exchange.getResponseHeaders().add("Content-Type", format.getDefaultMIMEType());
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = throttle(exchange.getResponseBody());
+            // sesame's JSON writer needs an older jackson than the java api client brings
+            TupleQueryResultHandler writer = format == TupleQueryResultFormat.JSON ? new JsonResultWriter(out) : QueryResultIO.createWriter(format, out);
+            writer.startQueryResult(result.getBindingNames());
+            for (long skip = start - 1; skip > 0 && result.hasNext(); skip--) {
+                result.next();
+            }
+            for (long rows = 0; (pageLength < 0 || rows < pageLength) && result.hasNext(); rows++) {
+                writer.handleSolution(result.next());
+            }
+            writer.endQueryResult();
+            out.close();
+        } finally {
+            result.close();
+        }
+    }
+
+    private void construct(HttpExchange exchange, GraphQuery query) throws Exception {
+        RDFFormat format = RDFFormat.NTRIPLES;
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept != null) {
+            format = Rio.getWriterFormatForMIMEType(accept, RDFFormat.NTRIPLES);
+        }
+        GraphQueryResult result = query.evaluate();
+        try {
+            pause();
+            exchange.getResponseHeaders().add("Content-Type", format.getDefaultMIMEType());
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = throttle(exchange.getResponseBody());
+            RDFWriter writer = Rio.createWriter(format, out);
+            writer.startRDF();
+            while (result.hasNext()) {
+                writer.handleStatement(result.next());
+            }
+            writer.endRDF();
+            out.close();
+        } finally {
+            result.close();
+        }
+    }
+
+    private void graphs(HttpExchange exchange, String method, Params params, InputStream body) throws Exception {
+        String txid = params.get("txid");
+        RepositoryConnection conn = connection(txid);
+        try {
+            String graph = params.get("graph");
+            URI context = graph != null ? conn.getValueFactory().createURI(graph) : null;
+            if (method.equals("DELETE")) {
+                drain(body);
+                if (context != null) {
+                    conn.clear(context);
+                } else {
+                    conn.clear();
+                }
+            } else if (method.equals("POST") || method.equals("PUT")) {
+                if (method.equals("PUT") && context != null) {
+                    conn.clear(context);
+                }
+                load(conn, body, exchange.getRequestHeaders().getFirst("Content-Type"), context);
+            } else {
+                drain(body);
+                error(exchange, 405, "Method Not Allowed", "RESTAPI-INVALIDREQ", method + " /v1/graphs is not supported");
+                return;
+            }
+            pause();
+            exchange.sendResponseHeaders(204, -1);
+        } finally {
+            release(txid, conn);
+        }
+    }
+
+    /**
+     * parses body into context, or into the graphs it names when context is null, triples
+     * without a graph go to the default graph
+     */
+    private void load(final RepositoryConnection conn, InputStream body, String contentType, final Resource context) throws Exception {
+        String mimetype = contentType != null ? contentType.split(";")[0].trim() : null;
+        RDFFormat format = Rio.getParserFormatForMIMEType(mimetype);
+        if (format == null) {
+            throw new RDFParseException("unsupported content type " + contentType);
+        }
+        RDFParser parser = Rio.createParser(format, conn.getValueFactory());
+        parser.setRDFHandler(new RDFHandlerBase() {
+            @Override
+            public void handleStatement(Statement st) throws RDFHandlerException {
+                Resource target = context != null ? context : st.getContext() != null ? st.getContext() : defaultGraph;
+                try {
+                    conn.add(st.getSubject(), st.getPredicate(), st.getObject(), target);
+                } catch (RepositoryException e) {
+                    throw new RDFHandlerException(e);
+                }
+            }
+        });
+        boolean autocommit = !conn.isActive();
+        if (autocommit) {
+            conn.begin();
+        }
+        try {
+            parser.parse(body, context != null ? context.stringValue() : DEFAULT_GRAPH_URI);
+            if (autocommit) {
+                conn.commit();
+            }
+        } finally {
+            if (autocommit && conn.isActive()) {
+                conn.rollback();
+            }
+        }
+    }
+
+    private void openTransaction(HttpExchange exchange) throws IOException, RepositoryException {
+        String txid = Long.toString(txids.incrementAndGet());
+        RepositoryConnection conn = store.getConnection();
+        conn.begin();
+        transactions.put(txid, conn);
+        pause();
+        exchange.getResponseHeaders().add("Location", "/v1/transactions/" + txid);
+        exchange.sendResponseHeaders(303, -1);
+    }
+
+    private void endTransaction(HttpExchange exchange, String txid, String result) throws Exception {
+        RepositoryConnection conn = transactions.remove(txid);
+        if (conn == null) {
+            throw new UnknownTransactionException(txid);
+        }
+        try {
+            if ("commit".equals(result)) {
+                conn.commit();
+            } else {
+                conn.rollback();
+            }
+        } finally {
+            closeQuietly(conn);
+        }
+        pause();
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private RepositoryConnection connection(String txid) throws RepositoryException, UnknownTransactionException {
+        if (txid == null) {
+            return store.getConnection();
+        }
+        RepositoryConnection conn = transactions.get(txid);
+        if (conn == null) {
+            throw new UnknownTransactionException(txid);
+        }
+        return conn;
+    }
+
+    private static void release(String txid, RepositoryConnection conn) {
+        if (txid == null) {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * applies bind:name, bind:name:type and bind:name@lang request parameters
+     */
+    private static void bind(Operation operation, Params params, ValueFactory vf) {
+        for (String[] param : params.all) {
+            if (!param[0].startsWith("bind:")) {
+                continue;
+            }
+            String name = param[0].substring("bind:".length());
+            Value value;
+            int at = name.indexOf('@');
+            int colon = name.indexOf(':');
+            if (at > 0) {
+                value = vf.createLiteral(param[1], name.substring(at + 1));
+                name = name.substring(0, at);
+            } else if (colon > 0) {
+                String type = name.substring(colon + 1);
+                value = "string".equals(type) ? vf.createLiteral(param[1]) : vf.createLiteral(param[1], vf.createURI(XMLSchema.NAMESPACE, type));
+                name = name.substring(0, colon);
+            } else {
+                value = vf.createURI(param[1]);
+            }
+            operation.setBinding(name, value);
+        }
+    }
+
+    private void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        pause();
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = throttle(exchange.getResponseBody());
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * error body as MarkLogic sends it, parsed by the java api client into FailedRequestException
+     */
+    private void error(HttpExchange exchange, int status, String reason, String messageCode, String message) throws IOException {
+        String json = "{\"errorResponse\":{\"statusCode\":" + status + ", \"status\":\"" + reason
+                + "\", \"messageCode\":\"" + messageCode + "\", \"message\":\"" + escape(message) + "\"}}";
+        try {
+            respond(exchange, "application/json", json.getBytes(UTF8));
+        } catch (IOException e) {
+            // response was already started
+            logger.debug("could not send error", e);
+        }
+    }
+
+    private static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void pause() {
+        long millis = latencyMillis;
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private InputStream throttle(InputStream in) {
+        return bytesPerSecond > 0 ? new ThrottledInputStream(in) : in;
+    }
+
+    private OutputStream throttle(OutputStream out) {
+        return bytesPerSecond > 0 ? new ThrottledOutputStream(out) : out;
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, UTF8);
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[CHUNK];
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[CHUNK];
+        while (in.read(buf) != -1) {
+            // discard
+        }
+    }
+
+    private static void closeQuietly(RepositoryConnection conn) {
+        try {
+            if (conn.isActive()) {
+                conn.rollback();
+            }
+            conn.close();
+        } catch (RepositoryException e) {
+            logger.warn("could not close connection", e);
+        }
+    }
+
+    /**
+     * sleeps so bytes passed so far do not exceed the bandwidth
+     */
+    private final class Throttle {
+        private final long started = System.nanoTime();
+        private long bytes;
+
+        void consumed(long n) {
+            long rate = bytesPerSecond;
+            if (rate <= 0) {
+                return;
+            }
+            bytes += n;
+            long due = TimeUnit.SECONDS.toNanos(1) * bytes / rate;
+            long wait = due - (System.nanoTime() - started);
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private final class ThrottledInputStream extends FilterInputStream {
+        private final Throttle throttle = new Throttle();
+
+        ThrottledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                throttle.consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, Math.min(len, CHUNK));
+            if (n > 0) {
+                throttle.consumed(n);
+            }
+            return n;
+        }
+    }
+
+    private final class ThrottledOutputStream extends FilterOutputStream {
+        private final Throttle throttle = new Throttle();
+
+        ThrottledOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            throttle.consumed(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK);
+                out.write(b, off, n);
+                out.flush();
+                throttle.consumed(n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /**
+     * writes application/sparql-results+json as MarkLogic does
+     */
+    private static final class JsonResultWriter extends TupleQueryResultHandlerBase {
+        private final Writer writer;
+        private boolean first = true;
+
+        JsonResultWriter(OutputStream out) {
+            this.writer = new OutputStreamWriter(out, UTF8);
+        }
+
+        @Override
+        public void startQueryResult(List<String> bindingNames) throws TupleQueryResultHandlerException {
+            StringBuilder sb = new StringBuilder("{\"head\":{\"vars\":[");
+            for (int i = 0; i < bindingNames.size(); i++) {
+                sb.append(i > 0 ? "," : "").append('"').append(escape(bindingNames.get(i))).append('"');
+            }
+            write(sb.append("]},\"results\":{\"bindings\":[").toString());
+        }
+
+        @Override
+        public void handleSolution(BindingSet bindingSet) throws TupleQueryResultHandlerException {
+            StringBuilder sb = new StringBuilder(first ? "{" : ",{");
+            first = false;
+            boolean firstBinding = true;
+            for (Binding binding : bindingSet) {
+                sb.append(firstBinding ? "" : ",").append('"').append(escape(binding.getName())).append("\":{");
+                firstBinding = false;
+                Value value = binding.getValue();
+                if (value instanceof URI) {
+                    sb.append("\"type\":\"uri\"");
+                } else if (value instanceof BNode) {
+                    sb.append("\"type\":\"bnode\"");
+                } else {
+                    Literal lit = (Literal) value;
+                    sb.append("\"type\":\"literal\"");
+                    if (lit.getLanguage() != null) {
+                        sb.append(",\"xml:lang\":\"").append(escape(lit.getLanguage())).append('"');
+                    } else if (lit.getDatatype() != null && !XMLSchema.STRING.equals(lit.getDatatype())) {
+                        sb.append(",\"datatype\":\"").append(escape(lit.getDatatype().stringValue())).append('"');
+                    }
+                }
+                sb.append(",\"value\":\"").append(escape(value.stringValue())).append("\"}");
+            }
+            write(sb.append('}').toString());
+        }
+
+        @Override
+        public void endQueryResult() throws TupleQueryResultHandlerException {
+            write("]}}");
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new TupleQueryResultHandlerException(e);
+            }
+        }
+
+        private void write(String s) throws TupleQueryResultHandlerException {
+            try {
+                writer.write(s);
+            } catch (IOException e) {
+                throw new TupleQueryResultHandlerException(e);
+            }
+        }
+    }
+
+    /**
+     * decoded query string parameters, in order, repeated names kept
+     */
+    private static final class Params {
+        final List<String[]> all = new ArrayList<>();
+
+        Params(String rawQuery) throws IOException {
+            if (rawQuery == null || rawQuery.isEmpty()) {
+                return;
+            }
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                all.add(new String[]{URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8")});
+            }
+        }
+
+        String get(String name) {
+            for (String[] param : all) {
+                if (param[0].equals(name)) {
+                    return param[1];
+                }
+            }
+            return null;
+        }
+
+        long getLong(String name, long defaultValue) {
+            String value = get(name);
+            return value != null ? Long.parseLong(value) : defaultValue;
+        }
+    }
+
+    private static final class UnknownTransactionException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnknownTransactionException(String txid) {
+            super("no transaction " + txid);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015-2016 MarkLogic Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A library that enables access to a MarkLogic-backed triple-store via the
+ * Sesame API.
+ */
+package com.marklogic.semantics.sesame.server;
+
+import com.marklogic.semantics.sesame.MarkLogicRepository;
+import com.marklogic.semantics.sesame.MarkLogicRepositoryConnection;
+import com.marklogic.semantics.sesame.query.MarkLogicTupleQuery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.helpers.StatementCollector;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tests the library against the embedded stand-in (does not require MarkLogic server)
+ *
+ * @author James Fuller
+ */
+public class EmbeddedMarkLogicServerTest {
+
+    private EmbeddedMarkLogicServer server;
+    private MarkLogicRepository rep;
+    private MarkLogicRepositoryConnection conn;
+    private ValueFactory f;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new EmbeddedMarkLogicServer();
+        rep = server.newRepository();
+        rep.initialize();
+        conn = rep.getConnection();
+        f = conn.getValueFactory();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+        rep.shutDown();
+        server.stop();
+    }
+
+    @Test
+    public void testAddAndQuery() throws Exception {
+        URI alice = f.createURI("http://example.org/people/alice");
+        URI name = f.createURI("http://example.org/ontology/name");
+        URI context1 = f.createURI("http://marklogic.com/test/context1");
+        for (int i = 0; i < 10; i++) {
+            conn.add(alice, name, f.createLiteral("Alice" + i));
+        }
+        conn.add(alice, name, f.createLiteral("Alicia", "es"), context1);
+
+        Assert.assertEquals(11, conn.size());
+        Assert.assertEquals(1, conn.size(context1));
+        Assert.assertTrue(conn.hasStatement(alice, name, f.createLiteral("Alice3"), false));
+        Assert.assertFalse(conn.hasStatement(alice, name, f.createLiteral("Alice3"), false, context1));
+
+        RepositoryConnection direct = server.getStore().getConnection();
+        try {
+            Assert.assertEquals("written to the default graph", 10, direct.size(f.createURI(EmbeddedMarkLogicServer.DEFAULT_GRAPH_URI)));
+        } finally {
+            direct.close();
+        }
+
+        TupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?o WHERE { ?s ?p ?o } ORDER BY STR(?o)");
+        query.setBinding("s", alice);
+        Assert.assertEquals(11, count(query.evaluate()));
+        TupleQueryResult page = ((MarkLogicTupleQuery) query).evaluate(3, 4);
+        Assert.assertEquals("Alice2", ((Literal) page.next().getValue("o")).getLabel());
+        Assert.assertEquals(3, count(page));
+
+        GraphQueryResult graph = conn.prepareGraphQuery(QueryLanguage.SPARQL, "CONSTRUCT { ?s ?p ?o } WHERE { GRAPH <http://marklogic.com/test/context1> { ?s ?p ?o } }").evaluate();
+        Statement st = graph.next();
+        Assert.assertEquals("es", ((Literal) st.getObject()).getLanguage());
+        Assert.assertFalse(graph.hasNext());
+        graph.close();
+
+        Assert.assertTrue(conn.prepareBooleanQuery(QueryLanguage.SPARQL, "ASK { ?s ?p \"Alice9\" }").evaluate());
+
+        conn.remove(alice, name, f.createLiteral("Alice0"));
+        Assert.assertEquals(10, conn.size());
+        conn.clear(context1);
+        Assert.assertEquals(9, conn.size());
+        conn.clear();
+        Assert.assertEquals(0, conn.size());
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        URI context = f.createURI("http://marklogic.com/test/turtle");
+        conn.add(new ByteArrayInputStream("<urn:a> <urn:b> <urn:c> .\n<urn:a> <urn:b> <urn:d> .\n".getBytes("UTF-8")), null, RDFFormat.TURTLE, context);
+        conn.add(new ByteArrayInputStream("<urn:a> <urn:b> <urn:c> <urn:g> .\n".getBytes("UTF-8")), null, RDFFormat.NQUADS);
+        Assert.assertEquals(2, conn.size(context));
+        Assert.assertEquals(1, conn.size(f.createURI("urn:g")));
+        RepositoryResult<Statement> statements = conn.getStatements(f.createURI("urn:a"), null, null, false, context);
+        int n = 0;
+        while (statements.hasNext()) {
+            statements.next();
+            n++;
+        }
+        statements.close();
+        Assert.assertEquals(2, n);
+    }
+
+    @Test
+    public void testExportDisjointGraphs() throws Exception {
+        URI a = f.createURI("urn:graph:a");
+        URI b = f.createURI("urn:graph:b");
+        URI p = f.createURI("urn:p");
+        Literal shared = f.createLiteral("shared");
+        conn.add(f.createURI("urn:s1"), p, shared, a);
+        conn.add(f.createURI("urn:s2"), p, f.createLiteral("only b"), b);
+        conn.add(f.createURI("urn:s3"), p, shared, b);
+        conn.add(f.createURI("urn:s4"), p, shared);
+
+        StatementCollector all = new StatementCollector();
+        conn.export(all, a, b);
+        Assert.assertEquals("union of both graphs", 3, all.getStatements().size());
+
+        StatementCollector literal = new StatementCollector();
+        conn.exportStatements(null, null, shared, false, literal, a, b);
+        Assert.assertEquals(2, literal.getStatements().size());
+        for (Statement st : literal.getStatements()) {
+            Assert.assertEquals(shared, st.getObject());
+        }
+    }
+
+    @Test
+    public void testTransactions() throws Exception {
+        URI s = f.createURI("urn:s");
+        URI p = f.createURI("urn:p");
+        conn.begin();
+        conn.add(s, p, f.createLiteral("committed"));
+        Assert.assertEquals(1, server.getOpenTransactions());
+        Assert.assertEquals("visible in the transaction", 1, conn.size());
+        conn.commit();
+        Assert.assertEquals(0, server.getOpenTransactions());
+
+        conn.begin();
+        conn.add(s, p, f.createLiteral("rolled back"));
+        conn.rollback();
+        Assert.assertEquals(1, conn.size());
+        Assert.assertEquals(0, server.getOpenTransactions());
+    }
+
+    @Test
+    public void testLatencyAndBandwidth() throws Exception {
+        server.setLatencyMillis(50);
+        long started = System.nanoTime();
+        conn.size();
+        Assert.assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        server.setLatencyMillis(0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("<urn:s").append(i).append("> <urn:p> \"").append(i).append("\" .\n");
+        }
+        byte[] data = sb.toString().getBytes("UTF-8");
+        server.setBandwidth(data.length * 4);
+        started = System.nanoTime();
+        conn.add(new ByteArrayInputStream(data), null, RDFFormat.NTRIPLES);
+        Assert.assertTrue("upload throttled", System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(200));
+        server.setBandwidth(0);
+        Assert.assertEquals(200, conn.size());
+    }
+
+    private static int count(TupleQueryResult result) throws Exception {
+        int n = 0;
+        while (result.hasNext()) {
+            result.next();
+            n++;
+        }
+        result.close();
+        return n;
+    }
+}